@@ -0,0 +1,62 @@
+#!/bin/sh
+# Builds the fast-start distribution of the metrics tools into build/:
+#   LOCCounter-flat.jar : one flat jar of the tools and MetricsToolsAPI, started without the jar-in-jar loader
+#   LOCCounter.jsa      : an AppCDS archive of the classes which LOCCounterCUI and CommentCounterCUI load
+#                         (JDK 10 or later; run-tool.sh uses it when it exists)
+# The archive is valid only for the JDK which created it and for the jar at the same path; run this script
+# again after updating either.
+#
+# usage : scripts/build-dist.sh [MetricsToolsAPI.jar]
+#         (the library is taken from LOCCounter.jar when it is not given)
+set -e
+cd "$(dirname "$0")/.."
+ROOT=$(pwd)
+BUILD=$ROOT/build
+JAR=$BUILD/LOCCounter-flat.jar
+rm -rf "$BUILD/classes" "$BUILD/src" "$BUILD/lib" "$BUILD/cds-sample" "$JAR" "$BUILD/LOCCounter.jsa"
+mkdir -p "$BUILD/classes" "$BUILD/src" "$BUILD/lib" "$BUILD/cds-sample"
+
+API_JAR=$1
+if [ -z "$API_JAR" ]; then
+    (cd "$BUILD/lib" && unzip -q -o "$ROOT/LOCCounter.jar" MetricsToolsAPI.jar)
+    API_JAR=$BUILD/lib/MetricsToolsAPI.jar
+fi
+API_JAR=$(cd "$(dirname "$API_JAR")" && pwd)/$(basename "$API_JAR")
+
+# javac does not accept the byte order mark some of the sources start with
+cp -R src/. "$BUILD/src/"
+find "$BUILD/src" -name '*.java' | while read -r f; do
+    LC_ALL=C sed '1s/^\xEF\xBB\xBF//' "$f" > "$f.tmp" && mv "$f.tmp" "$f"
+done
+find "$BUILD/src" -name '*.java' > "$BUILD/sources.txt"
+javac -Xlint:-options -source 8 -target 8 -encoding UTF-8 -cp "$API_JAR" -d "$BUILD/classes" @"$BUILD/sources.txt"
+(cd "$BUILD/src" && find . -type f ! -name '*.java' -exec cp {} "$BUILD/classes/{}" \;)
+
+# the library is unpacked into the same jar, so the classes are found by the application class loader itself
+(cd "$BUILD/classes" && unzip -q -o "$API_JAR" -x 'META-INF/*')
+printf 'Main-Class: org.computer.aman.metrics.size.loc.LOCCounterCUI\n' > "$BUILD/manifest.txt"
+jar cfm "$JAR" "$BUILD/manifest.txt" -C "$BUILD/classes" .
+echo "built $JAR"
+
+# a training run of both entry points on small files lists the classes to archive
+cat > "$BUILD/cds-sample/Sample.java" <<'JAVA'
+/** A sample */
+public class Sample {
+    // a comment
+    public int f(int x) { /* a comment */ return x + 1; }
+}
+JAVA
+printf '/* a sample */\nint f(int x)\n{\n    // a comment\n    return x + 1;\n}\n' > "$BUILD/cds-sample/sample.c"
+LIST=$BUILD/classes.lst
+rm -f "$LIST" "$LIST.1" "$LIST.2"
+if ! java -XX:DumpLoadedClassList="$LIST.1" -cp "$JAR" org.computer.aman.metrics.size.loc.LOCCounterCUI -a "$BUILD/cds-sample" > /dev/null 2>&1; then
+    echo "no AppCDS archive: this JDK cannot list the loaded classes (JDK 10 or later is needed)"
+    exit 0
+fi
+printf '%s\t1\t5\n%s\t1\t6\n' "$BUILD/cds-sample/Sample.java" "$BUILD/cds-sample/sample.c" |
+    java -XX:DumpLoadedClassList="$LIST.2" -cp "$JAR" org.computer.aman.metrics.comment.CommentCounterCUI -n 4 > /dev/null 2>&1
+# the lists are merged as plain class names (the ids and the lambda forms of newer JDKs differ between the runs)
+cat "$LIST.1" "$LIST.2" | sed -e '/^@/d' -e '/^#/d' -e 's/ .*//' | awk '!seen[$0]++' > "$LIST"
+rm -f "$LIST.1" "$LIST.2"
+java -Xshare:dump -XX:SharedClassListFile="$LIST" -XX:SharedArchiveFile="$BUILD/LOCCounter.jsa" -cp "$JAR" > "$BUILD/cds-dump.log" 2>&1
+echo "built $BUILD/LOCCounter.jsa ($(wc -l < "$LIST") classes listed)"
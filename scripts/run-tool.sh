@@ -0,0 +1,25 @@
+#!/bin/sh
+# Runs a tool of the fast-start distribution built by build-dist.sh, with its AppCDS archive if any.
+# The options of the JVM can be given in JAVA_OPTS; for short runs on a few files,
+# "-XX:TieredStopAtLevel=1 -XX:+UseSerialGC" saves a little more of the startup.
+#
+# usage : scripts/run-tool.sh (loc | comment | extract | MAIN_CLASS) [argument ...]
+BUILD=$(cd "$(dirname "$0")/.." && pwd)/build
+JAR=$BUILD/LOCCounter-flat.jar
+if [ ! -f "$JAR" ]; then
+    echo "$JAR is not found: run scripts/build-dist.sh first" >&2
+    exit 2
+fi
+case "$1" in
+    loc)     MAIN=org.computer.aman.metrics.size.loc.LOCCounterCUI ;;
+    comment) MAIN=org.computer.aman.metrics.comment.CommentCounterCUI ;;
+    extract) MAIN=org.computer.aman.metrics.comment.CommentExtractorCUI ;;
+    "")      echo "usage : $0 (loc | comment | extract | MAIN_CLASS) [argument ...]" >&2; exit 2 ;;
+    *)       MAIN=$1 ;;
+esac
+shift
+CDS=
+if [ -f "$BUILD/LOCCounter.jsa" ]; then
+    CDS="-XX:SharedArchiveFile=$BUILD/LOCCounter.jsa -Xshare:auto"
+fi
+exec java $CDS $JAVA_OPTS -cp "$JAR" "$MAIN" "$@"
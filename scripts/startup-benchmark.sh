@@ -0,0 +1,43 @@
+#!/bin/sh
+# Compares the wall time of measuring a single small file with LOCCounterCUI:
+#   jar-in-jar  : java -jar LOCCounter.jar (JarRsrcLoader loading the nested MetricsToolsAPI.jar)
+#   flat        : the flat jar built by build-dist.sh
+#   flat + CDS  : the flat jar with its AppCDS archive
+#   flat + CDS + C1 : the same, with -XX:TieredStopAtLevel=1 -XX:+UseSerialGC
+# Each case is run once to warm the file cache and then RUNS times; the mean is printed in milliseconds.
+#
+# usage : scripts/startup-benchmark.sh [RUNS]   (default 20; GNU date is needed)
+set -e
+cd "$(dirname "$0")/.."
+RUNS=${1:-20}
+BUILD=$(pwd)/build
+if [ ! -f "$BUILD/LOCCounter-flat.jar" ]; then
+    scripts/build-dist.sh
+fi
+SAMPLE=$BUILD/cds-sample/Sample.java
+
+measure()
+{
+    LABEL=$1
+    shift
+    if ! "$@" > /dev/null 2>&1; then
+        printf '%-18s failed (run it by hand to see why)\n' "$LABEL"
+        return 0
+    fi
+    START=$(date +%s%N)
+    i=0
+    while [ $i -lt "$RUNS" ]; do
+        "$@" > /dev/null 2>&1
+        i=$((i + 1))
+    done
+    END=$(date +%s%N)
+    printf '%-18s %6d ms\n' "$LABEL" $(( (END - START) / RUNS / 1000000 ))
+}
+
+echo "$(java -version 2>&1 | head -1), $RUNS runs on $SAMPLE"
+measure "jar-in-jar" java -jar LOCCounter.jar "$SAMPLE"
+measure "flat" java -Xshare:auto -cp "$BUILD/LOCCounter-flat.jar" org.computer.aman.metrics.size.loc.LOCCounterCUI "$SAMPLE"
+if [ -f "$BUILD/LOCCounter.jsa" ]; then
+    measure "flat + CDS" scripts/run-tool.sh loc "$SAMPLE"
+    JAVA_OPTS="-XX:TieredStopAtLevel=1 -XX:+UseSerialGC" measure "flat + CDS + C1" scripts/run-tool.sh loc "$SAMPLE"
+fi
@@ -0,0 +1,102 @@
+package org.computer.aman.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A fast 64-bit fingerprint of file contents.<br>
+ * The contents are consumed eight bytes at a time with the mixing steps of MurmurHash3,
+ * which is enough to tell changed or different files apart; it is not a cryptographic hash.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ContentHash
+{
+    /**
+     * Returns the fingerprint of the contents of the specified file.
+     * Large files are memory-mapped instead of being copied onto the heap.
+     * 
+     * @param aFile the file
+     * @return the fingerprint
+     * @throws IOException if the file could not be read
+     */
+    public static long of(final File aFile)
+    throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(aFile, "r");
+        try{
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if ( size >= MAP_THRESHOLD ){
+                return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while ( buffer.hasRemaining() && channel.read(buffer) >= 0 ){
+                // reads until the buffer is filled
+            }
+            buffer.flip();
+            return of(buffer);
+        }
+        finally{
+            file.close();
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the remaining bytes of the specified buffer.
+     * The position of the buffer is not changed.
+     * 
+     * @param aBuffer the buffer
+     * @return the fingerprint
+     */
+    public static long of(final ByteBuffer aBuffer)
+    {
+        ByteBuffer buffer = aBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long hash = SEED ^ (buffer.remaining() * C1);
+        while ( buffer.remaining() >= 8 ){
+            hash = mix(hash, buffer.getLong());
+        }
+        long tail = 0;
+        for ( int shift = 0; buffer.hasRemaining(); shift += 8 ){
+            tail |= (buffer.get() & 0xffL) << shift;
+        }
+        hash = mix(hash, tail);
+
+        // the finalization step of MurmurHash3
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Mixes eight bytes into the hash value.
+     * 
+     * @param aHash the hash value so far
+     * @param aBlock the eight bytes
+     * @return the new hash value
+     */
+    private static long mix(final long aHash, final long aBlock)
+    {
+        long k = Long.rotateLeft(aBlock * C1, 31) * C2;
+        return Long.rotateLeft(aHash ^ k, 27) * 5 + 0x52dce729;
+    }
+
+    /** The first multiplier of MurmurHash3 (x64) */
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    /** The second multiplier of MurmurHash3 (x64) */
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /** The files of this size or larger are memory-mapped */
+    private static final long MAP_THRESHOLD = 64 * 1024;
+
+    /** The initial hash value */
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+}
@@ -0,0 +1,269 @@
+package org.computer.aman.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An iterator which reads the files ahead of their consumer.<br>
+ * The files of the given paths are read on I/O threads, up to the prefetch depth ahead of the file
+ * handed out last, and handed out in the order of the paths together with their bytes, so the consumer
+ * parses a file while the next ones are being read.  Small files are read into buffers taken from a pool,
+ * which keeps up to the prefetch depth of buffers for reuse; large files are memory-mapped and their pages
+ * are loaded.  A consumer calls {@link Contents#release()} when it has finished with the bytes,
+ * so that the buffer can be reused.  {@link #close()} stops the I/O threads.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class FilePrefetcher
+implements Iterator<FilePrefetcher.Contents>
+{
+    /**
+     * Starts reading the files of the specified paths.
+     *
+     * @param aPathIterator the paths of the files
+     * @param aDepth the number of files read ahead (1 or more)
+     * @throws IllegalArgumentException if the depth is less than 1
+     */
+    public FilePrefetcher(final Iterator<String> aPathIterator, final int aDepth)
+    {
+        if ( aDepth < 1 ){
+            throw new IllegalArgumentException("prefetch depth " + aDepth + " is less than 1");
+        }
+        pathIterator = aPathIterator;
+        depth = aDepth;
+        inFlight = new ArrayDeque<Future<Contents>>(aDepth);
+        freeBuffers = new ArrayBlockingQueue<ByteBuffer>(aDepth);
+        pool = Executors.newFixedThreadPool(Math.min(aDepth, MAX_THREAD_COUNT), new ThreadFactory() {
+            public Thread newThread(final Runnable aTask)
+            {
+                Thread thread = new Thread(aTask, "prefetcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        fill();
+    }
+
+    /**
+     * Stops the I/O threads.  The files being read are abandoned.
+     */
+    public void close()
+    {
+        pool.shutdownNow();
+    }
+
+    public boolean hasNext()
+    {
+        return !inFlight.isEmpty();
+    }
+
+    /**
+     * Returns the next file, waiting until it has been read.
+     * If the file could not be read, the error is reported by {@link Contents#getBytes()}.
+     *
+     * @return the next file
+     */
+    public Contents next()
+    {
+        if ( inFlight.isEmpty() ){
+            throw new NoSuchElementException();
+        }
+        Contents contents = take(inFlight.poll());
+        fill();
+        return contents;
+    }
+
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Starts reading the next files until the prefetch depth is reached.
+     */
+    private void fill()
+    {
+        while ( inFlight.size() < depth && pathIterator.hasNext() ){
+            final String PATH = pathIterator.next();
+            inFlight.add(pool.submit(new Callable<Contents>() {
+                public Contents call()
+                {
+                    try{
+                        return read(PATH);
+                    }
+                    catch ( IOException e ){
+                        return new Contents(PATH, null, e);
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * Reads the specified file.
+     *
+     * @param aPath the path of the file
+     * @return the contents of the file
+     * @throws IOException if the file could not be read
+     */
+    private Contents read(final String aPath)
+    throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(aPath, "r");
+        try{
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if ( size > Integer.MAX_VALUE ){
+                // left to the consumer, which reads such a file by itself
+                return new Contents(aPath, null, null);
+            }
+            if ( size > BUFFER_SIZE ){
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                bytes.load();
+                return new Contents(aPath, bytes, null);
+            }
+            ByteBuffer buffer = freeBuffers.poll();
+            if ( buffer == null ){
+                buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            }
+            buffer.clear();
+            buffer.limit((int)size);
+            while ( buffer.hasRemaining() && channel.read(buffer) >= 0 ){
+                // reads until the buffer is filled
+            }
+            buffer.flip();
+            return new Contents(aPath, buffer, null);
+        }
+        finally{
+            file.close();
+        }
+    }
+
+    /**
+     * Waits for the specified read and returns the file.
+     *
+     * @param aFuture the read
+     * @return the file
+     */
+    private static Contents take(final Future<Contents> aFuture)
+    {
+        try{
+            return aFuture.get();
+        }
+        catch ( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(new InterruptedIOException("interrupted while waiting for a file to be read"));
+        }
+        catch ( ExecutionException e ){
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException ){
+                throw (RuntimeException)cause;
+            }
+            if ( cause instanceof Error ){
+                throw (Error)cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * A file read ahead.
+     */
+    public class Contents
+    {
+        /**
+         * Creates a file read ahead.
+         *
+         * @param aPath the path of the file
+         * @param aBytes the bytes of the file, or null if they were not read
+         * @param anError the error the read failed with, or null
+         */
+        Contents(final String aPath, final ByteBuffer aBytes, final IOException anError)
+        {
+            path = aPath;
+            bytes = aBytes;
+            error = anError;
+        }
+
+        /**
+         * Returns the bytes of the file.  The returned buffer must not be used after {@link #release()}.
+         *
+         * @return the bytes of the file (from the position to the limit),
+         *         or null if the file is too large to be held in a buffer and has to be read by the consumer
+         * @throws IOException if the file could not be read
+         */
+        public synchronized ByteBuffer getBytes()
+        throws IOException
+        {
+            if ( error != null ){
+                throw error;
+            }
+            return bytes != null ? bytes.duplicate() : null;
+        }
+
+        /**
+         * Returns the path of the file.
+         *
+         * @return the path
+         */
+        public String getPath()
+        {
+            return path;
+        }
+
+        /**
+         * Returns the buffer of the file to the pool.  Calling this method more than once has no effect.
+         */
+        public synchronized void release()
+        {
+            if ( bytes != null && !(bytes instanceof MappedByteBuffer) ){
+                freeBuffers.offer(bytes);
+            }
+            bytes = null;
+        }
+
+        /** The bytes of the file, or null */
+        private ByteBuffer bytes;
+
+        /** The error the read failed with, or null */
+        private final IOException error;
+
+        /** The path of the file */
+        private final String path;
+    }
+
+    /** The size of the pooled buffers; the larger files are memory-mapped */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /** The maximum number of I/O threads */
+    private static final int MAX_THREAD_COUNT = 16;
+
+    /** The prefetch depth */
+    private final int depth;
+
+    /** The buffers returned by the consumers, kept for reuse */
+    private final ArrayBlockingQueue<ByteBuffer> freeBuffers;
+
+    /** The reads started, in the order of the paths */
+    private final ArrayDeque<Future<Contents>> inFlight;
+
+    /** The paths of the files not read yet */
+    private final Iterator<String> pathIterator;
+
+    /** The I/O threads */
+    private final ExecutorService pool;
+}
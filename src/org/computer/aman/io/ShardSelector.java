@@ -0,0 +1,259 @@
+package org.computer.aman.io;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A deterministic partition of the source files among the shards of a run spread over several processes.<br>
+ * Every shard walks the same tree and selects its own files, without any coordination:
+ * a small file goes to the shard given by a stable hash of its path relative to the root
+ * (64-bit FNV-1a of the UTF-8 bytes, with '/' as the separator), so the assignment does not depend
+ * on the host, the JVM or the order in which the directories are listed; a large file is assigned
+ * by the longest-processing-time rule, in the order of decreasing size (and of the relative path),
+ * to the shard having the least bytes so far, which keeps a few huge files from landing on the same shard.
+ * The sizes of all the files are looked up before the first one is handed out, and only the large files
+ * and the paths of the shard are kept; the selected paths are handed out in the order of the walk.
+ * The shards together cover every file exactly once.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ShardSelector
+{
+    /**
+     * Creates a selector of the specified shard.
+     *
+     * @param anIndex the number of the shard (1 to the shard count)
+     * @param aCount the number of shards
+     * @throws IllegalArgumentException if the number is out of range
+     */
+    public ShardSelector(final int anIndex, final int aCount)
+    {
+        if ( aCount < 1 || anIndex < 1 || anIndex > aCount ){
+            throw new IllegalArgumentException("shard " + anIndex + "/" + aCount + " is out of range");
+        }
+        index = anIndex - 1;
+        count = aCount;
+    }
+
+    /**
+     * Parses a shard specification of the form "i/N".
+     *
+     * @param aSpecification the specification
+     * @return the selector of the shard
+     * @throws IllegalArgumentException if the specification is malformed or out of range
+     */
+    public static ShardSelector parse(final String aSpecification)
+    {
+        if ( !aSpecification.matches("[0-9]{1,9}/[0-9]{1,9}") ){
+            throw new IllegalArgumentException("shard " + aSpecification + " is not of the form i/N");
+        }
+        int slash = aSpecification.indexOf('/');
+        return new ShardSelector(Integer.parseInt(aSpecification.substring(0, slash)),
+                                 Integer.parseInt(aSpecification.substring(slash + 1)));
+    }
+
+    /**
+     * Returns whether the specified path belongs to this shard by its hash alone.
+     * It is used where the sizes of the files are not known in advance, e.g., for a stream of queries.
+     *
+     * @param aPath the path
+     * @return true if the path belongs to this shard
+     */
+    public boolean accepts(final String aPath)
+    {
+        return getHashedShard(aPath) == index;
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the number of this shard.
+     *
+     * @return the number (1 to the shard count)
+     */
+    public int getIndex()
+    {
+        return index + 1;
+    }
+
+    /**
+     * Selects the paths of this shard among the paths found under the specified root.
+     * All the paths are taken from the iterator before this method returns.
+     *
+     * @param aPathIterator the paths of the files, e.g., a {@link SourceFileWalker} on the root
+     * @param aRoot the root the paths were found under
+     * @return the paths of this shard, in the order of the iterator
+     */
+    public Iterator<String> select(final Iterator<String> aPathIterator, final String aRoot)
+    {
+        // the small files are assigned by the hash, and their bytes are the initial loads of the shards
+        long[] loads = new long[count];
+        ArrayList<Candidate> selected = new ArrayList<Candidate>();
+        ArrayList<Candidate> largeFiles = new ArrayList<Candidate>();
+        int order = 0;
+        while ( aPathIterator.hasNext() ){
+            String path = aPathIterator.next();
+            Candidate candidate = new Candidate(path, getRelativePath(path, aRoot), new File(path).length(), order++);
+            if ( candidate.size >= LARGE_FILE_SIZE ){
+                largeFiles.add(candidate);
+                continue;
+            }
+            int shard = getHashedShard(candidate.relativePath);
+            loads[shard] += candidate.size;
+            if ( shard == index ){
+                selected.add(candidate);
+            }
+        }
+
+        // the large files go to the least loaded shards, the largest first
+        Collections.sort(largeFiles, new Comparator<Candidate>() {
+            public int compare(final Candidate aCandidate, final Candidate anotherCandidate)
+            {
+                if ( aCandidate.size != anotherCandidate.size ){
+                    return aCandidate.size > anotherCandidate.size ? -1 : 1;
+                }
+                return aCandidate.relativePath.compareTo(anotherCandidate.relativePath);
+            }
+        });
+        for ( int i = 0; i < largeFiles.size(); i++ ){
+            Candidate candidate = largeFiles.get(i);
+            int shard = 0;
+            for ( int s = 1; s < count; s++ ){
+                if ( loads[s] < loads[shard] ){
+                    shard = s;
+                }
+            }
+            loads[shard] += candidate.size;
+            if ( shard == index ){
+                selected.add(candidate);
+            }
+        }
+
+        Collections.sort(selected, new Comparator<Candidate>() {
+            public int compare(final Candidate aCandidate, final Candidate anotherCandidate)
+            {
+                return aCandidate.order - anotherCandidate.order;
+            }
+        });
+        final Iterator<Candidate> itr = selected.iterator();
+        return new Iterator<String>() {
+            public boolean hasNext()
+            {
+                return itr.hasNext();
+            }
+
+            public String next()
+            {
+                if ( !itr.hasNext() ){
+                    throw new NoSuchElementException();
+                }
+                return itr.next().path;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns the shard which the hash of the path assigns the path to.
+     *
+     * @param aPath the path (relative to the root, if any)
+     * @return the index of the shard (0 to the shard count - 1)
+     */
+    private int getHashedShard(final String aPath)
+    {
+        byte[] bytes = aPath.replace(File.separatorChar, '/').getBytes(UTF8);
+        long hash = FNV_OFFSET_BASIS;
+        for ( int i = 0; i < bytes.length; i++ ){
+            hash ^= bytes[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        // the high bits are mixed better than the low ones
+        return (int)(((hash >>> 1) ^ (hash >>> 33)) % count);
+    }
+
+    /**
+     * Returns the path relative to the root.
+     *
+     * @param aPath the path found under the root
+     * @param aRoot the root
+     * @return the relative path, or the path itself if it is not under the root (e.g., the root is the file itself)
+     */
+    private static String getRelativePath(final String aPath, final String aRoot)
+    {
+        String root = new File(aRoot).getPath();
+        if ( aPath.startsWith(root) && aPath.length() > root.length() ){
+            String relativePath = aPath.substring(root.length());
+            return relativePath.charAt(0) == File.separatorChar ? relativePath.substring(1) : relativePath;
+        }
+        return aPath;
+    }
+
+    /**
+     * A file found under the root.
+     */
+    private static class Candidate
+    {
+        /**
+         * Creates a file found under the root.
+         *
+         * @param aPath the path
+         * @param aRelativePath the path relative to the root
+         * @param aSize the size in bytes
+         * @param anOrder the position in the order of the walk
+         */
+        Candidate(final String aPath, final String aRelativePath, final long aSize, final int anOrder)
+        {
+            path = aPath;
+            relativePath = aRelativePath;
+            size = aSize;
+            order = anOrder;
+        }
+
+        /** The position in the order of the walk */
+        private final int order;
+
+        /** The path */
+        private final String path;
+
+        /** The path relative to the root */
+        private final String relativePath;
+
+        /** The size in bytes */
+        private final long size;
+    }
+
+    /** The offset basis of 64-bit FNV-1a */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /** The prime of 64-bit FNV-1a */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** The size from which a file is assigned by its size rather than by the hash of its path */
+    private static final long LARGE_FILE_SIZE = 256 * 1024;
+
+    /** The character encoding of the hashed paths */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The number of shards */
+    private final int count;
+
+    /** The index of this shard (0 to the count - 1) */
+    private final int index;
+}
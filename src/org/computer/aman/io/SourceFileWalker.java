@@ -0,0 +1,215 @@
+package org.computer.aman.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Pattern;
+
+/**
+ * A streaming counterpart of {@link FileFinder}.<br>
+ * A background thread walks the directory tree and hands each matching path over
+ * through a bounded queue, so the first path is available as soon as it is found
+ * and the memory used does not grow with the size of the tree.
+ * The paths are delivered in the same order as {@link FileFinder#getList(String)}.
+ * If the walk fails (e.g. a StackOverflowError on a very deep tree), the end of the walk is handed over all the same
+ * and the error is thrown to the consumer from {@link #hasNext()} and {@link #next()}.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class SourceFileWalker
+implements Iterator<String>
+{
+    /**
+     * Starts walking the specified file or directory.
+     * 
+     * @param aPath the path of the file or the directory to walk
+     * @param aRegex the regular expression which the paths have to match
+     * @throws FileNotFoundException if the path could not be read
+     */
+    public SourceFileWalker(final String aPath, final String aRegex)
+    throws FileNotFoundException
+    {
+        this(aPath, aRegex, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Starts walking the specified file or directory.
+     * 
+     * @param aPath the path of the file or the directory to walk
+     * @param aRegex the regular expression which the paths have to match
+     * @param aCapacity the maximum number of paths waiting to be taken
+     * @throws FileNotFoundException if the path could not be read
+     */
+    public SourceFileWalker(final String aPath, final String aRegex, final int aCapacity)
+    throws FileNotFoundException
+    {
+        final File root = new File(aPath);
+        if ( !root.canRead() ){
+            throw new FileNotFoundException("could not open : " + aPath);
+        }
+        pattern = Pattern.compile(aRegex);
+        queue = new ArrayBlockingQueue<String>(aCapacity);
+        walker = new Thread("SourceFileWalker") {
+            public void run()
+            {
+                boolean isClosed = false;
+                try{
+                    walk(root);
+                }
+                catch ( InterruptedException e ){
+                    // closed by the consumer
+                    isClosed = true;
+                }
+                catch ( Throwable e ){
+                    failure = e;
+                }
+                finally{
+                    // the consumer waits for the end even if the walk failed
+                    if ( !isClosed ){
+                        try{
+                            queue.put(END);
+                        }
+                        catch ( InterruptedException e ){
+                            // closed by the consumer
+                        }
+                    }
+                }
+            }
+        };
+        walker.setDaemon(true);
+        walker.start();
+    }
+
+    /**
+     * Stops walking.  The paths not yet taken are discarded.
+     */
+    public void close()
+    {
+        walker.interrupt();
+        next = END;
+    }
+
+    /**
+     * Returns true if another matching path is found.  Blocks until the walk reaches the next path or ends.
+     * 
+     * @return true if another matching path is found
+     * @throws RuntimeException if the walk failed with it
+     * @throws Error if the walk failed with it
+     */
+    public boolean hasNext()
+    {
+        if ( next == null ){
+            try{
+                next = queue.take();
+            }
+            catch ( InterruptedException e ){
+                Thread.currentThread().interrupt();
+                close();
+            }
+        }
+        if ( next == END && failure != null ){
+            rethrow(failure);
+        }
+        return next != END;
+    }
+
+    /**
+     * Returns the next matching path.
+     * 
+     * @return the next matching path
+     * @throws RuntimeException if the walk failed with it
+     * @throws Error if the walk failed with it
+     */
+    public String next()
+    {
+        if ( !hasNext() ){
+            throw new NoSuchElementException();
+        }
+        String path = next;
+        next = null;
+        return path;
+    }
+
+    /**
+     * Throws the failure of the walk to the consumer.
+     * 
+     * @param aFailure the failure, which is unchecked since the walk throws no checked exception but InterruptedException
+     */
+    private static void rethrow(final Throwable aFailure)
+    {
+        if ( aFailure instanceof Error ){
+            throw (Error)aFailure;
+        }
+        if ( aFailure instanceof RuntimeException ){
+            throw (RuntimeException)aFailure;
+        }
+        throw new IllegalStateException(aFailure);
+    }
+
+    /**
+     * Walks the specified file or directory recursively, in the same order as {@link FileFinder}.
+     * 
+     * @param aFile the file or the directory
+     * @throws InterruptedException if the walk was stopped
+     */
+    private void walk(final File aFile)
+    throws InterruptedException
+    {
+        if ( aFile.isFile() ){
+            offer(aFile);
+            return;
+        }
+        String[] names = aFile.list();
+        if ( names == null ){
+            return;
+        }
+        for ( int i = 0; i < names.length; i++ ){
+            File file = new File(aFile.getPath() + File.separator + names[i]);
+            if ( file.isDirectory() ){
+                walk(file);
+            }
+            else{
+                offer(file);
+            }
+        }
+    }
+
+    /**
+     * Hands the path of the specified file over to the consumer if it matches the regular expression.
+     * 
+     * @param aFile the file
+     * @throws InterruptedException if the walk was stopped
+     */
+    private void offer(final File aFile)
+    throws InterruptedException
+    {
+        String path = aFile.getPath();
+        if ( pattern.matcher(path).matches() ){
+            queue.put(path);
+        }
+    }
+
+    /** The default maximum number of paths waiting to be taken */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** The marker of the end of the walk (compared by identity) */
+    private static final String END = new String("");
+
+    /** The failure of the walk, or null if it has not failed */
+    private volatile Throwable failure;
+
+    /** The path to be returned by the next call of next(), or null if not taken yet */
+    private String next;
+
+    /** The pattern which the paths have to match */
+    private final Pattern pattern;
+
+    /** The paths found but not taken yet */
+    private final BlockingQueue<String> queue;
+
+    /** The thread walking the directory tree */
+    private final Thread walker;
+}
@@ -0,0 +1,341 @@
+package org.computer.aman.metrics.comment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.metrics.util.MemoryBudget;
+
+/**
+ * 「ファイルパス，開始行，終了行」の問い合わせをまとめて評価するバッチ
+ * <p>
+ * 問い合わせをすべて読み込んだ上でファイルごとにまとめ，各ファイルを一度だけ解析して
+ * そのファイルの問い合わせをまとめて評価する．ファイルごとの評価は複数のスレッドで並行に行い，
+ * 結果は問い合わせの順に，あるいはファイルの評価が終わった順に出力する．
+ * MemoryBudget を指定した場合は，各スレッドが解析状態の見積もりの分を予算から予約してからファイルを解析し，
+ * 予算に空きがなければ空くまで待つ．
+ * <p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class CommentCountBatch
+{
+    /**
+     * 空のバッチを生成する
+     */
+    public CommentCountBatch()
+    {
+        paths = new ArrayList<String>();
+        fileIndexes = new HashMap<String, Integer>();
+        queries = new int[INITIAL_CAPACITY * QUERY_SIZE];
+    }
+
+    /**
+     * 問い合わせを追加する．
+     *
+     * @param aPath ソースファイルのパス
+     * @param aBeginLineNumber 測定の開始行
+     * @param anEndLineNumber 測定の終了行
+     */
+    public void add(final String aPath, final int aBeginLineNumber, final int anEndLineNumber)
+    {
+        Integer fileIndex = fileIndexes.get(aPath);
+        if ( fileIndex == null ){
+            fileIndex = paths.size();
+            fileIndexes.put(aPath, fileIndex);
+            paths.add(aPath);
+        }
+
+        if ( (queryCount + 1) * QUERY_SIZE > queries.length ){
+            int[] array = new int[queries.length * 2];
+            System.arraycopy(queries, 0, array, 0, queries.length);
+            queries = array;
+        }
+        queries[queryCount * QUERY_SIZE] = fileIndex;
+        queries[queryCount * QUERY_SIZE + 1] = aBeginLineNumber;
+        queries[queryCount * QUERY_SIZE + 2] = anEndLineNumber;
+        queryCount++;
+    }
+
+    /**
+     * 評価中のファイルが使うヒープの予算を設定する．
+     *
+     * @param aBudget メモリ予算（予算を設けない場合は null）
+     */
+    public void setMemoryBudget(final MemoryBudget aBudget)
+    {
+        budget = aBudget;
+    }
+
+    /**
+     * 問い合わせの数を返す．
+     *
+     * @return 問い合わせの数
+     */
+    public int getQueryCount()
+    {
+        return queryCount;
+    }
+
+    /**
+     * すべての問い合わせを評価し，CommentCounterCUI と同じ形式で結果を出力する．
+     *
+     * @param anOutput 結果の出力先
+     * @param aThreadCount スレッド数（0 以下の場合はプロセッサ数）
+     * @param isOrdered 問い合わせの順に出力する場合は true，ファイルの評価が終わった順に出力する場合は false
+     * @throws IOException ソースファイルの読み出しに失敗した場合
+     * @throws NotSupportedSourceFileExeption サポートされていない種類のソースファイルがあった場合
+     */
+    public void run(final PrintStream anOutput, final int aThreadCount, final boolean isOrdered)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        run(anOutput, aThreadCount, isOrdered, null);
+    }
+
+    /**
+     * すべての問い合わせを評価し，CommentCounterCUI と同じ形式で結果を出力するとともに，結果の分布を集める．
+     *
+     * @param anOutput 結果の出力先
+     * @param aThreadCount スレッド数（0 以下の場合はプロセッサ数）
+     * @param isOrdered 問い合わせの順に出力する場合は true，ファイルの評価が終わった順に出力する場合は false
+     * @param aStatistics 結果の分布の集計先（集めない場合は null）
+     * @throws IOException ソースファイルの読み出しに失敗した場合
+     * @throws NotSupportedSourceFileExeption サポートされていない種類のソースファイルがあった場合
+     */
+    public void run(final PrintStream anOutput, final int aThreadCount, final boolean isOrdered, final CommentStatistics aStatistics)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        run(createPrinter(anOutput), aThreadCount, isOrdered, aStatistics);
+    }
+
+    /**
+     * すべての問い合わせを評価し，結果を受け取り手へ引き渡すとともに，結果の分布を集める．
+     * 結果は呼び出し元のスレッドで引き渡す．
+     *
+     * @param aListener 結果の受け取り手
+     * @param aThreadCount スレッド数（0 以下の場合はプロセッサ数）
+     * @param isOrdered 問い合わせの順に引き渡す場合は true，ファイルの評価が終わった順に引き渡す場合は false
+     * @param aStatistics 結果の分布の集計先（集めない場合は null）
+     * @throws IOException ソースファイルの読み出し，または結果の書き出しに失敗した場合
+     * @throws NotSupportedSourceFileExeption サポートされていない種類のソースファイルがあった場合
+     */
+    public void run(final CountListener aListener, final int aThreadCount, final boolean isOrdered, final CommentStatistics aStatistics)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        // ファイルごとに問い合わせの番号をまとめる（番号の昇順）
+        final int fileCount = paths.size();
+        int[] starts = new int[fileCount + 1];
+        for ( int i = 0; i < queryCount; i++ ){
+            starts[queries[i * QUERY_SIZE] + 1]++;
+        }
+        for ( int f = 0; f < fileCount; f++ ){
+            starts[f + 1] += starts[f];
+        }
+        int[] groupedQueries = new int[queryCount];
+        int[] positions = new int[fileCount];
+        System.arraycopy(starts, 0, positions, 0, fileCount);
+        for ( int i = 0; i < queryCount; i++ ){
+            groupedQueries[positions[queries[i * QUERY_SIZE]]++] = i;
+        }
+
+        final CountResult[] results = new CountResult[queryCount];
+        final int threadCount = aThreadCount > 0 ? aThreadCount : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try{
+            if ( isOrdered ){
+                List<Future<Integer>> futures = new ArrayList<Future<Integer>>(fileCount);
+                for ( int f = 0; f < fileCount; f++ ){
+                    futures.add(pool.submit(createTask(f, groupedQueries, starts[f], starts[f + 1], results, aStatistics)));
+                }
+                for ( int i = 0; i < queryCount; i++ ){
+                    take(futures.get(queries[i * QUERY_SIZE]));
+                    deliver(aListener, i, results);
+                }
+            }
+            else{
+                CompletionService<Integer> service = new ExecutorCompletionService<Integer>(pool);
+                for ( int f = 0; f < fileCount; f++ ){
+                    service.submit(createTask(f, groupedQueries, starts[f], starts[f + 1], results, aStatistics));
+                }
+                for ( int n = 0; n < fileCount; n++ ){
+                    Future<Integer> future = null;
+                    try{
+                        future = service.take();
+                    }
+                    catch ( InterruptedException e ){
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("interrupted while waiting for measurement results");
+                    }
+                    int f = take(future);
+                    for ( int k = starts[f]; k < starts[f + 1]; k++ ){
+                        deliver(aListener, groupedQueries[k], results);
+                    }
+                }
+            }
+        }
+        finally{
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * 指定された出力先へ CommentCounterCUI と同じ形式で結果を書き出す受け取り手を生成する．
+     *
+     * @param anOutput 結果の出力先
+     * @return 結果の受け取り手
+     */
+    static CountListener createPrinter(final PrintStream anOutput)
+    {
+        return new CountListener() {
+            public void counted(final String aPath, final int aBeginLineNumber, final int anEndLineNumber, final CountResult aResults)
+            {
+                anOutput.println(aPath + "\t" + aBeginLineNumber + "\t" + anEndLineNumber + "\t" + aResults);
+            }
+        };
+    }
+
+    /**
+     * 一つの問い合わせの結果を受け取り手へ引き渡し，保持していた結果を手放す．
+     *
+     * @param aListener 結果の受け取り手
+     * @param aQueryIndex 問い合わせの番号
+     * @param aResults 評価結果（問い合わせの番号ごと）
+     */
+    private void deliver(final CountListener aListener, final int aQueryIndex, final CountResult[] aResults)
+    throws IOException
+    {
+        aListener.counted(paths.get(queries[aQueryIndex * QUERY_SIZE]), queries[aQueryIndex * QUERY_SIZE + 1],
+                          queries[aQueryIndex * QUERY_SIZE + 2], aResults[aQueryIndex]);
+        aResults[aQueryIndex] = null;
+    }
+
+    /**
+     * 一つのファイルを解析し，その問い合わせをすべて評価するタスクを生成する
+     *
+     * @param aFileIndex ファイルの番号
+     * @param aGroupedQueries ファイルごとにまとめた問い合わせの番号
+     * @param aBegin 当該ファイルの問い合わせの aGroupedQueries での開始位置
+     * @param anEnd 当該ファイルの問い合わせの aGroupedQueries での終了位置（この位置は含まない）
+     * @param aResults 評価結果の格納先（問い合わせの番号ごと）
+     * @param aStatistics 結果の分布の集計先（集めない場合は null）
+     * @return ファイルの番号を返すタスク
+     */
+    private Callable<Integer> createTask(final int aFileIndex, final int[] aGroupedQueries, final int aBegin, final int anEnd,
+                                         final CountResult[] aResults, final CommentStatistics aStatistics)
+    {
+        final String path = paths.get(aFileIndex);
+        final MemoryBudget BUDGET = budget;
+        return new Callable<Integer>() {
+            public Integer call()
+            throws IOException, NotSupportedSourceFileExeption
+            {
+                if ( BUDGET == null ){
+                    return measure();
+                }
+                // 解析状態は評価が終われば手放すので，予約はこのタスクの中で解く
+                long reservation = MemoryBudget.estimateParseState(new File(path).length());
+                BUDGET.acquire(reservation);
+                try{
+                    return measure();
+                }
+                finally{
+                    BUDGET.release(reservation);
+                }
+            }
+
+            /**
+             * ファイルを解析し，その問い合わせをすべて評価する．
+             *
+             * @return ファイルの番号
+             */
+            private Integer measure()
+            throws IOException, NotSupportedSourceFileExeption
+            {
+                CommentCounter counter = CommentCounterFactory.create(path);
+                // 分布はファイルごとに集めてから足し込むので，足し込みの排他はファイルごとに一度で済む
+                CommentStatistics statistics = aStatistics != null ? new CommentStatistics() : null;
+                for ( int k = aBegin; k < anEnd; k++ ){
+                    int i = aGroupedQueries[k];
+                    int begin = queries[i * QUERY_SIZE + 1];
+                    int end = queries[i * QUERY_SIZE + 2];
+                    CountResult result = counter.measure(begin, end);
+                    aResults[i] = result;
+                    if ( statistics != null ){
+                        statistics.add(begin, end, result);
+                    }
+                }
+                if ( statistics != null ){
+                    aStatistics.merge(statistics);
+                }
+                return aFileIndex;
+            }
+        };
+    }
+
+    /**
+     * 指定されたタスクの終了を待ってその結果を返す．タスクが失敗した場合はその例外を投げ直す．
+     *
+     * @param aFuture タスク
+     * @return タスクの結果
+     */
+    private static int take(final Future<Integer> aFuture)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        try{
+            return aFuture.get();
+        }
+        catch ( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for measurement results");
+        }
+        catch ( ExecutionException e ){
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ){
+                throw (IOException)cause;
+            }
+            if ( cause instanceof NotSupportedSourceFileExeption ){
+                throw (NotSupportedSourceFileExeption)cause;
+            }
+            if ( cause instanceof RuntimeException ){
+                throw (RuntimeException)cause;
+            }
+            if ( cause instanceof Error ){
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /** 問い合わせの配列の初期の長さ（問い合わせの数） */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** 一つの問い合わせが占める配列の要素数（ファイルの番号，開始行，終了行） */
+    private static final int QUERY_SIZE = 3;
+
+    /** 評価中のファイルが使うヒープの予算（予算を設けない場合は null） */
+    private MemoryBudget budget;
+
+    /** ファイルパスごとのファイルの番号 */
+    private final Map<String, Integer> fileIndexes;
+
+    /** ファイルの番号ごとのファイルパス */
+    private final List<String> paths;
+
+    /** 問い合わせ（ファイルの番号，開始行，終了行の並び） */
+    private int[] queries;
+
+    /** 問い合わせの数 */
+    private int queryCount;
+}
@@ -0,0 +1,204 @@
+package org.computer.aman.metrics.comment;
+
+import java.util.NoSuchElementException;
+
+import org.computer.aman.metrics.util.PackedCodeMap;
+
+/**
+ * コメント文の種類ごとの累積行数と，各行以前で最後の実効コード行とを保持する索引
+ * <p>
+ * 詰め込み済みのコードマップ（PackedCodeMap）から一度だけ作成し，以後は任意の行範囲のコメント行数を定数時間で求める．
+ * 各行の分類は CommentCounterForJava / CommentCounterForC の measure で従来行っていたものと同じである．
+ * <p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+class CommentCountIndex
+{
+    /**
+     * 指定されたコードマップの索引を作成する
+     *
+     * @param aCodeMap 対象ソースファイルの詰め込み済みのコードマップ
+     */
+    CommentCountIndex(final PackedCodeMap aCodeMap)
+    {
+        final int LINE_COUNT = aCodeMap.getLineCount();
+        int[][] sums = new int[KIND_COUNT][LINE_COUNT + 1];
+        int[] predecessors = new int[LINE_COUNT + 1];
+
+        for ( int lineNumber = 1; lineNumber <= LINE_COUNT; lineNumber++ ){
+            for ( int k = 0; k < KIND_COUNT; k++ ){
+                sums[k][lineNumber] = sums[k][lineNumber - 1];
+            }
+            predecessors[lineNumber] = aCodeMap.getCount(lineNumber, PackedCodeMap.CODE_CLASS) > 0 ? lineNumber : predecessors[lineNumber - 1];
+            if ( aCodeMap.getCommentCount(lineNumber) > 0 ){
+                sums[classifyHead(aCodeMap, lineNumber)][lineNumber]++;
+                sums[classifyBody(aCodeMap, lineNumber)][lineNumber]++;
+            }
+        }
+
+        lineCount = LINE_COUNT;
+        headJavadocSums = sums[HEAD_JAVADOC];
+        headEolSums = sums[HEAD_EOL];
+        headTraditionalSums = sums[HEAD_TRADITIONAL];
+        traditionalOutSums = sums[TRADITIONAL_OUT];
+        eolOutSums = sums[EOL_OUT];
+        eolSums = sums[EOL];
+        traditionalSums = sums[TRADITIONAL];
+        lastCodeLines = predecessors;
+    }
+
+    /**
+     * 指定された範囲のコメント文を計上する．
+     * 範囲の直前のコメント（ヘッダ部）は，範囲よりも前に実効コード行がある場合に限り，
+     * その最後の実効コード行の次の行から範囲の直前の行までについて計上する．
+     *
+     * @param aBeginLineNumber 測定の開始行
+     * @param anEndLineNumber 測定の終了行
+     * @param aResults 計上先の測定結果（Java 用または C 用）
+     * @throws NoSuchElementException 範囲がソースファイルの行数を超える場合
+     */
+    void count(final int aBeginLineNumber, final int anEndLineNumber, final CountResult aResults)
+    {
+        final int begin = Math.max(aBeginLineNumber, 1);
+        if ( begin - 1 > lineCount || anEndLineNumber > lineCount ){
+            throw new NoSuchElementException("line " + Math.max(begin - 1, anEndLineNumber) + " is beyond the end of the file");
+        }
+
+        final int predecessorLine = lastCodeLines[begin - 1];
+        if ( predecessorLine > 0 ){
+            if ( aResults instanceof CountResultForJava ){
+                CountResultForJava results = (CountResultForJava)aResults;
+                results.incrementJavadocCommentCount(sum(headJavadocSums, predecessorLine, begin - 1));
+                results.incrementEolCommentCountInHead(sum(headEolSums, predecessorLine, begin - 1));
+                results.incrementTraditionalCommentCountInHead(sum(headTraditionalSums, predecessorLine, begin - 1));
+            }
+            else if ( aResults instanceof CountResultForC ){
+                CountResultForC results = (CountResultForC)aResults;
+                results.incrementEolCommentCountInHead(sum(headEolSums, predecessorLine, begin - 1));
+                results.incrementTraditionalCommentCountInHead(sum(headTraditionalSums, predecessorLine, begin - 1));
+            }
+        }
+
+        if ( anEndLineNumber < begin ){
+            return;
+        }
+        final int traditionalOut = sum(traditionalOutSums, begin - 1, anEndLineNumber);
+        final int eolOut = sum(eolOutSums, begin - 1, anEndLineNumber);
+        final int eol = sum(eolSums, begin - 1, anEndLineNumber);
+        final int traditional = sum(traditionalSums, begin - 1, anEndLineNumber);
+        aResults.incrementCommentCount(traditionalOut + eolOut + eol + traditional);
+        if ( aResults instanceof CountResultForJava ){
+            CountResultForJava results = (CountResultForJava)aResults;
+            results.incrementTraditionalCommentOutCount(traditionalOut);
+            results.incrementEolCommentOutCount(eolOut);
+            results.incrementEolCommentCount(eol);
+            results.incrementTraditionalCommentCount(traditional);
+        }
+        else if ( aResults instanceof CountResultForC ){
+            CountResultForC results = (CountResultForC)aResults;
+            results.incrementTraditionalCommentOutCount(traditionalOut);
+            results.incrementEolCommentOutCount(eolOut);
+            results.incrementEolCommentCount(eol);
+            results.incrementTraditionalCommentCount(traditional);
+        }
+    }
+
+    /**
+     * 範囲の直前に書かれたコメント行の種類を返す．
+     * Javadoc，EOL，Traditional の優先順で判定する（C のコードマップに Javadoc は現れない）．
+     *
+     * @param aCodeMap コードマップ
+     * @param aLineNumber コメントを含む行の行番号
+     * @return コメント行の種類
+     */
+    private static int classifyHead(final PackedCodeMap aCodeMap, final int aLineNumber)
+    {
+        if ( aCodeMap.getCount(aLineNumber, PackedCodeMap.JAVADOC_COMMENT_CLASS) > 0 ){
+            return HEAD_JAVADOC;
+        }
+        return aCodeMap.getCount(aLineNumber, PackedCodeMap.EOL_COMMENT_CLASS) > 0 ? HEAD_EOL : HEAD_TRADITIONAL;
+    }
+
+    /**
+     * 範囲内に書かれたコメント行の種類を返す．
+     * Traditional コメントアウト，EOL コメントアウト，EOL，Traditional の優先順で判定する．
+     *
+     * @param aCodeMap コードマップ
+     * @param aLineNumber コメントを含む行の行番号
+     * @return コメント行の種類
+     */
+    private static int classifyBody(final PackedCodeMap aCodeMap, final int aLineNumber)
+    {
+        if ( aCodeMap.getCount(aLineNumber, PackedCodeMap.TRADITIONAL_COMMENT_OUT_CLASS) > 0 ){
+            return TRADITIONAL_OUT;
+        }
+        if ( aCodeMap.getCount(aLineNumber, PackedCodeMap.EOL_COMMENT_OUT_CLASS) > 0 ){
+            return EOL_OUT;
+        }
+        return aCodeMap.getCount(aLineNumber, PackedCodeMap.EOL_COMMENT_CLASS) > 0 ? EOL : TRADITIONAL;
+    }
+
+    /**
+     * 累積行数の配列から (anExclusiveBegin, anInclusiveEnd] の行数を求める
+     *
+     * @param aSums 累積行数の配列
+     * @param anExclusiveBegin 範囲の直前の行
+     * @param anInclusiveEnd 範囲の最後の行
+     * @return 範囲内の行数
+     */
+    private static int sum(final int[] aSums, final int anExclusiveBegin, final int anInclusiveEnd)
+    {
+        return aSums[anInclusiveEnd] - aSums[anExclusiveBegin];
+    }
+
+    /** 種類: 範囲の直前の Javadoc コメント */
+    private static final int HEAD_JAVADOC = 0;
+
+    /** 種類: 範囲の直前の EOL コメント */
+    private static final int HEAD_EOL = 1;
+
+    /** 種類: 範囲の直前の Traditional コメント */
+    private static final int HEAD_TRADITIONAL = 2;
+
+    /** 種類: 範囲内の Traditional コメントアウト */
+    private static final int TRADITIONAL_OUT = 3;
+
+    /** 種類: 範囲内の EOL コメントアウト */
+    private static final int EOL_OUT = 4;
+
+    /** 種類: 範囲内の EOL コメント */
+    private static final int EOL = 5;
+
+    /** 種類: 範囲内の Traditional コメント */
+    private static final int TRADITIONAL = 6;
+
+    /** 種類の数 */
+    private static final int KIND_COUNT = 7;
+
+    /** 範囲内の EOL コメントアウト行の累積数 */
+    private final int[] eolOutSums;
+
+    /** 範囲内の EOL コメント行の累積数 */
+    private final int[] eolSums;
+
+    /** 範囲の直前の EOL コメント行の累積数 */
+    private final int[] headEolSums;
+
+    /** 範囲の直前の Javadoc コメント行の累積数 */
+    private final int[] headJavadocSums;
+
+    /** 範囲の直前の Traditional コメント行の累積数 */
+    private final int[] headTraditionalSums;
+
+    /** 各行以前で最後の実効コード行の行番号（存在しなければ 0） */
+    private final int[] lastCodeLines;
+
+    /** ソースファイルの行数 */
+    private final int lineCount;
+
+    /** 範囲内の Traditional コメントアウト行の累積数 */
+    private final int[] traditionalOutSums;
+
+    /** 範囲内の Traditional コメント行の累積数 */
+    private final int[] traditionalSums;
+}
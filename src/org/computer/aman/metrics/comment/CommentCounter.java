@@ -6,6 +6,7 @@ import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
 import org.computer.aman.io.sourcecode.SourceFile;
 import org.computer.aman.metrics.util.CodeMap;
 import org.computer.aman.metrics.util.CodeMapFactory;
+import org.computer.aman.metrics.util.PackedCodeMap;
 
 /**
  * メソッド単位でのコメント計上を行う測定器
@@ -24,9 +25,24 @@ public abstract class CommentCounter
      */
     public CommentCounter (final SourceFile aSourceFile) 
     throws NotSupportedSourceFileExeption, IOException
+    {
+        this(aSourceFile, CodeMapFactory.create(aSourceFile));
+    }
+    
+    /**
+     * 指定されたソースファイルを測定対象とし，作成済みのコードマップを用いる CommentCounter オブジェクトを生成する
+     * （他の測定器とコードマップを共有し，ファイルの読み込みと解析を一度で済ませる場合に用いる）
+     * 
+     * @param aSourceFile 測定対象のソースファイル
+     * @param aCodeMap 測定対象ソースファイルのコードマップ
+     */
+    public CommentCounter (final SourceFile aSourceFile, final CodeMap aCodeMap)
     {
         sourceFile = aSourceFile;
-        codeMap = CodeMapFactory.create(aSourceFile);
+        // 多くのファイルのマップを同時に保持できるように，詰め込んだかたちで保持する
+        PackedCodeMap packedCodeMap = PackedCodeMap.pack(aCodeMap);
+        codeMap = packedCodeMap;
+        index = new CommentCountIndex(packedCodeMap);
     }
     
     /**
@@ -60,9 +76,22 @@ public abstract class CommentCounter
         return codeMap;
     }
     
+    /**
+     * 対象としているソースコードのコメント行の索引を返す（サブクラス向け）
+     * 
+     * @return 対象としているソースコードのコメント行の索引
+     */
+    CommentCountIndex getIndex()
+    {
+        return index;
+    }
+    
     /** 測定対象ソースファイルのコードマップ */
     private CodeMap codeMap;
     
+    /** 測定対象ソースファイルのコメント行の索引（コンストラクタで一度だけ作成する） */
+    private CommentCountIndex index;
+    
     /** 測定対象のソースファイル */
     private SourceFile sourceFile;
 
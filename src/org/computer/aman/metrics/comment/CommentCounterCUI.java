@@ -1,11 +1,23 @@
 package org.computer.aman.metrics.comment;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Scanner;
 
+import org.computer.aman.io.ShardSelector;
+import org.computer.aman.io.SourceFileWalker;
 import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.metrics.store.ColumnarWriter;
+import org.computer.aman.metrics.store.ResultColumns;
+import org.computer.aman.metrics.store.ResultJournal;
+import org.computer.aman.metrics.util.MemoryBudget;
 
 public class CommentCounterCUI
 {
@@ -15,34 +27,311 @@ public class CommentCounterCUI
         CommentCounterCUI ui = new CommentCounterCUI();
 
         ui.printCopyright();
-        if ( args.length > 0 ){
+        // 解析済みファイルのキャッシュの上限
+        //   -n N  : 保持するファイルの数（既定値は 64，0 は上限なし）
+        //   -s MB : 保持するファイルのサイズの合計（メガバイト単位，既定値は上限なし）
+        // バッチモード
+        //   -b    : 問い合わせをすべて読み込んでからファイルごとにまとめて評価する
+        //   -j N  : バッチモードのスレッド数（0 はプロセッサ数，既定値）
+        //   -u    : バッチモードの結果をファイルの評価が終わった順に出力する
+        // 分布の要約
+        //   -q    : 範囲ごとのコメント行数とコメント密度の分布（分位点とヒストグラム）を最後に標準エラー出力へ表示する
+        // 結果の出力先
+        //   -o FILE : 結果を標準出力ではなく列指向の結果ファイル FILE へ書き出す（ColumnarQueryCUI で集計できる）
+        // ツリーモード
+        //   -r DIR : DIR 以下のソースファイルからメソッドを見つけ，メソッドごとに計上する（-j，-u も有効）
+        //   -p N   : N 個のファイルを I/O スレッドで先読みする（既定値は 0 で，先読みしない）
+        // メモリ予算（バッチモードとツリーモード）
+        //   -m MB : 評価中のファイルの解析状態の見積もりの合計を MB メガバイト以内に抑える（既定値は上限なし）
+        // 中断した実行の再開
+        //   -J FILE : 評価し終えた問い合わせ（ツリーモードではファイル）を記録ファイル FILE へ追記する
+        //   -R      : FILE に記録済みの結果を先に出力し，残りだけを評価する（-J が必要）
+        // 複数のプロセスへの分割
+        //   -S I/N : N 個に分割したうちの I 番目の分だけを評価する（ツリーモードではファイルを，それ以外では問い合わせを分割する）
+        int maxEntryCount = DEFAULT_MAX_ENTRY_COUNT;
+        long maxSourceBytes = 0;
+        boolean batch = false;
+        int threadCount = 0;
+        boolean ordered = true;
+        String root = null;
+        CommentStatistics statistics = null;
+        String storePath = null;
+        int prefetchDepth = 0;
+        MemoryBudget budget = null;
+        String journalPath = null;
+        boolean resuming = false;
+        ShardSelector shard = null;
+        for ( int i = 0; i < args.length; i++ ){
+            if ( args[i].equals("-n") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                maxEntryCount = Integer.parseInt(args[++i]);
+            }
+            else if ( args[i].equals("-s") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                maxSourceBytes = Long.parseLong(args[++i]) * 1024 * 1024;
+            }
+            else if ( args[i].equals("-b") ){
+                batch = true;
+            }
+            else if ( args[i].equals("-j") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                threadCount = Integer.parseInt(args[++i]);
+                batch = true;
+            }
+            else if ( args[i].equals("-o") && i + 1 < args.length ){
+                storePath = args[++i];
+            }
+            else if ( args[i].equals("-m") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                long maxMemory = Long.parseLong(args[++i]) * 1024 * 1024;
+                budget = maxMemory > 0 ? new MemoryBudget(maxMemory) : null;
+            }
+            else if ( args[i].equals("-p") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                prefetchDepth = Integer.parseInt(args[++i]);
+            }
+            else if ( args[i].equals("-q") ){
+                statistics = new CommentStatistics();
+            }
+            else if ( args[i].equals("-r") && i + 1 < args.length ){
+                root = args[++i];
+            }
+            else if ( args[i].equals("-J") && i + 1 < args.length ){
+                journalPath = args[++i];
+            }
+            else if ( args[i].equals("-R") ){
+                resuming = true;
+            }
+            else if ( args[i].equals("-S") && i + 1 < args.length && args[i+1].matches("[0-9]+/[0-9]+") ){
+                shard = ShardSelector.parse(args[++i]);
+            }
+            else if ( args[i].equals("-u") ){
+                ordered = false;
+                batch = true;
+            }
+            else{
+                ui.printUsage();
+                return;
+            }
+        }
+        if ( resuming && journalPath == null ){
             ui.printUsage();
             return;
         }
         printSeparator();
-        
-        // 標準入力から，「ファイルパス，開始行，終了行」の三つ組み（ただし，タブ区切り）を繰り返し読み出す
-        // そして，当該ファイルに対応した CommentCounter オブジェクトを用意する．
-        // ただし，通常は同じファイルパスがいくつか連続するので，ファイルパスが前の行と異なった時にのみ
-        // オブジェクトを生成する．
-        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-        String line = null;
-        CommentCounter counter = null;
-        while ( (line = reader.readLine()) != null ){
-            Scanner scanner = new Scanner(line);
-            scanner.useDelimiter("\t");
-            String path = scanner.next();
-            int begin = scanner.nextInt();
-            int end = scanner.nextInt();
-            scanner.close();
+
+        // 結果は，指定があれば列指向の結果ファイルへ，なければ標準出力へ書き出す
+        final ColumnarWriter store = storePath != null ? new ColumnarWriter(new File(storePath), ResultColumns.COUNT_COLUMNS) : null;
+        CountListener listener = CommentCountBatch.createPrinter(System.out);
+        if ( store != null ){
+            listener = new CountListener() {
+                public void counted(final String aPath, final int aBeginLineNumber, final int anEndLineNumber, final CountResult aResults)
+                throws IOException
+                {
+                    store.add(aPath, ResultColumns.toValues(aBeginLineNumber, anEndLineNumber, aResults));
+                }
+            };
+        }
+        // 再開する場合は，記録済みの結果を記録ファイルから出力し，その問い合わせ（ファイル）は評価し直さない
+        ResultJournal journal = null;
+        try{
+            if ( root != null ){
+                // 範囲は標準入力から読まず，各ファイルのメソッドを自ら見つける
+                SourceFileWalker walker = new SourceFileWalker(root, SOURCE_FILE_REGEX);
+                try{
+                    // 分割する場合は，全ファイルのパスとサイズから自らの分を選ぶ
+                    Iterator<String> paths = shard != null ? shard.select(walker, root) : walker;
+                    if ( journalPath != null ){
+                        ResultJournal.UnitListener replayer = resuming ? createReplayer(store != null ? null : System.out, listener, statistics, null) : null;
+                        journal = new ResultJournal(new File(journalPath), ResultColumns.COUNT_COLUMNS, replayer);
+                        paths = journal.skipRecorded(paths);
+                    }
+                    // 内容の同じファイルは一度だけ解析する
+                    MethodCommentCounter counter = new MethodCommentCounter(threadCount, ordered, statistics, prefetchDepth, budget, journal);
+                    if ( store != null ){
+                        counter.run(paths, listener);
+                    }
+                    else{
+                        counter.run(paths, System.out);
+                    }
+                    printSeparator();
+                    System.err.println(counter.getDeduplicator());
+                }
+                finally{
+                    walker.close();
+                }
+                printStatistics(statistics);
+                return;
+            }
             
-            if ( counter == null || !path.equals(counter.getFilePath()) ){
-                counter = CommentCounterFactory.create(path);
+            // 標準入力から，「ファイルパス，開始行，終了行」の三つ組み（ただし，タブ区切り）を繰り返し読み出す
+            // そして，当該ファイルに対応した CommentCounter オブジェクトを用意する．
+            // ただし，同じファイルパスは（連続するとは限らず）何度も登場するので，生成したオブジェクトは
+            // キャッシュに保持し，キャッシュにない時にのみ生成する．
+            // 記録ファイルには，評価し終えた問い合わせを一つずつ記録する
+            // 分割する場合は，問い合わせをファイルパスのハッシュで振り分ける（ファイルのサイズは前もって分からないため）
+            Map<String, Integer> recorded = new HashMap<String, Integer>();
+            if ( journalPath != null ){
+                ResultJournal.UnitListener replayer = resuming ? createReplayer(null, listener, statistics, recorded) : null;
+                journal = new ResultJournal(new File(journalPath), ResultColumns.COUNT_COLUMNS, replayer);
+                listener = createRecorder(listener, journal);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            String line = null;
+            if ( batch ){
+                // 各ファイルを一度だけ解析すればよいので，キャッシュは用いない
+                CommentCountBatch queries = new CommentCountBatch();
+                queries.setMemoryBudget(budget);
+                while ( (line = reader.readLine()) != null ){
+                    Scanner scanner = new Scanner(line);
+                    scanner.useDelimiter("\t");
+                    String path = scanner.next();
+                    int begin = scanner.nextInt();
+                    int end = scanner.nextInt();
+                    scanner.close();
+                    if ( (shard == null || shard.accepts(path)) && !isRecorded(recorded, path, begin, end) ){
+                        queries.add(path, begin, end);
+                    }
+                }
+                queries.run(listener, threadCount, ordered, statistics);
+                printSeparator();
+                printStatistics(statistics);
+                return;
             }
+            ParsedFileCache<CommentCounter> cache = new ParsedFileCache<CommentCounter>(maxEntryCount, maxSourceBytes);
+            ParsedFileCache.Loader<CommentCounter> loader = new ParsedFileCache.Loader<CommentCounter>() {
+                public CommentCounter load(final String aPath)
+                throws IOException, NotSupportedSourceFileExeption
+                {
+                    return CommentCounterFactory.create(aPath);
+                }
+            };
+            while ( (line = reader.readLine()) != null ){
+                Scanner scanner = new Scanner(line);
+                scanner.useDelimiter("\t");
+                String path = scanner.next();
+                int begin = scanner.nextInt();
+                int end = scanner.nextInt();
+                scanner.close();
+                if ( (shard != null && !shard.accepts(path)) || isRecorded(recorded, path, begin, end) ){
+                    continue;
+                }
+                
+                CommentCounter counter = cache.get(path, loader);
 
-            System.out.println(path + "\t" + begin + "\t" + end + "\t" + counter.measure(begin, end));            
+                CountResult result = counter.measure(begin, end);
+                listener.counted(path, begin, end, result);
+                if ( statistics != null ){
+                    statistics.add(begin, end, result);
+                }
+            }
+            printSeparator();
+            System.err.println(cache);
+            printStatistics(statistics);
+        }
+        finally{
+            if ( journal != null ){
+                journal.close();
+            }
+            if ( store != null ){
+                store.close();
+            }
+        }
+    }
+
+    /**
+     * 結果を受け取り手へ引き渡した後，その問い合わせを記録ファイルへ記録する受け取り手を生成する．
+     *
+     * @param aListener 結果の受け取り手
+     * @param aJournal 記録ファイル
+     * @return 記録する受け取り手
+     */
+    private static CountListener createRecorder(final CountListener aListener, final ResultJournal aJournal)
+    {
+        return new CountListener() {
+            public void counted(final String aPath, final int aBeginLineNumber, final int anEndLineNumber, final CountResult aResults)
+            throws IOException
+            {
+                aListener.counted(aPath, aBeginLineNumber, anEndLineNumber, aResults);
+                aJournal.write(aPath, new int[][] { ResultColumns.toValues(aBeginLineNumber, anEndLineNumber, aResults) }, null);
+            }
+        };
+    }
+
+    /**
+     * 記録ファイルに記録済みの結果を，出力先または受け取り手へ改めて渡す受け取り手を生成する．
+     *
+     * @param anOutput ツリーモードの形式（メソッド名付き）の出力先（受け取り手へ渡す場合は null）
+     * @param aListener 結果の受け取り手（出力先へ書き出す場合は使わない）
+     * @param aStatistics 結果の分布の集計先（集めない場合は null）
+     * @param aRecorded 記録済みの問い合わせごとの数の集計先（集めない場合は null）
+     * @return 記録済みの結果の受け取り手
+     */
+    private static ResultJournal.UnitListener createReplayer(final PrintStream anOutput, final CountListener aListener,
+                                                             final CommentStatistics aStatistics, final Map<String, Integer> aRecorded)
+    {
+        return new ResultJournal.UnitListener() {
+            public void recovered(final String aPath, final int[][] aRows, final String[] aLabels)
+            throws IOException
+            {
+                StringBuilder buffer = new StringBuilder();
+                for ( int i = 0; i < aRows.length; i++ ){
+                    int begin = aRows[i][0];
+                    int end = aRows[i][1];
+                    CountResult results = ResultColumns.toCountResult(aPath, aRows[i]);
+                    if ( anOutput != null ){
+                        MethodCommentCounter.append(aPath, begin, end, results, aLabels[i], buffer);
+                    }
+                    else{
+                        aListener.counted(aPath, begin, end, results);
+                    }
+                    if ( aStatistics != null ){
+                        aStatistics.add(begin, end, results);
+                    }
+                    if ( aRecorded != null ){
+                        String key = aPath + "\t" + begin + "\t" + end;
+                        Integer count = aRecorded.get(key);
+                        aRecorded.put(key, count != null ? count + 1 : 1);
+                    }
+                }
+                if ( anOutput != null ){
+                    anOutput.print(buffer);
+                }
+            }
+        };
+    }
+
+    /**
+     * 問い合わせが記録ファイルに記録済みであれば，その記録を一つ使って true を返す．
+     * 同じ問い合わせが何度も登場する場合は，記録された数だけ記録済みとみなす．
+     *
+     * @param aRecorded 記録済みの問い合わせごとの数
+     * @param aPath ソースファイルのパス
+     * @param aBeginLineNumber 開始行
+     * @param anEndLineNumber 終了行
+     * @return 記録済みの場合は true
+     */
+    private static boolean isRecorded(final Map<String, Integer> aRecorded, final String aPath, final int aBeginLineNumber, final int anEndLineNumber)
+    {
+        String key = aPath + "\t" + aBeginLineNumber + "\t" + anEndLineNumber;
+        Integer count = aRecorded.get(key);
+        if ( count == null ){
+            return false;
+        }
+        if ( count > 1 ){
+            aRecorded.put(key, count - 1);
+        }
+        else{
+            aRecorded.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * 結果の分布の要約を標準エラー出力へ表示する．
+     *
+     * @param aStatistics 結果の分布（集めていない場合は null）
+     */
+    private static void printStatistics(final CommentStatistics aStatistics)
+    {
+        if ( aStatistics != null ){
+            aStatistics.print(System.err);
         }
-        printSeparator();
     }
     
     /**
@@ -79,7 +368,11 @@ public class CommentCounterCUI
     private void printResource(final String aFileName) 
     throws IOException
     {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream(aFileName)));
+        InputStream input = getClass().getClassLoader().getResourceAsStream(aFileName);
+        if ( input == null ){
+            throw new IOException("リソース " + aFileName + " が見つかりません");
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input));
         String line = null;
         while ( (line = reader.readLine()) != null){
             System.err.println(line);
@@ -98,8 +391,28 @@ public class CommentCounterCUI
         catch (IOException e) {
             System.err.println("使用方法の説明ファイルの読み出しでエラーが起こりました");
         }    
+        System.err.println("option : ");
+        System.err.println("   -n N : 解析済みのファイルを N 個までキャッシュに保持する（既定値は " + DEFAULT_MAX_ENTRY_COUNT + "，0 は上限なし）");
+        System.err.println("  -s MB : キャッシュに保持するファイルのサイズの合計を MB メガバイトまでとする");
+        System.err.println("     -b : 問い合わせをすべて読み込み，ファイルごとにまとめて並行に評価する（バッチモード）");
+        System.err.println("   -j N : バッチモードで N スレッドを用いる（既定値の 0 はプロセッサ数）");
+        System.err.println("     -u : バッチモードの結果を評価の終わった順に出力する");
+        System.err.println("     -q : 範囲ごとのコメント行数とコメント密度の分布（分位点とヒストグラム）を最後に表示する");
+        System.err.println("-o FILE : 結果を標準出力ではなく列指向の結果ファイル FILE へ書き出す（メソッド名は書き出さない）");
+        System.err.println(" -r DIR : 標準入力を読まず，DIR 以下の全ソースファイルのメソッドごとに計上する（-j，-u も有効）");
+        System.err.println("   -p N : -r のとき，N 個のファイルを I/O スレッドで先読みする（既定値は 0 で，先読みしない）");
+        System.err.println("  -m MB : -b，-r のとき，評価中のファイルの解析状態の見積もりの合計を MB メガバイト以内に抑える");
+        System.err.println("-J FILE : 評価し終えた問い合わせ（-r のときはファイル）を記録ファイル FILE へ追記する");
+        System.err.println("     -R : 中断した実行を FILE の記録から再開する（-J が必要）：記録済みの結果を先に出力し，残りだけを評価する");
+        System.err.println(" -S I/N : N 個に分割したうちの I 番目（1 から N）の分だけを評価する（-o の結果は ShardMergeCUI でまとめる）");
     }
     
+    /** キャッシュに保持する解析済みファイルの数の既定値 */
+    private static final int DEFAULT_MAX_ENTRY_COUNT = 64;
+
+    /** ツリーモードで対象とするソースファイルのパス */
+    private static final String SOURCE_FILE_REGEX = ".+\\.(java|JAVA|c|C|h|H|cpp|CPP|cc|CC|cxx|CXX|m|M|i|I|ii|II)$";
+    
     private final String COPYRIGHT = "copyright.txt";
     private final String USAGE = "usage.txt";
 }
@@ -4,6 +4,7 @@ import java.io.IOException;
 
 import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
 import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.CodeMap;
 
 /**
  * 指定されたソースファイルを測定対象とした CommentCounter オブジェクトを生成するファクトリ
@@ -32,4 +33,23 @@ public class CommentCounterFactory
         throw new NotSupportedSourceFileExeption("not supported file type: " + aFilePath);    
     }
     
+    /**
+     * 指定されたソースファイルを測定対象とし，作成済みのコードマップを用いる CommentCounter オブジェクトを生成する
+     * 
+     * @param aSourceFile 測定対象のソースファイル
+     * @param aCodeMap 測定対象ソースファイルのコードマップ
+     */
+    public static CommentCounter create(final SourceFile aSourceFile, final CodeMap aCodeMap) 
+    throws NotSupportedSourceFileExeption
+    {
+        if ( aSourceFile.isJavaFile() ){
+            return new CommentCounterForJava(aSourceFile, aCodeMap);
+        }
+        if ( aSourceFile.isCFile() ){
+            return new CommentCounterForC(aSourceFile, aCodeMap);
+        }
+        
+        throw new NotSupportedSourceFileExeption("not supported file type: " + aSourceFile.getPath());    
+    }
+    
 }
@@ -1,12 +1,10 @@
 package org.computer.aman.metrics.comment;
 
 import java.io.IOException;
-import java.util.Iterator;
 
 import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
 import org.computer.aman.io.sourcecode.SourceFile;
-import org.computer.aman.metrics.util.CodeLineMap;
-import org.computer.aman.metrics.util.c.CodeLineMapForC;
+import org.computer.aman.metrics.util.CodeMap;
 
 /**
  * C ソースファイル中のメソッドについてコメント文の測定とそれに関連する機能を提供
@@ -28,6 +26,17 @@ extends CommentCounter
         super(aSourceFile);
     }
     
+    /**
+     * 指定されたソースファイルを測定対象とし，作成済みのコードマップを用いる CommentCounterForC オブジェクトを生成する
+     * 
+     * @param aSourceFile 測定対象のソースファイル
+     * @param aCodeMap 測定対象ソースファイルのコードマップ
+     */
+    public CommentCounterForC(final SourceFile aSourceFile, final CodeMap aCodeMap)
+    {
+        super(aSourceFile, aCodeMap);
+    }
+    
     /**
      * コメント文の測定を実行し，結果を CommentCountResultSet インスタンスとして返す．
      * 
@@ -40,56 +49,12 @@ extends CommentCounter
     {
         CountResultForC results = new CountResultForC();
 
-        // (1) 測定対象メソッドの直前に書かれたコメントを測定する
-        // (1-1) 測定対象行よりも前に登場する実効コード行の中で一番後(predecessorLine)を見つける
-        // (1-2) predecessorLine+1 から aBeginLineNumber-1 までの行に登場するコメントをカウントする        
-        Iterator<CodeLineMap> itr = getCodeMap().iterator();
-        
-        int predecessorLine = -1;
-        for ( int i = 1; i < aBeginLineNumber; i++ ){
-            if ( itr.next().getCodeCount() > 0 ){
-                predecessorLine = i;
-            }
-        }
-        
-        if ( predecessorLine != -1 ){
-            itr = getCodeMap().iterator();
-            for ( int i = 1; i < aBeginLineNumber; i++ ){
-                CodeLineMapForC lineMap = (CodeLineMapForC)itr.next();
-                if ( i <= predecessorLine || lineMap.getCommentCount() == 0 ){
-                    continue;
-                }
-                else if ( lineMap.getEolCommentCount() > 0 ){
-                    results.incrementEolCommentCountInHead();
-                }
-                else{
-                    results.incrementTraditionalCommentCountInHead();
-                }
-            }
-        }
-        
-        // (2) (1) の続きから一行ずつマップを見ていく
-        for ( int i = aBeginLineNumber; i <= anEndLineNumber; i++ ){
-            CodeLineMapForC lineMap = (CodeLineMapForC)itr.next();                        
-            if ( lineMap.getCommentCount() == 0 ){
-                continue;
-            }
-            results.incrementCommentCount();
-            // コメントの内訳のカウント
-            // 異なるタイプのコメント文が一行に混在する場合は EOLコメントアウト，Traditional コメントアウト，EOL, Traditional の優先順でカウントする 
-            if ( lineMap.getTraditionalCommentOutCount() > 0 ){
-                results.incrementTraditionalCommentOutCount();
-            }
-            else if ( lineMap.getEolCommentOutCount() > 0 ){
-                results.incrementEolCommentOutCount();
-            }
-            else if ( lineMap.getEolCommentCount() > 0 ){
-                results.incrementEolCommentCount();
-            }
-            else{
-                results.incrementTraditionalCommentCount();
-            }
-        }
+        // (1) 測定対象メソッドの直前に書かれたコメントと，(2) 測定対象範囲内のコメントとを，
+        // コンストラクタで作成済みの索引（種類ごとの累積行数と，各行以前で最後の実効コード行）から求める．
+        // (1) は，測定対象行よりも前に登場する実効コード行の中で一番後(predecessorLine)の次の行から
+        //     aBeginLineNumber-1 までの行に登場するコメントを数える
+        // (2) 異なるタイプのコメント文が一行に混在する場合は Traditional コメントアウト，EOL コメントアウト，EOL, Traditional の優先順でカウントする
+        getIndex().count(aBeginLineNumber, anEndLineNumber, results);
         
         return results;
     }
@@ -2,12 +2,14 @@ package org.computer.aman.metrics.comment;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.NoSuchElementException;
 
 import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
 import org.computer.aman.io.sourcecode.SourceFile;
 import org.computer.aman.metrics.util.CodeLineMap;
 import org.computer.aman.metrics.util.CodeMap;
-import org.computer.aman.metrics.util.CodeMapFactory;
+import org.computer.aman.metrics.util.PackedCodeMap;
+import org.computer.aman.metrics.util.SourceText;
 
 /**
  * メソッド単位でのコメント抽出器
@@ -27,8 +29,38 @@ public abstract class CommentExtractor
     public CommentExtractor (final SourceFile aSourceFile) 
     throws NotSupportedSourceFileExeption, IOException
     {
-        sourceFile = aSourceFile;
-        codeMap = CodeMapFactory.create(aSourceFile);
+        this(SourceText.read(aSourceFile));
+    }
+    
+    /**
+     * 読み込み済みのソースファイルを対象とした CommentExtractor オブジェクトを生成する（コードマップも同じ行から作る）
+     * 
+     * @param aSourceText 対象ソースファイルの内容
+     * @throws NotSupportedSourceFileExeption 
+     */
+    private CommentExtractor (final SourceText aSourceText) 
+    throws NotSupportedSourceFileExeption
+    {
+        this(aSourceText, aSourceText.createCodeMap());
+    }
+    
+    /**
+     * 読み込み済みのソースファイルを対象とし，作成済みのコードマップを用いる CommentExtractor オブジェクトを生成する
+     * （他の測定器とファイルの内容やコードマップを共有し，ファイルの読み込みと解析を一度で済ませる場合に用いる）
+     * 
+     * @param aSourceText 対象ソースファイルの内容
+     * @param aCodeMap 対象ソースファイルのコードマップ
+     */
+    public CommentExtractor (final SourceText aSourceText, final CodeMap aCodeMap)
+    {
+        sourceText = aSourceText;
+        // 多くのファイルのマップを同時に保持できるように詰め込んだかたちで保持し，
+        // 任意の行へ直接移れるように，各行以前で最後の実効コード行を配列に展開しておく
+        codeMap = PackedCodeMap.pack(aCodeMap);
+        lastCodeLines = new int[codeMap.getLineCount() + 1];
+        for ( int i = 1; i <= codeMap.getLineCount(); i++ ){
+            lastCodeLines[i] = codeMap.getCount(i, PackedCodeMap.CODE_CLASS) > 0 ? i : lastCodeLines[i-1];
+        }
     }
     
     /**
@@ -38,7 +70,7 @@ public abstract class CommentExtractor
      */
     public String getFilePath()
     {
-        return sourceFile.getPath();
+        return sourceText.getSourceFile().getPath();
     }
     
     /**
@@ -61,14 +93,59 @@ public abstract class CommentExtractor
      */
     protected static String extractComments ( final CodeLineMap aLineMap, final String aCodeLine )
     {
-        final int MAP_LENGTH = aLineMap.getMap().length();
-        StringBuffer comments = new StringBuffer();
+        final String MAP = aLineMap.getMap();
+        final int MAP_LENGTH = MAP.length();
+        StringBuilder comments = new StringBuilder(MAP_LENGTH);
         for ( int j = 0; j < MAP_LENGTH; j++ ){
-        	if ( aLineMap.isComment(j) ){
+        	if ( isComment(MAP.charAt(j)) ){
         		comments.append(aCodeLine.charAt(j));
         	}
         }
-    	return new String(comments);
+    	return comments.toString();
+    }
+    
+    /**
+     * 指定された行のコメントに該当する箇所を，ソースファイルの内容を共有する CommentLine として返す．
+     * コメントの内容は，コメントに該当する箇所（行中での開始位置と終了位置）だけを記録し，文字列にはしない．
+     * 
+     * @param aLineNumber 行番号
+     * @param aType タイプ番号（1--7）
+     * @return 1 行分のコメント
+     */
+    protected CommentLine createCommentLine(final int aLineNumber, final int aType)
+    {
+        final int LENGTH = codeMap.getLength(aLineNumber);
+        int spanCount = 0;
+        for ( int j = 0; j < LENGTH; j++ ){
+            if ( codeMap.isComment(aLineNumber, j) && (j == 0 || !codeMap.isComment(aLineNumber, j-1)) ){
+                spanCount++;
+            }
+        }
+        
+        int[] spans = new int[spanCount * 2];
+        int k = 0;
+        for ( int j = 0; j < LENGTH; j++ ){
+            if ( !codeMap.isComment(aLineNumber, j) ){
+                continue;
+            }
+            spans[k++] = j;
+            while ( j < LENGTH && codeMap.isComment(aLineNumber, j) ){
+                j++;
+            }
+            spans[k++] = j;
+        }
+        return new CommentLine(aLineNumber, aType, sourceText, spans);
+    }
+    
+    /**
+     * コード行マップの文字がコメントを表すかどうかを返す（CodeLineMap#isComment と同じ判定）．
+     * 
+     * @param aMapChar コード行マップの文字
+     * @return コメントを表す場合は true
+     */
+    private static boolean isComment(final char aMapChar)
+    {
+        return aMapChar != BLANK && aMapChar != CODE;
     }
     
     /**
@@ -76,15 +153,52 @@ public abstract class CommentExtractor
      * 
      * @return 対象としているソースコードのコードマップ
      */
-    protected CodeMap getCodeMap()
+    protected PackedCodeMap getCodeMap()
     {
         return codeMap;
     }
     
+    /**
+     * 指定された行よりも前に登場する実効コード行の中で一番後の行を返す（サブクラス向け）
+     * 
+     * @param aLineNumber 行番号（1 から始まる）
+     * @return 指定された行よりも前で最後の実効コード行の行番号（存在しない場合は -1）
+     * @throws NoSuchElementException 指定された行の直前の行が存在しない場合
+     */
+    protected int getPredecessorLine(final int aLineNumber)
+    {
+        if ( aLineNumber <= 1 ){
+            return -1;
+        }
+        if ( aLineNumber - 1 > codeMap.getLineCount() ){
+            throw new NoSuchElementException("line " + (aLineNumber - 1) + " is beyond the end of the file");
+        }
+        return lastCodeLines[aLineNumber-1] > 0 ? lastCodeLines[aLineNumber-1] : -1;
+    }
+    
+    /**
+     * 対象としているソースファイルの内容を返す（サブクラス向け）
+     * 
+     * @return 対象としているソースファイルの内容
+     */
+    protected SourceText getSourceText()
+    {
+        return sourceText;
+    }
+    
     /** 測定対象ソースファイルのコードマップ */
-    private CodeMap codeMap;
+    private PackedCodeMap codeMap;
+    
+    /** コード行マップで空白を表す文字 */
+    private static final char BLANK = CodeLineMap.BLANK.charAt(0);
+    
+    /** コード行マップで実効コードを表す文字 */
+    private static final char CODE = CodeLineMap.CODE.charAt(0);
+    
+    /** 各行以前で最後の実効コード行の行番号（存在しなければ 0，添字は行番号） */
+    private int[] lastCodeLines;
     
-    /** 測定対象のソースファイル */
-    private SourceFile sourceFile;
+    /** 測定対象ソースファイルの内容 */
+    private SourceText sourceText;
 
 }
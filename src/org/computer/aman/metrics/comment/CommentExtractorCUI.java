@@ -1,7 +1,10 @@
 package org.computer.aman.metrics.comment;
 
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -17,38 +20,65 @@ public class CommentExtractorCUI
         CommentExtractorCUI ui = new CommentExtractorCUI();
 
         ui.printCopyright();
-        if ( args.length > 0 ){
-            ui.printUsage();
-            return;
+        // 解析済みファイルのキャッシュの上限
+        //   -n N  : 保持するファイルの数（既定値は 64，0 は上限なし）
+        //   -s MB : 保持するファイルのサイズの合計（メガバイト単位，既定値は上限なし）
+        int maxEntryCount = DEFAULT_MAX_ENTRY_COUNT;
+        long maxSourceBytes = 0;
+        for ( int i = 0; i < args.length; i++ ){
+            if ( args[i].equals("-n") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                maxEntryCount = Integer.parseInt(args[++i]);
+            }
+            else if ( args[i].equals("-s") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                maxSourceBytes = Long.parseLong(args[++i]) * 1024 * 1024;
+            }
+            else{
+                ui.printUsage();
+                return;
+            }
         }
         printSeparator();
         
         // 標準入力から，「ファイルパス，開始行，終了行」の三つ組（ただし，タブ区切り）を繰り返し読み出す
         // そして，当該ファイルに対応した CommentExtractor オブジェクトを用意する．
-        // ただし，通常は同じファイルパスがいくつか連続するので，ファイルパスが前の行と異なった時にのみ
-        // オブジェクトを生成する．
+        // ただし，同じファイルパスは（連続するとは限らず）何度も登場するので，生成したオブジェクトは
+        // キャッシュに保持し，キャッシュにない時にのみ生成する．
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
         String line = null;
-        CommentExtractor extractor = null;
-        while ( (line = reader.readLine()) != null ){
-            Scanner scanner = new Scanner(line);
-            scanner.useDelimiter("\t");
-            String path = scanner.next();
-            int begin = scanner.nextInt();
-            int end = scanner.nextInt();
-            scanner.close();
-
-            if ( extractor == null || !path.equals(extractor.getFilePath()) ){
-                extractor = CommentExtractorFactory.create(path);
+        ParsedFileCache<CommentExtractor> cache = new ParsedFileCache<CommentExtractor>(maxEntryCount, maxSourceBytes);
+        ParsedFileCache.Loader<CommentExtractor> loader = new ParsedFileCache.Loader<CommentExtractor>() {
+            public CommentExtractor load(final String aPath)
+            throws IOException, NotSupportedSourceFileExeption
+            {
+                return CommentExtractorFactory.create(aPath);
             }
+        };
+        // コメントの内容はソースファイルのバイト列から出力バッファへ直接コピーする
+        CommentLineWriter writer = new CommentLineWriter(new FileOutputStream(FileDescriptor.out));
+        try{
+            while ( (line = reader.readLine()) != null ){
+                Scanner scanner = new Scanner(line);
+                scanner.useDelimiter("\t");
+                String path = scanner.next();
+                int begin = scanner.nextInt();
+                int end = scanner.nextInt();
+                scanner.close();
+
+                CommentExtractor extractor = cache.get(path, loader);
 
-            ArrayList<CommentLine> list = extractor.parse(begin, end);
-            for (Iterator<CommentLine> iterator = list.iterator(); iterator.hasNext();) {
-				CommentLine commentLine = (CommentLine) iterator.next();
-				System.out.println(path + "\t" + begin + "\t" + end + "\t" + commentLine);
-			}
+                ArrayList<CommentLine> list = extractor.parse(begin, end);
+                byte[] prefix = (path + "\t" + begin + "\t" + end + "\t").getBytes();
+                for (Iterator<CommentLine> iterator = list.iterator(); iterator.hasNext();) {
+                    CommentLine commentLine = (CommentLine) iterator.next();
+                    writer.write(prefix, commentLine);
+                }
+            }
+        }
+        finally{
+            writer.flush();
         }
         printSeparator();
+        System.err.println(cache);
     }
     
     /**
@@ -85,7 +115,11 @@ public class CommentExtractorCUI
     private void printResource(final String aFileName) 
     throws IOException
     {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getClassLoader().getResourceAsStream(aFileName)));
+        InputStream input = getClass().getClassLoader().getResourceAsStream(aFileName);
+        if ( input == null ){
+            throw new IOException("リソース " + aFileName + " が見つかりません");
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input));
         String line = null;
         while ( (line = reader.readLine()) != null){
             System.err.println(line);
@@ -104,8 +138,14 @@ public class CommentExtractorCUI
         catch (IOException e) {
             System.err.println("使用方法の説明ファイルの読み出しでエラーが起こりました");
         }    
+        System.err.println("option : ");
+        System.err.println("   -n N : 解析済みのファイルを N 個までキャッシュに保持する（既定値は " + DEFAULT_MAX_ENTRY_COUNT + "，0 は上限なし）");
+        System.err.println("  -s MB : キャッシュに保持するファイルのサイズの合計を MB メガバイトまでとする");
     }
     
+    /** キャッシュに保持する解析済みファイルの数の既定値 */
+    private static final int DEFAULT_MAX_ENTRY_COUNT = 64;
+    
     private final String COPYRIGHT = "copyright.txt";
     private final String USAGE = "usage.txt";
 }
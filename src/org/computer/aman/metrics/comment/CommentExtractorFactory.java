@@ -4,6 +4,8 @@ import java.io.IOException;
 
 import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
 import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.SourceText;
 
 /**
  * 指定されたソースファイルを解析対象とした CommentExtractor オブジェクトを生成するファクトリ
@@ -32,4 +34,25 @@ public class CommentExtractorFactory
         throw new NotSupportedSourceFileExeption("not supported file type: " + aFilePath);    
     }
     
+    /**
+     * 読み込み済みのソースファイルを解析対象とし，作成済みのコードマップを用いる CommentExtractor オブジェクトを生成する
+     * 
+     * @param aSourceText 解析対象ソースファイルの内容
+     * @param aCodeMap 解析対象ソースファイルのコードマップ
+     */
+    public static CommentExtractor create(final SourceText aSourceText, final CodeMap aCodeMap) 
+    throws NotSupportedSourceFileExeption
+    {
+        SourceFile file = aSourceText.getSourceFile();
+        
+        if ( file.isJavaFile() ){
+            return new CommentExtractorForJava(aSourceText, aCodeMap);
+        }
+        if ( file.isCFile() ){
+            return new CommentExtractorForC(aSourceText, aCodeMap);
+        }
+        
+        throw new NotSupportedSourceFileExeption("not supported file type: " + file.getPath());    
+    }
+    
 }
@@ -1,15 +1,13 @@
 package org.computer.aman.metrics.comment;
 
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
 import java.util.ArrayList;
-import java.util.Iterator;
 
 import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
 import org.computer.aman.io.sourcecode.SourceFile;
-import org.computer.aman.metrics.util.CodeLineMap;
-import org.computer.aman.metrics.util.c.CodeLineMapForC;
+import org.computer.aman.metrics.util.CodeMap;
+import org.computer.aman.metrics.util.PackedCodeMap;
+import org.computer.aman.metrics.util.SourceText;
 
 /**
  * Cソースファイル中のメソッドについてコメント抽出機能を実装
@@ -31,6 +29,17 @@ extends CommentExtractor
         super(aSourceFile);
     }
     
+    /**
+     * 読み込み済みのソースファイルを解析対象とし，作成済みのコードマップを用いる CommentExtractorForC オブジェクトを生成する
+     * 
+     * @param aSourceText 解析対象ソースファイルの内容
+     * @param aCodeMap 解析対象ソースファイルのコードマップ
+     */
+    public CommentExtractorForC(final SourceText aSourceText, final CodeMap aCodeMap)
+    {
+        super(aSourceText, aCodeMap);
+    }
+    
     /**
      * コメント文の解析を実行し，結果を CommentLine インスタンスの ArrayList として返す．
      * 
@@ -46,60 +55,48 @@ extends CommentExtractor
         // (1) 解析対象メソッドの直前に書かれた Javadoc （あるいはそれに準ずるもの）を抽出する
         // (1-1) 解析対象行よりも前に登場する実効コード行の中で一番後(predecessorLine)を見つける
         // (1-2) predecessorLine+1 から aBeginLineNumber-1 までの行に登場するコメントを抽出する          
-        Iterator<CodeLineMap> itr = getCodeMap().iterator();
+        // （いずれも構築時に作成済みの配列から直接求める）
+        int predecessorLine = getPredecessorLine(aBeginLineNumber);
+        PackedCodeMap map = getCodeMap();
         
-        int predecessorLine = -1;
-        for ( int i = 1; i < aBeginLineNumber; i++ ){
-            if ( itr.next().getCodeCount() > 0 ){
-                predecessorLine = i;
-            }
-        }
-        
-        LineNumberReader reader = new LineNumberReader(new FileReader(getFilePath()));
+        SourceText text = getSourceText();
 
         if ( predecessorLine != -1 ){
-            itr = getCodeMap().iterator();
-            for ( int i = 1; i < aBeginLineNumber; i++ ){
-            	String line = reader.readLine();
-                CodeLineMapForC lineMap = (CodeLineMapForC)itr.next();
-                if ( i <= predecessorLine || lineMap.getCommentCount() == 0 ){
+            for ( int i = predecessorLine + 1; i < aBeginLineNumber; i++ ){
+                if ( map.getCommentCount(i) == 0 ){
                     continue;
                 }
-                else if ( lineMap.getEolCommentCount() > 0 ){
-                	list.add(new CommentLine(i, 4, extractComments(lineMap,line)));
+                else if ( map.getCount(i, PackedCodeMap.EOL_COMMENT_CLASS) > 0 ){
+                	list.add(createCommentLine(i, 4));
                 }
                 else{
-                	list.add(new CommentLine(i, 5, extractComments(lineMap,line)));
+                	list.add(createCommentLine(i, 5));
                 }
             }
         }
         
-        // (2) (1) の続きから一行ずつマップを見ていく
+        // (2) 解析対象行のマップを一行ずつ見ていく
         for ( int i = aBeginLineNumber; i <= anEndLineNumber; i++ ){
-        	String line = reader.readLine();
-            CodeLineMapForC lineMap = (CodeLineMapForC)itr.next();                        
-            if ( lineMap.getCommentCount() == 0 ){
+            if ( map.getCommentCount(i) == 0 ){
                 continue;
             }
 
             // コメントの確認:
             // 異なるタイプのコメント文が一行に混在する場合は EOLコメントアウト，Traditional コメントアウト，EOL, Traditional の優先順で抽出する 
-            if ( lineMap.getTraditionalCommentOutCount() > 0 ){
-            	list.add(new CommentLine(i, 7, extractComments(lineMap,line)));            
+            if ( map.getCount(i, PackedCodeMap.TRADITIONAL_COMMENT_OUT_CLASS) > 0 ){
+            	list.add(createCommentLine(i, 7));            
             }
-            else if ( lineMap.getEolCommentOutCount() > 0 ){
-            	list.add(new CommentLine(i, 6, extractComments(lineMap,line)));
+            else if ( map.getCount(i, PackedCodeMap.EOL_COMMENT_OUT_CLASS) > 0 ){
+            	list.add(createCommentLine(i, 6));
             }
-            else if ( lineMap.getEolCommentCount() > 0 ){
-               	list.add(new CommentLine(i, 1, extractComments(lineMap,line)));
+            else if ( map.getCount(i, PackedCodeMap.EOL_COMMENT_CLASS) > 0 ){
+               	list.add(createCommentLine(i, 1));
             }
             else{
-               	list.add(new CommentLine(i, 2, extractComments(lineMap,line)));
+               	list.add(createCommentLine(i, 2));
             }
         }
         
-        reader.close();
-        
         return list;
     }
 }
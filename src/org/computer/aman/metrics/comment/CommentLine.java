@@ -1,5 +1,7 @@
 package org.computer.aman.metrics.comment;
 
+import org.computer.aman.metrics.util.SourceText;
+
 /**
  * 1 行分のコメントのモデル
  * 
@@ -18,20 +20,107 @@ public class CommentLine
 	{
 		lineNumber = aLineNumber;
 		type = aType;
-		text = new String(aText);
+		text = aText;
+		sourceText = null;
+		spans = null;
+	}
+	
+	/**
+	 * ソースファイルの内容を共有する CommentLine インスタンスを生成する．
+	 * コメントの内容は文字列として取り出されるまで（あるいはバイト列として書き出されるまで）作られない．
+	 * 
+	 * @param aLineNumber 行番号
+	 * @param aType タイプ番号（1--7）
+	 * @param aSourceText コメントが書かれているソースファイルの内容
+	 * @param aSpans コメントに該当する箇所の，行中での開始位置と終了位置（この位置は含まない）の並び
+	 */
+	public CommentLine(final int aLineNumber, final int aType, final SourceText aSourceText, final int[] aSpans)
+	{
+		lineNumber = aLineNumber;
+		type = aType;
+		text = null;
+		sourceText = aSourceText;
+		spans = aSpans;
+	}
+	
+	/**
+	 * 行番号を返す．
+	 * 
+	 * @return 行番号
+	 */
+	public int getLineNumber()
+	{
+		return lineNumber;
+	}
+	
+	/**
+	 * コメントの内容を返す．
+	 * 
+	 * @return コメントの内容
+	 */
+	public String getText()
+	{
+		if ( text != null ){
+			return text;
+		}
+		String line = sourceText.getLine(lineNumber);
+		if ( spans.length == 2 ){
+			return line.substring(spans[0], spans[1]);
+		}
+		StringBuilder comments = new StringBuilder();
+		for ( int i = 0; i < spans.length; i += 2 ){
+			comments.append(line, spans[i], spans[i+1]);
+		}
+		return comments.toString();
+	}
+	
+	/**
+	 * タイプ番号を返す．
+	 * 
+	 * @return タイプ番号（1--7）
+	 */
+	public int getType()
+	{
+		return type;
 	}
 	
 	public String toString()
 	{
-		return (lineNumber + "\t" + type + "\t" + text);
+		return (lineNumber + "\t" + type + "\t" + getText());
+	}
+	
+	/**
+	 * コメントが書かれているソースファイルの内容を返す（CommentLineWriter 向け）．
+	 * 
+	 * @return ソースファイルの内容（文字列で生成された場合は null）
+	 */
+	SourceText getSourceText()
+	{
+		return sourceText;
+	}
+	
+	/**
+	 * コメントに該当する箇所の，行中での開始位置と終了位置の並びを返す（CommentLineWriter 向け）．
+	 * 
+	 * @return 開始位置と終了位置の並び（文字列で生成された場合は null）
+	 */
+	int[] getSpans()
+	{
+		return spans;
 	}
 	
 	/** コメントが書かれている行番号 */
-	private int lineNumber;
+	private final int lineNumber;
+	
+	/** コメントが書かれているソースファイルの内容（文字列で生成された場合は null） */
+	private final SourceText sourceText;
+	
+	/** コメントに該当する箇所の，行中での開始位置と終了位置（この位置は含まない）の並び */
+	private final int[] spans;
 	
-	/** コメントの内容（コメントの開始・終了を意味する文字列を除く） */
-	private String text;
+	/** コメントの内容（コメントの開始・終了を意味する文字列を除く，ソースファイルの内容を共有する場合は null） */
+	private final String text;
 	
 	/** コメントのタイプ（番号: 1--7） */
-	private int type;
+	private final int type;
 }
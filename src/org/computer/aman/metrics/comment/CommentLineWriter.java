@@ -0,0 +1,168 @@
+package org.computer.aman.metrics.comment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import org.computer.aman.metrics.util.SourceText;
+
+/**
+ * CommentLine を 1 行ずつ書き出す出力器
+ * <p>
+ * ソースファイルの内容を共有する CommentLine は，コメントの内容を文字列にせず，
+ * 読み込み済み（あるいはメモリにマップされた）ソースファイルのバイト列から出力バッファへ直接コピーする．
+ * 書き出す文字列は System.out と同じく既定の文字コードで符号化する．
+ * <p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class CommentLineWriter
+{
+    /**
+     * 指定された出力先へ書き出す CommentLineWriter オブジェクトを生成する
+     *
+     * @param anOutput 出力先
+     */
+    public CommentLineWriter(final OutputStream anOutput)
+    {
+        output = anOutput;
+        charset = Charset.defaultCharset();
+        lineSeparator = System.getProperty("line.separator").getBytes(charset);
+        buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * バッファに残っている内容を出力先へ書き出す．
+     *
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public void flush()
+    throws IOException
+    {
+        output.write(buffer, 0, count);
+        count = 0;
+        output.flush();
+    }
+
+    /**
+     * 1 行分のコメントを書き出す．
+     * 内容は，接頭辞に続けて CommentLine#toString() と同じもの（行番号，タイプ番号，コメントの内容のタブ区切り）である．
+     *
+     * @param aPrefix 行頭に付ける接頭辞（符号化済みのもの）
+     * @param aCommentLine 1 行分のコメント
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public void write(final byte[] aPrefix, final CommentLine aCommentLine)
+    throws IOException
+    {
+        write(aPrefix, 0, aPrefix.length);
+        writeNumber(aCommentLine.getLineNumber());
+        writeByte('\t');
+        writeNumber(aCommentLine.getType());
+        writeByte('\t');
+
+        SourceText text = aCommentLine.getSourceText();
+        if ( text != null && charset.equals(text.getCharset()) && text.isByteAddressable(aCommentLine.getLineNumber()) ){
+            int[] spans = aCommentLine.getSpans();
+            for ( int i = 0; i < spans.length; i += 2 ){
+                final int LENGTH = spans[i+1] - spans[i];
+                ensureCapacity(LENGTH);
+                text.getBytes(aCommentLine.getLineNumber(), spans[i], spans[i+1], buffer, count);
+                count += LENGTH;
+            }
+        }
+        else{
+            byte[] bytes = aCommentLine.getText().getBytes(charset);
+            write(bytes, 0, bytes.length);
+        }
+        write(lineSeparator, 0, lineSeparator.length);
+    }
+
+    /**
+     * 文字列を 1 行として書き出す．
+     *
+     * @param aLine 書き出す文字列
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public void writeLine(final String aLine)
+    throws IOException
+    {
+        byte[] bytes = aLine.getBytes(charset);
+        write(bytes, 0, bytes.length);
+        write(lineSeparator, 0, lineSeparator.length);
+    }
+
+    /**
+     * 出力バッファに指定された長さの空きを用意する（足りなければバッファの内容を書き出し，それでも足りなければ拡張する）．
+     *
+     * @param aLength 必要な長さ
+     */
+    private void ensureCapacity(final int aLength)
+    throws IOException
+    {
+        if ( count + aLength <= buffer.length ){
+            return;
+        }
+        output.write(buffer, 0, count);
+        count = 0;
+        if ( aLength > buffer.length ){
+            buffer = new byte[aLength];
+        }
+    }
+
+    /**
+     * バイト列を出力バッファへ書き込む．
+     *
+     * @param aBytes バイト列
+     * @param anOffset 書き込む部分の開始位置
+     * @param aLength 書き込む部分の長さ
+     */
+    private void write(final byte[] aBytes, final int anOffset, final int aLength)
+    throws IOException
+    {
+        ensureCapacity(aLength);
+        System.arraycopy(aBytes, anOffset, buffer, count, aLength);
+        count += aLength;
+    }
+
+    /**
+     * 1 バイトを出力バッファへ書き込む．
+     *
+     * @param aByte 書き込むバイト
+     */
+    private void writeByte(final int aByte)
+    throws IOException
+    {
+        ensureCapacity(1);
+        buffer[count++] = (byte)aByte;
+    }
+
+    /**
+     * 整数を 10 進数の文字列として出力バッファへ書き込む．
+     *
+     * @param aNumber 書き込む整数
+     */
+    private void writeNumber(final int aNumber)
+    throws IOException
+    {
+        byte[] digits = Integer.toString(aNumber).getBytes(charset);
+        write(digits, 0, digits.length);
+    }
+
+    /** 出力バッファの大きさ */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** 出力バッファ */
+    private byte[] buffer;
+
+    /** 文字列を符号化する文字コード */
+    private final Charset charset;
+
+    /** 出力バッファに書き込まれているバイト数 */
+    private int count;
+
+    /** 行区切り（符号化済み） */
+    private final byte[] lineSeparator;
+
+    /** 出力先 */
+    private final OutputStream output;
+}
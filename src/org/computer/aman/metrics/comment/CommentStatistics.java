@@ -0,0 +1,97 @@
+package org.computer.aman.metrics.comment;
+
+import java.io.PrintStream;
+
+import org.computer.aman.metrics.stats.Distribution;
+
+/**
+ * 測定した範囲ごとのコメント行数とコメント密度の分布
+ * <p>
+ * 範囲の数によらず一定の大きさのスケッチ（Distribution）だけを保持する．
+ * コメント密度は，範囲内のコメント行数を範囲の行数で割ったものとする．
+ * 並行に測定する場合は，スレッドごとに集めた分布を merge でまとめる．
+ * <p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class CommentStatistics
+{
+    /**
+     * 空の分布を生成する
+     */
+    public CommentStatistics()
+    {
+        commentCounts = new Distribution("comment_lines");
+        headCommentCounts = new Distribution("head_comment_lines");
+        densities = new Distribution("comment_density");
+    }
+
+    /**
+     * 一つの範囲の測定結果を加える．
+     *
+     * @param aBeginLineNumber 測定の開始行
+     * @param anEndLineNumber 測定の終了行
+     * @param aResults 測定結果
+     */
+    public void add(final int aBeginLineNumber, final int anEndLineNumber, final CountResult aResults)
+    {
+        commentCounts.add(aResults.getCommentCount());
+        headCommentCounts.add(getHeadCommentCount(aResults));
+        if ( anEndLineNumber >= aBeginLineNumber ){
+            densities.add((double)aResults.getCommentCount() / (anEndLineNumber - aBeginLineNumber + 1));
+        }
+    }
+
+    /**
+     * 別の分布をこの分布に足し込む．複数のスレッドから呼び出してよい．
+     *
+     * @param aStatistics 足し込む分布（この分布は変わらない）
+     * @return この分布
+     */
+    public synchronized CommentStatistics merge(final CommentStatistics aStatistics)
+    {
+        commentCounts.merge(aStatistics.commentCounts);
+        headCommentCounts.merge(aStatistics.headCommentCounts);
+        densities.merge(aStatistics.densities);
+        return this;
+    }
+
+    /**
+     * 分布の要約（分位点とヒストグラム）を出力する．
+     *
+     * @param anOutput 出力先
+     */
+    public synchronized void print(final PrintStream anOutput)
+    {
+        commentCounts.print(anOutput);
+        headCommentCounts.print(anOutput);
+        densities.print(anOutput);
+    }
+
+    /**
+     * 範囲の直前のコメント行数を返す．
+     *
+     * @param aResults 測定結果
+     * @return 範囲の直前のコメント行数（Javadoc，EOL，Traditional の合計）
+     */
+    private static int getHeadCommentCount(final CountResult aResults)
+    {
+        if ( aResults instanceof CountResultForJava ){
+            CountResultForJava results = (CountResultForJava)aResults;
+            return results.getJavadocCommentCount() + results.getEolCommentCountInHead() + results.getTraditionalCommentCountInHead();
+        }
+        if ( aResults instanceof CountResultForC ){
+            CountResultForC results = (CountResultForC)aResults;
+            return results.getEolCommentCountInHead() + results.getTraditionalCommentCountInHead();
+        }
+        return 0;
+    }
+
+    /** 範囲内のコメント行数の分布 */
+    private final Distribution commentCounts;
+
+    /** コメント密度の分布 */
+    private final Distribution densities;
+
+    /** 範囲の直前のコメント行数の分布 */
+    private final Distribution headCommentCounts;
+}
@@ -0,0 +1,26 @@
+package org.computer.aman.metrics.comment;
+
+import java.io.IOException;
+
+/**
+ * コメント文の測定結果の受け取り手
+ * <p>
+ * CommentCountBatch および MethodCommentCounter は，測定結果を必ず呼び出し元のスレッドで引き渡すので，
+ * 実装は同期を要しない．
+ * <p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public interface CountListener
+{
+    /**
+     * 一つの範囲の測定結果を受け取る．
+     *
+     * @param aPath ソースファイルのパス
+     * @param aBeginLineNumber 測定の開始行
+     * @param anEndLineNumber 測定の終了行
+     * @param aResults 測定結果
+     * @throws IOException 結果の書き出しに失敗した場合
+     */
+    void counted(String aPath, int aBeginLineNumber, int anEndLineNumber, CountResult aResults)
+    throws IOException;
+}
@@ -25,6 +25,29 @@ public class CountResult
         commentCount++;
     }
 
+    /**
+     * コメント文の登場する行数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementCommentCount(final int anAmount)
+    {
+        commentCount += anAmount;
+    }
+
+    /**
+     * 指定された測定結果をこの測定結果に足し込む．
+     * 足し込みは結合的かつ可換なので，並行に求めた部分的な結果をどの順にまとめてもよい．
+     *
+     * @param aResults 足し込む測定結果（この測定結果は変わらない）
+     * @return この測定結果
+     */
+    public CountResult merge(final CountResult aResults)
+    {
+        commentCount += aResults.commentCount;
+        return this;
+    }
+
     /** コメント文の登場する行数 */
     private int commentCount;
 }
@@ -77,6 +77,16 @@ extends CountResult
         eolCommentCount++;
     }
 
+    /**
+     * // 形式のコメントの数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementEolCommentCount(final int anAmount)
+    {
+        eolCommentCount += anAmount;
+    }
+
     /**
      * // 形式のコメント（ファイルの先頭に記述）の数を +1 する．
      */
@@ -85,6 +95,16 @@ extends CountResult
         eolCommentCountInHead++;
     }
 
+    /**
+     * // 形式のコメント（ファイルの先頭に記述）の数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementEolCommentCountInHead(final int anAmount)
+    {
+        eolCommentCountInHead += anAmount;
+    }
+
     /**
      * // 形式のコメントアウトの数を +1 する．
      */
@@ -92,6 +112,16 @@ extends CountResult
     {
         eolCommentOutCount++;
     }
+
+    /**
+     * // 形式のコメントアウトの数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementEolCommentOutCount(final int anAmount)
+    {
+        eolCommentOutCount += anAmount;
+    }
     
     /**
      * C 標準形式のコメントの数を +1 する．
@@ -100,6 +130,16 @@ extends CountResult
     {
         traditionalCommentCount++;
     }
+
+    /**
+     * C 標準形式のコメントの数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementTraditionalCommentCount(final int anAmount)
+    {
+        traditionalCommentCount += anAmount;
+    }
     
     /**
      * C 標準形式のコメント（ファイルの先頭に記述）の数を +1 する．
@@ -108,6 +148,16 @@ extends CountResult
     {
         traditionalCommentCountInHead++;
     }
+
+    /**
+     * C 標準形式のコメント（ファイルの先頭に記述）の数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementTraditionalCommentCountInHead(final int anAmount)
+    {
+        traditionalCommentCountInHead += anAmount;
+    }
     
     /**
      * C 標準形式のコメントアウトの数を +1 する．
@@ -117,6 +167,48 @@ extends CountResult
         traditionalCommentOutCount++;
     }
 
+    /**
+     * C 標準形式のコメントアウトの数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementTraditionalCommentOutCount(final int anAmount)
+    {
+        traditionalCommentOutCount += anAmount;
+    }
+
+    /**
+     * 指定された測定結果をこの測定結果に足し込む．
+     * Java 用の測定結果の Javadoc コメントは，C 用の測定結果では直前の C 標準形式のコメントとして足し込む
+     * （Javadoc コメントは測定部分の直前でのみ数えられ，また /* で始まる C 標準形式のコメントでもあるため）．
+     *
+     * @param aResults 足し込む測定結果（この測定結果は変わらない）
+     * @return この測定結果
+     */
+    public CountResult merge(final CountResult aResults)
+    {
+        super.merge(aResults);
+        if ( aResults instanceof CountResultForC ){
+            CountResultForC results = (CountResultForC)aResults;
+            eolCommentCount += results.getEolCommentCount();
+            traditionalCommentCount += results.getTraditionalCommentCount();
+            eolCommentCountInHead += results.getEolCommentCountInHead();
+            traditionalCommentCountInHead += results.getTraditionalCommentCountInHead();
+            eolCommentOutCount += results.getEolCommentOutCount();
+            traditionalCommentOutCount += results.getTraditionalCommentOutCount();
+        }
+        else if ( aResults instanceof CountResultForJava ){
+            CountResultForJava results = (CountResultForJava)aResults;
+            eolCommentCount += results.getEolCommentCount();
+            traditionalCommentCount += results.getTraditionalCommentCount();
+            eolCommentCountInHead += results.getEolCommentCountInHead();
+            traditionalCommentCountInHead += results.getTraditionalCommentCountInHead() + results.getJavadocCommentCount();
+            eolCommentOutCount += results.getEolCommentOutCount();
+            traditionalCommentOutCount += results.getTraditionalCommentOutCount();
+        }
+        return this;
+    }
+
     /**
      * コメント文の測定結果を文字列のかたちで返す．
      * 内容は，
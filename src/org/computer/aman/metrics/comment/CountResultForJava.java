@@ -87,6 +87,16 @@ extends CountResult
         eolCommentCount++;
     }
 
+    /**
+     * // 形式のコメントの数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementEolCommentCount(final int anAmount)
+    {
+        eolCommentCount += anAmount;
+    }
+
     /**
      * // 形式のコメント（ファイルの先頭に記述）の数を +1 する．
      */
@@ -95,6 +105,16 @@ extends CountResult
         eolCommentCountInHead++;
     }
 
+    /**
+     * // 形式のコメント（ファイルの先頭に記述）の数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementEolCommentCountInHead(final int anAmount)
+    {
+        eolCommentCountInHead += anAmount;
+    }
+
     /**
      * // 形式のコメントアウトの数を +1 する．
      */
@@ -102,6 +122,16 @@ extends CountResult
     {
         eolCommentOutCount++;
     }
+
+    /**
+     * // 形式のコメントアウトの数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementEolCommentOutCount(final int anAmount)
+    {
+        eolCommentOutCount += anAmount;
+    }
     
     /**
      * Javadoc 形式のコメントの数を +1 する．
@@ -111,6 +141,16 @@ extends CountResult
         javadocCommentCount++;
     }
 
+    /**
+     * Javadoc 形式のコメントの数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementJavadocCommentCount(final int anAmount)
+    {
+        javadocCommentCount += anAmount;
+    }
+
     /**
      * C と同じ形式のコメントの数を +1 する．
      */
@@ -118,6 +158,16 @@ extends CountResult
     {
         traditionalCommentCount++;
     }
+
+    /**
+     * C と同じ形式のコメントの数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementTraditionalCommentCount(final int anAmount)
+    {
+        traditionalCommentCount += anAmount;
+    }
     
     /**
      * C と同じ形式のコメント（ファイルの先頭に記述）の数を +1 する．
@@ -126,6 +176,16 @@ extends CountResult
     {
         traditionalCommentCountInHead++;
     }
+
+    /**
+     * C と同じ形式のコメント（ファイルの先頭に記述）の数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementTraditionalCommentCountInHead(final int anAmount)
+    {
+        traditionalCommentCountInHead += anAmount;
+    }
     
     /**
      * C と同じ形式のコメントアウトの数を +1 する．
@@ -135,6 +195,49 @@ extends CountResult
         traditionalCommentOutCount++;
     }
 
+    /**
+     * C と同じ形式のコメントアウトの数を指定された数だけ増やす．
+     *
+     * @param anAmount 増やす数
+     */
+    public void incrementTraditionalCommentOutCount(final int anAmount)
+    {
+        traditionalCommentOutCount += anAmount;
+    }
+
+    /**
+     * 指定された測定結果をこの測定結果に足し込む．
+     * C 用の測定結果も足し込める（Javadoc コメントの数は 0 として扱う）ので，
+     * Java と C が混在するディレクトリの集計にも用いることができる．
+     *
+     * @param aResults 足し込む測定結果（この測定結果は変わらない）
+     * @return この測定結果
+     */
+    public CountResult merge(final CountResult aResults)
+    {
+        super.merge(aResults);
+        if ( aResults instanceof CountResultForJava ){
+            CountResultForJava results = (CountResultForJava)aResults;
+            eolCommentCount += results.getEolCommentCount();
+            traditionalCommentCount += results.getTraditionalCommentCount();
+            eolCommentCountInHead += results.getEolCommentCountInHead();
+            traditionalCommentCountInHead += results.getTraditionalCommentCountInHead();
+            eolCommentOutCount += results.getEolCommentOutCount();
+            traditionalCommentOutCount += results.getTraditionalCommentOutCount();
+            javadocCommentCount += results.getJavadocCommentCount();
+        }
+        else if ( aResults instanceof CountResultForC ){
+            CountResultForC results = (CountResultForC)aResults;
+            eolCommentCount += results.getEolCommentCount();
+            traditionalCommentCount += results.getTraditionalCommentCount();
+            eolCommentCountInHead += results.getEolCommentCountInHead();
+            traditionalCommentCountInHead += results.getTraditionalCommentCountInHead();
+            eolCommentOutCount += results.getEolCommentOutCount();
+            traditionalCommentOutCount += results.getTraditionalCommentOutCount();
+        }
+        return this;
+    }
+
     /**
      * コメント文の測定結果を文字列のかたちで返す．
      * 内容は，
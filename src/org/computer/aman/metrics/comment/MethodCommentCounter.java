@@ -0,0 +1,542 @@
+package org.computer.aman.metrics.comment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.computer.aman.io.FilePrefetcher;
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.store.ResultColumns;
+import org.computer.aman.metrics.store.ResultJournal;
+import org.computer.aman.metrics.util.ContentDeduplicator;
+import org.computer.aman.metrics.util.MemoryBudget;
+import org.computer.aman.metrics.util.MethodFinder;
+import org.computer.aman.metrics.util.MethodRange;
+import org.computer.aman.metrics.util.PackedCodeMap;
+import org.computer.aman.metrics.util.SourceText;
+
+/**
+ * ソースファイル内のメソッド（関数）を自ら見つけ，メソッドごとにコメント文を計上するカウンタ
+ * <p>
+ * 各ファイルを一度だけ読み込んで解析し，そのコードマップから MethodFinder でメソッドの範囲を求め，
+ * 同じコードマップから作成した CommentCounter で各範囲を評価する．したがって，範囲を求めるための外部ツールは要らない．
+ * ファイルごとの評価は複数のスレッドで並行に行い，同時に評価中とするファイルの数は一定に抑える．
+ * 先読みの深さを指定した場合は，FilePrefetcher がその数のファイルを I/O スレッドで先に読み込んでおき，
+ * 評価のスレッドはディスクを待たずに解析する．
+ * MemoryBudget を指定した場合は，評価中のファイルの解析状態の見積もりの合計が予算を超えないように，
+ * 評価の終わった結果を先に渡してから次のファイルの評価を始める（予算を一つで超えるファイルは単独で評価する）．
+ * ResultJournal を指定した場合は，結果を渡し終えたファイルごとにその全メソッドの結果を記録し，
+ * 中断した実行を再開する際に記録済みのファイルを評価し直さずに済むようにする．
+ * 内容がバイト単位で同じファイル（取り込まれたライブラリや複製されたヘッダなど）は ContentDeduplicator により一度だけ解析し，
+ * 二つめ以降はそのパスで先のファイルの結果を用いる．
+ * 結果は CommentCounterCUI と同じ形式の行（「ファイルパス，開始行，終了行，測定結果」）の末尾に
+ * メソッド名を加えたものとする．
+ * <p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MethodCommentCounter
+{
+    /**
+     * 指定されたスレッド数のカウンタを生成する
+     *
+     * @param aThreadCount スレッド数（0 以下の場合はプロセッサ数）
+     * @param isOrdered ファイルの順に出力する場合は true，ファイルの評価が終わった順に出力する場合は false
+     */
+    public MethodCommentCounter(final int aThreadCount, final boolean isOrdered)
+    {
+        this(aThreadCount, isOrdered, null);
+    }
+
+    /**
+     * 指定されたスレッド数の，結果の分布も集めるカウンタを生成する
+     *
+     * @param aThreadCount スレッド数（0 以下の場合はプロセッサ数）
+     * @param isOrdered ファイルの順に出力する場合は true，ファイルの評価が終わった順に出力する場合は false
+     * @param aStatistics 結果の分布の集計先（集めない場合は null）
+     */
+    public MethodCommentCounter(final int aThreadCount, final boolean isOrdered, final CommentStatistics aStatistics)
+    {
+        this(aThreadCount, isOrdered, aStatistics, 0);
+    }
+
+    /**
+     * 指定されたスレッド数の，ファイルを先読みするカウンタを生成する
+     *
+     * @param aThreadCount スレッド数（0 以下の場合はプロセッサ数）
+     * @param isOrdered ファイルの順に出力する場合は true，ファイルの評価が終わった順に出力する場合は false
+     * @param aStatistics 結果の分布の集計先（集めない場合は null）
+     * @param aPrefetchDepth 先読みするファイルの数（0 以下の場合は先読みしない）
+     */
+    public MethodCommentCounter(final int aThreadCount, final boolean isOrdered, final CommentStatistics aStatistics, final int aPrefetchDepth)
+    {
+        this(aThreadCount, isOrdered, aStatistics, aPrefetchDepth, null);
+    }
+
+    /**
+     * 指定されたスレッド数の，評価中のファイルが使うヒープを予算内に抑えるカウンタを生成する
+     *
+     * @param aThreadCount スレッド数（0 以下の場合はプロセッサ数）
+     * @param isOrdered ファイルの順に出力する場合は true，ファイルの評価が終わった順に出力する場合は false
+     * @param aStatistics 結果の分布の集計先（集めない場合は null）
+     * @param aPrefetchDepth 先読みするファイルの数（0 以下の場合は先読みしない）
+     * @param aBudget メモリ予算（予算を設けない場合は null）
+     */
+    public MethodCommentCounter(final int aThreadCount, final boolean isOrdered, final CommentStatistics aStatistics, final int aPrefetchDepth,
+                                final MemoryBudget aBudget)
+    {
+        this(aThreadCount, isOrdered, aStatistics, aPrefetchDepth, aBudget, null);
+    }
+
+    /**
+     * 指定されたスレッド数の，結果を渡し終えたファイルを記録するカウンタを生成する
+     *
+     * @param aThreadCount スレッド数（0 以下の場合はプロセッサ数）
+     * @param isOrdered ファイルの順に出力する場合は true，ファイルの評価が終わった順に出力する場合は false
+     * @param aStatistics 結果の分布の集計先（集めない場合は null）
+     * @param aPrefetchDepth 先読みするファイルの数（0 以下の場合は先読みしない）
+     * @param aBudget メモリ予算（予算を設けない場合は null）
+     * @param aJournal 結果を渡し終えたファイルの記録先（記録しない場合は null）
+     */
+    public MethodCommentCounter(final int aThreadCount, final boolean isOrdered, final CommentStatistics aStatistics, final int aPrefetchDepth,
+                                final MemoryBudget aBudget, final ResultJournal aJournal)
+    {
+        budget = aBudget;
+        journal = aJournal;
+        threadCount = aThreadCount > 0 ? aThreadCount : Runtime.getRuntime().availableProcessors();
+        ordered = isOrdered;
+        statistics = aStatistics;
+        prefetchDepth = Math.max(aPrefetchDepth, 0);
+        deduplicator = new ContentDeduplicator<FileResults>();
+        fileMeasurer = new ContentDeduplicator.Measurer<FileResults>() {
+            public FileResults copy(final FileResults aResults, final String aPath)
+            {
+                // 同じ内容のファイルは同じメソッドと測定結果をもつので，分布には改めて加える
+                if ( statistics != null ){
+                    CommentStatistics copied = new CommentStatistics();
+                    for ( int i = 0; i < aResults.results.length; i++ ){
+                        MethodRange method = aResults.methods.get(i);
+                        copied.add(method.getBeginLineNumber(), method.getEndLineNumber(), aResults.results[i]);
+                    }
+                    statistics.merge(copied);
+                }
+                return new FileResults(aPath, aResults.methods, aResults.results);
+            }
+
+            public FileResults measure(final String aPath, final ByteBuffer aContents)
+            throws IOException, NotSupportedSourceFileExeption
+            {
+                return MethodCommentCounter.measure(aPath, aContents, statistics);
+            }
+        };
+    }
+
+    /**
+     * 内容の同じファイルの解析をどれだけ省いたかを保持するものを返す．
+     *
+     * @return 評価したファイルの内容の登録簿
+     */
+    public ContentDeduplicator<?> getDeduplicator()
+    {
+        return deduplicator;
+    }
+
+    /**
+     * 与えられたすべてのソースファイルについて，メソッドごとのコメント文の計上結果を出力する．
+     *
+     * @param aPathIterator ソースファイルのパス
+     * @param anOutput 結果の出力先
+     * @throws IOException ソースファイルの読み出しに失敗した場合
+     * @throws NotSupportedSourceFileExeption サポートされていない種類のソースファイルがあった場合
+     */
+    public void run(final Iterator<String> aPathIterator, final PrintStream anOutput)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        run(aPathIterator, anOutput, null);
+    }
+
+    /**
+     * 与えられたすべてのソースファイルについて，メソッドごとのコメント文の計上結果を受け取り手へ引き渡す．
+     * 結果は呼び出し元のスレッドで引き渡す（メソッド名は引き渡さない）．
+     *
+     * @param aPathIterator ソースファイルのパス
+     * @param aListener 結果の受け取り手
+     * @throws IOException ソースファイルの読み出し，または結果の書き出しに失敗した場合
+     * @throws NotSupportedSourceFileExeption サポートされていない種類のソースファイルがあった場合
+     */
+    public void run(final Iterator<String> aPathIterator, final CountListener aListener)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        run(aPathIterator, null, aListener);
+    }
+
+    /**
+     * 与えられたすべてのソースファイルについて，メソッドごとのコメント文の計上結果を出力先または受け取り手へ渡す．
+     *
+     * @param aPathIterator ソースファイルのパス
+     * @param anOutput 結果の出力先（受け取り手へ渡す場合は null）
+     * @param aListener 結果の受け取り手（出力先へ書き出す場合は null）
+     * @throws IOException ソースファイルの読み出し，または結果の書き出しに失敗した場合
+     * @throws NotSupportedSourceFileExeption サポートされていない種類のソースファイルがあった場合
+     */
+    private void run(final Iterator<String> aPathIterator, final PrintStream anOutput, final CountListener aListener)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        final FilePrefetcher PREFETCHER = prefetchDepth > 0 ? new FilePrefetcher(aPathIterator, prefetchDepth) : null;
+        Iterator<?> source = PREFETCHER != null ? PREFETCHER : aPathIterator;
+        final int WINDOW = threadCount * IN_FLIGHT_PER_THREAD;
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try{
+            // 同時に評価中とするファイルの数と予算に空きがなければ，評価の終わった結果を先に渡して予約を解く
+            if ( ordered ){
+                ArrayDeque<Future<FileResults>> inFlight = new ArrayDeque<Future<FileResults>>(WINDOW);
+                while ( source.hasNext() ){
+                    Task task = nextTask(aPathIterator, PREFETCHER);
+                    while ( inFlight.size() >= WINDOW || !reserve(task.reservation) ){
+                        deliver(take(inFlight.poll()), anOutput, aListener);
+                    }
+                    inFlight.add(pool.submit(task));
+                }
+                while ( !inFlight.isEmpty() ){
+                    deliver(take(inFlight.poll()), anOutput, aListener);
+                }
+            }
+            else{
+                CompletionService<FileResults> service = new ExecutorCompletionService<FileResults>(pool);
+                int inFlight = 0;
+                while ( source.hasNext() ){
+                    Task task = nextTask(aPathIterator, PREFETCHER);
+                    for ( ; inFlight >= WINDOW || !reserve(task.reservation); inFlight-- ){
+                        deliver(take(service), anOutput, aListener);
+                    }
+                    service.submit(task);
+                    inFlight++;
+                }
+                for ( ; inFlight > 0; inFlight-- ){
+                    deliver(take(service), anOutput, aListener);
+                }
+            }
+        }
+        finally{
+            pool.shutdownNow();
+            if ( PREFETCHER != null ){
+                PREFETCHER.close();
+            }
+        }
+    }
+
+    /**
+     * 一つのメソッドの評価結果を，出力の一行（改行を含む）として書き加える．
+     *
+     * @param aPath ソースファイルのパス
+     * @param aBeginLineNumber メソッドの開始行
+     * @param anEndLineNumber メソッドの終了行
+     * @param aResults 測定結果
+     * @param aName メソッド名
+     * @param aBuffer 書き加える先
+     */
+    static void append(final String aPath, final int aBeginLineNumber, final int anEndLineNumber, final CountResult aResults,
+                       final String aName, final StringBuilder aBuffer)
+    {
+        aBuffer.append(aPath).append('\t').append(aBeginLineNumber).append('\t').append(anEndLineNumber)
+               .append('\t').append(aResults).append('\t').append(aName).append(LINE_SEPARATOR);
+    }
+
+    /**
+     * 一つのファイルの予約を解き，その評価結果を出力先または受け取り手へ渡す．
+     * 記録先があれば，渡し終えた結果をそこへ記録する．
+     *
+     * @param aResults ファイルの評価結果
+     * @param anOutput 結果の出力先（受け取り手へ渡す場合は null）
+     * @param aListener 結果の受け取り手（出力先へ書き出す場合は null）
+     * @throws IOException 結果の書き出しに失敗した場合
+     */
+    private void deliver(final FileResults aResults, final PrintStream anOutput, final CountListener aListener)
+    throws IOException
+    {
+        if ( budget != null ){
+            budget.release(aResults.reservation);
+        }
+        if ( anOutput == null ){
+            for ( int i = 0; i < aResults.methods.size(); i++ ){
+                MethodRange method = aResults.methods.get(i);
+                aListener.counted(aResults.path, method.getBeginLineNumber(), method.getEndLineNumber(), aResults.results[i]);
+            }
+        }
+        else{
+            StringBuilder buffer = new StringBuilder();
+            for ( int i = 0; i < aResults.methods.size(); i++ ){
+                MethodRange method = aResults.methods.get(i);
+                append(aResults.path, method.getBeginLineNumber(), method.getEndLineNumber(), aResults.results[i], method.getName(), buffer);
+            }
+            anOutput.print(buffer);
+        }
+        if ( journal != null ){
+            // メソッドのないファイルも，評価し終えたことを記録する
+            int[][] rows = new int[aResults.methods.size()][];
+            String[] names = new String[rows.length];
+            for ( int i = 0; i < rows.length; i++ ){
+                MethodRange method = aResults.methods.get(i);
+                rows[i] = ResultColumns.toValues(method.getBeginLineNumber(), method.getEndLineNumber(), aResults.results[i]);
+                names[i] = method.getName();
+            }
+            journal.write(aResults.path, rows, names);
+        }
+    }
+
+    /**
+     * 一つのファイルの全メソッドを評価する．
+     *
+     * @param aPath ソースファイルのパス
+     * @param aBytes 先読みしたファイルの内容（読み込んでいない場合は null）
+     * @param aStatistics 結果の分布の集計先（集めない場合は null）
+     * @return メソッドとその評価結果
+     * @throws IOException ソースファイルの読み出しに失敗した場合
+     * @throws NotSupportedSourceFileExeption サポートされていない種類のソースファイルの場合
+     */
+    static FileResults measure(final String aPath, final ByteBuffer aBytes, final CommentStatistics aStatistics)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        SourceText text = SourceText.read(new SourceFile(aPath), aBytes);
+        PackedCodeMap codeMap = PackedCodeMap.pack(text.createCodeMap());
+        CommentCounter counter = CommentCounterFactory.create(text.getSourceFile(), codeMap);
+
+        ArrayList<MethodRange> methods = MethodFinder.find(text, codeMap);
+        CountResult[] results = new CountResult[methods.size()];
+        CommentStatistics statistics = aStatistics != null ? new CommentStatistics() : null;
+        for ( int i = 0; i < results.length; i++ ){
+            int begin = methods.get(i).getBeginLineNumber();
+            int end = methods.get(i).getEndLineNumber();
+            results[i] = counter.measure(begin, end);
+            if ( statistics != null ){
+                statistics.add(begin, end, results[i]);
+            }
+        }
+        if ( statistics != null ){
+            aStatistics.merge(statistics);
+        }
+        return new FileResults(aPath, methods, results);
+    }
+
+    /**
+     * 次のファイルを評価するタスクを生成する
+     *
+     * @param aPathIterator ソースファイルのパス
+     * @param aPrefetcher パスのファイルを先読みしている FilePrefetcher（先読みしない場合は null）
+     * @return 評価のタスク
+     */
+    private Task nextTask(final Iterator<String> aPathIterator, final FilePrefetcher aPrefetcher)
+    {
+        if ( aPrefetcher == null ){
+            final String PATH = aPathIterator.next();
+            return new Task(PATH, null) {
+                FileResults measure()
+                throws IOException, NotSupportedSourceFileExeption
+                {
+                    return deduplicator.measure(PATH, null, fileMeasurer);
+                }
+            };
+        }
+        // 評価が終わるまで SourceText が内容を参照するので，バッファはその後で返す
+        final FilePrefetcher.Contents CONTENTS = aPrefetcher.next();
+        return new Task(CONTENTS.getPath(), CONTENTS) {
+            FileResults measure()
+            throws IOException, NotSupportedSourceFileExeption
+            {
+                try{
+                    return deduplicator.measure(CONTENTS.getPath(), CONTENTS.getBytes(), fileMeasurer);
+                }
+                finally{
+                    CONTENTS.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * メモリ予算があれば，そこからファイルの解析状態の分を予約する．
+     *
+     * @param aSize 予約するバイト数
+     * @return 予約できた（または予算がない）場合は true
+     */
+    private boolean reserve(final long aSize)
+    {
+        return budget == null || budget.tryAcquire(aSize);
+    }
+
+    /**
+     * 次に終わったタスクを待ってその結果を返す．
+     *
+     * @param aService タスクの完了サービス
+     * @return タスクの結果
+     */
+    private static FileResults take(final CompletionService<FileResults> aService)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        try{
+            return take(aService.take());
+        }
+        catch ( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for measurement results");
+        }
+    }
+
+    /**
+     * 指定されたタスクの終了を待ってその結果を返す．タスクが失敗した場合はその例外を投げ直す．
+     *
+     * @param aFuture タスク
+     * @return タスクの結果
+     */
+    private static FileResults take(final Future<FileResults> aFuture)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        try{
+            return aFuture.get();
+        }
+        catch ( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for measurement results");
+        }
+        catch ( ExecutionException e ){
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ){
+                throw (IOException)cause;
+            }
+            if ( cause instanceof NotSupportedSourceFileExeption ){
+                throw (NotSupportedSourceFileExeption)cause;
+            }
+            if ( cause instanceof RuntimeException ){
+                throw (RuntimeException)cause;
+            }
+            if ( cause instanceof Error ){
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 一つのファイルのメソッドとその評価結果
+     */
+    static class FileResults
+    {
+        /**
+         * 評価結果を生成する
+         *
+         * @param aPath ソースファイルのパス
+         * @param aMethods メソッド
+         * @param aResults メソッドごとの測定結果
+         */
+        FileResults(final String aPath, final ArrayList<MethodRange> aMethods, final CountResult[] aResults)
+        {
+            path = aPath;
+            methods = aMethods;
+            results = aResults;
+        }
+
+        /** メソッド */
+        private final ArrayList<MethodRange> methods;
+
+        /** ソースファイルのパス */
+        private final String path;
+
+        /** メモリ予算から予約したバイト数 */
+        private long reservation;
+
+        /** メソッドごとの測定結果 */
+        private final CountResult[] results;
+    }
+
+    /**
+     * 一つのファイルを評価するタスク
+     */
+    private abstract class Task
+    implements Callable<FileResults>
+    {
+        /**
+         * 指定されたファイルのタスクを生成し，メモリ予算があればファイルの解析状態の大きさを見積もる
+         *
+         * @param aPath ソースファイルのパス
+         * @param aContents 先読みしたファイル（先読みしていない場合は null）
+         */
+        Task(final String aPath, final FilePrefetcher.Contents aContents)
+        {
+            long size = 0;
+            if ( budget != null ){
+                ByteBuffer bytes = null;
+                try{
+                    bytes = aContents != null ? aContents.getBytes() : null;
+                }
+                catch ( IOException e ){
+                    // 評価の際に報告される
+                }
+                size = MemoryBudget.estimateParseState(bytes != null ? bytes.remaining() : new File(aPath).length());
+            }
+            reservation = size;
+        }
+
+        public FileResults call()
+        throws IOException, NotSupportedSourceFileExeption
+        {
+            FileResults results = measure();
+            results.reservation = reservation;
+            return results;
+        }
+
+        /**
+         * ファイルを評価する．
+         *
+         * @return メソッドとその評価結果
+         * @throws IOException ソースファイルの読み出しに失敗した場合
+         * @throws NotSupportedSourceFileExeption サポートされていない種類のソースファイルの場合
+         */
+        abstract FileResults measure()
+        throws IOException, NotSupportedSourceFileExeption;
+
+        /** メモリ予算から予約するバイト数 */
+        private final long reservation;
+    }
+
+    /** スレッドごとに同時に評価中とするファイルの数 */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    /** 行の区切り */
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /** 評価中のファイルが使うヒープの予算（予算を設けない場合は null） */
+    private final MemoryBudget budget;
+
+    /** 評価したファイルの内容の登録簿 */
+    private final ContentDeduplicator<FileResults> deduplicator;
+
+    /** ファイルの評価と，その結果の同じ内容のファイルへの付け替え */
+    private final ContentDeduplicator.Measurer<FileResults> fileMeasurer;
+
+    /** 結果を渡し終えたファイルの記録先（記録しない場合は null） */
+    private final ResultJournal journal;
+
+    /** ファイルの順に出力する場合は true */
+    private final boolean ordered;
+
+    /** 先読みするファイルの数（先読みしない場合は 0） */
+    private final int prefetchDepth;
+
+    /** 結果の分布の集計先（集めない場合は null） */
+    private final CommentStatistics statistics;
+
+    /** スレッド数 */
+    private final int threadCount;
+}
@@ -0,0 +1,200 @@
+package org.computer.aman.metrics.comment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+
+/**
+ * 解析済みのソースファイル（CommentCounter や CommentExtractor）をパスごとに保持する LRU キャッシュ
+ * <p>
+ * 保持するファイルの数と，保持するファイルのサイズの合計とに上限を設け，
+ * いずれかを超えた場合は最も長く使われていないものから捨てる．
+ * 解析済みのオブジェクトが占めるメモリはソースファイルのサイズのおおむね数倍となる．
+ * 長く動き続けるプロセスでは，{@link #setRevalidating(boolean)} により，取り出すたびにソースファイルの
+ * 更新時刻とサイズを確かめ，解析した後に変更されたものは解析し直すようにできる．
+ * <p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ParsedFileCache<V>
+{
+    /**
+     * 指定された上限をもつキャッシュを生成する
+     *
+     * @param aMaxEntryCount 保持するファイルの数の上限（0 以下の場合は上限なし）
+     * @param aMaxSourceBytes 保持するファイルのサイズの合計の上限（バイト単位，0 以下の場合は上限なし）
+     */
+    public ParsedFileCache(final int aMaxEntryCount, final long aMaxSourceBytes)
+    {
+        maxEntryCount = aMaxEntryCount;
+        maxSourceBytes = aMaxSourceBytes;
+        entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+    }
+
+    /**
+     * 指定されたパスの解析済みオブジェクトを返す．
+     * キャッシュにない場合は aLoader で解析し，キャッシュに加える．
+     *
+     * @param aPath ソースファイルのパス
+     * @param aLoader ソースファイルを解析するもの
+     * @return 解析済みのオブジェクト
+     * @throws IOException ソースファイルの読み出しに失敗した場合
+     * @throws NotSupportedSourceFileExeption サポートされていない種類のソースファイルの場合
+     */
+    public V get(final String aPath, final Loader<V> aLoader)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        File file = new File(aPath);
+        Entry<V> entry = entries.get(aPath);
+        if ( entry != null ){
+            if ( !revalidating || (entry.lastModified == file.lastModified() && entry.sourceBytes == file.length()) ){
+                hitCount++;
+                return entry.value;
+            }
+            // 解析した後に変更されたものは捨てる
+            entries.remove(aPath);
+            sourceBytes -= entry.sourceBytes;
+        }
+
+        missCount++;
+        // 解析の途中で変更された場合に次の取り出しで気づけるよう，更新時刻は解析の前に調べる
+        long lastModified = file.lastModified();
+        entry = new Entry<V>(aLoader.load(aPath), file.length(), lastModified);
+        entries.put(aPath, entry);
+        sourceBytes += entry.sourceBytes;
+
+        // 追加したばかりのものは捨てない
+        for ( Iterator<Entry<V>> itr = entries.values().iterator(); entries.size() > 1 && isOverLimit(); ){
+            sourceBytes -= itr.next().sourceBytes;
+            itr.remove();
+            evictionCount++;
+        }
+        return entry.value;
+    }
+
+    /**
+     * キャッシュから捨てられた回数を返す．
+     *
+     * @return キャッシュから捨てられた回数
+     */
+    public int getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    /**
+     * キャッシュにあった回数を返す．
+     *
+     * @return キャッシュにあった回数
+     */
+    public int getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * キャッシュになく，解析を行った回数を返す．
+     *
+     * @return 解析を行った回数
+     */
+    public int getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * 取り出すたびに，ソースファイルが解析した後に変更されていないかを確かめるかどうかを設定する．
+     *
+     * @param isRevalidating 確かめる場合は true（既定値は false）
+     */
+    public void setRevalidating(final boolean isRevalidating)
+    {
+        revalidating = isRevalidating;
+    }
+
+    /**
+     * キャッシュの利用状況を文字列のかたちで返す．
+     *
+     * @return キャッシュの利用状況
+     */
+    public String toString()
+    {
+        return "Cache hits = " + hitCount + ", Cache misses = " + missCount + ", Cache evictions = " + evictionCount;
+    }
+
+    /**
+     * 上限を超えているかどうかを返す．
+     *
+     * @return 上限を超えていれば true
+     */
+    private boolean isOverLimit()
+    {
+        return ( maxEntryCount > 0 && entries.size() > maxEntryCount ) || ( maxSourceBytes > 0 && sourceBytes > maxSourceBytes );
+    }
+
+    /**
+     * ソースファイルを解析し，キャッシュに保持するオブジェクトを生成するもの
+     */
+    public interface Loader<V>
+    {
+        /**
+         * 指定されたソースファイルを解析する．
+         *
+         * @param aPath ソースファイルのパス
+         * @return 解析済みのオブジェクト
+         * @throws IOException ソースファイルの読み出しに失敗した場合
+         * @throws NotSupportedSourceFileExeption サポートされていない種類のソースファイルの場合
+         */
+        V load(String aPath)
+        throws IOException, NotSupportedSourceFileExeption;
+    }
+
+    /**
+     * キャッシュの要素（解析済みのオブジェクトと，そのソースファイルのサイズと更新時刻）
+     */
+    private static class Entry<V>
+    {
+        Entry(final V aValue, final long aSourceBytes, final long aLastModified)
+        {
+            value = aValue;
+            sourceBytes = aSourceBytes;
+            lastModified = aLastModified;
+        }
+
+        /** 解析した時点のソースファイルの更新時刻 */
+        private final long lastModified;
+
+        /** ソースファイルのサイズ（バイト単位） */
+        private final long sourceBytes;
+
+        /** 解析済みのオブジェクト */
+        private final V value;
+    }
+
+    /** パスごとの要素（最も長く使われていないものが先頭） */
+    private final LinkedHashMap<String, Entry<V>> entries;
+
+    /** キャッシュから捨てられた回数 */
+    private int evictionCount;
+
+    /** キャッシュにあった回数 */
+    private int hitCount;
+
+    /** 保持するファイルの数の上限 */
+    private final int maxEntryCount;
+
+    /** 保持するファイルのサイズの合計の上限 */
+    private final long maxSourceBytes;
+
+    /** 解析を行った回数 */
+    private int missCount;
+
+    /** 取り出すたびにソースファイルの変更を確かめる場合は true */
+    private boolean revalidating;
+
+    /** 保持しているファイルのサイズの合計 */
+    private long sourceBytes;
+}
@@ -0,0 +1,174 @@
+package org.computer.aman.metrics.multi;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.comment.CommentCounter;
+import org.computer.aman.metrics.comment.CommentCounterFactory;
+import org.computer.aman.metrics.comment.CommentExtractor;
+import org.computer.aman.metrics.comment.CommentExtractorFactory;
+import org.computer.aman.metrics.comment.CountResult;
+import org.computer.aman.metrics.size.loc.CountedLOC;
+import org.computer.aman.metrics.util.PackedCodeMap;
+import org.computer.aman.metrics.util.SourceText;
+
+/**
+ * The metrics of a source file computed from a single reading and a single code map.<br>
+ * The file is read and parsed once when the object is created; the LOC, the comment counter
+ * and the comment extractor are then derived from the same lines and the same code map
+ * on the first request, so asking for several metrics does not read or parse the file again.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class FileMetrics
+{
+    /**
+     * Reads and parses the specified source file.
+     *
+     * @param aPath the path of the source file
+     * @throws IOException if the file could not be read
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     */
+    public FileMetrics(final String aPath)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        text = SourceText.read(new SourceFile(aPath));
+        codeMap = PackedCodeMap.pack(text.createCodeMap());
+    }
+
+    /**
+     * Returns the comment counter of the file.
+     *
+     * @return the comment counter sharing the code map of this object
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     */
+    public CommentCounter getCommentCounter()
+    throws NotSupportedSourceFileExeption
+    {
+        if ( counter == null ){
+            counter = CommentCounterFactory.create(text.getSourceFile(), codeMap);
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the comment extractor of the file.
+     *
+     * @return the comment extractor sharing the lines and the code map of this object
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     */
+    public CommentExtractor getCommentExtractor()
+    throws NotSupportedSourceFileExeption
+    {
+        if ( extractor == null ){
+            extractor = CommentExtractorFactory.create(text, codeMap);
+        }
+        return extractor;
+    }
+
+    /**
+     * Returns the comment counts of the whole file.
+     * No line precedes the first line, so the counts of the Javadoc and the head comments are always 0;
+     * a Javadoc comment of the file is counted as a traditional comment.
+     *
+     * @return the comment counts of all the lines (as {@link CommentCounter#measure(int, int)} from the first line to the last)
+     * @throws IOException if the file could not be read
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     */
+    public CountResult getCommentTotal()
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        return getCommentCounter().measure(1, codeMap.getLineCount());
+    }
+
+    /**
+     * Returns the LOC, the total line count and the blank line count of the file.
+     *
+     * @return the LOC measurement results (without the lines of the code)
+     */
+    public CountedLOC getLOC()
+    {
+        if ( loc == null ){
+            int count = 0;
+            int blank = 0;
+            final int LINE_COUNT = codeMap.getLineCount();
+            for ( int i = 1; i <= LINE_COUNT; i++ ){
+                if ( codeMap.getCount(i, PackedCodeMap.CODE_CLASS) > 0 ){
+                    count++;
+                }
+                else if ( codeMap.getCommentCount(i) == 0 ){
+                    blank++;
+                }
+            }
+            loc = new CountedLOC(text.getSourceFile(), count, text.getLineCount(), blank);
+        }
+        return loc;
+    }
+
+    /**
+     * Returns the package declared by the file.
+     * Only the code before the first ';' or '{' is looked at, so the comments are ignored.
+     *
+     * @return the name of the package, or null if the file is not a Java file or declares no package
+     */
+    public String getPackageName()
+    {
+        if ( !text.getSourceFile().isJavaFile() ){
+            return null;
+        }
+        StringBuilder code = new StringBuilder();
+        final int LINE_COUNT = codeMap.getLineCount();
+        for ( int i = 1; i <= LINE_COUNT; i++ ){
+            if ( codeMap.getCount(i, PackedCodeMap.CODE_CLASS) == 0 ){
+                continue;
+            }
+            String line = text.getLine(i);
+            final int LENGTH = Math.min(line.length(), codeMap.getLength(i));
+            for ( int j = 0; j < LENGTH; j++ ){
+                if ( codeMap.getCharacterClass(i, j) != PackedCodeMap.CODE_CLASS ){
+                    code.append(' ');
+                    continue;
+                }
+                char c = line.charAt(j);
+                if ( c == ';' || c == '{' ){
+                    Matcher matcher = PACKAGE_DECLARATION.matcher(code);
+                    return matcher.find() ? matcher.group(1).replaceAll("\\s", "") : null;
+                }
+                code.append(c);
+            }
+            code.append(' ');
+        }
+        return null;
+    }
+
+    /**
+     * Returns the path of the file.
+     *
+     * @return the path of the file
+     */
+    public String getPath()
+    {
+        return text.getSourceFile().getPath();
+    }
+
+    /** The package declaration (possibly preceded by annotations) */
+    private static final Pattern PACKAGE_DECLARATION = Pattern.compile("(?:^|\\s)package\\s+([\\w$]+(?:\\s*\\.\\s*[\\w$]+)*)\\s*$");
+
+    /** The code map of the file, shared by all the metrics */
+    private final PackedCodeMap codeMap;
+
+    /** The comment counter, created on the first request */
+    private CommentCounter counter;
+
+    /** The comment extractor, created on the first request */
+    private CommentExtractor extractor;
+
+    /** The LOC measurement results, computed on the first request */
+    private CountedLOC loc;
+
+    /** The lines of the file */
+    private final SourceText text;
+}
@@ -0,0 +1,147 @@
+package org.computer.aman.metrics.multi;
+
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.metrics.comment.CommentLine;
+import org.computer.aman.metrics.comment.CommentLineWriter;
+import org.computer.aman.metrics.size.loc.LOC;
+
+/**
+ * A CUI application computing LOC, comment counts and extracted comments in one pass per file.<br>
+ * It reads lines of the form "file_path" or "file_path TAB begin TAB end" from the standard input,
+ * as {@link org.computer.aman.metrics.comment.CommentCounterCUI} does, and each file is read
+ * and parsed only once however many metrics are printed for it.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MultiMetricCUI
+{
+    public static void main(String[] args)
+    throws SecurityException, NotSupportedSourceFileExeption, IOException
+    {
+        System.err.println("MultiMetric version 0.1");
+        System.err.println("Copyright (C) 2008-2019 Hirohisa AMAN <aman@computer.org>");
+        printSeparator();
+
+        // (-m option) the metrics to print
+        boolean printingLOC = true;
+        boolean printingCount = true;
+        boolean printingComment = true;
+        if ( args.length == 2 && args[0].equals("-m") ){
+            printingLOC = false;
+            printingCount = false;
+            printingComment = false;
+            String[] metrics = args[1].split(",");
+            for ( int i = 0; i < metrics.length; i++ ){
+                if ( metrics[i].equals(LOC_METRIC) ){
+                    printingLOC = true;
+                }
+                else if ( metrics[i].equals(COUNT_METRIC) ){
+                    printingCount = true;
+                }
+                else if ( metrics[i].equals(COMMENT_METRIC) ){
+                    printingComment = true;
+                }
+                else{
+                    printUsage();
+                    return;
+                }
+            }
+        }
+        else if ( args.length > 0 ){
+            printUsage();
+            return;
+        }
+
+        // The same path usually occurs on several consecutive lines, so a file is read again
+        // only when its path differs from that of the previous line.
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        Set<String> printedPaths = new HashSet<String>();
+        String line = null;
+        FileMetrics metrics = null;
+        // the comments are copied from the bytes of the source files into the output buffer
+        CommentLineWriter writer = new CommentLineWriter(new FileOutputStream(FileDescriptor.out));
+        try{
+            while ( (line = reader.readLine()) != null ){
+                String[] fields = line.split("\t");
+                String path = fields[0];
+                if ( metrics == null || !path.equals(metrics.getPath()) ){
+                    metrics = new FileMetrics(path);
+                }
+
+                if ( printingLOC && printedPaths.add(path) ){
+                    LOC loc = metrics.getLOC();
+                    writer.writeLine("LOC\t" + path + "\t" + loc.getLOC() + "\t" + loc.getTotalLineCount() + "\t" + loc.getBlankCount());
+                }
+                if ( fields.length < 3 ){
+                    continue;
+                }
+                int begin = Integer.parseInt(fields[1]);
+                int end = Integer.parseInt(fields[2]);
+                if ( printingCount ){
+                    writer.writeLine("COUNT\t" + path + "\t" + begin + "\t" + end + "\t" + metrics.getCommentCounter().measure(begin, end));
+                }
+                if ( printingComment ){
+                    ArrayList<CommentLine> list = metrics.getCommentExtractor().parse(begin, end);
+                    byte[] prefix = ("COMMENT\t" + path + "\t" + begin + "\t" + end + "\t").getBytes();
+                    for ( Iterator<CommentLine> iterator = list.iterator(); iterator.hasNext(); ){
+                        writer.write(prefix, iterator.next());
+                    }
+                }
+            }
+        }
+        finally{
+            writer.flush();
+        }
+        printSeparator();
+    }
+
+    /**
+     * Prints a separator line through the standard error output.
+     */
+    private static void printSeparator()
+    {
+        final int LENGTH = 64;
+        for ( int i = 0; i < LENGTH; i++ ){
+            System.err.print("-");
+        }
+        System.err.println();
+    }
+
+    /**
+     * Prints the usage through the standard error output.
+     */
+    private static void printUsage()
+    {
+        System.err.println("java -cp LOCCounter.jar " + MultiMetricCUI.class.getName() + " [-m metric,...] < input");
+        System.err.println("metric : ");
+        System.err.println("    loc : LOC, the total line count and the total blank line count of each file");
+        System.err.println("  count : the comment counts in each range (as CommentCounterCUI)");
+        System.err.println("comment : the comments in each range (as CommentExtractorCUI)");
+        System.err.println("(all the metrics are printed without -m)");
+        System.err.println();
+        System.err.println("Each input line is either \"file_path\" or \"file_path<TAB>begin<TAB>end\".");
+        System.err.println("The printing format is as below:");
+        System.err.println("  LOC<TAB>file_path<TAB>LOC<TAB>total_line_count<TAB>total_blank_line_count");
+        System.err.println("  COUNT<TAB>file_path<TAB>begin<TAB>end<TAB>comment_counts");
+        System.err.println("  COMMENT<TAB>file_path<TAB>begin<TAB>end<TAB>comment_line");
+    }
+
+    /** The name of the comment extraction metric */
+    private static final String COMMENT_METRIC = "comment";
+
+    /** The name of the comment count metric */
+    private static final String COUNT_METRIC = "count";
+
+    /** The name of the LOC metric */
+    private static final String LOC_METRIC = "loc";
+}
@@ -0,0 +1,187 @@
+package org.computer.aman.metrics.multi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.metrics.comment.CountResultForJava;
+import org.computer.aman.metrics.size.loc.LOCTotal;
+
+/**
+ * The LOC and comment totals of the directories and the Java packages of a source tree.<br>
+ * A file is added to its own directory and to every ancestor directory up to the root of the tree,
+ * so the total of a directory covers its whole subtree; a Java file is also added to the package it declares.
+ * Each worker of a parallel measurement can fill its own rollup without any lock, and the rollups are
+ * {@linkplain #merge(Rollup) merged} at the end in any order, since merging only adds the counts.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class Rollup
+{
+    /**
+     * Creates an empty rollup of the specified tree.
+     *
+     * @param aRootPath the path of the root directory (or the single source file) of the tree
+     */
+    public Rollup(final String aRootPath)
+    {
+        rootPath = new File(aRootPath).getPath();
+        directories = new TreeMap<String, Total>();
+        packages = new TreeMap<String, Total>();
+    }
+
+    /**
+     * Adds the metrics of a source file in the tree.
+     *
+     * @param aMetrics the metrics of the file
+     * @throws IOException if the file could not be read
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     */
+    public void add(final FileMetrics aMetrics)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        Total total = new Total();
+        total.loc.add(aMetrics.getLOC());
+        total.comments.merge(aMetrics.getCommentTotal());
+
+        String directory = new File(aMetrics.getPath()).getParent();
+        if ( directory == null ){
+            directory = ".";
+        }
+        addTo(directories, directory, total);
+        while ( directory.startsWith(rootPath) && !directory.equals(rootPath) ){
+            directory = new File(directory).getParent();
+            if ( directory == null ){
+                break;
+            }
+            addTo(directories, directory, total);
+        }
+
+        String packageName = aMetrics.getPackageName();
+        if ( packageName != null ){
+            addTo(packages, packageName, total);
+        }
+    }
+
+    /**
+     * Adds the totals of another rollup.
+     *
+     * @param aRollup the rollup to add (it is not changed)
+     * @return this rollup
+     */
+    public Rollup merge(final Rollup aRollup)
+    {
+        mergeInto(directories, aRollup.directories);
+        mergeInto(packages, aRollup.packages);
+        return this;
+    }
+
+    /**
+     * Prints the totals in the order of the names.
+     * Each line is "DIR" or "PACKAGE", the name, the file count, LOC, the total line count,
+     * the total blank line count, the comment line count, the EOL comment count, the traditional comment count,
+     * the EOL comment-out count and the traditional comment-out count, separated by tabs.
+     * The counts of the Javadoc and the head comments are not printed: a total is measured over whole files,
+     * so there is no comment preceding the range measured and they are always 0.
+     *
+     * @param anOutput the output
+     * @param isPrintingDirectories true if the totals of the directories are printed
+     * @param isPrintingPackages true if the totals of the packages are printed
+     */
+    public void print(final PrintStream anOutput, final boolean isPrintingDirectories, final boolean isPrintingPackages)
+    {
+        if ( isPrintingDirectories ){
+            print(anOutput, "DIR", directories);
+        }
+        if ( isPrintingPackages ){
+            print(anOutput, "PACKAGE", packages);
+        }
+    }
+
+    /**
+     * Adds a total to the entry of the specified name.
+     *
+     * @param aTotals the totals
+     * @param aName the name of the directory or the package
+     * @param aTotal the total to add
+     */
+    private static void addTo(final Map<String, Total> aTotals, final String aName, final Total aTotal)
+    {
+        Total total = aTotals.get(aName);
+        if ( total == null ){
+            total = new Total();
+            aTotals.put(aName, total);
+        }
+        total.merge(aTotal);
+    }
+
+    /**
+     * Adds all the entries of the other totals.
+     *
+     * @param aTotals the totals added to
+     * @param anOtherTotals the totals to add
+     */
+    private static void mergeInto(final Map<String, Total> aTotals, final Map<String, Total> anOtherTotals)
+    {
+        for ( Iterator<Map.Entry<String, Total>> itr = anOtherTotals.entrySet().iterator(); itr.hasNext(); ){
+            Map.Entry<String, Total> entry = itr.next();
+            addTo(aTotals, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Prints the entries of the totals.
+     *
+     * @param anOutput the output
+     * @param aKind the kind of the entries ("DIR" or "PACKAGE")
+     * @param aTotals the totals
+     */
+    private static void print(final PrintStream anOutput, final String aKind, final Map<String, Total> aTotals)
+    {
+        for ( Iterator<Map.Entry<String, Total>> itr = aTotals.entrySet().iterator(); itr.hasNext(); ){
+            Map.Entry<String, Total> entry = itr.next();
+            Total total = entry.getValue();
+            CountResultForJava comments = total.comments;
+            anOutput.println(aKind + "\t" + entry.getKey() + "\t" + total.loc + "\t" +
+                             comments.getCommentCount() + "\t" +
+                             comments.getEolCommentCount() + "\t" + comments.getTraditionalCommentCount() + "\t" +
+                             comments.getEolCommentOutCount() + "\t" + comments.getTraditionalCommentOutCount());
+        }
+    }
+
+    /**
+     * The LOC and comment totals of a directory or a package.
+     */
+    private static class Total
+    {
+        /**
+         * Adds another total.
+         *
+         * @param aTotal the total to add
+         */
+        void merge(final Total aTotal)
+        {
+            loc.merge(aTotal.loc);
+            comments.merge(aTotal.comments);
+        }
+
+        /** The comment counts (those of C files are added as well) */
+        private final CountResultForJava comments = new CountResultForJava();
+
+        /** The LOC totals */
+        private final LOCTotal loc = new LOCTotal();
+    }
+
+    /** The totals of the directories */
+    private final TreeMap<String, Total> directories;
+
+    /** The totals of the Java packages */
+    private final TreeMap<String, Total> packages;
+
+    /** The path of the root of the tree */
+    private final String rootPath;
+}
@@ -0,0 +1,186 @@
+package org.computer.aman.metrics.multi;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.computer.aman.io.SourceFileWalker;
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+
+/**
+ * A CUI application printing the LOC and comment totals of every directory and every Java package of a tree.<br>
+ * Each worker thread takes source files from the walk, reads and parses each of them once,
+ * and adds it to a rollup of its own; the rollups of the workers are merged when the walk ends.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class RollupCUI
+{
+    public static void main(String[] args)
+    throws SecurityException, NotSupportedSourceFileExeption, IOException
+    {
+        System.err.println("Rollup version 0.1");
+        System.err.println("Copyright (C) 2008-2019 Hirohisa AMAN <aman@computer.org>");
+        printSeparator();
+
+        // (-d / -p options) prints only the directories or only the packages
+        boolean printingDirectories = true;
+        boolean printingPackages = true;
+        // (-j option) the number of measurement threads
+        int threadCount = 0;
+        String target = null;
+        for ( int i = 0; i < args.length; i++ ){
+            if ( args[i].equals("-d") ){
+                printingPackages = false;
+            }
+            else if ( args[i].equals("-p") ){
+                printingDirectories = false;
+            }
+            else if ( args[i].equals("-j") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                threadCount = Integer.parseInt(args[++i]);
+            }
+            else if ( !args[i].startsWith("-") && target == null ){
+                target = args[i];
+            }
+            else{
+                printUsage();
+                return;
+            }
+        }
+        if ( target == null || (!printingDirectories && !printingPackages) ){
+            printUsage();
+            return;
+        }
+
+        final SourceFileWalker walker = new SourceFileWalker(target, SOURCE_FILE_REGEX);
+        final int THREAD_COUNT = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(THREAD_COUNT);
+        Rollup rollup = new Rollup(target);
+        try{
+            List<Future<Rollup>> workers = new ArrayList<Future<Rollup>>(THREAD_COUNT);
+            for ( int i = 0; i < THREAD_COUNT; i++ ){
+                workers.add(pool.submit(createWorker(walker, target)));
+            }
+            for ( Iterator<Future<Rollup>> itr = workers.iterator(); itr.hasNext(); ){
+                rollup.merge(take(itr.next()));
+            }
+        }
+        finally{
+            pool.shutdownNow();
+            walker.close();
+        }
+        rollup.print(System.out, printingDirectories, printingPackages);
+        printSeparator();
+    }
+
+    /**
+     * Creates a worker which measures the files taken from the walk until it ends.
+     *
+     * @param aWalker the walk shared by the workers
+     * @param aRootPath the root of the tree
+     * @return the worker returning its own rollup
+     */
+    private static Callable<Rollup> createWorker(final SourceFileWalker aWalker, final String aRootPath)
+    {
+        return new Callable<Rollup>() {
+            public Rollup call()
+            throws IOException, NotSupportedSourceFileExeption
+            {
+                Rollup rollup = new Rollup(aRootPath);
+                String path = null;
+                while ( (path = next(aWalker)) != null ){
+                    rollup.add(new FileMetrics(path));
+                }
+                return rollup;
+            }
+        };
+    }
+
+    /**
+     * Takes the next path from the walk shared by the workers.
+     *
+     * @param aWalker the walk
+     * @return the next path, or null if the walk has ended
+     */
+    private static String next(final SourceFileWalker aWalker)
+    {
+        synchronized ( aWalker ){
+            return aWalker.hasNext() ? aWalker.next() : null;
+        }
+    }
+
+    /**
+     * Waits for the specified worker and returns its rollup, rethrowing the exception the worker failed with.
+     *
+     * @param aFuture the worker
+     * @return the rollup of the worker
+     */
+    private static Rollup take(final Future<Rollup> aFuture)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        try{
+            return aFuture.get();
+        }
+        catch ( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for measurement results");
+        }
+        catch ( ExecutionException e ){
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ){
+                throw (IOException)cause;
+            }
+            if ( cause instanceof NotSupportedSourceFileExeption ){
+                throw (NotSupportedSourceFileExeption)cause;
+            }
+            if ( cause instanceof RuntimeException ){
+                throw (RuntimeException)cause;
+            }
+            if ( cause instanceof Error ){
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Prints a separator line through the standard error output.
+     */
+    private static void printSeparator()
+    {
+        final int LENGTH = 64;
+        for ( int i = 0; i < LENGTH; i++ ){
+            System.err.print("-");
+        }
+        System.err.println();
+    }
+
+    /**
+     * Prints the usage through the standard error output.
+     */
+    private static void printUsage()
+    {
+        System.err.println("java -cp LOCCounter.jar " + RollupCUI.class.getName() + " [option ...] directory");
+        System.err.println("option : ");
+        System.err.println("     -d : prints the totals of the directories only");
+        System.err.println("     -p : prints the totals of the Java packages only");
+        System.err.println("   -j N : measures the files on N threads (0 : as many as the processors, the default)");
+        System.err.println();
+        System.err.println("The total of a directory covers all the files under it.");
+        System.err.println("The printing format is as below:");
+        System.err.println("  DIR<TAB>directory<TAB>file_count<TAB>LOC<TAB>total_line_count<TAB>total_blank_line_count<TAB>comment_line_count<TAB>comment_counts");
+        System.err.println("  PACKAGE<TAB>package<TAB>file_count<TAB>LOC<TAB>total_line_count<TAB>total_blank_line_count<TAB>comment_line_count<TAB>comment_counts");
+        System.err.println("  comment_counts : eol<TAB>traditional<TAB>eol_comment_out<TAB>traditional_comment_out");
+        System.err.println("  (the javadoc and head counts of CommentCounterCUI are always 0 for whole files, so they are not printed)");
+    }
+
+    /** The paths of the source files measured */
+    private static final String SOURCE_FILE_REGEX = ".+\\.(java|JAVA|c|C|h|H|cpp|CPP|cc|CC|cxx|CXX|m|M|i|I|ii|II)$";
+}
@@ -0,0 +1,183 @@
+package org.computer.aman.metrics.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+
+/**
+ * A thin client sending a measurement request to {@link MeasurementServer} and printing its response.<br>
+ * It starts no measurement classes, so a call costs little more than starting a small JVM;
+ * the outputs and the exit status are those of the request, so the client can stand in for a call of
+ * the CUI applications in a build script, e.g., "MeasurementClient loc -a src" for "LOCCounterCUI -a src".
+ * The standard input is sent to the server for the commands reading queries (count and extract),
+ * on a separate thread so that the response is printed while the queries are still being sent.
+ * The request begins with the token which the server has written into its token file,
+ * so only the users who can read that file (its owner) are served.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MeasurementClient
+{
+    public static void main(String[] args)
+    throws IOException
+    {
+        int port = MeasurementServer.DEFAULT_PORT;
+        File tokenFile = MeasurementServer.getDefaultTokenFile();
+        int first = 0;
+        for ( ; first + 1 < args.length; first += 2 ){
+            if ( args[first].equals("-P") && args[first+1].matches("[0-9]{1,5}") ){
+                port = Integer.parseInt(args[first+1]);
+            }
+            else if ( args[first].equals("-T") ){
+                tokenFile = new File(args[first+1]);
+            }
+            else{
+                break;
+            }
+        }
+        if ( first >= args.length ){
+            printUsage();
+            System.exit(MeasurementServer.STATUS_USAGE);
+        }
+        String[] request = new String[args.length - first];
+        System.arraycopy(args, first, request, 0, request.length);
+
+        String token = null;
+        try{
+            token = new String(Files.readAllBytes(tokenFile.toPath()), MeasurementServer.TOKEN_ENCODING).trim();
+        }
+        catch ( IOException e ){
+            System.err.println("the measurement server is not running (its token could not be read from " + tokenFile + ")");
+            System.exit(STATUS_NO_SERVER);
+        }
+        Socket socket = null;
+        try{
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        }
+        catch ( ConnectException e ){
+            System.err.println("the measurement server is not running on port " + port);
+            System.exit(STATUS_NO_SERVER);
+        }
+        int status = 0;
+        try{
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.writeUTF(token);
+            output.writeUTF(System.getProperty("user.dir"));
+            output.writeInt(request.length);
+            for ( int i = 0; i < request.length; i++ ){
+                output.writeUTF(request[i]);
+            }
+            output.flush();
+            if ( request[0].equals("count") || request[0].equals("extract") ){
+                sendInput(System.in, output, socket);
+            }
+            else{
+                socket.shutdownOutput();
+            }
+            status = receive(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+        }
+        finally{
+            socket.close();
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Prints the frames of the response until the last one.
+     *
+     * @param anInput the response
+     * @return the exit status
+     * @throws IOException if the response could not be read or was cut off
+     */
+    private static int receive(final DataInputStream anInput)
+    throws IOException
+    {
+        byte[] buffer = new byte[0];
+        try{
+            while ( true ){
+                int type = anInput.readUnsignedByte();
+                int length = anInput.readInt();
+                if ( type == MeasurementServer.FRAME_EXIT ){
+                    System.out.flush();
+                    System.err.flush();
+                    return length;
+                }
+                if ( buffer.length < length ){
+                    buffer = new byte[length];
+                }
+                anInput.readFully(buffer, 0, length);
+                PrintStream output = type == MeasurementServer.FRAME_ERROR ? System.err : System.out;
+                output.write(buffer, 0, length);
+            }
+        }
+        catch ( EOFException e ){
+            throw new IOException("the measurement server closed the connection before the end of the response");
+        }
+    }
+
+    /**
+     * Starts sending the input to the server, and closes the sending side of the connection at its end.
+     *
+     * @param anInput the input
+     * @param anOutput the connection
+     * @param aSocket the socket of the connection
+     */
+    private static void sendInput(final InputStream anInput, final OutputStream anOutput, final Socket aSocket)
+    {
+        Thread sender = new Thread("MeasurementClient") {
+            public void run()
+            {
+                try{
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int length = 0;
+                    while ( (length = anInput.read(buffer)) >= 0 ){
+                        anOutput.write(buffer, 0, length);
+                    }
+                    anOutput.flush();
+                    aSocket.shutdownOutput();
+                }
+                catch ( IOException e ){
+                    // the server has stopped reading; the response tells why
+                }
+            }
+        };
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Prints the usage through the standard error output.
+     */
+    private static void printUsage()
+    {
+        System.err.println("java -cp LOCCounter.jar " + MeasurementClient.class.getName() + " [-P PORT] [-T FILE] command [argument ...]");
+        System.err.println("command : ");
+        System.err.println("  loc [-t|-a|-d] (source_file | directory) : prints the LOC as LOCCounterCUI");
+        System.err.println("  count    : prints the comment counts of the ranges read from the standard input as CommentCounterCUI");
+        System.err.println("  extract  : prints the comments of the ranges read from the standard input as CommentExtractorCUI");
+        System.err.println("  stats    : prints the usage of the caches of the server");
+        System.err.println("  shutdown : stops the server");
+        System.err.println();
+        System.err.println("The server (" + MeasurementServer.class.getName() + ") listens on port " + MeasurementServer.DEFAULT_PORT + " by default,");
+        System.err.println("and serves the requests carrying the token which it writes into " + MeasurementServer.getDefaultTokenFile() + " (-T FILE).");
+        System.err.println("The exit status is that of the request, " + MeasurementServer.STATUS_DENIED + " if the token does not match,");
+        System.err.println("or " + STATUS_NO_SERVER + " if the server is not running.");
+    }
+
+    /** The size of the buffer sending the standard input */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The exit status when the server is not running */
+    private static final int STATUS_NO_SERVER = 3;
+}
@@ -0,0 +1,875 @@
+package org.computer.aman.metrics.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.computer.aman.io.SourceFileWalker;
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.metrics.comment.CommentCounter;
+import org.computer.aman.metrics.comment.CommentCounterFactory;
+import org.computer.aman.metrics.comment.CommentExtractor;
+import org.computer.aman.metrics.comment.CommentExtractorFactory;
+import org.computer.aman.metrics.comment.CommentLine;
+import org.computer.aman.metrics.comment.CommentLineWriter;
+import org.computer.aman.metrics.comment.CountResult;
+import org.computer.aman.metrics.comment.ParsedFileCache;
+import org.computer.aman.metrics.size.loc.LOC;
+import org.computer.aman.metrics.size.loc.LOCMeasurer;
+import org.computer.aman.metrics.size.loc.LOCTotal;
+
+/**
+ * A long-lived measurement process serving the requests of {@link MeasurementClient} on a local port.<br>
+ * A build system calling the CUI applications many times on small sets of files pays each time for
+ * starting a JVM, loading the classes and compiling the hot code; the server pays for them once and
+ * keeps the parsed source files (the code maps of {@link CommentCounter} and {@link CommentExtractor})
+ * in caches between the requests, revalidating them against the modification time and the size of the files.
+ * The caches are locked only to look up a file; a file is parsed and queried under a lock of its own,
+ * so the requests on different files are served in parallel.
+ * <p>
+ * The server listens on the loopback address only.  A connection carries one request:
+ * the token of the server, the working directory of the client and the arguments (each as modified UTF-8,
+ * the arguments preceded by their number), followed by the standard input of the client for the commands reading queries.
+ * The response is a sequence of frames, each a type byte and a 32-bit length followed by that many bytes:
+ * {@link #FRAME_OUTPUT} for the standard output, {@link #FRAME_ERROR} for the standard error output,
+ * and finally {@link #FRAME_EXIT}, whose length field is the exit status.  The outputs are the same bytes
+ * as those of the CUI applications (except the banners), so the client can stand in for them.
+ * <p>
+ * The commands are:
+ * <ul>
+ * <li>loc [-t|-a|-d] (source_file | directory) : as LOCCounterCUI</li>
+ * <li>count : as CommentCounterCUI, reading "path TAB begin TAB end" lines</li>
+ * <li>extract : as CommentExtractorCUI, reading "path TAB begin TAB end" lines</li>
+ * <li>stats : prints the usage of the caches</li>
+ * <li>shutdown : stops the server</li>
+ * </ul>
+ * <p>
+ * The trust model: the server reads any file its owner can read and prints the code (loc -d) and the comments
+ * (extract), so it must serve its owner only.  The loopback address keeps other hosts out, but not the other users
+ * of the same host, so the server also requires a shared secret: on start, it writes a random token into a file
+ * which only its owner can read and write ({@link #getDefaultTokenFile()} unless -T is given), and a connection
+ * which does not begin with the token is refused with {@link #STATUS_DENIED} before any command is read.
+ * Whoever can read the token file is trusted as the owner; the file is deleted when the server stops.
+ * The token is written only after the port is bound, and the server keeps the token file locked while it runs,
+ * so a second server (on the same port or sharing the token file) fails without replacing the token of the first.
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MeasurementServer
+{
+    public static void main(String[] args)
+    throws SecurityException, IOException
+    {
+        System.err.println("MeasurementServer version 0.1");
+        System.err.println("Copyright (C) 2008-2019 Hirohisa AMAN <aman@computer.org>");
+        printSeparator();
+
+        int port = DEFAULT_PORT;
+        int threadCount = 0;
+        int maxEntryCount = DEFAULT_MAX_ENTRY_COUNT;
+        long maxSourceBytes = 0;
+        File tokenFile = getDefaultTokenFile();
+        for ( int i = 0; i < args.length; i++ ){
+            if ( args[i].equals("-P") && i + 1 < args.length && args[i+1].matches("[0-9]{1,5}") ){
+                port = Integer.parseInt(args[++i]);
+            }
+            else if ( args[i].equals("-j") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                threadCount = Integer.parseInt(args[++i]);
+            }
+            else if ( args[i].equals("-n") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                maxEntryCount = Integer.parseInt(args[++i]);
+            }
+            else if ( args[i].equals("-s") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+                maxSourceBytes = Long.parseLong(args[++i]) * 1024 * 1024;
+            }
+            else if ( args[i].equals("-T") && i + 1 < args.length ){
+                tokenFile = new File(args[++i]);
+            }
+            else{
+                printUsage();
+                return;
+            }
+        }
+
+        MeasurementServer server = new MeasurementServer(port, threadCount, maxEntryCount, maxSourceBytes, tokenFile);
+        System.err.println("listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort());
+        System.err.println("token in " + tokenFile);
+        server.run();
+        printSeparator();
+        System.err.println("Counters : " + server.counters);
+        System.err.println("Extractors : " + server.extractors);
+    }
+
+    /**
+     * Opens the server socket on the loopback address, writing the token into the default token file.
+     *
+     * @param aPort the port (0 : any free port)
+     * @param aThreadCount the number of requests served at once (0 or less : as many as the processors)
+     * @param aMaxEntryCount the maximum number of parsed files kept in each cache (0 or less : no limit)
+     * @param aMaxSourceBytes the maximum total size of the parsed files kept in each cache (0 or less : no limit)
+     * @throws IOException if the port could not be opened or the token could not be written
+     */
+    public MeasurementServer(final int aPort, final int aThreadCount, final int aMaxEntryCount, final long aMaxSourceBytes)
+    throws IOException
+    {
+        this(aPort, aThreadCount, aMaxEntryCount, aMaxSourceBytes, getDefaultTokenFile());
+    }
+
+    /**
+     * Opens the server socket on the loopback address.
+     *
+     * @param aPort the port (0 : any free port)
+     * @param aThreadCount the number of requests served at once (0 or less : as many as the processors)
+     * @param aMaxEntryCount the maximum number of parsed files kept in each cache (0 or less : no limit)
+     * @param aMaxSourceBytes the maximum total size of the parsed files kept in each cache (0 or less : no limit)
+     * @param aTokenFile the file into which the token required from the clients is written (readable by the owner only)
+     * @throws IOException if the port could not be opened, the token file is used by a running server
+     *                     or the token could not be written
+     */
+    public MeasurementServer(final int aPort, final int aThreadCount, final int aMaxEntryCount, final long aMaxSourceBytes,
+                             final File aTokenFile)
+    throws IOException
+    {
+        // the token is written only by a server which has got the port
+        serverSocket = new ServerSocket(aPort, BACKLOG, InetAddress.getLoopbackAddress());
+        tokenFile = aTokenFile;
+        FileLock lock = null;
+        boolean isStarted = false;
+        try{
+            lock = lockTokenFile(aTokenFile);
+            token = writeToken(lock.channel()).getBytes(TOKEN_ENCODING);
+            pool = Executors.newFixedThreadPool(aThreadCount > 0 ? aThreadCount : Runtime.getRuntime().availableProcessors());
+            counters = new ParsedFileCache<ParsedFile<CommentCounter>>(aMaxEntryCount, aMaxSourceBytes);
+            counters.setRevalidating(true);
+            extractors = new ParsedFileCache<ParsedFile<CommentExtractor>>(aMaxEntryCount, aMaxSourceBytes);
+            extractors.setRevalidating(true);
+            isStarted = true;
+        }
+        finally{
+            if ( !isStarted ){
+                serverSocket.close();
+                if ( lock != null ){
+                    aTokenFile.delete();
+                    lock.channel().close();
+                }
+            }
+        }
+        tokenLock = lock;
+    }
+
+    /**
+     * Returns the file in which the server writes its token unless another one is specified:
+     * ".measurement-server-token" in the home directory of the user.
+     *
+     * @return the token file
+     */
+    public static File getDefaultTokenFile()
+    {
+        return new File(System.getProperty("user.home"), ".measurement-server-token");
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serves the requests until the shutdown command is received.
+     *
+     * @throws IOException if the server socket failed
+     */
+    public void run()
+    throws IOException
+    {
+        try{
+            while ( true ){
+                final Socket SOCKET;
+                try{
+                    SOCKET = serverSocket.accept();
+                }
+                catch ( SocketException e ){
+                    // closed by the shutdown command
+                    break;
+                }
+                pool.execute(new Runnable() {
+                    public void run()
+                    {
+                        serve(SOCKET);
+                    }
+                });
+            }
+        }
+        finally{
+            pool.shutdown();
+            serverSocket.close();
+            // deleted before it is unlocked, so that no other server finds it unlocked and then loses it
+            tokenFile.delete();
+            tokenLock.channel().close();
+        }
+    }
+
+    /**
+     * Serves a request of a connection and closes it.
+     *
+     * @param aSocket the connection
+     */
+    private void serve(final Socket aSocket)
+    {
+        try{
+            DataInputStream input = new DataInputStream(new BufferedInputStream(aSocket.getInputStream()));
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(aSocket.getOutputStream()));
+            // nothing of the request is read before the client is known to be trusted
+            if ( !MessageDigest.isEqual(token, input.readUTF().getBytes(TOKEN_ENCODING)) ){
+                byte[] message = ("the token does not match that of the server" + LINE_SEPARATOR).getBytes();
+                output.writeByte(FRAME_ERROR);
+                output.writeInt(message.length);
+                output.write(message);
+                output.writeByte(FRAME_EXIT);
+                output.writeInt(STATUS_DENIED);
+                output.flush();
+                return;
+            }
+            File directory = new File(input.readUTF());
+            String[] args = new String[input.readInt()];
+            for ( int i = 0; i < args.length; i++ ){
+                args[i] = input.readUTF();
+            }
+            PrintStream out = new PrintStream(new FrameOutputStream(output, FRAME_OUTPUT));
+            PrintStream err = new PrintStream(new FrameOutputStream(output, FRAME_ERROR));
+            int status = 0;
+            try{
+                status = execute(args, directory, new BufferedReader(new InputStreamReader(input)), out, err);
+            }
+            catch ( IOException e ){
+                err.println(e);
+                status = STATUS_ERROR;
+            }
+            catch ( NotSupportedSourceFileExeption e ){
+                err.println(e);
+                status = STATUS_ERROR;
+            }
+            catch ( RuntimeException e ){
+                err.println(e);
+                status = STATUS_ERROR;
+            }
+            out.flush();
+            err.flush();
+            output.writeByte(FRAME_EXIT);
+            output.writeInt(status);
+            output.flush();
+        }
+        catch ( IOException e ){
+            // the client has gone; nothing is left to report to
+        }
+        finally{
+            try{
+                aSocket.close();
+            }
+            catch ( IOException e ){
+                // already closed
+            }
+        }
+    }
+
+    /**
+     * Executes a command.
+     *
+     * @param args the command and its arguments
+     * @param aDirectory the working directory of the client, against which the relative paths are resolved
+     * @param anInput the standard input of the client
+     * @param anOutput the standard output of the client
+     * @param anError the standard error output of the client
+     * @return the exit status
+     * @throws IOException if a source file could not be read or the client has gone
+     * @throws NotSupportedSourceFileExeption if a source file is not supported
+     */
+    private int execute(final String[] args, final File aDirectory, final BufferedReader anInput, final PrintStream anOutput, final PrintStream anError)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        String command = args.length > 0 ? args[0] : "";
+        if ( command.equals("loc") ){
+            return measureLOC(args, aDirectory, anOutput, anError);
+        }
+        if ( command.equals("count") && args.length == 1 ){
+            countComments(aDirectory, anInput, anOutput);
+            return 0;
+        }
+        if ( command.equals("extract") && args.length == 1 ){
+            extractComments(aDirectory, anInput, anOutput);
+            return 0;
+        }
+        if ( command.equals("stats") && args.length == 1 ){
+            synchronized ( counters ){
+                anOutput.println("Counters : " + counters);
+            }
+            synchronized ( extractors ){
+                anOutput.println("Extractors : " + extractors);
+            }
+            return 0;
+        }
+        if ( command.equals("shutdown") && args.length == 1 ){
+            serverSocket.close();
+            return 0;
+        }
+        anError.println("unknown command : " + join(args));
+        anError.println("commands : loc [-t|-a|-d] (source_file | directory), count, extract, stats, shutdown");
+        return STATUS_USAGE;
+    }
+
+    /**
+     * Counts the comments of the queried ranges, as CommentCounterCUI does.
+     *
+     * @param aDirectory the working directory of the client
+     * @param anInput the queries
+     * @param anOutput the output
+     * @throws IOException if a source file could not be read
+     * @throws NotSupportedSourceFileExeption if a source file is not supported
+     */
+    private void countComments(final File aDirectory, final BufferedReader anInput, final PrintStream anOutput)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        ParsedFileCache.Loader<ParsedFile<CommentCounter>> loader = new ParsedFileCache.Loader<ParsedFile<CommentCounter>>() {
+            public ParsedFile<CommentCounter> load(final String aPath)
+            {
+                return new ParsedFile<CommentCounter>(aPath, COUNTER_PARSER);
+            }
+        };
+        String line = null;
+        while ( (line = anInput.readLine()) != null ){
+            Query query = new Query(line);
+            ParsedFile<CommentCounter> file = null;
+            synchronized ( counters ){
+                file = counters.get(resolve(aDirectory, query.path), loader);
+            }
+            // a parsed file may be shared by the requests, but not parsed or measured by two of them at once
+            CountResult result = null;
+            synchronized ( file ){
+                result = file.get().measure(query.begin, query.end);
+            }
+            anOutput.println(query.path + "\t" + query.begin + "\t" + query.end + "\t" + result);
+        }
+    }
+
+    /**
+     * Extracts the comments of the queried ranges, as CommentExtractorCUI does.
+     *
+     * @param aDirectory the working directory of the client
+     * @param anInput the queries
+     * @param anOutput the output
+     * @throws IOException if a source file could not be read
+     * @throws NotSupportedSourceFileExeption if a source file is not supported
+     */
+    private void extractComments(final File aDirectory, final BufferedReader anInput, final PrintStream anOutput)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        ParsedFileCache.Loader<ParsedFile<CommentExtractor>> loader = new ParsedFileCache.Loader<ParsedFile<CommentExtractor>>() {
+            public ParsedFile<CommentExtractor> load(final String aPath)
+            {
+                return new ParsedFile<CommentExtractor>(aPath, EXTRACTOR_PARSER);
+            }
+        };
+        CommentLineWriter writer = new CommentLineWriter(anOutput);
+        String line = null;
+        while ( (line = anInput.readLine()) != null ){
+            Query query = new Query(line);
+            ParsedFile<CommentExtractor> file = null;
+            synchronized ( extractors ){
+                file = extractors.get(resolve(aDirectory, query.path), loader);
+            }
+            ArrayList<CommentLine> list = null;
+            synchronized ( file ){
+                list = file.get().parse(query.begin, query.end);
+            }
+            byte[] prefix = (query.path + "\t" + query.begin + "\t" + query.end + "\t").getBytes();
+            for ( Iterator<CommentLine> itr = list.iterator(); itr.hasNext(); ){
+                writer.write(prefix, itr.next());
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Measures the LOC of the source files, as LOCCounterCUI does.
+     *
+     * @param args the command and its arguments
+     * @param aDirectory the working directory of the client
+     * @param anOutput the output
+     * @param anError the error output
+     * @return the exit status
+     * @throws IOException if a source file could not be read
+     * @throws NotSupportedSourceFileExeption if a source file is not supported
+     */
+    private int measureLOC(final String[] args, final File aDirectory, final PrintStream anOutput, final PrintStream anError)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        int mode = 0;
+        String target = null;
+        for ( int i = 1; i < args.length; i++ ){
+            if ( args[i].equals("-t") && target == null ){
+                mode = 1;
+            }
+            else if ( args[i].equals("-a") && target == null ){
+                mode = 2;
+            }
+            else if ( args[i].equals("-d") && target == null ){
+                mode = 3;
+            }
+            else if ( !args[i].startsWith("-") && target == null ){
+                target = args[i];
+            }
+            else{
+                target = null;
+                break;
+            }
+        }
+        if ( target == null ){
+            anError.println("usage : loc [-t|-a|-d] (source_file | directory)");
+            return STATUS_USAGE;
+        }
+
+        // the paths are printed as the client gave them, though they are walked from the resolved root
+        String root = resolve(aDirectory, target);
+        String prefix = new File(target).getPath();
+        LOCMeasurer measurer = new LOCMeasurer(mode == 3, false);
+        LOCTotal total = new LOCTotal();
+        SourceFileWalker walker = new SourceFileWalker(root, SOURCE_FILE_REGEX);
+        try{
+            while ( walker.hasNext() ){
+                String path = walker.next();
+                LOC results = measurer.measure(path);
+                total.add(results);
+                anOutput.print(prefix + path.substring(root.length()) + ",");
+                if ( mode == 0 ){
+                    anOutput.println(results.getLOC());
+                }
+                else if ( mode == 1 ){
+                    anOutput.println(results.getTotalLineCount());
+                }
+                else{
+                    anOutput.println(results.getLOC() + "," + results.getTotalLineCount() + "," + results.getBlankCount());
+                    if ( mode == 3 ){
+                        anError.println(results);
+                    }
+                }
+            }
+        }
+        finally{
+            walker.close();
+        }
+        anError.println("# of source files = " + total.getFileCount() + ", " +
+                        "Total LOC = " + total.getLOC() + ", " +
+                        "Total line counts = " + total.getTotalLineCount());
+        return 0;
+    }
+
+    /**
+     * Joins the arguments with spaces.
+     *
+     * @param args the arguments
+     * @return the joined arguments
+     */
+    private static String join(final String[] args)
+    {
+        StringBuilder buffer = new StringBuilder();
+        for ( int i = 0; i < args.length; i++ ){
+            buffer.append(i > 0 ? " " : "").append(args[i]);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Resolves a path given by the client against its working directory.
+     *
+     * @param aDirectory the working directory of the client
+     * @param aPath the path
+     * @return the absolute path
+     */
+    private static String resolve(final File aDirectory, final String aPath)
+    {
+        File file = new File(aPath);
+        return file.isAbsolute() ? file.getPath() : new File(aDirectory, aPath).getPath();
+    }
+
+    /**
+     * Creates a new token file which only the owner can read and write, and locks it.
+     * A file left by a server which did not stop normally is replaced, but a file locked by a running server is not.
+     *
+     * @param aFile the token file
+     * @return the lock of the new token file, which is held while the server runs
+     * @throws IOException if the file is used by a running server or could not be created
+     */
+    private static FileLock lockTokenFile(final File aFile)
+    throws IOException
+    {
+        Path path = aFile.toPath();
+        if ( Files.exists(path) ){
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+            try{
+                if ( tryLock(channel) == null ){
+                    throw new IOException("the token file is used by a running server : " + aFile);
+                }
+                Files.delete(path);
+            }
+            finally{
+                channel.close();
+            }
+        }
+
+        // the file is created anew, so that nobody else holds it open or owns it
+        try{
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        catch ( UnsupportedOperationException e ){
+            // not a POSIX file system
+            Files.createFile(path);
+            aFile.setReadable(false, false);
+            aFile.setReadable(true, true);
+            aFile.setWritable(false, false);
+            aFile.setWritable(true, true);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        FileLock lock = null;
+        try{
+            lock = tryLock(channel);
+        }
+        finally{
+            if ( lock == null ){
+                channel.close();
+                Files.delete(path);
+            }
+        }
+        if ( lock == null ){
+            throw new IOException("the token file is used by a running server : " + aFile);
+        }
+        return lock;
+    }
+
+    /**
+     * Tries to lock a token file.
+     * The byte locked is far beyond the token, so that the clients can read the token where the locks are mandatory.
+     *
+     * @param aChannel the channel of the token file, opened for writing
+     * @return the lock, or null if the file is locked by another server
+     * @throws IOException if the file could not be locked
+     */
+    private static FileLock tryLock(final FileChannel aChannel)
+    throws IOException
+    {
+        try{
+            return aChannel.tryLock(Long.MAX_VALUE - 1, 1, false);
+        }
+        catch ( OverlappingFileLockException e ){
+            // locked by another server in this JVM
+            return null;
+        }
+    }
+
+    /**
+     * Writes a new random token into a locked token file.
+     *
+     * @param aChannel the channel of the token file
+     * @return the token
+     * @throws IOException if the file could not be written
+     */
+    private static String writeToken(final FileChannel aChannel)
+    throws IOException
+    {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for ( int i = 0; i < bytes.length; i++ ){
+            token.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16)).append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(token.toString().getBytes(TOKEN_ENCODING));
+        while ( buffer.hasRemaining() ){
+            aChannel.write(buffer);
+        }
+        return token.toString();
+    }
+
+    /**
+     * Prints a separator line through the standard error output.
+     */
+    private static void printSeparator()
+    {
+        final int LENGTH = 64;
+        for ( int i = 0; i < LENGTH; i++ ){
+            System.err.print("-");
+        }
+        System.err.println();
+    }
+
+    /**
+     * Prints the usage through the standard error output.
+     */
+    private static void printUsage()
+    {
+        System.err.println("java -cp LOCCounter.jar " + MeasurementServer.class.getName() + " [option ...]");
+        System.err.println("option : ");
+        System.err.println("  -P PORT : listens on PORT of the loopback address (default " + DEFAULT_PORT + "; 0 : any free port)");
+        System.err.println("  -j N    : serves N requests at once (0 : as many as the processors; default 0)");
+        System.err.println("  -n N    : keeps up to N parsed files in each cache (default " + DEFAULT_MAX_ENTRY_COUNT + "; 0 : no limit)");
+        System.err.println("  -s MB   : keeps parsed files of up to MB megabytes in total in each cache");
+        System.err.println("  -T FILE : writes the token required from the clients into FILE (default " + getDefaultTokenFile() + ")");
+        System.err.println();
+        System.err.println("The requests are sent by " + MeasurementClient.class.getName() + ".");
+        System.err.println("Only the clients which can read the token file (readable by its owner only) are served.");
+    }
+
+    /**
+     * An output stream which sends the bytes written to it as frames of a type.
+     * The frames are sent when the stream is flushed or its buffer is full.
+     */
+    private static class FrameOutputStream
+    extends OutputStream
+    {
+        /**
+         * Creates a stream sending frames of the specified type.
+         *
+         * @param anOutput the connection
+         * @param aType the type of the frames
+         */
+        FrameOutputStream(final DataOutputStream anOutput, final int aType)
+        {
+            output = anOutput;
+            type = aType;
+        }
+
+        public void flush()
+        throws IOException
+        {
+            synchronized ( output ){
+                if ( count > 0 ){
+                    output.writeByte(type);
+                    output.writeInt(count);
+                    output.write(buffer, 0, count);
+                    count = 0;
+                }
+                output.flush();
+            }
+        }
+
+        public void write(final int aByte)
+        throws IOException
+        {
+            if ( count == buffer.length ){
+                flush();
+            }
+            buffer[count++] = (byte)aByte;
+        }
+
+        public void write(final byte[] aBytes, final int anOffset, final int aLength)
+        throws IOException
+        {
+            for ( int offset = anOffset, end = anOffset + aLength; offset < end; ){
+                if ( count == buffer.length ){
+                    flush();
+                }
+                int length = Math.min(buffer.length - count, end - offset);
+                System.arraycopy(aBytes, offset, buffer, count, length);
+                count += length;
+                offset += length;
+            }
+        }
+
+        /** The bytes not sent yet */
+        private final byte[] buffer = new byte[FRAME_SIZE];
+
+        /** The number of the bytes not sent yet */
+        private int count;
+
+        /** The connection */
+        private final DataOutputStream output;
+
+        /** The type of the frames */
+        private final int type;
+    }
+
+    /**
+     * A source file in a cache, parsed when it is first used.
+     * The cache only holds the file, so the parsing is done outside the lock of the cache;
+     * the callers lock the file itself while they parse or measure it.
+     */
+    private static class ParsedFile<V>
+    {
+        /**
+         * Creates a file not parsed yet.
+         *
+         * @param aPath the path of the source file
+         * @param aParser the parser of the source file
+         */
+        ParsedFile(final String aPath, final ParsedFileCache.Loader<V> aParser)
+        {
+            path = aPath;
+            parser = aParser;
+        }
+
+        /**
+         * Returns the parsed file, parsing it if it has not been parsed yet.
+         * The caller has to hold the lock of this file.
+         *
+         * @return the parsed file
+         * @throws IOException if the source file could not be read
+         * @throws NotSupportedSourceFileExeption if the source file is not supported
+         */
+        V get()
+        throws IOException, NotSupportedSourceFileExeption
+        {
+            if ( value == null ){
+                value = parser.load(path);
+            }
+            return value;
+        }
+
+        /** The parser of the source file */
+        private final ParsedFileCache.Loader<V> parser;
+
+        /** The path of the source file */
+        private final String path;
+
+        /** The parsed file (null until it is parsed) */
+        private V value;
+    }
+
+    /**
+     * A query of a range: "path TAB begin TAB end".
+     */
+    private static class Query
+    {
+        /**
+         * Parses a query.
+         *
+         * @param aLine the line of the query
+         */
+        Query(final String aLine)
+        {
+            Scanner scanner = new Scanner(aLine);
+            scanner.useDelimiter("\t");
+            path = scanner.next();
+            begin = scanner.nextInt();
+            end = scanner.nextInt();
+            scanner.close();
+        }
+
+        /** The first line of the range */
+        private final int begin;
+
+        /** The last line of the range */
+        private final int end;
+
+        /** The path of the source file */
+        private final String path;
+    }
+
+    /** The number of connections waiting to be accepted */
+    private static final int BACKLOG = 64;
+
+    /** The parser of the source files of the count command */
+    private static final ParsedFileCache.Loader<CommentCounter> COUNTER_PARSER = new ParsedFileCache.Loader<CommentCounter>() {
+        public CommentCounter load(final String aPath)
+        throws IOException, NotSupportedSourceFileExeption
+        {
+            return CommentCounterFactory.create(aPath);
+        }
+    };
+
+    /** The default maximum number of parsed files kept in each cache */
+    private static final int DEFAULT_MAX_ENTRY_COUNT = 256;
+
+    /** The port listened on by default */
+    public static final int DEFAULT_PORT = 17384;
+
+    /** The parser of the source files of the extract command */
+    private static final ParsedFileCache.Loader<CommentExtractor> EXTRACTOR_PARSER = new ParsedFileCache.Loader<CommentExtractor>() {
+        public CommentExtractor load(final String aPath)
+        throws IOException, NotSupportedSourceFileExeption
+        {
+            return CommentExtractorFactory.create(aPath);
+        }
+    };
+
+    /** The type of a frame of the standard error output */
+    public static final int FRAME_ERROR = 'E';
+
+    /** The type of the last frame, whose length field is the exit status */
+    public static final int FRAME_EXIT = 'X';
+
+    /** The type of a frame of the standard output */
+    public static final int FRAME_OUTPUT = 'O';
+
+    /** The maximum size of a frame of the outputs */
+    private static final int FRAME_SIZE = 64 * 1024;
+
+    /** The line separator of the error message */
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /** The source files measured by the loc command */
+    private static final String SOURCE_FILE_REGEX = ".+\\.(java|JAVA|c|C|h|H|cpp|CPP|cc|CC|cxx|CXX|m|M|i|I|ii|II)$";
+
+    /** The exit status of a request whose token does not match */
+    public static final int STATUS_DENIED = 4;
+
+    /** The exit status of a failed request */
+    public static final int STATUS_ERROR = 1;
+
+    /** The exit status of a malformed request */
+    public static final int STATUS_USAGE = 2;
+
+    /** The number of the random bytes of a token */
+    private static final int TOKEN_BYTES = 32;
+
+    /** The character encoding of a token */
+    public static final String TOKEN_ENCODING = "US-ASCII";
+
+    /** The parsed source files of the count command */
+    private final ParsedFileCache<ParsedFile<CommentCounter>> counters;
+
+    /** The parsed source files of the extract command */
+    private final ParsedFileCache<ParsedFile<CommentExtractor>> extractors;
+
+    /** The threads serving the requests */
+    private final ExecutorService pool;
+
+    /** The socket accepting the connections */
+    private final ServerSocket serverSocket;
+
+    /** The token required from the clients */
+    private final byte[] token;
+
+    /** The file holding the token */
+    private final File tokenFile;
+
+    /** The lock of the token file, held while the server runs */
+    private final FileLock tokenLock;
+}
@@ -0,0 +1,189 @@
+package org.computer.aman.metrics.size.loc;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.LineClassifier;
+
+/**
+ * A LOC counter which scans the raw bytes of a source file.<br>
+ * The file is memory-mapped (or, if it is small, read into a reused buffer) and its lines are
+ * classified byte by byte, with neither charset decoding nor per-line strings.
+ * Mapped files are copied in chunks into a reused array, since scanning an array is faster than
+ * reading a mapped buffer byte by byte.
+ * The results are the same as those of {@link LOCCounter} as long as the default encoding is
+ * US-ASCII, ISO-8859-1 or UTF-8 (see {@link #isApplicable()}); for the other encodings
+ * {@link StreamingLOCCounter} has to be used instead.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ByteScanningLOCCounter
+{
+    /**
+     * Returns true if the byte scanning gives the same results as decoding the files in the default encoding.
+     * 
+     * @return true if the default encoding is US-ASCII, ISO-8859-1 or UTF-8
+     */
+    public static boolean isApplicable()
+    {
+        return LineClassifier.isByteScannable(Charset.defaultCharset().name());
+    }
+
+    /**
+     * Measures the specified source file.
+     * 
+     * @param aSourceFile the source file
+     * @return the measurement results (without the lines of the code)
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     * @throws IOException if the file could not be read
+     */
+    public static CountedLOC measure(final SourceFile aSourceFile)
+    throws NotSupportedSourceFileExeption, IOException
+    {
+        if ( LineClassifier.create(aSourceFile) == null ){
+            throw new NotSupportedSourceFileExeption("not supported file type: " + aSourceFile);
+        }
+        RandomAccessFile file = new RandomAccessFile(aSourceFile, "r");
+        try{
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if ( size > Integer.MAX_VALUE ){
+                return StreamingLOCCounter.measure(aSourceFile);
+            }
+            if ( size >= MAP_THRESHOLD ){
+                return measure(aSourceFile, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            ByteBuffer buffer = BUFFER.get();
+            buffer.clear();
+            buffer.limit((int)size);
+            while ( buffer.hasRemaining() && channel.read(buffer) >= 0 ){
+                // reads until the buffer is filled
+            }
+            buffer.flip();
+            return measure(aSourceFile, buffer);
+        }
+        finally{
+            file.close();
+        }
+    }
+
+    /**
+     * Measures the source file whose contents are given as the remaining bytes of the buffer.
+     * The position of the buffer is moved to its limit.
+     * 
+     * @param aSourceFile the source file
+     * @param aContents the contents of the file
+     * @return the measurement results (without the lines of the code)
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     */
+    public static CountedLOC measure(final SourceFile aSourceFile, final ByteBuffer aContents)
+    throws NotSupportedSourceFileExeption
+    {
+        LineClassifier classifier = LineClassifier.create(aSourceFile);
+        if ( classifier == null ){
+            throw new NotSupportedSourceFileExeption("not supported file type: " + aSourceFile);
+        }
+        final boolean UTF8 = Charset.defaultCharset().name().equals("UTF-8");
+
+        // counts[0] : LOC, counts[1] : the total line count, counts[2] : the blank line count
+        int[] counts = new int[3];
+        if ( aContents.hasArray() ){
+            int begin = aContents.arrayOffset() + aContents.position();
+            scan(classifier, aContents.array(), begin, begin + aContents.remaining(), true, UTF8, counts);
+            aContents.position(aContents.limit());
+        }
+        else{
+            // copies the (memory-mapped) contents chunk by chunk; an incomplete last line is carried over to the next chunk
+            byte[] chunk = CHUNK.get();
+            int filled = 0;
+            while ( true ){
+                int length = Math.min(chunk.length - filled, aContents.remaining());
+                aContents.get(chunk, filled, length);
+                filled += length;
+                boolean last = !aContents.hasRemaining();
+                int rest = scan(classifier, chunk, 0, filled, last, UTF8, counts);
+                if ( last ){
+                    break;
+                }
+                if ( rest == 0 && filled == chunk.length ){
+                    // a line longer than the chunk
+                    chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                }
+                else{
+                    System.arraycopy(chunk, rest, chunk, 0, filled - rest);
+                }
+                filled -= rest;
+            }
+        }
+        return new CountedLOC(aSourceFile, counts[0], counts[1], counts[2]);
+    }
+
+    /**
+     * Classifies the lines in the specified range of bytes and adds them up to the counts.
+     * 
+     * @param aClassifier the classifier
+     * @param aBytes the array holding the bytes
+     * @param aBegin the index of the first byte
+     * @param anEnd the index just after the last byte
+     * @param isLast true if the range ends at the end of the file
+     * @param isUTF8 true if the bytes are in UTF-8
+     * @param aCounts the LOC, the total line count and the blank line count
+     * @return the index of the first byte not classified yet (the beginning of an incomplete line), or anEnd
+     */
+    private static int scan(final LineClassifier aClassifier, final byte[] aBytes, final int aBegin, final int anEnd,
+                            final boolean isLast, final boolean isUTF8, final int[] aCounts)
+    {
+        int lineBegin = aBegin;
+        while ( lineBegin < anEnd ){
+            // finds the line terminator (LF, CR or CR+LF) as BufferedReader.readLine() does
+            int i = lineBegin;
+            while ( i < anEnd && aBytes[i] != '\n' && aBytes[i] != '\r' ){
+                i++;
+            }
+            if ( !isLast && (i == anEnd || (aBytes[i] == '\r' && i + 1 == anEnd)) ){
+                return lineBegin;
+            }
+            int kinds = aClassifier.classify(aBytes, lineBegin, i, isUTF8);
+            aCounts[1]++;
+            if ( (kinds & LineClassifier.CODE) != 0 ){
+                aCounts[0]++;
+            }
+            else if ( kinds == 0 ){
+                aCounts[2]++;
+            }
+            if ( i + 1 < anEnd && aBytes[i] == '\r' && aBytes[i+1] == '\n' ){
+                i++;
+            }
+            lineBegin = i + 1;
+        }
+        return anEnd;
+    }
+
+    /** The size of the chunks copied from memory-mapped files */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /** The array reused for the chunks of memory-mapped files, one per thread */
+    private static final ThreadLocal<byte[]> CHUNK = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue()
+        {
+            return new byte[CHUNK_SIZE];
+        }
+    };
+
+    /** The files of this size or larger are memory-mapped */
+    private static final long MAP_THRESHOLD = 256 * 1024;
+
+    /** The buffer reused for reading small files, one per thread */
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        protected ByteBuffer initialValue()
+        {
+            return ByteBuffer.allocate((int)MAP_THRESHOLD);
+        }
+    };
+}
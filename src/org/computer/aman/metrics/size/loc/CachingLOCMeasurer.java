@@ -0,0 +1,106 @@
+package org.computer.aman.metrics.size.loc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.computer.aman.io.ContentHash;
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+
+/**
+ * A measurer which consults a {@link LOCCache} before measuring a source file.<br>
+ * A file is regarded as unchanged when its size and last-modified time equal the cached ones;
+ * when only the last-modified time differs, the content hash decides.
+ * Only changed or new files are passed on to the underlying measurer, and their results are added to the cache.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class CachingLOCMeasurer
+extends LOCMeasurer
+{
+    /**
+     * Creates a measurer backed by the specified cache.
+     * 
+     * @param aMeasurer the measurer used for the files not in the cache
+     * @param aCache the cache
+     */
+    public CachingLOCMeasurer(final LOCMeasurer aMeasurer, final LOCCache aCache)
+    {
+        measurer = aMeasurer;
+        cache = aCache;
+        hitCount = new AtomicInteger();
+        missCount = new AtomicInteger();
+    }
+
+    public long getParseStateSize(final long aFileSize)
+    {
+        return measurer.getParseStateSize(aFileSize);
+    }
+
+    public LOC measure(final String aPath, final ByteBuffer aContents)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        SourceFile file = new SourceFile(aPath);
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        LOCCache.Entry entry = cache.get(aPath);
+        Long hash = null;
+        if ( entry != null && entry.getSize() == size ){
+            if ( entry.getLastModified() == lastModified ){
+                hitCount.incrementAndGet();
+                return new CountedLOC(file, entry.getLOC(), entry.getTotalLineCount(), entry.getBlankCount());
+            }
+            // touched, but the contents may be the same
+            hash = aContents != null ? ContentHash.of(aContents) : ContentHash.of(file);
+            if ( hash.longValue() == entry.getHash() ){
+                hitCount.incrementAndGet();
+                cache.put(aPath, new LOCCache.Entry(size, lastModified, entry.getHash(),
+                                                    entry.getLOC(), entry.getTotalLineCount(), entry.getBlankCount()));
+                return new CountedLOC(file, entry.getLOC(), entry.getTotalLineCount(), entry.getBlankCount());
+            }
+        }
+
+        missCount.incrementAndGet();
+        if ( hash == null ){
+            hash = aContents != null ? ContentHash.of(aContents) : ContentHash.of(file);
+        }
+        LOC results = measurer.measure(aPath, aContents);
+        cache.put(aPath, new LOCCache.Entry(size, lastModified, hash.longValue(),
+                                            results.getLOC(), results.getTotalLineCount(), results.getBlankCount()));
+        return results;
+    }
+
+    /**
+     * Returns the number of files whose results were taken from the cache.
+     * 
+     * @return the number of cache hits
+     */
+    public int getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of files which had to be measured.
+     * 
+     * @return the number of cache misses
+     */
+    public int getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /** The cache */
+    private final LOCCache cache;
+
+    /** The number of cache hits */
+    private final AtomicInteger hitCount;
+
+    /** The measurer used for the files not in the cache */
+    private final LOCMeasurer measurer;
+
+    /** The number of cache misses */
+    private final AtomicInteger missCount;
+}
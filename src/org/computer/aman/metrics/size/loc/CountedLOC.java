@@ -0,0 +1,54 @@
+package org.computer.aman.metrics.size.loc;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+
+/**
+ * LOC measurement results holding only the counts.<br>
+ * Unlike {@link LOC} measured by {@link LOCCounter}, it does not keep the lines of the source code,
+ * so {@link #iterator()} returns no lines.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class CountedLOC
+extends LOC
+{
+    /**
+     * Creates the results of the specified source file.
+     * 
+     * @param aSourceFile the source file
+     * @param aLOC the LOC
+     * @param aTotalLineCount the total line count
+     * @param aBlankCount the total blank line count
+     */
+    public CountedLOC(final SourceFile aSourceFile, final int aLOC, final int aTotalLineCount, final int aBlankCount)
+    {
+        super(aSourceFile);
+        loc = aLOC;
+        totalLineCount = aTotalLineCount;
+        blank = aBlankCount;
+    }
+
+    public int getBlankCount()
+    {
+        return blank;
+    }
+
+    public int getLOC()
+    {
+        return loc;
+    }
+
+    public int getTotalLineCount()
+    {
+        return totalLineCount;
+    }
+
+    /** The total blank line count */
+    private final int blank;
+
+    /** The LOC */
+    private final int loc;
+
+    /** The total line count */
+    private final int totalLineCount;
+}
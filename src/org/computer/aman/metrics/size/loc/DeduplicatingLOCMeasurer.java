@@ -0,0 +1,75 @@
+package org.computer.aman.metrics.size.loc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.ContentDeduplicator;
+
+/**
+ * A measurer which measures each distinct content once.<br>
+ * A file byte-identical to a file measured before (same size, then same {@link org.computer.aman.io.ContentHash})
+ * is not passed on to the underlying measurer; its results are the counts of the identical file,
+ * reported under its own path.  The results of the copies do not keep the lines of the code,
+ * so this measurer is not meant for the results printed together with the code.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class DeduplicatingLOCMeasurer
+extends LOCMeasurer
+{
+    /**
+     * Creates a measurer which passes the files of distinct contents to the specified measurer.
+     *
+     * @param aMeasurer the measurer used for the files not identical to any file measured before
+     */
+    public DeduplicatingLOCMeasurer(final LOCMeasurer aMeasurer)
+    {
+        measurer = aMeasurer;
+        deduplicator = new ContentDeduplicator<LOC>();
+        copier = new ContentDeduplicator.Measurer<LOC>() {
+            public LOC copy(final LOC aResults, final String aPath)
+            throws IOException
+            {
+                return new CountedLOC(new SourceFile(aPath), aResults.getLOC(), aResults.getTotalLineCount(), aResults.getBlankCount());
+            }
+
+            public LOC measure(final String aPath, final ByteBuffer aContents)
+            throws IOException, NotSupportedSourceFileExeption
+            {
+                return measurer.measure(aPath, aContents);
+            }
+        };
+    }
+
+    public long getParseStateSize(final long aFileSize)
+    {
+        return measurer.getParseStateSize(aFileSize);
+    }
+
+    public LOC measure(final String aPath, final ByteBuffer aContents)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        return deduplicator.measure(aPath, aContents, copier);
+    }
+
+    /**
+     * Returns the registry of the contents measured, which tells how much parsing was avoided.
+     *
+     * @return the registry
+     */
+    public ContentDeduplicator<LOC> getDeduplicator()
+    {
+        return deduplicator;
+    }
+
+    /** The measurer of the files and the rebinding of the results to the copies */
+    private final ContentDeduplicator.Measurer<LOC> copier;
+
+    /** The registry of the contents measured */
+    private final ContentDeduplicator<LOC> deduplicator;
+
+    /** The measurer used for the files not identical to any file measured before */
+    private final LOCMeasurer measurer;
+}
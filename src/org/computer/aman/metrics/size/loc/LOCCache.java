@@ -0,0 +1,386 @@
+package org.computer.aman.metrics.size.loc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent cache of LOC measurement results.<br>
+ * The cache file is a header followed by fixed-layout records, each of which holds a path,
+ * the size, the last-modified time and the content hash of the file, and its LOC, total line count
+ * and blank line count.  The file is memory-mapped when it is loaded, and new results are only
+ * appended to it; when a path occurs several times the last record wins.
+ * A record cut off by an interrupted run is dropped when the cache is opened next time.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LOCCache
+{
+    /**
+     * Opens the specified cache file, creating it if it does not exist.
+     *
+     * @param aFile the cache file
+     * @throws IOException if the file could not be read or is not a cache file
+     */
+    public LOCCache(final File aFile)
+    throws IOException
+    {
+        file = aFile;
+        entries = new ConcurrentHashMap<String, Entry>();
+        if ( file.exists() && file.length() > 0 ){
+            load();
+        }
+        else{
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).putInt(VERSION).flip();
+            FileOutputStream out = new FileOutputStream(file);
+            try{
+                out.getChannel().write(header);
+            }
+            finally{
+                out.close();
+            }
+        }
+        output = new FileOutputStream(file, true).getChannel();
+        outputBuffer = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the cached results of the specified path, or null if there is none.
+     *
+     * @param aPath the path of the source file
+     * @return the cached results, or null
+     */
+    public Entry get(final String aPath)
+    {
+        return entries.get(aPath);
+    }
+
+    /**
+     * Records the results of the specified path.
+     *
+     * @param aPath the path of the source file
+     * @param anEntry the results
+     * @throws IOException if the record could not be written
+     */
+    public synchronized void put(final String aPath, final Entry anEntry)
+    throws IOException
+    {
+        entries.put(aPath, anEntry);
+        byte[] path = aPath.getBytes(UTF8);
+        if ( outputBuffer.remaining() < 4 + path.length + ENTRY_SIZE ){
+            flush();
+        }
+        if ( outputBuffer.remaining() < 4 + path.length + ENTRY_SIZE ){
+            ByteBuffer record = ByteBuffer.allocate(4 + path.length + ENTRY_SIZE);
+            write(record, path, anEntry);
+            record.flip();
+            writeFully(record);
+        }
+        else{
+            write(outputBuffer, path, anEntry);
+        }
+        recordCount++;
+    }
+
+    /**
+     * Writes the pending records and closes the cache file.
+     * When the file holds many outdated records, it is rewritten with the current ones only.
+     *
+     * @throws IOException if the records could not be written
+     */
+    public synchronized void close()
+    throws IOException
+    {
+        flush();
+        output.close();
+        if ( recordCount > 2 * entries.size() + COMPACTION_SLACK ){
+            compact();
+        }
+    }
+
+    /**
+     * Returns the number of paths held by the cache.
+     *
+     * @return the number of paths
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Loads all the records of the cache file through a memory-mapped view.
+     */
+    private void load()
+    throws IOException
+    {
+        RandomAccessFile in = new RandomAccessFile(file, "rw");
+        try{
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MAGIC.length];
+            if ( buffer.remaining() < HEADER_SIZE ){
+                throw new IOException("not a LOC cache file: " + file);
+            }
+            buffer.get(magic);
+            if ( !new String(magic, UTF8).equals(new String(MAGIC, UTF8)) || buffer.getInt() != VERSION ){
+                throw new IOException("not a LOC cache file: " + file);
+            }
+            int end = buffer.position();
+            while ( buffer.remaining() >= 4 ){
+                int length = buffer.getInt();
+                if ( length < 0 || buffer.remaining() < length + ENTRY_SIZE ){
+                    break;
+                }
+                byte[] path = new byte[length];
+                buffer.get(path);
+                entries.put(new String(path, UTF8), new Entry(buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                                                              buffer.getInt(), buffer.getInt(), buffer.getInt()));
+                recordCount++;
+                end = buffer.position();
+            }
+            if ( end < channel.size() ){
+                // drops the record cut off by an interrupted run
+                channel.truncate(end);
+            }
+        }
+        finally{
+            in.close();
+        }
+    }
+
+    /**
+     * Rewrites the cache file with the current records only.
+     */
+    private void compact()
+    throws IOException
+    {
+        File temporary = new File(file.getPath() + ".tmp");
+        FileChannel channel = new FileOutputStream(temporary).getChannel();
+        try{
+            ByteBuffer buffer = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+            buffer.put(MAGIC).putInt(VERSION);
+            for ( Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ){
+                Map.Entry<String, Entry> entry = iterator.next();
+                byte[] path = entry.getKey().getBytes(UTF8);
+                if ( buffer.remaining() < 4 + path.length + ENTRY_SIZE ){
+                    buffer.flip();
+                    while ( buffer.hasRemaining() ){
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                    if ( buffer.remaining() < 4 + path.length + ENTRY_SIZE ){
+                        buffer = ByteBuffer.allocate(4 + path.length + ENTRY_SIZE);
+                    }
+                }
+                write(buffer, path, entry.getValue());
+            }
+            buffer.flip();
+            while ( buffer.hasRemaining() ){
+                channel.write(buffer);
+            }
+        }
+        finally{
+            channel.close();
+        }
+        // the old file is kept until the new one takes its place, so a process killed meanwhile loses no record
+        try{
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch ( AtomicMoveNotSupportedException e ){
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        recordCount = entries.size();
+    }
+
+    /**
+     * Writes the pending records to the cache file.
+     */
+    private void flush()
+    throws IOException
+    {
+        outputBuffer.flip();
+        writeFully(outputBuffer);
+        outputBuffer.clear();
+    }
+
+    /**
+     * Writes all the remaining bytes of the buffer to the cache file.
+     *
+     * @param aBuffer the buffer
+     */
+    private void writeFully(final ByteBuffer aBuffer)
+    throws IOException
+    {
+        while ( aBuffer.hasRemaining() ){
+            output.write(aBuffer);
+        }
+    }
+
+    /**
+     * Puts a record into the buffer.
+     *
+     * @param aBuffer the buffer
+     * @param aPath the path encoded in UTF-8
+     * @param anEntry the results
+     */
+    private static void write(final ByteBuffer aBuffer, final byte[] aPath, final Entry anEntry)
+    {
+        aBuffer.putInt(aPath.length).put(aPath)
+               .putLong(anEntry.getSize()).putLong(anEntry.getLastModified()).putLong(anEntry.getHash())
+               .putInt(anEntry.getLOC()).putInt(anEntry.getTotalLineCount()).putInt(anEntry.getBlankCount());
+    }
+
+    /**
+     * The cached results of a source file together with the key identifying its contents.
+     */
+    public static class Entry
+    {
+        /**
+         * Creates an entry.
+         *
+         * @param aSize the size of the file in bytes
+         * @param aLastModified the last-modified time of the file
+         * @param aHash the content hash of the file
+         * @param aLOC the LOC
+         * @param aTotalLineCount the total line count
+         * @param aBlankCount the total blank line count
+         */
+        public Entry(final long aSize, final long aLastModified, final long aHash,
+                     final int aLOC, final int aTotalLineCount, final int aBlankCount)
+        {
+            size = aSize;
+            lastModified = aLastModified;
+            hash = aHash;
+            loc = aLOC;
+            totalLineCount = aTotalLineCount;
+            blank = aBlankCount;
+        }
+
+        /**
+         * Returns the total blank line count.
+         *
+         * @return the total blank line count
+         */
+        public int getBlankCount()
+        {
+            return blank;
+        }
+
+        /**
+         * Returns the content hash of the file.
+         *
+         * @return the content hash of the file
+         */
+        public long getHash()
+        {
+            return hash;
+        }
+
+        /**
+         * Returns the last-modified time of the file.
+         *
+         * @return the last-modified time of the file
+         */
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+
+        /**
+         * Returns the LOC.
+         *
+         * @return the LOC
+         */
+        public int getLOC()
+        {
+            return loc;
+        }
+
+        /**
+         * Returns the size of the file in bytes.
+         *
+         * @return the size of the file in bytes
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * Returns the total line count.
+         *
+         * @return the total line count
+         */
+        public int getTotalLineCount()
+        {
+            return totalLineCount;
+        }
+
+        /** The total blank line count */
+        private final int blank;
+
+        /** The content hash of the file */
+        private final long hash;
+
+        /** The last-modified time of the file */
+        private final long lastModified;
+
+        /** The LOC */
+        private final int loc;
+
+        /** The size of the file in bytes */
+        private final long size;
+
+        /** The total line count */
+        private final int totalLineCount;
+    }
+
+    /** The number of outdated records tolerated before the file is compacted */
+    private static final int COMPACTION_SLACK = 1024;
+
+    /** The size of the fixed part of a record: three longs and three ints */
+    private static final int ENTRY_SIZE = 8 * 3 + 4 * 3;
+
+    /** The magic number at the head of the cache file */
+    private static final byte[] MAGIC = { 'L', 'O', 'C', 'C', 'A', 'C', 'H', 'E' };
+
+    /** The size of the header */
+    private static final int HEADER_SIZE = 8 + 4;
+
+    /** The size of the buffer for the appended records */
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    /** The encoding of the paths */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The version of the record layout */
+    private static final int VERSION = 1;
+
+    /** The cached results by path */
+    private final Map<String, Entry> entries;
+
+    /** The cache file */
+    private final File file;
+
+    /** The channel appending records to the cache file */
+    private final FileChannel output;
+
+    /** The records waiting to be appended */
+    private final ByteBuffer outputBuffer;
+
+    /** The number of records in the cache file */
+    private int recordCount;
+}
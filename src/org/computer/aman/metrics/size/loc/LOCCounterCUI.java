@@ -1,13 +1,20 @@
 ﻿package org.computer.aman.metrics.size.loc;
 
+import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.util.Iterator;
-import java.util.List;
 
-import org.computer.aman.io.FileFinder;
+import org.computer.aman.io.ShardSelector;
+import org.computer.aman.io.SourceFileWalker;
 import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
 import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.stats.Distribution;
+import org.computer.aman.metrics.store.ColumnarWriter;
+import org.computer.aman.metrics.store.ResultColumns;
+import org.computer.aman.metrics.store.ResultJournal;
+import org.computer.aman.metrics.util.MemoryBudget;
 
 /**
  * A CUI application for measuring LOC values of source files.<br>
@@ -31,6 +38,28 @@ public class LOCCounterCUI
     	//    2 : (-a option) display both LOC and the total line count
     	//    3 : (-d option) display the details including the LOC, the total line count, and the total blank line count together with the source code
     	int mode = 0;    	    	
+    	// (-j option) the number of measurement threads, and (-u option) whether the results may be printed out of order
+    	int threadCount = 1;
+    	boolean ordered = true;
+    	// (-c option) the file caching the results of the previous runs
+    	String cachePath = null;
+    	// (-b option) whether the files are counted by scanning their raw bytes
+    	boolean scanningBytes = false;
+    	// (-q option) whether the distributions of the results are summarized at the end
+    	boolean summarizing = false;
+    	// (-o option) the columnar results file written instead of the standard output
+    	String storePath = null;
+    	// (-p option) the number of files read ahead of the measurement
+    	int prefetchDepth = 0;
+    	// (-m option) the memory budget for the files in flight (in megabytes; 0 : no limit)
+    	long maxMemory = 0;
+    	// (-J option) the journal of the files measured, and (-R option) whether a run interrupted before is resumed from it
+    	String journalPath = null;
+    	boolean resuming = false;
+    	// (-S option) the shard of the files measured by this process, of the form i/N
+    	String shardSpecification = null;
+    	// (-w option) whether the changes of the files are watched after the first measurement
+    	boolean watching = false;
     	String target = null;    	
     	for ( int i = 0; i < args.length; i++ ){
     		if ( args[i].startsWith("-") ){
@@ -43,6 +72,42 @@ public class LOCCounterCUI
     			else if ( args[i].equals("-d") ){
     				mode = 3;
     			}
+    			else if ( args[i].equals("-j") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+    				threadCount = Integer.parseInt(args[++i]);
+    			}
+    			else if ( args[i].equals("-u") ){
+    				ordered = false;
+    			}
+    			else if ( args[i].equals("-c") && i + 1 < args.length ){
+    				cachePath = args[++i];
+    			}
+    			else if ( args[i].equals("-b") ){
+    				scanningBytes = true;
+    			}
+    			else if ( args[i].equals("-o") && i + 1 < args.length ){
+    				storePath = args[++i];
+    			}
+    			else if ( args[i].equals("-q") ){
+    				summarizing = true;
+    			}
+    			else if ( args[i].equals("-p") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+    				prefetchDepth = Integer.parseInt(args[++i]);
+    			}
+    			else if ( args[i].equals("-m") && i + 1 < args.length && args[i+1].matches("[0-9]+") ){
+    				maxMemory = Long.parseLong(args[++i]) * 1024 * 1024;
+    			}
+    			else if ( args[i].equals("-J") && i + 1 < args.length ){
+    				journalPath = args[++i];
+    			}
+    			else if ( args[i].equals("-R") ){
+    				resuming = true;
+    			}
+    			else if ( args[i].equals("-w") ){
+    				watching = true;
+    			}
+    			else if ( args[i].equals("-S") && i + 1 < args.length && args[i+1].matches("[0-9]+/[0-9]+") ){
+    				shardSpecification = args[++i];
+    			}
     			else{
     				printUsage();
     				return;
@@ -54,38 +119,112 @@ public class LOCCounterCUI
     		}
     	}
     	
-    	if ( target == null ){
+    	if ( target == null || (resuming && journalPath == null) || (watching && (mode == 3 || storePath != null || shardSpecification != null)) ){
     		printUsage();
     		return;
     	}    	
-    	List<String> list = (new FileFinder(target)).getList(".+\\.(java|JAVA|c|C|h|H|cpp|CPP|cc|CC|cxx|CXX|m|M|i|I|ii|II)$");
+    	// The source files are measured while the directory tree is still being walked
+    	String sourceRegex = ".+\\.(java|JAVA|c|C|h|H|cpp|CPP|cc|CC|cxx|CXX|m|M|i|I|ii|II)$";
+    	SourceFileWalker walker = new SourceFileWalker(target, sourceRegex);
+    	// A shard looks up the sizes of all the files first, to take its own share of them
+    	ShardSelector shard = shardSpecification != null ? ShardSelector.parse(shardSpecification) : null;
+    	
+    	// Only the -d mode keeps the lines of the code; the others just count them.
+    	// The results of unchanged files are taken from the cache, except in the -d mode which needs the code itself.
+    	if ( scanningBytes && !ByteScanningLOCCounter.isApplicable() ){
+    		System.err.println("-b is ignored: the default encoding " + Charset.defaultCharset() + " is not ASCII-compatible");
+    		scanningBytes = false;
+    	}
+    	// Under a memory budget, the -d mode only counts the files too large to keep their lines
+    	MemoryBudget budget = maxMemory > 0 ? new MemoryBudget(maxMemory) : null;
+    	LOCMeasurer parsingMeasurer = new LOCMeasurer(mode == 3, scanningBytes, budget);
+    	LOCMeasurer measurer = parsingMeasurer;
+    	// Byte-identical copies of a file are measured once, except in the -d mode which prints the code of each file
+    	DeduplicatingLOCMeasurer deduplicatingMeasurer = null;
+    	if ( mode != 3 ){
+    		deduplicatingMeasurer = new DeduplicatingLOCMeasurer(measurer);
+    		measurer = deduplicatingMeasurer;
+    	}
+    	LOCCache cache = null;
+    	if ( cachePath != null && mode != 3 ){
+    		cache = new LOCCache(new File(cachePath));
+    		measurer = new CachingLOCMeasurer(measurer, cache);
+    	}
     	
         // For each source file, executes the measurement and prints the results 
-        BigInteger totalLOC = new BigInteger("0");
-        BigInteger totalLineCount = new BigInteger("0");
-    	for (Iterator<String> iterator = list.iterator(); iterator.hasNext();) {
-            LOC results = LOCCounter.measure(new SourceFile(iterator.next()));
-
-            totalLOC = totalLOC.add(BigInteger.valueOf(results.getLOC()));
-            totalLineCount = totalLineCount.add(BigInteger.valueOf(results.getTotalLineCount()));
-            System.out.print(results.getSourceFile().getPath() + ",");
-            if ( mode == 0 ){
-                System.out.println(results.getLOC());
+        ColumnarWriter store = storePath != null ? new ColumnarWriter(new File(storePath), ResultColumns.LOC_COLUMNS) : null;
+        ResultPrinter printer = new ResultPrinter(mode, summarizing, store);
+        // The files recorded in the journal by an interrupted run are printed from it and not measured again
+        ResultJournal journal = null;
+        // (-w) The watcher is started before the first measurement, so that no change made during it is missed
+        LOCWatcher watcher = null;
+        try{
+            if ( journalPath != null && mode == 3 ){
+                System.err.println("-J is ignored: the -d mode needs the code itself");
             }
-            else if ( mode == 1 ){
-                System.out.println(results.getTotalLineCount());
+            else if ( journalPath != null ){
+                journal = new ResultJournal(new File(journalPath), ResultColumns.LOC_COLUMNS, resuming ? printer : null);
+                printer.setJournal(journal);
             }
-            else{
-            	System.out.println(results.getLOC() + "," + results.getTotalLineCount() + "," + results.getBlankCount());
-                if ( mode == 3 ){
-                    System.err.println(results);        	
-                }
+            if ( watching ){
+                // each saved version is measured once, so the watcher does not remember the contents it has seen
+                watcher = new LOCWatcher(target, sourceRegex, cache != null ? new CachingLOCMeasurer(parsingMeasurer, cache) : parsingMeasurer);
+                printer.setWatcher(watcher);
             }
-    	}    	
+            Iterator<String> paths = shard != null ? shard.select(walker, target) : walker;
+            new ParallelLOCCounter(measurer, threadCount, ordered, prefetchDepth, budget)
+                .measure(journal != null ? journal.skipRecorded(paths) : paths, printer);
+            printer.checkError();
+            if ( watcher != null ){
+                printTotals(printer, measurer, deduplicatingMeasurer, summarizing);
+                // the changed files are measured again until the process is stopped
+                watcher.run(System.out);
+                return;
+            }
+        }
+        finally{
+            walker.close();
+            if ( watcher != null ){
+                watcher.close();
+            }
+            if ( journal != null ){
+                journal.close();
+            }
+            if ( cache != null ){
+                cache.close();
+            }
+            if ( store != null ){
+                store.close();
+            }
+        }
+        printTotals(printer, measurer, deduplicatingMeasurer, summarizing);
+    }
+
+    /**
+     * Prints the totals of the measured files through the standard error output.
+     *
+     * @param aPrinter the printer of the results
+     * @param aMeasurer the measurer of the files
+     * @param aDeduplicatingMeasurer the measurer of the distinct contents (or null if every file is measured)
+     * @param isSummarizing true if the distributions of the results are printed
+     */
+    private static void printTotals(final ResultPrinter aPrinter, final LOCMeasurer aMeasurer, final DeduplicatingLOCMeasurer aDeduplicatingMeasurer,
+                                    final boolean isSummarizing)
+    {
         System.err.println("----------------------------------------------------------------");
-    	System.err.println("# of source files = " + list.size() + ", " +
-    	                   "Total LOC = " + totalLOC + ", " +
-    	                   "Total line counts = " + totalLineCount);
+    	System.err.println("# of source files = " + aPrinter.getFileCount() + ", " +
+    	                   "Total LOC = " + aPrinter.getTotalLOC() + ", " +
+    	                   "Total line counts = " + aPrinter.getTotalLineCount());
+    	if ( aMeasurer instanceof CachingLOCMeasurer ){
+    		System.err.println("Cache hits = " + ((CachingLOCMeasurer)aMeasurer).getHitCount() + ", " +
+    		                   "Cache misses = " + ((CachingLOCMeasurer)aMeasurer).getMissCount());
+    	}
+    	if ( aDeduplicatingMeasurer != null ){
+    		System.err.println(aDeduplicatingMeasurer.getDeduplicator());
+    	}
+    	if ( isSummarizing ){
+    		aPrinter.printDistributions();
+    	}
     }
 
     /**
@@ -93,17 +232,234 @@ public class LOCCounterCUI
      */
     private static void printUsage()
     {
-		System.err.println("java -jar LOCCounter.jar [option] (source_file | directory)");
+		System.err.println("java -jar LOCCounter.jar [option ...] (source_file | directory)");
 		System.err.println("option : ");
 		System.err.println(" (none) : prints LOC");    				
 		System.err.println("     -t : prints the total line count");
 		System.err.println("     -a : prints LOC, the total line count, and the total blank line count");
 		System.err.println("     -d : prints all results together with the code");
+		System.err.println("   -j N : measures the files on N threads (0 : as many as the processors)");
+		System.err.println("     -u : prints the results in the order of completion (with -j)");
+		System.err.println("-c FILE : reuses the results of unchanged files recorded in the cache FILE (except with -d)");
+		System.err.println("     -b : counts the lines by scanning the raw bytes (faster; for ASCII, ISO-8859-1 or UTF-8 code)");
+		System.err.println("     -q : prints the distributions (quantiles and histograms) of the results at the end");
+		System.err.println("-o FILE : writes the results (as -a) into the columnar results FILE instead of printing them");
+		System.err.println("   -p N : reads N files ahead of the measurement on I/O threads (0 : reads each file when measured)");
+		System.err.println("  -m MB : holds back new files while the files in flight would need more than MB megabytes of heap;");
+		System.err.println("          with -d, the files too large for the budget are only counted (their code is not printed)");
+		System.err.println("-J FILE : records each file measured in the journal FILE (except with -d)");
+		System.err.println("     -R : resumes the run recorded in the journal (with -J): the files recorded are printed first");
+		System.err.println("          from the journal, and only the others are measured");
+		System.err.println("     -w : keeps watching the files after the first measurement, and measures again only the files");
+		System.err.println("          created, modified or deleted (not with -d, -o or -S); each change is printed as a delta");
+		System.err.println("-S I/N  : measures only the I-th of N shards of the files (1 <= I <= N); the shards are");
+		System.err.println("          chosen by the paths and the sizes alone, and their -o files are merged by ShardMergeCUI");
 		System.err.println();
 		System.err.println("The printing format is as below:");
         System.err.println("  (default) source_file,LOC");
         System.err.println("  (-t)      source_file,total_line_count");
 		System.err.println("  (-a)      source_file,LOC,total_line_count,total_blank_line_count");
         System.err.println("  (-d)      (same as -a, but the source code is printed through the standard error output");
+        System.err.println("  (-q)      STAT<TAB>metric<TAB>count<TAB>min<TAB>p50<TAB>p90<TAB>p99<TAB>max<TAB>mean");
+        System.err.println("            HIST<TAB>metric<TAB>lower_bound<TAB>upper_bound<TAB>count  (through the standard error output)");
+        System.err.println("  (-w)      (ADDED|CHANGED|REMOVED)<TAB>source_file<TAB>delta_LOC<TAB>delta_total_line_count<TAB>delta_blank_line_count");
+        System.err.println("            DIR<TAB>directory<TAB>file_count<TAB>LOC<TAB>total_line_count<TAB>total_blank_line_count");
+        System.err.println("            TOTAL<TAB>file_count<TAB>LOC<TAB>total_line_count<TAB>total_blank_line_count  (after each change)");
+    }
+
+    /**
+     * A listener which prints the result of each source file and sums up the totals.
+     */
+    private static class ResultPrinter
+    implements LOCListener, ResultJournal.UnitListener
+    {
+        /**
+         * Creates a printer for the specified display mode.
+         * 
+         * @param aMode the display mode (0--3)
+         * @param isSummarizing true if the distributions of the results are kept
+         * @param aStore the columnar results file written instead of the standard output (or null)
+         */
+        ResultPrinter(final int aMode, final boolean isSummarizing, final ColumnarWriter aStore)
+        {
+            mode = aMode;
+            store = aStore;
+            if ( isSummarizing ){
+                locDistribution = new Distribution("LOC");
+                totalLineCountDistribution = new Distribution("total_line_count");
+            }
+        }
+
+        public void measured(final LOC results)
+        {
+            print(results);
+            if ( journal != null && error == null ){
+                try{
+                    journal.write(results.getSourceFile().getPath(), new int[][] { ResultColumns.toValues(results) }, null);
+                }
+                catch ( IOException e ){
+                    error = e;
+                }
+            }
+        }
+
+        public void recovered(final String aPath, final int[][] aRows, final String[] aLabels)
+        throws IOException
+        {
+            int[] values = aRows[0];
+            print(new CountedLOC(new SourceFile(aPath), values[0], values[1], values[2]));
+            checkError();
+        }
+
+        /**
+         * Prints the results of a source file and adds them to the totals.
+         *
+         * @param results the LOC measurement results of the file
+         */
+        private void print(final LOC results)
+        {
+            if ( watcher != null ){
+                watcher.measured(results);
+            }
+            fileCount++;
+            totalLOC = totalLOC.add(BigInteger.valueOf(results.getLOC()));
+            totalLineCount = totalLineCount.add(BigInteger.valueOf(results.getTotalLineCount()));
+            if ( locDistribution != null ){
+                locDistribution.add(results.getLOC());
+                totalLineCountDistribution.add(results.getTotalLineCount());
+            }
+            if ( store != null ){
+                if ( error == null ){
+                    try{
+                        store.add(results.getSourceFile().getPath(), ResultColumns.toValues(results));
+                    }
+                    catch ( IOException e ){
+                        // a listener cannot throw it; it is thrown by checkError() after the measurement
+                        error = e;
+                    }
+                }
+                return;
+            }
+            System.out.print(results.getSourceFile().getPath() + ",");
+            if ( mode == 0 ){
+                System.out.println(results.getLOC());
+            }
+            else if ( mode == 1 ){
+                System.out.println(results.getTotalLineCount());
+            }
+            else{
+            	System.out.println(results.getLOC() + "," + results.getTotalLineCount() + "," + results.getBlankCount());
+                if ( mode == 3 ){
+                    if ( results instanceof CountedLOC ){
+                        System.err.println("(the code is not printed: the file is too large for the memory budget)");
+                    }
+                    else{
+                        System.err.println(results);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the number of the printed source files.
+         * 
+         * @return the number of source files
+         */
+        int getFileCount()
+        {
+            return fileCount;
+        }
+
+        /**
+         * Returns the sum of LOC.
+         * 
+         * @return the total LOC
+         */
+        BigInteger getTotalLOC()
+        {
+            return totalLOC;
+        }
+
+        /**
+         * Returns the sum of the total line counts.
+         * 
+         * @return the total line count
+         */
+        BigInteger getTotalLineCount()
+        {
+            return totalLineCount;
+        }
+
+        /**
+         * Throws the exception with which writing the columnar results file failed, if any.
+         *
+         * @throws IOException if the results could not be written
+         */
+        void checkError()
+        throws IOException
+        {
+            if ( error != null ){
+                throw error;
+            }
+        }
+
+        /**
+         * Sets the journal into which the results are recorded after they are printed.
+         *
+         * @param aJournal the journal
+         */
+        void setJournal(final ResultJournal aJournal)
+        {
+            journal = aJournal;
+        }
+
+        /**
+         * Sets the watcher which keeps the results of the first measurement.
+         *
+         * @param aWatcher the watcher
+         */
+        void setWatcher(final LOCWatcher aWatcher)
+        {
+            watcher = aWatcher;
+        }
+
+        /**
+         * Prints the distributions of LOC and the total line counts through the standard error output.
+         */
+        void printDistributions()
+        {
+            locDistribution.print(System.err);
+            totalLineCountDistribution.print(System.err);
+        }
+
+        /** The exception with which writing the columnar results file or the journal failed */
+        private IOException error;
+
+        /** The number of the printed source files */
+        private int fileCount;
+
+        /** The journal into which the results are recorded (or null) */
+        private ResultJournal journal;
+
+        /** The distribution of LOC (null unless summarizing) */
+        private Distribution locDistribution;
+
+        /** The display mode */
+        private final int mode;
+
+        /** The columnar results file written instead of the standard output (or null) */
+        private final ColumnarWriter store;
+
+        /** The sum of LOC */
+        private BigInteger totalLOC = new BigInteger("0");
+
+        /** The distribution of the total line counts (null unless summarizing) */
+        private Distribution totalLineCountDistribution;
+
+        /** The sum of the total line counts */
+        private BigInteger totalLineCount = new BigInteger("0");
+
+        /** The watcher which keeps the results of the first measurement (or null) */
+        private LOCWatcher watcher;
     }
 }
@@ -0,0 +1,19 @@
+package org.computer.aman.metrics.size.loc;
+
+/**
+ * A receiver of the measurement results delivered by {@link ParallelLOCCounter}.<br>
+ * The results are always delivered on the thread which called 
+ * {@link ParallelLOCCounter#measure(java.util.Iterator, LOCListener)}, 
+ * so implementations need no synchronization.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public interface LOCListener
+{
+    /**
+     * Receives the measurement results of a source file.
+     * 
+     * @param aResult the measurement results
+     */
+    void measured(LOC aResult);
+}
@@ -0,0 +1,133 @@
+package org.computer.aman.metrics.size.loc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.MemoryBudget;
+
+/**
+ * A measurer producing the LOC of a single source file.<br>
+ * This is the unit of work handed to {@link ParallelLOCCounter}; 
+ * instances must be safe to call from several threads at once.
+ * By default only the counts are taken ({@link StreamingLOCCounter}, or {@link ByteScanningLOCCounter} if requested); 
+ * the lines of the code are kept only when they are requested, e.g., for printing them.
+ * Under a {@link MemoryBudget}, the files too large to keep their lines within the budget are only counted.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LOCMeasurer
+{
+    /**
+     * Creates a measurer which only counts.
+     */
+    public LOCMeasurer()
+    {
+        this(false, false);
+    }
+
+    /**
+     * Creates a measurer.
+     * 
+     * @param isRetainingLines true if the results have to hold the lines of the code
+     * @param isScanningBytes true if the files are counted by scanning their raw bytes (ignored when the lines are retained)
+     */
+    public LOCMeasurer(final boolean isRetainingLines, final boolean isScanningBytes)
+    {
+        this(isRetainingLines, isScanningBytes, null);
+    }
+
+    /**
+     * Creates a measurer which keeps the lines only of the files fitting in the memory budget.
+     * 
+     * @param isRetainingLines true if the results have to hold the lines of the code
+     * @param isScanningBytes true if the files are counted by scanning their raw bytes (ignored when the lines are retained)
+     * @param aBudget the memory budget, by which the files too large to keep their lines are decided (or null)
+     */
+    public LOCMeasurer(final boolean isRetainingLines, final boolean isScanningBytes, final MemoryBudget aBudget)
+    {
+        retainingLines = isRetainingLines;
+        scanningBytes = isScanningBytes;
+        budget = aBudget;
+    }
+
+    /**
+     * Returns the heap held while a file of the specified size is measured, which is reserved from a memory budget.
+     * 
+     * @param aFileSize the size of the file in bytes
+     * @return the estimated number of bytes
+     */
+    public long getParseStateSize(final long aFileSize)
+    {
+        if ( isRetainingLines(aFileSize) ){
+            return MemoryBudget.estimateParseState(aFileSize);
+        }
+        // a reader's or a scanner's buffer, whatever the size of the file is
+        return STREAMING_STATE_SIZE;
+    }
+
+    /**
+     * Measures the specified source file.
+     * 
+     * @param aPath the path of the source file
+     * @return the measurement results
+     * @throws IOException if the file could not be read
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     */
+    public LOC measure(final String aPath)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        return measure(aPath, null);
+    }
+
+    /**
+     * Measures the specified source file whose contents may have been read beforehand
+     * (e.g. by {@link org.computer.aman.io.FilePrefetcher}).
+     * The contents are not used when the lines of the code are retained, since {@link LOCCounter} reads the file by itself.
+     * 
+     * @param aPath the path of the source file
+     * @param aContents the contents of the file (from the position to the limit; the buffer is not changed),
+     *                  or null if the file has to be read
+     * @return the measurement results
+     * @throws IOException if the file could not be read
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     */
+    public LOC measure(final String aPath, final ByteBuffer aContents)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        SourceFile file = new SourceFile(aPath);
+        if ( isRetainingLines(aContents != null ? aContents.remaining() : file.length()) ){
+            return LOCCounter.measure(file);
+        }
+        if ( scanningBytes ){
+            return aContents != null ? ByteScanningLOCCounter.measure(file, aContents.duplicate())
+                                     : ByteScanningLOCCounter.measure(file);
+        }
+        return aContents != null ? StreamingLOCCounter.measure(file, aContents)
+                                 : StreamingLOCCounter.measure(file);
+    }
+
+    /**
+     * Returns whether the lines of a file of the specified size are kept.
+     * 
+     * @param aFileSize the size of the file in bytes
+     * @return true if the lines are requested and fit in the memory budget
+     */
+    private boolean isRetainingLines(final long aFileSize)
+    {
+        return retainingLines && (budget == null || !budget.isTooLargeToParse(aFileSize));
+    }
+
+    /** The heap held while a file is only counted */
+    private static final long STREAMING_STATE_SIZE = 64 * 1024;
+
+    /** The memory budget deciding the files too large to keep their lines (or null) */
+    private final MemoryBudget budget;
+
+    /** True if the results hold the lines of the code */
+    private final boolean retainingLines;
+
+    /** True if the files are counted by scanning their raw bytes */
+    private final boolean scanningBytes;
+}
@@ -0,0 +1,119 @@
+package org.computer.aman.metrics.size.loc;
+
+/**
+ * The sum of the LOC measurement results of a set of source files.<br>
+ * {@link LOC} holds the results of a single file and cannot be combined; a total can,
+ * and since {@link #merge(LOCTotal)} is associative and commutative, the partial totals
+ * of parallel workers can be merged in any order without sharing anything while measuring.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LOCTotal
+{
+    /**
+     * Adds the results of a source file.
+     *
+     * @param aResults the LOC measurement results of the file
+     * @return this total
+     */
+    public LOCTotal add(final LOC aResults)
+    {
+        fileCount++;
+        loc += aResults.getLOC();
+        totalLineCount += aResults.getTotalLineCount();
+        blankCount += aResults.getBlankCount();
+        return this;
+    }
+
+    /**
+     * Adds another total.
+     *
+     * @param aTotal the total to add (it is not changed)
+     * @return this total
+     */
+    public LOCTotal merge(final LOCTotal aTotal)
+    {
+        fileCount += aTotal.fileCount;
+        loc += aTotal.loc;
+        totalLineCount += aTotal.totalLineCount;
+        blankCount += aTotal.blankCount;
+        return this;
+    }
+
+    /**
+     * Removes the results of a source file added before, e.g., when the file has been changed or deleted.
+     *
+     * @param aResults the LOC measurement results added before
+     * @return this total
+     */
+    public LOCTotal remove(final LOC aResults)
+    {
+        fileCount--;
+        loc -= aResults.getLOC();
+        totalLineCount -= aResults.getTotalLineCount();
+        blankCount -= aResults.getBlankCount();
+        return this;
+    }
+
+    /**
+     * Returns the sum of the blank line counts.
+     *
+     * @return the total blank line count
+     */
+    public long getBlankCount()
+    {
+        return blankCount;
+    }
+
+    /**
+     * Returns the number of the source files added.
+     *
+     * @return the number of source files
+     */
+    public int getFileCount()
+    {
+        return fileCount;
+    }
+
+    /**
+     * Returns the sum of LOC.
+     *
+     * @return the total LOC
+     */
+    public long getLOC()
+    {
+        return loc;
+    }
+
+    /**
+     * Returns the sum of the total line counts.
+     *
+     * @return the total line count
+     */
+    public long getTotalLineCount()
+    {
+        return totalLineCount;
+    }
+
+    /**
+     * Returns the totals in the form "file_count TAB LOC TAB total_line_count TAB total_blank_line_count".
+     *
+     * @return the totals
+     */
+    public String toString()
+    {
+        return fileCount + "\t" + loc + "\t" + totalLineCount + "\t" + blankCount;
+    }
+
+    /** The sum of the blank line counts */
+    private long blankCount;
+
+    /** The number of the source files */
+    private int fileCount;
+
+    /** The sum of LOC */
+    private long loc;
+
+    /** The sum of the total line counts */
+    private long totalLineCount;
+}
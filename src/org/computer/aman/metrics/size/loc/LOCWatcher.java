@@ -0,0 +1,438 @@
+package org.computer.aman.metrics.size.loc;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+
+/**
+ * A watcher keeping the LOC of a directory tree up to date as its files change.<br>
+ * The results of the first, full measurement are handed to the watcher as a {@link LOCListener};
+ * after that, the directories are watched through a {@link WatchService} and only the files created,
+ * modified or deleted are measured again.  The results of each file, the totals of each directory
+ * (including its subdirectories) and the total of the tree are kept in memory and updated by the differences,
+ * so an edit costs the measurement of the edited file rather than a rescan.
+ * The events arriving within a short quiet period are handled together, so the several events of a save
+ * measure a file once.  When the events overflow, the tree is rescanned and only the differences are printed.
+ * <p>
+ * For each batch of events, {@link #run(PrintStream)} prints a line per changed file,
+ * "(ADDED|CHANGED|REMOVED) TAB path TAB delta_LOC TAB delta_total_line_count TAB delta_blank_line_count",
+ * then "DIR TAB directory TAB file_count TAB LOC TAB total_line_count TAB blank_line_count" for the directories
+ * of the changed files and all their ancestors up to the root (whose totals include the changed files),
+ * and "TOTAL TAB file_count TAB LOC TAB total_line_count TAB blank_line_count".
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LOCWatcher
+implements LOCListener
+{
+    /**
+     * Starts watching the specified file or directory tree.
+     * It should be created before the first measurement, so that no change made during it is missed.
+     *
+     * @param aRoot the path of the file or the directory
+     * @param aRegex the regular expression which the paths of the source files have to match
+     * @param aMeasurer the measurer of the changed files
+     * @throws IOException if the directories could not be watched
+     */
+    public LOCWatcher(final String aRoot, final String aRegex, final LOCMeasurer aMeasurer)
+    throws IOException
+    {
+        root = new File(aRoot);
+        pattern = Pattern.compile(aRegex);
+        measurer = aMeasurer;
+        watchService = FileSystems.getDefault().newWatchService();
+        watchedDirectories = new HashMap<WatchKey, Path>();
+        results = new TreeMap<String, LOC>();
+        directoryTotals = new HashMap<String, LOCTotal>();
+        total = new LOCTotal();
+        watchingTree = root.isDirectory();
+        if ( watchingTree ){
+            register(root, null);
+        }
+        else{
+            // a single file is watched through its directory, and the events of the other files are ignored
+            Path directory = root.getParentFile() != null ? root.getParentFile().toPath() : Paths.get("");
+            watchedDirectories.put(directory.toAbsolutePath().register(watchService, EVENT_KINDS), directory);
+        }
+    }
+
+    /**
+     * Stops watching.
+     *
+     * @throws IOException if the watch service could not be closed
+     */
+    public void close()
+    throws IOException
+    {
+        watchService.close();
+    }
+
+    /**
+     * Returns the total of the specified directory, including its subdirectories.
+     *
+     * @param aDirectory the path of a directory in the tree, as the paths of the files begin with
+     * @return the total, or null if the directory has no source files
+     */
+    public LOCTotal getDirectoryTotal(final String aDirectory)
+    {
+        return directoryTotals.get(new File(aDirectory).getPath());
+    }
+
+    /**
+     * Returns the total of the tree.
+     *
+     * @return the total
+     */
+    public LOCTotal getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * Records the results of the first measurement.
+     */
+    public void measured(final LOC aResults)
+    {
+        String path = aResults.getSourceFile().getPath();
+        LOC previous = results.put(path, aResults);
+        if ( previous != null ){
+            subtract(path, previous);
+        }
+        add(path, aResults);
+    }
+
+    /**
+     * Measures the changed files again and prints the differences, until the thread is interrupted.
+     *
+     * @param anOutput the output of the differences
+     * @throws IOException if a changed file could not be read
+     */
+    public void run(final PrintStream anOutput)
+    throws IOException
+    {
+        try{
+            while ( !watchedDirectories.isEmpty() ){
+                Set<String> changedPaths = new LinkedHashSet<String>();
+                boolean overflowed = collect(watchService.take(), changedPaths);
+                WatchKey key = null;
+                while ( (key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null ){
+                    overflowed |= collect(key, changedPaths);
+                }
+                if ( overflowed ){
+                    changedPaths.addAll(results.keySet());
+                    changedPaths.addAll(listSourceFiles(root));
+                }
+                update(changedPaths, anOutput);
+            }
+        }
+        catch ( InterruptedException e ){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds the results of a file to the totals of its directories and the tree.
+     *
+     * @param aPath the path of the file
+     * @param aResults the results
+     */
+    private void add(final String aPath, final LOC aResults)
+    {
+        total.add(aResults);
+        for ( String directory = getDirectory(aPath); directory != null; directory = getParentDirectory(directory) ){
+            LOCTotal directoryTotal = directoryTotals.get(directory);
+            if ( directoryTotal == null ){
+                directoryTotal = new LOCTotal();
+                directoryTotals.put(directory, directoryTotal);
+            }
+            directoryTotal.add(aResults);
+        }
+    }
+
+    /**
+     * Takes the changed paths from the events of a watch key.
+     *
+     * @param aKey the watch key signalled
+     * @param aChangedPaths the set to which the changed paths are added
+     * @return true if some events were lost (overflowed)
+     * @throws IOException if a new directory could not be watched
+     */
+    private boolean collect(final WatchKey aKey, final Set<String> aChangedPaths)
+    throws IOException
+    {
+        Path directory = watchedDirectories.get(aKey);
+        boolean overflowed = false;
+        for ( Iterator<WatchEvent<?>> itr = aKey.pollEvents().iterator(); itr.hasNext(); ){
+            WatchEvent<?> event = itr.next();
+            if ( event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null ){
+                overflowed = true;
+                continue;
+            }
+            File file = directory.resolve((Path)event.context()).toFile();
+            if ( !watchingTree && !file.getPath().equals(root.getPath()) ){
+                continue;
+            }
+            if ( event.kind() == StandardWatchEventKinds.ENTRY_CREATE && file.isDirectory() ){
+                // the files may have been created before the directory was watched
+                register(file, aChangedPaths);
+            }
+            else{
+                // a deleted directory removes the files under it
+                aChangedPaths.add(file.getPath());
+            }
+        }
+        if ( !aKey.reset() ){
+            watchedDirectories.remove(aKey);
+        }
+        return overflowed;
+    }
+
+    /**
+     * Returns the directory of the file, if it is in the tree.
+     *
+     * @param aPath the path of the file
+     * @return the path of the directory, or null if the root is the file itself
+     */
+    private String getDirectory(final String aPath)
+    {
+        return watchingTree ? new File(aPath).getParent() : null;
+    }
+
+    /**
+     * Returns the parent directory of the directory, if it is in the tree.
+     *
+     * @param aDirectory the path of a directory
+     * @return the path of the parent directory, or null if the directory is the root
+     */
+    private String getParentDirectory(final String aDirectory)
+    {
+        return aDirectory.equals(root.getPath()) ? null : new File(aDirectory).getParent();
+    }
+
+    /**
+     * Lists the source files under the specified file or directory.
+     *
+     * @param aFile the file or the directory
+     * @return the paths of the source files
+     */
+    private ArrayList<String> listSourceFiles(final File aFile)
+    {
+        ArrayList<String> paths = new ArrayList<String>();
+        if ( aFile.isFile() ){
+            if ( pattern.matcher(aFile.getPath()).matches() ){
+                paths.add(aFile.getPath());
+            }
+            return paths;
+        }
+        String[] names = aFile.list();
+        for ( int i = 0; names != null && i < names.length; i++ ){
+            paths.addAll(listSourceFiles(new File(aFile.getPath() + File.separator + names[i])));
+        }
+        return paths;
+    }
+
+    /**
+     * Watches the specified directory and its subdirectories.
+     *
+     * @param aDirectory the directory
+     * @param aChangedPaths the set to which the source files found are added (null if they are not needed)
+     * @throws IOException if a directory could not be watched
+     */
+    private void register(final File aDirectory, final Set<String> aChangedPaths)
+    throws IOException
+    {
+        watchedDirectories.put(aDirectory.toPath().register(watchService, EVENT_KINDS), aDirectory.toPath());
+        String[] names = aDirectory.list();
+        for ( int i = 0; names != null && i < names.length; i++ ){
+            File file = new File(aDirectory.getPath() + File.separator + names[i]);
+            if ( file.isDirectory() ){
+                register(file, aChangedPaths);
+            }
+            else if ( aChangedPaths != null ){
+                aChangedPaths.add(file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Subtracts the results of a file from the totals of its directories and the tree.
+     *
+     * @param aPath the path of the file
+     * @param aResults the results added before
+     */
+    private void subtract(final String aPath, final LOC aResults)
+    {
+        total.remove(aResults);
+        for ( String directory = getDirectory(aPath); directory != null; directory = getParentDirectory(directory) ){
+            LOCTotal directoryTotal = directoryTotals.get(directory);
+            directoryTotal.remove(aResults);
+            if ( directoryTotal.getFileCount() == 0 ){
+                directoryTotals.remove(directory);
+            }
+        }
+    }
+
+    /**
+     * Measures the changed paths again, updates the results and the totals, and prints the differences.
+     *
+     * @param aChangedPaths the paths of the changed files and directories
+     * @param anOutput the output of the differences
+     * @throws IOException if a changed file could not be read
+     */
+    private void update(final Set<String> aChangedPaths, final PrintStream anOutput)
+    throws IOException
+    {
+        Set<String> changedDirectories = new LinkedHashSet<String>();
+        for ( Iterator<String> itr = aChangedPaths.iterator(); itr.hasNext(); ){
+            String path = itr.next();
+            LOC previous = results.get(path);
+            LOC current = null;
+            if ( pattern.matcher(path).matches() && new File(path).isFile() ){
+                try{
+                    current = measurer.measure(path);
+                }
+                catch ( FileNotFoundException e ){
+                    // deleted after the event
+                }
+                catch ( NotSupportedSourceFileExeption e ){
+                    System.err.println(e.getMessage());
+                }
+            }
+            else if ( previous == null ){
+                // a deleted directory, or a file which is not a source file
+                String prefix = path + File.separator;
+                Map<String, LOC> deletedFiles = results.subMap(prefix, prefix + Character.MAX_VALUE);
+                for ( Iterator<Map.Entry<String, LOC>> entries = deletedFiles.entrySet().iterator(); entries.hasNext(); ){
+                    Map.Entry<String, LOC> entry = entries.next();
+                    entries.remove();
+                    subtract(entry.getKey(), entry.getValue());
+                    print(REMOVED, entry.getKey(), entry.getValue(), -1, anOutput);
+                    changedDirectories.add(getDirectory(entry.getKey()));
+                }
+                continue;
+            }
+
+            if ( previous != null && current != null && previous.getLOC() == current.getLOC()
+                 && previous.getTotalLineCount() == current.getTotalLineCount() && previous.getBlankCount() == current.getBlankCount() ){
+                continue;
+            }
+            if ( previous != null ){
+                results.remove(path);
+                subtract(path, previous);
+            }
+            if ( current != null ){
+                results.put(path, current);
+                add(path, current);
+            }
+            if ( previous == null ){
+                print(ADDED, path, current, 1, anOutput);
+            }
+            else if ( current == null ){
+                print(REMOVED, path, previous, -1, anOutput);
+            }
+            else{
+                anOutput.println(CHANGED + "\t" + path + "\t" + (current.getLOC() - previous.getLOC()) + "\t"
+                                 + (current.getTotalLineCount() - previous.getTotalLineCount()) + "\t"
+                                 + (current.getBlankCount() - previous.getBlankCount()));
+            }
+            changedDirectories.add(getDirectory(path));
+        }
+        if ( changedDirectories.isEmpty() ){
+            return;
+        }
+
+        changedDirectories.remove(null);
+        // the totals of the ancestors have changed as well
+        String[] directories = changedDirectories.toArray(new String[changedDirectories.size()]);
+        for ( int i = 0; i < directories.length; i++ ){
+            for ( String directory = getParentDirectory(directories[i]); directory != null; directory = getParentDirectory(directory) ){
+                changedDirectories.add(directory);
+            }
+        }
+        for ( Iterator<String> itr = changedDirectories.iterator(); itr.hasNext(); ){
+            String directory = itr.next();
+            LOCTotal directoryTotal = directoryTotals.get(directory);
+            anOutput.println("DIR\t" + directory + "\t" + (directoryTotal != null ? directoryTotal : new LOCTotal()));
+        }
+        anOutput.println("TOTAL\t" + total);
+        anOutput.flush();
+    }
+
+    /**
+     * Prints the difference of a file added or removed.
+     *
+     * @param aKind the kind of the difference (ADDED or REMOVED)
+     * @param aPath the path of the file
+     * @param aResults the results of the file
+     * @param aSign 1 if added, -1 if removed
+     * @param anOutput the output
+     */
+    private static void print(final String aKind, final String aPath, final LOC aResults, final int aSign, final PrintStream anOutput)
+    {
+        anOutput.println(aKind + "\t" + aPath + "\t" + aSign * aResults.getLOC() + "\t"
+                         + aSign * aResults.getTotalLineCount() + "\t" + aSign * aResults.getBlankCount());
+    }
+
+    /** The kind of a difference: a source file created */
+    private static final String ADDED = "ADDED";
+
+    /** The kind of a difference: a source file modified */
+    private static final String CHANGED = "CHANGED";
+
+    /** The kinds of the events watched */
+    private static final WatchEvent.Kind<?>[] EVENT_KINDS = {
+        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY
+    };
+
+    /** The time waited for more events before a batch of events is handled (in milliseconds) */
+    private static final long QUIET_PERIOD = 50;
+
+    /** The kind of a difference: a source file deleted */
+    private static final String REMOVED = "REMOVED";
+
+    /** The totals of the directories (including their subdirectories) having source files */
+    private final Map<String, LOCTotal> directoryTotals;
+
+    /** The measurer of the changed files */
+    private final LOCMeasurer measurer;
+
+    /** The pattern which the paths of the source files have to match */
+    private final Pattern pattern;
+
+    /** The results of the source files, by path */
+    private final TreeMap<String, LOC> results;
+
+    /** The watched file or the root of the watched tree */
+    private final File root;
+
+    /** The total of the tree */
+    private final LOCTotal total;
+
+    /** The directories watched, by watch key */
+    private final Map<WatchKey, Path> watchedDirectories;
+
+    /** True if a directory tree is watched, false if a single file is */
+    private final boolean watchingTree;
+
+    /** The watch service */
+    private final WatchService watchService;
+}
@@ -0,0 +1,363 @@
+package org.computer.aman.metrics.size.loc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.computer.aman.io.FilePrefetcher;
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.metrics.util.MemoryBudget;
+
+/**
+ * A measurement engine which measures source files concurrently on a work-stealing pool.<br>
+ * The results are handed to a {@link LOCListener} on the calling thread, either in the order
+ * of the given paths (ordered mode) or as soon as each measurement finishes (unordered mode).
+ * The number of files in flight is bounded, so a slow file cannot make the ordered mode
+ * buffer an unbounded number of finished results.
+ * Optionally the files are read ahead by a {@link FilePrefetcher}, so the measuring threads
+ * (or the calling thread when measuring on a single thread) do not wait for the disk.
+ * Under a {@link MemoryBudget}, the heap held by the files in flight is bounded as well as their number.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ParallelLOCCounter
+{
+    /**
+     * Creates an engine using the specified measurer and number of threads.
+     *
+     * @param aMeasurer the measurer applied to each source file
+     * @param aThreadCount the number of worker threads (1 measures on the calling thread, 0 or less uses all processors)
+     * @param isOrdered true if the results have to be delivered in the order of the given paths
+     */
+    public ParallelLOCCounter(final LOCMeasurer aMeasurer, final int aThreadCount, final boolean isOrdered)
+    {
+        this(aMeasurer, aThreadCount, isOrdered, 0);
+    }
+
+    /**
+     * Creates an engine which reads the files ahead of the measurement.
+     *
+     * @param aMeasurer the measurer applied to each source file
+     * @param aThreadCount the number of worker threads (1 measures on the calling thread, 0 or less uses all processors)
+     * @param isOrdered true if the results have to be delivered in the order of the given paths
+     * @param aPrefetchDepth the number of files read ahead (0 or less reads each file when it is measured)
+     */
+    public ParallelLOCCounter(final LOCMeasurer aMeasurer, final int aThreadCount, final boolean isOrdered, final int aPrefetchDepth)
+    {
+        this(aMeasurer, aThreadCount, isOrdered, aPrefetchDepth, null);
+    }
+
+    /**
+     * Creates an engine which holds back new files while the heap reserved for the files in flight
+     * would exceed the memory budget.  The heap of a file is estimated by {@link LOCMeasurer#getParseStateSize(long)}
+     * and reserved until its results have been delivered.
+     *
+     * @param aMeasurer the measurer applied to each source file
+     * @param aThreadCount the number of worker threads (1 measures on the calling thread, 0 or less uses all processors)
+     * @param isOrdered true if the results have to be delivered in the order of the given paths
+     * @param aPrefetchDepth the number of files read ahead (0 or less reads each file when it is measured)
+     * @param aBudget the memory budget (or null)
+     */
+    public ParallelLOCCounter(final LOCMeasurer aMeasurer, final int aThreadCount, final boolean isOrdered, final int aPrefetchDepth,
+                              final MemoryBudget aBudget)
+    {
+        budget = aBudget;
+        measurer = aMeasurer;
+        threadCount = aThreadCount > 0 ? aThreadCount : Runtime.getRuntime().availableProcessors();
+        ordered = isOrdered;
+        prefetchDepth = Math.max(aPrefetchDepth, 0);
+    }
+
+    /**
+     * Measures all the source files given by the iterator and delivers each result to the listener.
+     *
+     * @param aPathIterator the paths of the source files
+     * @param aListener the receiver of the results
+     * @throws IOException if a file could not be read
+     * @throws NotSupportedSourceFileExeption if a file is not a supported source file
+     */
+    public void measure(final Iterator<String> aPathIterator, final LOCListener aListener)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        if ( prefetchDepth == 0 ){
+            measure(aPathIterator, null, aListener);
+            return;
+        }
+        FilePrefetcher prefetcher = new FilePrefetcher(aPathIterator, prefetchDepth);
+        try{
+            measure(aPathIterator, prefetcher, aListener);
+        }
+        finally{
+            prefetcher.close();
+        }
+    }
+
+    /**
+     * Measures all the source files, taking them from the prefetcher if there is.
+     *
+     * @param aPathIterator the paths of the source files
+     * @param aPrefetcher the prefetcher reading the files of the paths ahead, or null
+     * @param aListener the receiver of the results
+     * @throws IOException if a file could not be read
+     * @throws NotSupportedSourceFileExeption if a file is not a supported source file
+     */
+    private void measure(final Iterator<String> aPathIterator, final FilePrefetcher aPrefetcher, final LOCListener aListener)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        Iterator<?> source = aPrefetcher != null ? aPrefetcher : aPathIterator;
+        if ( threadCount == 1 ){
+            while ( source.hasNext() ){
+                aListener.measured(nextTask(aPathIterator, aPrefetcher).call().results);
+            }
+            return;
+        }
+
+        // a file is submitted when both the window and the memory budget have room for it;
+        // otherwise the finished results are delivered (and their reservations released) first
+        final int WINDOW = threadCount * IN_FLIGHT_PER_THREAD;
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try{
+            if ( ordered ){
+                ArrayDeque<Future<Measured>> inFlight = new ArrayDeque<Future<Measured>>(WINDOW);
+                while ( source.hasNext() ){
+                    Task task = nextTask(aPathIterator, aPrefetcher);
+                    while ( inFlight.size() >= WINDOW || !reserve(task.reservation) ){
+                        deliver(take(inFlight.poll()), aListener);
+                    }
+                    inFlight.add(pool.submit(task));
+                }
+                while ( !inFlight.isEmpty() ){
+                    deliver(take(inFlight.poll()), aListener);
+                }
+            }
+            else{
+                CompletionService<Measured> service = new ExecutorCompletionService<Measured>(pool);
+                int inFlight = 0;
+                while ( source.hasNext() ){
+                    Task task = nextTask(aPathIterator, aPrefetcher);
+                    for ( ; inFlight >= WINDOW || !reserve(task.reservation); inFlight-- ){
+                        deliver(take(service), aListener);
+                    }
+                    service.submit(task);
+                    inFlight++;
+                }
+                for ( ; inFlight > 0; inFlight-- ){
+                    deliver(take(service), aListener);
+                }
+            }
+        }
+        finally{
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Releases the reservation of the measured file and hands its results to the listener.
+     *
+     * @param aMeasured the results of the file
+     * @param aListener the receiver of the results
+     */
+    private void deliver(final Measured aMeasured, final LOCListener aListener)
+    {
+        if ( budget != null ){
+            budget.release(aMeasured.reservation);
+        }
+        aListener.measured(aMeasured.results);
+    }
+
+    /**
+     * Creates the task measuring the next source file.
+     *
+     * @param aPathIterator the paths of the source files
+     * @param aPrefetcher the prefetcher reading the files of the paths ahead, or null
+     * @return the measurement task
+     */
+    private Task nextTask(final Iterator<String> aPathIterator, final FilePrefetcher aPrefetcher)
+    {
+        if ( aPrefetcher == null ){
+            final String PATH = aPathIterator.next();
+            return new Task(PATH, null) {
+                LOC measure()
+                throws IOException, NotSupportedSourceFileExeption
+                {
+                    return measurer.measure(PATH);
+                }
+            };
+        }
+        final FilePrefetcher.Contents CONTENTS = aPrefetcher.next();
+        return new Task(CONTENTS.getPath(), CONTENTS) {
+            LOC measure()
+            throws IOException, NotSupportedSourceFileExeption
+            {
+                try{
+                    return measurer.measure(CONTENTS.getPath(), CONTENTS.getBytes());
+                }
+                finally{
+                    CONTENTS.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Reserves the heap for a file from the memory budget, if there is.
+     *
+     * @param aSize the number of bytes
+     * @return true if the bytes have been reserved (or there is no budget)
+     */
+    private boolean reserve(final long aSize)
+    {
+        return budget == null || budget.tryAcquire(aSize);
+    }
+
+    /**
+     * Waits for the next completed task of the completion service and returns its result.
+     *
+     * @param aService the completion service
+     * @return the measurement results
+     */
+    private static Measured take(final CompletionService<Measured> aService)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        try{
+            return take(aService.take());
+        }
+        catch ( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for measurement results");
+        }
+    }
+
+    /**
+     * Waits for the specified task and returns its result, rethrowing the exception the task failed with.
+     *
+     * @param aFuture the task
+     * @return the measurement results
+     */
+    private static Measured take(final Future<Measured> aFuture)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        try{
+            return aFuture.get();
+        }
+        catch ( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for measurement results");
+        }
+        catch ( ExecutionException e ){
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ){
+                throw (IOException)cause;
+            }
+            if ( cause instanceof NotSupportedSourceFileExeption ){
+                throw (NotSupportedSourceFileExeption)cause;
+            }
+            if ( cause instanceof RuntimeException ){
+                throw (RuntimeException)cause;
+            }
+            if ( cause instanceof Error ){
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * The results of a file together with the heap reserved for it.
+     */
+    private static class Measured
+    {
+        /**
+         * Creates the results.
+         *
+         * @param aResults the measurement results
+         * @param aReservation the number of bytes reserved from the memory budget
+         */
+        Measured(final LOC aResults, final long aReservation)
+        {
+            results = aResults;
+            reservation = aReservation;
+        }
+
+        /** The number of bytes reserved from the memory budget */
+        private final long reservation;
+
+        /** The measurement results */
+        private final LOC results;
+    }
+
+    /**
+     * A measurement task, which throws only the exceptions of the measurement.
+     */
+    private abstract class Task
+    implements Callable<Measured>
+    {
+        /**
+         * Creates the task of the specified file, estimating the heap it needs if there is a memory budget.
+         *
+         * @param aPath the path of the source file
+         * @param aContents the contents of the file read ahead, or null
+         */
+        Task(final String aPath, final FilePrefetcher.Contents aContents)
+        {
+            long size = 0;
+            if ( budget != null ){
+                ByteBuffer bytes = null;
+                try{
+                    bytes = aContents != null ? aContents.getBytes() : null;
+                }
+                catch ( IOException e ){
+                    // reported by the measurement
+                }
+                size = measurer.getParseStateSize(bytes != null ? bytes.remaining() : new File(aPath).length());
+            }
+            reservation = size;
+        }
+
+        public Measured call()
+        throws IOException, NotSupportedSourceFileExeption
+        {
+            return new Measured(measure(), reservation);
+        }
+
+        /**
+         * Measures the file.
+         *
+         * @return the measurement results
+         * @throws IOException if the file could not be read
+         * @throws NotSupportedSourceFileExeption if the file is not a supported source file
+         */
+        abstract LOC measure()
+        throws IOException, NotSupportedSourceFileExeption;
+
+        /** The number of bytes to reserve from the memory budget */
+        private final long reservation;
+    }
+
+    /** The number of files kept in flight per worker thread */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    /** The memory budget limiting the heap held by the files in flight (or null) */
+    private final MemoryBudget budget;
+
+    /** The measurer applied to each source file */
+    private final LOCMeasurer measurer;
+
+    /** True if the results are delivered in the order of the given paths */
+    private final boolean ordered;
+
+    /** The number of files read ahead (0 if the files are not read ahead) */
+    private final int prefetchDepth;
+
+    /** The number of worker threads */
+    private final int threadCount;
+}
@@ -0,0 +1,122 @@
+package org.computer.aman.metrics.size.loc;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.LineClassifier;
+
+/**
+ * A LOC counter which only counts.<br>
+ * It gives the same LOC, total line count and blank line count as {@link LOCCounter},
+ * but it neither builds a code map of the whole file nor keeps the lines of the code,
+ * so the memory it needs does not depend on the size of the file.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class StreamingLOCCounter
+{
+    /**
+     * Measures the specified source file.
+     * 
+     * @param aSourceFile the source file
+     * @return the measurement results (without the lines of the code)
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     * @throws IOException if the file could not be read
+     */
+    public static CountedLOC measure(final SourceFile aSourceFile)
+    throws NotSupportedSourceFileExeption, IOException
+    {
+        LineClassifier classifier = LineClassifier.create(aSourceFile);
+        if ( classifier == null ){
+            throw new NotSupportedSourceFileExeption("not supported file type: " + aSourceFile);
+        }
+        return measure(aSourceFile, classifier, new FileReader(aSourceFile));
+    }
+
+    /**
+     * Measures the source file whose contents have been read beforehand.
+     * The contents are decoded in the default encoding, as {@link FileReader} does.
+     * 
+     * @param aSourceFile the source file
+     * @param aContents the contents of the file (from the position to the limit; the buffer is not changed)
+     * @return the measurement results (without the lines of the code)
+     * @throws NotSupportedSourceFileExeption if the file is not a Java, C or C++ source file
+     */
+    public static CountedLOC measure(final SourceFile aSourceFile, final ByteBuffer aContents)
+    throws NotSupportedSourceFileExeption
+    {
+        LineClassifier classifier = LineClassifier.create(aSourceFile);
+        if ( classifier == null ){
+            throw new NotSupportedSourceFileExeption("not supported file type: " + aSourceFile);
+        }
+        final ByteBuffer CONTENTS = aContents.duplicate();
+        InputStream input = new InputStream() {
+            public int read()
+            {
+                return CONTENTS.hasRemaining() ? CONTENTS.get() & 0xff : -1;
+            }
+
+            public int read(final byte[] aBytes, final int anOffset, final int aLength)
+            {
+                if ( aLength == 0 ){
+                    return 0;
+                }
+                if ( !CONTENTS.hasRemaining() ){
+                    return -1;
+                }
+                int length = Math.min(aLength, CONTENTS.remaining());
+                CONTENTS.get(aBytes, anOffset, length);
+                return length;
+            }
+        };
+        try{
+            return measure(aSourceFile, classifier, new InputStreamReader(input));
+        }
+        catch ( IOException e ){
+            // never thrown by reading a buffer
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Counts the lines read from the reader, and closes the reader.
+     * 
+     * @param aSourceFile the source file
+     * @param aClassifier the classifier of the lines
+     * @param aReader the reader of the contents of the file
+     * @return the measurement results (without the lines of the code)
+     * @throws IOException if the contents could not be read
+     */
+    private static CountedLOC measure(final SourceFile aSourceFile, final LineClassifier aClassifier, final Reader aReader)
+    throws IOException
+    {
+        int loc = 0;
+        int totalLineCount = 0;
+        int blank = 0;
+        BufferedReader reader = new BufferedReader(aReader);
+        try{
+            String line = null;
+            while ( (line = reader.readLine()) != null ){
+                int kinds = aClassifier.classify(line);
+                totalLineCount++;
+                if ( (kinds & LineClassifier.CODE) != 0 ){
+                    loc++;
+                }
+                else if ( kinds == 0 ){
+                    blank++;
+                }
+            }
+        }
+        finally{
+            reader.close();
+        }
+        return new CountedLOC(aSourceFile, loc, totalLineCount, blank);
+    }
+}
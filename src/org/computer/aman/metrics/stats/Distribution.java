@@ -0,0 +1,148 @@
+package org.computer.aman.metrics.stats;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * A summary of the distribution of a metric, kept in a fixed amount of memory.<br>
+ * The count, the minimum, the maximum and the mean are exact; the quantiles come from a
+ * {@link QuantileSketch} and the shape from a {@link LogHistogram}.  Distributions of the same metric
+ * collected by parallel workers are combined with {@link #merge(Distribution)}.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class Distribution
+{
+    /**
+     * Creates an empty distribution.
+     *
+     * @param aName the name of the metric
+     */
+    public Distribution(final String aName)
+    {
+        name = aName;
+        sketch = new QuantileSketch();
+        histogram = new LogHistogram();
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param aValue the value (0 or more)
+     * @throws IllegalArgumentException if the value is negative or not a number
+     */
+    public void add(final double aValue)
+    {
+        sketch.add(aValue);
+        histogram.add(aValue);
+        min = Math.min(min, aValue);
+        max = Math.max(max, aValue);
+        sum += aValue;
+    }
+
+    /**
+     * Returns the number of values added.
+     *
+     * @return the number of values
+     */
+    public long getCount()
+    {
+        return sketch.getCount();
+    }
+
+    /**
+     * Returns the name of the metric.
+     *
+     * @return the name of the metric
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns an approximate quantile, kept between the exact minimum and maximum.
+     *
+     * @param aQuantile the quantile (0.5 for the median)
+     * @return the value of the quantile, or NaN if no value has been added
+     */
+    public double getQuantile(final double aQuantile)
+    {
+        if ( getCount() == 0 ){
+            return Double.NaN;
+        }
+        return Math.max(min, Math.min(max, sketch.getQuantile(aQuantile)));
+    }
+
+    /**
+     * Adds the values of another distribution of the same metric.
+     *
+     * @param aDistribution the distribution to add (it is not changed)
+     * @return this distribution
+     */
+    public Distribution merge(final Distribution aDistribution)
+    {
+        sketch.merge(aDistribution.sketch);
+        histogram.merge(aDistribution.histogram);
+        min = Math.min(min, aDistribution.min);
+        max = Math.max(max, aDistribution.max);
+        sum += aDistribution.sum;
+        return this;
+    }
+
+    /**
+     * Prints the summary line and the histogram lines:
+     * <pre>
+     * STAT TAB name TAB count TAB min TAB p50 TAB p90 TAB p99 TAB max TAB mean
+     * HIST TAB name TAB lower_bound TAB upper_bound TAB count
+     * </pre>
+     *
+     * @param anOutput the output
+     */
+    public void print(final PrintStream anOutput)
+    {
+        final long COUNT = getCount();
+        anOutput.println("STAT\t" + name + "\t" + COUNT + "\t" +
+                         format(COUNT == 0 ? Double.NaN : min) + "\t" +
+                         format(getQuantile(0.5)) + "\t" + format(getQuantile(0.9)) + "\t" + format(getQuantile(0.99)) + "\t" +
+                         format(COUNT == 0 ? Double.NaN : max) + "\t" + format(COUNT == 0 ? Double.NaN : sum / COUNT));
+        histogram.print(anOutput, "HIST\t" + name + "\t");
+    }
+
+    /**
+     * Formats a value with four significant digits.
+     *
+     * @param aValue the value
+     * @return the formatted value
+     */
+    static String format(final double aValue)
+    {
+        if ( Double.isNaN(aValue) ){
+            return "-";
+        }
+        if ( aValue == Math.rint(aValue) && Math.abs(aValue) < 1e15 ){
+            return String.valueOf((long)aValue);
+        }
+        return String.format(Locale.ROOT, "%.4g", aValue);
+    }
+
+    /** The shape of the distribution */
+    private final LogHistogram histogram;
+
+    /** The largest value */
+    private double max;
+
+    /** The smallest value */
+    private double min;
+
+    /** The name of the metric */
+    private final String name;
+
+    /** The quantiles of the distribution */
+    private final QuantileSketch sketch;
+
+    /** The sum of the values */
+    private double sum;
+}
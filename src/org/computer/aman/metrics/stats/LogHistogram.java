@@ -0,0 +1,87 @@
+package org.computer.aman.metrics.stats;
+
+import java.io.PrintStream;
+
+/**
+ * A histogram of non-negative values whose buckets are the powers of two.<br>
+ * The bucket of a value v is [2^e, 2^(e+1)) for e = floor(log2 v); values smaller than 2^{@link #MIN_EXPONENT}
+ * are counted in a bucket of their own, and values of 2^({@link #MAX_EXPONENT}+1) or more in the last bucket,
+ * so the histogram has a fixed number of buckets.  Two histograms are merged by adding their counts.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LogHistogram
+{
+    /**
+     * Creates an empty histogram.
+     */
+    public LogHistogram()
+    {
+        counts = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param aValue the value (0 or more)
+     * @throws IllegalArgumentException if the value is negative or not a number
+     */
+    public void add(final double aValue)
+    {
+        if ( !(aValue >= 0) ){
+            throw new IllegalArgumentException("not a non-negative value : " + aValue);
+        }
+        if ( aValue < Math.scalb(1.0, MIN_EXPONENT) ){
+            smallCount++;
+            return;
+        }
+        counts[Math.min(Math.getExponent(aValue), MAX_EXPONENT) - MIN_EXPONENT]++;
+    }
+
+    /**
+     * Adds the counts of another histogram.
+     *
+     * @param aHistogram the histogram to add (it is not changed)
+     * @return this histogram
+     */
+    public LogHistogram merge(final LogHistogram aHistogram)
+    {
+        smallCount += aHistogram.smallCount;
+        for ( int i = 0; i < counts.length; i++ ){
+            counts[i] += aHistogram.counts[i];
+        }
+        return this;
+    }
+
+    /**
+     * Prints the buckets which are not empty, one per line as "lower_bound TAB upper_bound TAB count".
+     *
+     * @param anOutput the output
+     * @param aPrefix the string printed at the head of each line
+     */
+    public void print(final PrintStream anOutput, final String aPrefix)
+    {
+        if ( smallCount > 0 ){
+            anOutput.println(aPrefix + 0 + "\t" + Distribution.format(Math.scalb(1.0, MIN_EXPONENT)) + "\t" + smallCount);
+        }
+        for ( int i = 0; i < counts.length; i++ ){
+            if ( counts[i] > 0 ){
+                anOutput.println(aPrefix + Distribution.format(Math.scalb(1.0, MIN_EXPONENT + i)) + "\t" +
+                                 (i == counts.length - 1 ? "Infinity" : Distribution.format(Math.scalb(1.0, MIN_EXPONENT + i + 1))) +
+                                 "\t" + counts[i]);
+            }
+        }
+    }
+
+    /** The exponent of the last bucket */
+    public static final int MAX_EXPONENT = 40;
+
+    /** The exponent of the first bucket */
+    public static final int MIN_EXPONENT = -20;
+
+    /** The counts of the buckets from 2^MIN_EXPONENT */
+    private final long[] counts;
+
+    /** The number of values smaller than 2^MIN_EXPONENT */
+    private long smallCount;
+}
@@ -0,0 +1,212 @@
+package org.computer.aman.metrics.stats;
+
+/**
+ * A mergeable sketch answering quantile queries of non-negative values with a bounded relative error.<br>
+ * A value v is counted in the bucket i such that gamma^(i-1) &lt; v &lt;= gamma^i, where gamma = (1 + a) / (1 - a)
+ * for the relative accuracy a, and a quantile is answered by the middle of its bucket, so it is within
+ * a relative error of a from a value of the right rank.  The buckets cover the values from {@link #MIN_VALUE}
+ * to {@link #MAX_VALUE} (smaller values are counted as 0, larger ones in the last bucket), so the memory
+ * never exceeds a fixed bound however many values are added; the counts are allocated only over the
+ * buckets actually used.  Two sketches of the same accuracy are merged by adding their counts.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class QuantileSketch
+{
+    /**
+     * Creates an empty sketch of the default relative accuracy (1%).
+     */
+    public QuantileSketch()
+    {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param aRelativeAccuracy the relative accuracy of the quantiles (between 0 and 1, exclusive)
+     * @throws IllegalArgumentException if the accuracy is out of range
+     */
+    public QuantileSketch(final double aRelativeAccuracy)
+    {
+        if ( !(aRelativeAccuracy > 0 && aRelativeAccuracy < 1) ){
+            throw new IllegalArgumentException("relative accuracy out of (0, 1) : " + aRelativeAccuracy);
+        }
+        relativeAccuracy = aRelativeAccuracy;
+        gamma = (1 + aRelativeAccuracy) / (1 - aRelativeAccuracy);
+        logGamma = Math.log(gamma);
+        minIndex = index(MIN_VALUE);
+        maxIndex = index(MAX_VALUE);
+        counts = new long[0];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param aValue the value (0 or more)
+     * @throws IllegalArgumentException if the value is negative or not a number
+     */
+    public void add(final double aValue)
+    {
+        if ( !(aValue >= 0) ){
+            throw new IllegalArgumentException("not a non-negative value : " + aValue);
+        }
+        count++;
+        if ( aValue < MIN_VALUE ){
+            zeroCount++;
+            return;
+        }
+        int index = Math.min(index(aValue), maxIndex);
+        ensureCovered(index, index);
+        counts[index - lowIndex]++;
+    }
+
+    /**
+     * Returns the number of values added.
+     *
+     * @return the number of values
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns an approximate quantile.
+     *
+     * @param aQuantile the quantile (0 for the minimum, 0.5 for the median, 1 for the maximum)
+     * @return the value of the quantile, or NaN if no value has been added
+     * @throws IllegalArgumentException if the quantile is out of [0, 1]
+     */
+    public double getQuantile(final double aQuantile)
+    {
+        if ( !(aQuantile >= 0 && aQuantile <= 1) ){
+            throw new IllegalArgumentException("quantile out of [0, 1] : " + aQuantile);
+        }
+        if ( count == 0 ){
+            return Double.NaN;
+        }
+        final long RANK = (long)(aQuantile * (count - 1));
+        long cumulativeCount = zeroCount;
+        if ( RANK < cumulativeCount ){
+            return 0;
+        }
+        for ( int i = 0; i < counts.length; i++ ){
+            cumulativeCount += counts[i];
+            if ( RANK < cumulativeCount ){
+                return 2 * Math.pow(gamma, lowIndex + i) / (gamma + 1);
+            }
+        }
+        return 2 * Math.pow(gamma, lowIndex + counts.length - 1) / (gamma + 1);
+    }
+
+    /**
+     * Returns the relative accuracy of the quantiles.
+     *
+     * @return the relative accuracy
+     */
+    public double getRelativeAccuracy()
+    {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Adds the counts of another sketch.
+     *
+     * @param aSketch the sketch to add (it is not changed)
+     * @return this sketch
+     * @throws IllegalArgumentException if the sketch has another relative accuracy
+     */
+    public QuantileSketch merge(final QuantileSketch aSketch)
+    {
+        if ( aSketch.relativeAccuracy != relativeAccuracy ){
+            throw new IllegalArgumentException("relative accuracies differ : " + relativeAccuracy + ", " + aSketch.relativeAccuracy);
+        }
+        count += aSketch.count;
+        zeroCount += aSketch.zeroCount;
+        if ( aSketch.counts.length == 0 ){
+            return this;
+        }
+        ensureCovered(aSketch.lowIndex, aSketch.lowIndex + aSketch.counts.length - 1);
+        for ( int i = 0; i < aSketch.counts.length; i++ ){
+            counts[aSketch.lowIndex + i - lowIndex] += aSketch.counts[i];
+        }
+        return this;
+    }
+
+    /**
+     * Widens the counts so that they cover the specified buckets.
+     *
+     * @param aLowIndex the lowest bucket to cover
+     * @param aHighIndex the highest bucket to cover
+     */
+    private void ensureCovered(final int aLowIndex, final int aHighIndex)
+    {
+        if ( counts.length == 0 ){
+            lowIndex = aLowIndex;
+            counts = new long[aHighIndex - aLowIndex + 1];
+            return;
+        }
+        final int HIGH_INDEX = lowIndex + counts.length - 1;
+        if ( aLowIndex >= lowIndex && aHighIndex <= HIGH_INDEX ){
+            return;
+        }
+        // grows by at least a half to keep the number of copies small, but never beyond the whole range
+        final int SLACK = counts.length / 2;
+        int low = Math.min(lowIndex, aLowIndex);
+        int high = Math.max(HIGH_INDEX, aHighIndex);
+        low = low < lowIndex ? Math.max(minIndex, low - SLACK) : low;
+        high = high > HIGH_INDEX ? Math.min(maxIndex, high + SLACK) : high;
+        long[] array = new long[high - low + 1];
+        System.arraycopy(counts, 0, array, lowIndex - low, counts.length);
+        counts = array;
+        lowIndex = low;
+    }
+
+    /**
+     * Returns the bucket of the specified value.
+     *
+     * @param aValue the value (positive)
+     * @return the bucket
+     */
+    private int index(final double aValue)
+    {
+        return (int)Math.ceil(Math.log(aValue) / logGamma);
+    }
+
+    /** The relative accuracy used by default */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    /** The largest value told apart from the larger ones */
+    public static final double MAX_VALUE = 1e12;
+
+    /** The smallest value told apart from 0 */
+    public static final double MIN_VALUE = 1e-6;
+
+    /** The number of values added */
+    private long count;
+
+    /** The counts of the buckets from lowIndex */
+    private long[] counts;
+
+    /** The ratio between the bounds of a bucket */
+    private final double gamma;
+
+    /** The natural logarithm of gamma */
+    private final double logGamma;
+
+    /** The bucket of the first count */
+    private int lowIndex;
+
+    /** The bucket of MAX_VALUE */
+    private final int maxIndex;
+
+    /** The bucket of MIN_VALUE */
+    private final int minIndex;
+
+    /** The relative accuracy */
+    private final double relativeAccuracy;
+
+    /** The number of values smaller than MIN_VALUE */
+    private long zeroCount;
+}
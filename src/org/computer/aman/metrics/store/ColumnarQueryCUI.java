@@ -0,0 +1,313 @@
+package org.computer.aman.metrics.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A CUI application filtering and aggregating the rows of a columnar results file.<br>
+ * The file is scanned block by block through memory mappings, reading only the columns
+ * used by the filters and the aggregates; the heap holds only the path dictionary and the aggregates.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ColumnarQueryCUI
+{
+    public static void main(String[] args)
+    throws SecurityException, IOException
+    {
+        System.err.println("ColumnarQuery version 0.1");
+        System.err.println("Copyright (C) 2008-2019 Hirohisa AMAN <aman@computer.org>");
+        printSeparator();
+
+        String[] conditions = new String[args.length];
+        int conditionCount = 0;
+        Pattern pathPattern = null;
+        String grouping = GROUP_NONE;
+        String aggregate = AGGREGATE_SUM;
+        String columnList = null;
+        String target = null;
+        for ( int i = 0; i < args.length; i++ ){
+            if ( args[i].equals("-w") && i + 1 < args.length ){
+                conditions[conditionCount++] = args[++i];
+            }
+            else if ( args[i].equals("-m") && i + 1 < args.length ){
+                pathPattern = Pattern.compile(args[++i]);
+            }
+            else if ( args[i].equals("-g") && i + 1 < args.length && args[i+1].matches(GROUP_NONE + "|" + GROUP_PATH + "|" + GROUP_DIRECTORY) ){
+                grouping = args[++i];
+            }
+            else if ( args[i].equals("-a") && i + 1 < args.length && args[i+1].matches(AGGREGATE_SUM + "|" + AGGREGATE_MIN + "|" + AGGREGATE_MAX + "|" + AGGREGATE_MEAN) ){
+                aggregate = args[++i];
+            }
+            else if ( args[i].equals("-c") && i + 1 < args.length ){
+                columnList = args[++i];
+            }
+            else if ( !args[i].startsWith("-") && target == null ){
+                target = args[i];
+            }
+            else{
+                printUsage();
+                return;
+            }
+        }
+        if ( target == null ){
+            printUsage();
+            return;
+        }
+
+        ColumnarReader reader = new ColumnarReader(new File(target));
+        try{
+            // the columns to aggregate
+            String[] columnNames = columnList != null ? columnList.split(",") : reader.getColumnNames();
+            int[] columns = new int[columnNames.length];
+            for ( int i = 0; i < columns.length; i++ ){
+                columns[i] = reader.getColumnIndex(columnNames[i]);
+                if ( columns[i] < 0 ){
+                    System.err.println("no such column : " + columnNames[i]);
+                    return;
+                }
+            }
+
+            // the conditions on the values
+            int[] conditionColumns = new int[conditionCount];
+            int[] operators = new int[conditionCount];
+            int[] operands = new int[conditionCount];
+            for ( int i = 0; i < conditionCount; i++ ){
+                Matcher matcher = CONDITION.matcher(conditions[i]);
+                if ( !matcher.matches() || reader.getColumnIndex(matcher.group(1)) < 0 ){
+                    System.err.println("invalid condition : " + conditions[i]);
+                    return;
+                }
+                conditionColumns[i] = reader.getColumnIndex(matcher.group(1));
+                operators[i] = Arrays.asList(OPERATORS).indexOf(matcher.group(2));
+                try{
+                    operands[i] = Integer.parseInt(matcher.group(3));
+                }
+                catch ( NumberFormatException e ){
+                    System.err.println("invalid condition : " + conditions[i]);
+                    return;
+                }
+            }
+
+            // the condition on the paths and the group of each path are decided once per path
+            String[] paths = reader.getPaths();
+            int[] groups = new int[paths.length];
+            TreeMap<String, Integer> groupIndexes = new TreeMap<String, Integer>();
+            for ( int p = 0; p < paths.length; p++ ){
+                if ( pathPattern != null && !pathPattern.matcher(paths[p]).find() ){
+                    groups[p] = -1;
+                    continue;
+                }
+                String key = getGroupKey(paths[p], grouping);
+                Integer group = groupIndexes.get(key);
+                if ( group == null ){
+                    group = groupIndexes.size();
+                    groupIndexes.put(key, group);
+                }
+                groups[p] = group;
+            }
+
+            long[] rowCounts = new long[groupIndexes.size()];
+            long[][] values = new long[groupIndexes.size()][columns.length];
+            boolean minimum = aggregate.equals(AGGREGATE_MIN);
+            boolean maximum = aggregate.equals(AGGREGATE_MAX);
+            for ( int g = 0; g < values.length; g++ ){
+                Arrays.fill(values[g], minimum ? Long.MAX_VALUE : maximum ? Long.MIN_VALUE : 0);
+            }
+
+            IntBuffer[] conditionBuffers = new IntBuffer[conditionCount];
+            IntBuffer[] valueBuffers = new IntBuffer[columns.length];
+            final int BLOCK_COUNT = reader.getBlockCount();
+            for ( int b = 0; b < BLOCK_COUNT; b++ ){
+                ColumnarReader.Block block = reader.getBlock(b);
+                IntBuffer pathBuffer = block.getPathColumn();
+                for ( int i = 0; i < conditionCount; i++ ){
+                    conditionBuffers[i] = block.getColumn(conditionColumns[i]);
+                }
+                for ( int i = 0; i < columns.length; i++ ){
+                    valueBuffers[i] = block.getColumn(columns[i]);
+                }
+                final int ROW_COUNT = block.getRowCount();
+                rows:
+                for ( int r = 0; r < ROW_COUNT; r++ ){
+                    int g = groups[pathBuffer.get(r)];
+                    if ( g < 0 ){
+                        continue;
+                    }
+                    for ( int i = 0; i < conditionCount; i++ ){
+                        if ( !satisfies(conditionBuffers[i].get(r), operators[i], operands[i]) ){
+                            continue rows;
+                        }
+                    }
+                    rowCounts[g]++;
+                    long[] groupValues = values[g];
+                    for ( int i = 0; i < groupValues.length; i++ ){
+                        int value = valueBuffers[i].get(r);
+                        if ( minimum ){
+                            groupValues[i] = Math.min(groupValues[i], value);
+                        }
+                        else if ( maximum ){
+                            groupValues[i] = Math.max(groupValues[i], value);
+                        }
+                        else{
+                            groupValues[i] += value;
+                        }
+                    }
+                }
+            }
+
+            // prints the groups having at least one row
+            StringBuilder header = new StringBuilder("group\trows");
+            for ( int i = 0; i < columnNames.length; i++ ){
+                header.append('\t').append(aggregate).append('(').append(columnNames[i]).append(')');
+            }
+            System.err.println(header);
+            for ( Iterator<Map.Entry<String, Integer>> itr = groupIndexes.entrySet().iterator(); itr.hasNext(); ){
+                Map.Entry<String, Integer> entry = itr.next();
+                int g = entry.getValue();
+                if ( rowCounts[g] == 0 ){
+                    continue;
+                }
+                StringBuilder line = new StringBuilder(entry.getKey()).append('\t').append(rowCounts[g]);
+                for ( int i = 0; i < columns.length; i++ ){
+                    line.append('\t');
+                    if ( aggregate.equals(AGGREGATE_MEAN) ){
+                        line.append((double)values[g][i] / rowCounts[g]);
+                    }
+                    else{
+                        line.append(values[g][i]);
+                    }
+                }
+                System.out.println(line);
+            }
+        }
+        finally{
+            reader.close();
+        }
+        printSeparator();
+    }
+
+    /**
+     * Returns the key of the group which the path belongs to.
+     *
+     * @param aPath the path of a source file
+     * @param aGrouping the grouping (GROUP_NONE, GROUP_PATH or GROUP_DIRECTORY)
+     * @return the key of the group
+     */
+    private static String getGroupKey(final String aPath, final String aGrouping)
+    {
+        if ( aGrouping.equals(GROUP_PATH) ){
+            return aPath;
+        }
+        if ( aGrouping.equals(GROUP_DIRECTORY) ){
+            String directory = new File(aPath).getParent();
+            return directory != null ? directory : ".";
+        }
+        return "*";
+    }
+
+    /**
+     * Returns whether the value satisfies the condition.
+     *
+     * @param aValue the value
+     * @param anOperator the index of the operator in OPERATORS
+     * @param anOperand the value compared with
+     * @return true if the condition is satisfied
+     */
+    private static boolean satisfies(final int aValue, final int anOperator, final int anOperand)
+    {
+        switch ( anOperator ){
+        case EQ:
+            return aValue == anOperand;
+        case NE:
+            return aValue != anOperand;
+        case LT:
+            return aValue < anOperand;
+        case LE:
+            return aValue <= anOperand;
+        case GT:
+            return aValue > anOperand;
+        default:
+            return aValue >= anOperand;
+        }
+    }
+
+    /**
+     * Prints a separator line through the standard error output.
+     */
+    private static void printSeparator()
+    {
+        final int LENGTH = 64;
+        for ( int i = 0; i < LENGTH; i++ ){
+            System.err.print("-");
+        }
+        System.err.println();
+    }
+
+    /**
+     * Prints the usage through the standard error output.
+     */
+    private static void printUsage()
+    {
+        System.err.println("java -cp LOCCounter.jar " + ColumnarQueryCUI.class.getName() + " [option ...] results_file");
+        System.err.println("option : ");
+        System.err.println("  -w \"COLUMN OP VALUE\" : selects the rows satisfying the condition, given as one argument");
+        System.err.println("                      (e.g. -w \"loc>=100\"; OP : = != < <= > >=; VALUE : an int; repeatable)");
+        System.err.println("         -m REGEX : selects the rows whose paths contain a match of REGEX");
+        System.err.println("          -g KEY  : groups the rows by KEY (none : all rows, path : file, dir : directory; default none)");
+        System.err.println("          -a AGG  : aggregates the columns by AGG (sum, min, max, mean; default sum)");
+        System.err.println("  -c COLUMN,...   : aggregates only the specified columns (default all)");
+        System.err.println();
+        System.err.println("The printing format is as below (the column names are printed through the standard error output):");
+        System.err.println("  group<TAB>row_count<TAB>aggregate_of_column_1<TAB>...");
+    }
+
+    /** The aggregation: mean */
+    private static final String AGGREGATE_MEAN = "mean";
+
+    /** The aggregation: maximum */
+    private static final String AGGREGATE_MAX = "max";
+
+    /** The aggregation: minimum */
+    private static final String AGGREGATE_MIN = "min";
+
+    /** The aggregation: sum */
+    private static final String AGGREGATE_SUM = "sum";
+
+    /** A condition "column operator value" */
+    private static final Pattern CONDITION = Pattern.compile("\\s*(\\w+)\\s*(!=|<=|>=|=|<|>)\\s*(-?[0-9]+)\\s*");
+
+    /** The grouping: by directory */
+    private static final String GROUP_DIRECTORY = "dir";
+
+    /** The grouping: none */
+    private static final String GROUP_NONE = "none";
+
+    /** The grouping: by path */
+    private static final String GROUP_PATH = "path";
+
+    /** The operators of the conditions */
+    private static final String[] OPERATORS = { "=", "!=", "<", "<=", ">", ">=" };
+
+    /** The index of the operator = in OPERATORS */
+    private static final int EQ = 0;
+
+    /** The index of the operator != in OPERATORS */
+    private static final int NE = 1;
+
+    /** The index of the operator &lt; in OPERATORS */
+    private static final int LT = 2;
+
+    /** The index of the operator &lt;= in OPERATORS */
+    private static final int LE = 3;
+
+    /** The index of the operator &gt; in OPERATORS */
+    private static final int GT = 4;
+}
@@ -0,0 +1,360 @@
+package org.computer.aman.metrics.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A reader of a columnar results file written by {@link ColumnarWriter}.<br>
+ * Only the column names and the block offsets are read onto the heap when the file is opened.
+ * The footer is memory-mapped, and a path of the dictionary is decoded from the mapping when it is asked for
+ * (through the path offsets of the footer; a file of a version before 3 has none, so an offset per path
+ * is kept on the heap instead).  The blocks are memory-mapped one at a time,
+ * and a column of a block is handed out as an {@link IntBuffer} view of the mapping,
+ * so a scan touches only the pages of the columns it reads.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ColumnarReader
+{
+    /**
+     * Opens the specified file.
+     *
+     * @param aFile the file written by {@link ColumnarWriter}
+     * @throws IOException if the file could not be read or is not a columnar results file
+     */
+    public ColumnarReader(final File aFile)
+    throws IOException
+    {
+        file = new RandomAccessFile(aFile, "r");
+        channel = file.getChannel();
+        try{
+            final long SIZE = channel.size();
+            if ( SIZE < 12 + 12 ){
+                throw new IOException("not a columnar results file: " + aFile);
+            }
+            ByteBuffer trailer = read(SIZE - 12, 12);
+            long footerOffset = trailer.getLong();
+            if ( trailer.getInt() != ColumnarWriter.MAGIC || footerOffset < 12 || footerOffset > SIZE - 12 ){
+                throw new IOException("not a columnar results file (or not closed): " + aFile);
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(footerOffset, Integer.MAX_VALUE));
+            if ( header.getInt() != ColumnarWriter.MAGIC ){
+                throw new IOException("not a columnar results file: " + aFile);
+            }
+            version = header.getInt();
+            if ( version < 1 || version > ColumnarWriter.VERSION ){
+                throw new IOException("unsupported version " + version + ": " + aFile);
+            }
+            columnNames = new String[header.getInt()];
+            for ( int i = 0; i < columnNames.length; i++ ){
+                columnNames[i] = getString(header);
+            }
+
+            footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, SIZE - 12 - footerOffset);
+            pathCount = footer.getInt();
+            if ( pathCount < 0 ){
+                throw new IOException("broken columnar results file: " + aFile);
+            }
+            if ( version >= 3 ){
+                blockOffsets = getBlockOffsets(footer, footerOffset);
+                pathTableOffset = footer.position();
+                pathOffsets = null;
+                // the path offsets have to be in the footer
+                footer.position(pathTableOffset + 4 * pathCount);
+            }
+            else{
+                // the dictionary precedes the block offsets, and has no offsets of its own
+                pathOffsets = new int[pathCount];
+                for ( int i = 0; i < pathCount; i++ ){
+                    pathOffsets[i] = footer.position();
+                    footer.position(footer.position() + 4 + footer.getInt());
+                }
+                blockOffsets = getBlockOffsets(footer, footerOffset);
+                pathTableOffset = 0;
+            }
+        }
+        catch ( RuntimeException e ){
+            // a broken header or footer runs out of the buffers
+            file.close();
+            throw new IOException("broken columnar results file: " + aFile, e);
+        }
+        catch ( IOException e ){
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    public void close()
+    throws IOException
+    {
+        file.close();
+    }
+
+    /**
+     * Returns the number of blocks.
+     *
+     * @return the number of blocks
+     */
+    public int getBlockCount()
+    {
+        return blockOffsets.length - 1;
+    }
+
+    /**
+     * Maps the specified block.
+     *
+     * @param aBlockIndex the index of the block
+     * @return the block
+     * @throws IOException if the block could not be mapped
+     */
+    public Block getBlock(final int aBlockIndex)
+    throws IOException
+    {
+        final long OFFSET = blockOffsets[aBlockIndex];
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, OFFSET, blockOffsets[aBlockIndex + 1] - OFFSET);
+        return new Block(buffer, columnNames.length);
+    }
+
+    /**
+     * Returns the index of the specified value column.
+     *
+     * @param aName the name of the column
+     * @return the index of the column, or -1 if there is no such column
+     */
+    public int getColumnIndex(final String aName)
+    {
+        for ( int i = 0; i < columnNames.length; i++ ){
+            if ( columnNames[i].equals(aName) ){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the names of the value columns.
+     *
+     * @return the names of the value columns
+     */
+    public String[] getColumnNames()
+    {
+        return columnNames.clone();
+    }
+
+    /**
+     * Returns a path of the dictionary, decoding it from the mapping of the footer.
+     *
+     * @param aPathIndex the index of the path (a value of the path column)
+     * @return the path
+     */
+    public String getPath(final int aPathIndex)
+    {
+        if ( aPathIndex < 0 || aPathIndex >= pathCount ){
+            throw new IndexOutOfBoundsException("path " + aPathIndex + " is out of 0.." + (pathCount - 1));
+        }
+        int offset = pathOffsets != null ? pathOffsets[aPathIndex] : footer.getInt(pathTableOffset + 4 * aPathIndex);
+        ByteBuffer bytes = footer.duplicate();
+        bytes.position(offset + 4);
+        bytes.limit(offset + 4 + footer.getInt(offset));
+        return ColumnarWriter.UTF8.decode(bytes).toString();
+    }
+
+    /**
+     * Returns the number of paths in the dictionary.
+     *
+     * @return the number of paths
+     */
+    public int getPathCount()
+    {
+        return pathCount;
+    }
+
+    /**
+     * Returns the dictionary of the paths, decoding all of them onto the heap.
+     *
+     * @return the paths, indexed by the values of the path column
+     */
+    public String[] getPaths()
+    {
+        String[] paths = new String[pathCount];
+        for ( int i = 0; i < paths.length; i++ ){
+            paths[i] = getPath(i);
+        }
+        return paths;
+    }
+
+    /**
+     * Returns whether the rows of each block are sorted by the path and the key columns.
+     * The blocks are sorted since the version 2 of the file format.
+     *
+     * @return true if the blocks are sorted
+     */
+    public boolean isSorted()
+    {
+        return version >= 2;
+    }
+
+    /**
+     * Gets the block offsets from the footer, followed by the offset of the footer.
+     *
+     * @param aFooter the footer at the block count
+     * @param aFooterOffset the offset of the footer
+     * @return the offsets of the blocks and the footer
+     */
+    private static long[] getBlockOffsets(final ByteBuffer aFooter, final long aFooterOffset)
+    {
+        long[] offsets = new long[aFooter.getInt() + 1];
+        for ( int i = 0; i < offsets.length - 1; i++ ){
+            offsets[i] = aFooter.getLong();
+        }
+        offsets[offsets.length - 1] = aFooterOffset;
+        return offsets;
+    }
+
+    /**
+     * Reads the specified region of the file onto the heap.
+     *
+     * @param anOffset the offset of the region
+     * @param aSize the size of the region
+     * @return the bytes of the region
+     */
+    private ByteBuffer read(final long anOffset, final int aSize)
+    throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(aSize);
+        while ( buffer.hasRemaining() ){
+            if ( channel.read(buffer, anOffset + buffer.position()) < 0 ){
+                throw new IOException("unexpected end of the file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Gets a length-prefixed UTF-8 string from the buffer.
+     *
+     * @param aBuffer the buffer
+     * @return the string
+     */
+    private static String getString(final ByteBuffer aBuffer)
+    {
+        byte[] bytes = new byte[aBuffer.getInt()];
+        aBuffer.get(bytes);
+        return new String(bytes, ColumnarWriter.UTF8);
+    }
+
+    /**
+     * A block of rows mapped into memory.
+     */
+    public static class Block
+    {
+        /**
+         * Creates a view of the specified mapping.
+         *
+         * @param aBuffer the mapping of the block
+         * @param aColumnCount the number of value columns
+         */
+        Block(final ByteBuffer aBuffer, final int aColumnCount)
+        {
+            buffer = aBuffer;
+            rowCount = aBuffer.getInt(0);
+            columnCount = aColumnCount;
+        }
+
+        /**
+         * Returns the values of a value column.
+         *
+         * @param aColumnIndex the index of the value column
+         * @return the values, one per row
+         */
+        public IntBuffer getColumn(final int aColumnIndex)
+        {
+            if ( aColumnIndex < 0 || aColumnIndex >= columnCount ){
+                throw new IndexOutOfBoundsException("column " + aColumnIndex + " is out of 0.." + (columnCount - 1));
+            }
+            return slice(aColumnIndex + 1);
+        }
+
+        /**
+         * Returns the path indexes of the rows.
+         *
+         * @return the indexes in the dictionary of the paths, one per row
+         */
+        public IntBuffer getPathColumn()
+        {
+            return slice(0);
+        }
+
+        /**
+         * Returns the number of rows.
+         *
+         * @return the number of rows
+         */
+        public int getRowCount()
+        {
+            return rowCount;
+        }
+
+        /**
+         * Returns the specified column (0 for the path indexes) as a view of the mapping.
+         *
+         * @param aStoredIndex the index of the column in the block
+         * @return the view of the column
+         */
+        private IntBuffer slice(final int aStoredIndex)
+        {
+            ByteBuffer view = buffer.duplicate();
+            view.position(4 + 4 * rowCount * aStoredIndex);
+            view.limit(view.position() + 4 * rowCount);
+            return view.slice().asIntBuffer();
+        }
+
+        /** The mapping of the block */
+        private final ByteBuffer buffer;
+
+        /** The number of value columns */
+        private final int columnCount;
+
+        /** The number of rows */
+        private final int rowCount;
+    }
+
+    /** The offsets of the blocks, followed by the offset of the footer */
+    private final long[] blockOffsets;
+
+    /** The channel of the file */
+    private final FileChannel channel;
+
+    /** The names of the value columns */
+    private final String[] columnNames;
+
+    /** The file */
+    private final RandomAccessFile file;
+
+    /** The mapping of the footer, which holds the dictionary of the paths */
+    private final ByteBuffer footer;
+
+    /** The number of paths in the dictionary */
+    private final int pathCount;
+
+    /** The offsets of the paths in the footer (for the versions before 3, which have no path offsets), or null */
+    private final int[] pathOffsets;
+
+    /** The position of the path offsets in the footer (from the version 3) */
+    private final int pathTableOffset;
+
+    /** The version of the file format */
+    private final int version;
+}
@@ -0,0 +1,292 @@
+package org.computer.aman.metrics.store;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A writer of a columnar results file.<br>
+ * Each row is a path and a fixed number of int values.  The paths are dictionary-encoded:
+ * a row holds the index of its path in the dictionary, and the dictionary is written once at the end.
+ * The rows are buffered in blocks of {@link #BLOCK_ROW_COUNT} rows and each block is written column by column,
+ * so a reader can read the columns it needs without touching the others.  The rows of a block are sorted
+ * by the path and then by the key columns ("begin" and "end" if there are), so each block is a sorted run
+ * and the rows of a whole file can be read in the order of the keys by merging the blocks
+ * (see {@link SortedRowReader}).  The layout of the file is:
+ * <pre>
+ * header : MAGIC, VERSION, column count, (column name length, column name in UTF-8) for each value column
+ * block  : row count, path indexes, values of the first column, ..., values of the last column
+ * footer : path count, block count, block offsets (long), path offsets (int, from the start of the footer),
+ *          (path length, path in UTF-8) for each path
+ * trailer: footer offset (long), MAGIC
+ * </pre>
+ * The path offsets let a reader decode a path from the mapping of the footer without reading the whole dictionary.
+ * The file is readable only after {@link #close()} has written the footer.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ColumnarWriter
+{
+    /**
+     * Creates the specified file, overwriting it if it exists.
+     *
+     * @param aFile the file to write
+     * @param aColumnNames the names of the value columns
+     * @throws IOException if the file could not be created
+     */
+    public ColumnarWriter(final File aFile, final String[] aColumnNames)
+    throws IOException
+    {
+        columnCount = aColumnNames.length;
+        keyColumns = getKeyColumns(aColumnNames);
+        columns = new int[columnCount + 1][BLOCK_ROW_COUNT];
+        pathIndexes = new HashMap<String, Integer>();
+        paths = new ArrayList<String>();
+        blockOffsets = new ArrayList<Long>();
+        output = new FileOutputStream(aFile).getChannel();
+
+        int size = 4 + 4 + 4;
+        byte[][] names = new byte[columnCount][];
+        for ( int i = 0; i < columnCount; i++ ){
+            names[i] = aColumnNames[i].getBytes(UTF8);
+            size += 4 + names[i].length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(size);
+        header.putInt(MAGIC).putInt(VERSION).putInt(columnCount);
+        for ( int i = 0; i < columnCount; i++ ){
+            header.putInt(names[i].length).put(names[i]);
+        }
+        header.flip();
+        writeFully(header);
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param aPath the path of the source file
+     * @param aValues the values of the value columns
+     * @throws IOException if a block could not be written
+     * @throws IllegalArgumentException if the number of values differs from the number of columns
+     */
+    public void add(final String aPath, final int[] aValues)
+    throws IOException
+    {
+        if ( aValues.length != columnCount ){
+            throw new IllegalArgumentException(aValues.length + " values for " + columnCount + " columns");
+        }
+        Integer pathIndex = pathIndexes.get(aPath);
+        if ( pathIndex == null ){
+            pathIndex = paths.size();
+            pathIndexes.put(aPath, pathIndex);
+            paths.add(aPath);
+        }
+        columns[0][rowCount] = pathIndex;
+        for ( int i = 0; i < columnCount; i++ ){
+            columns[i + 1][rowCount] = aValues[i];
+        }
+        rowCount++;
+        if ( rowCount == BLOCK_ROW_COUNT ){
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the rows left, the dictionary of the paths and the block offsets, and closes the file.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void close()
+    throws IOException
+    {
+        try{
+            if ( rowCount > 0 ){
+                writeBlock();
+            }
+            long footerOffset = offset;
+            ByteBuffer buffer = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+            buffer.putInt(paths.size());
+            buffer.putInt(blockOffsets.size());
+            for ( int i = 0; i < blockOffsets.size(); i++ ){
+                buffer = ensureRemaining(buffer, 8);
+                buffer.putLong(blockOffsets.get(i));
+            }
+            long pathOffset = 4 + 4 + 8L * blockOffsets.size() + 4L * paths.size();
+            for ( int i = 0; i < paths.size(); i++ ){
+                if ( pathOffset > Integer.MAX_VALUE ){
+                    throw new IOException("too large a dictionary of the paths");
+                }
+                buffer = ensureRemaining(buffer, 4);
+                buffer.putInt((int)pathOffset);
+                pathOffset += 4 + paths.get(i).getBytes(UTF8).length;
+            }
+            for ( int i = 0; i < paths.size(); i++ ){
+                byte[] path = paths.get(i).getBytes(UTF8);
+                buffer = ensureRemaining(buffer, 4 + path.length);
+                buffer.putInt(path.length).put(path);
+            }
+            buffer = ensureRemaining(buffer, 8 + 4);
+            buffer.putLong(footerOffset).putInt(MAGIC);
+            buffer.flip();
+            writeFully(buffer);
+        }
+        finally{
+            output.close();
+        }
+    }
+
+    /**
+     * Returns the key columns among the specified value columns.
+     *
+     * @param aColumnNames the names of the value columns
+     * @return the indexes of the key columns, in the order of {@link #KEY_COLUMN_NAMES}
+     */
+    static int[] getKeyColumns(final String[] aColumnNames)
+    {
+        int[] keys = new int[KEY_COLUMN_NAMES.length];
+        int count = 0;
+        for ( int k = 0; k < KEY_COLUMN_NAMES.length; k++ ){
+            for ( int i = 0; i < aColumnNames.length; i++ ){
+                if ( aColumnNames[i].equals(KEY_COLUMN_NAMES[k]) ){
+                    keys[count++] = i;
+                    break;
+                }
+            }
+        }
+        int[] array = new int[count];
+        System.arraycopy(keys, 0, array, 0, count);
+        return array;
+    }
+
+    /**
+     * Sorts the buffered rows by the path and the key columns.
+     */
+    private void sortBlock()
+    {
+        Integer[] order = new Integer[rowCount];
+        for ( int r = 0; r < rowCount; r++ ){
+            order[r] = r;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer aRow, final Integer anotherRow)
+            {
+                int result = paths.get(columns[0][aRow]).compareTo(paths.get(columns[0][anotherRow]));
+                for ( int k = 0; result == 0 && k < keyColumns.length; k++ ){
+                    int[] column = columns[keyColumns[k] + 1];
+                    result = column[aRow] < column[anotherRow] ? -1 : column[aRow] > column[anotherRow] ? 1 : 0;
+                }
+                return result;
+            }
+        });
+        int[] sorted = new int[rowCount];
+        for ( int i = 0; i <= columnCount; i++ ){
+            for ( int r = 0; r < rowCount; r++ ){
+                sorted[r] = columns[i][order[r]];
+            }
+            System.arraycopy(sorted, 0, columns[i], 0, rowCount);
+        }
+    }
+
+    /**
+     * Writes the buffered rows as a block.
+     */
+    private void writeBlock()
+    throws IOException
+    {
+        sortBlock();
+        blockOffsets.add(offset);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 * rowCount * (columnCount + 1));
+        buffer.putInt(rowCount);
+        for ( int i = 0; i <= columnCount; i++ ){
+            buffer.asIntBuffer().put(columns[i], 0, rowCount);
+            buffer.position(buffer.position() + 4 * rowCount);
+        }
+        buffer.flip();
+        writeFully(buffer);
+        rowCount = 0;
+    }
+
+    /**
+     * Writes the buffer out if it has less than the specified room left.
+     *
+     * @param aBuffer the buffer being filled
+     * @param aSize the number of bytes to put next
+     * @return the buffer to put the bytes into
+     */
+    private ByteBuffer ensureRemaining(final ByteBuffer aBuffer, final int aSize)
+    throws IOException
+    {
+        if ( aBuffer.remaining() >= aSize ){
+            return aBuffer;
+        }
+        aBuffer.flip();
+        writeFully(aBuffer);
+        aBuffer.clear();
+        return aBuffer.remaining() >= aSize ? aBuffer : ByteBuffer.allocate(aSize);
+    }
+
+    /**
+     * Writes all the remaining bytes of the buffer to the file.
+     *
+     * @param aBuffer the buffer
+     */
+    private void writeFully(final ByteBuffer aBuffer)
+    throws IOException
+    {
+        while ( aBuffer.hasRemaining() ){
+            offset += output.write(aBuffer);
+        }
+    }
+
+    /** The number of rows in a block */
+    public static final int BLOCK_ROW_COUNT = 65536;
+
+    /** The names of the key columns, by which the rows of a path are sorted */
+    static final String[] KEY_COLUMN_NAMES = { "begin", "end" };
+
+    /** The first and the last four bytes of a columnar results file */
+    static final int MAGIC = 0x4d434f4c;
+
+    /** The size of the buffer used to write the footer */
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /** The character encoding of the paths and the column names */
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The version of the file format */
+    static final int VERSION = 3;
+
+    /** The offsets of the blocks written */
+    private final ArrayList<Long> blockOffsets;
+
+    /** The number of value columns */
+    private final int columnCount;
+
+    /** The indexes of the key columns */
+    private final int[] keyColumns;
+
+    /** The rows of the current block, column by column (the path indexes first) */
+    private final int[][] columns;
+
+    /** The number of bytes written */
+    private long offset;
+
+    /** The channel of the file */
+    private final FileChannel output;
+
+    /** The index of each path in the dictionary */
+    private final Map<String, Integer> pathIndexes;
+
+    /** The dictionary of the paths */
+    private final ArrayList<String> paths;
+
+    /** The number of rows in the current block */
+    private int rowCount;
+}
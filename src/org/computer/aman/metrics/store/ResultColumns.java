@@ -0,0 +1,115 @@
+package org.computer.aman.metrics.store;
+
+import java.io.IOException;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.comment.CountResult;
+import org.computer.aman.metrics.comment.CountResultForC;
+import org.computer.aman.metrics.comment.CountResultForJava;
+import org.computer.aman.metrics.size.loc.LOC;
+
+/**
+ * The columns in which the measurement results are stored.<br>
+ * The LOC results of a file are stored in the {@link #LOC_COLUMNS} and the comment counts of a range
+ * in the {@link #COUNT_COLUMNS}, in the order of the text output of LOCCounterCUI (-a) and CommentCounterCUI.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ResultColumns
+{
+    /**
+     * Restores the comment counts of a range from the values of the comment count columns.
+     * The kind of the counts (Java or C) is decided by the source file, as the counters do.
+     *
+     * @param aPath the path of the source file
+     * @param aValues the values in the order of {@link #COUNT_COLUMNS}
+     * @return the comment counts
+     * @throws IOException if the source file does not exist
+     */
+    public static CountResult toCountResult(final String aPath, final int[] aValues)
+    throws IOException
+    {
+        SourceFile file = new SourceFile(aPath);
+        if ( file.isJavaFile() ){
+            CountResultForJava results = new CountResultForJava();
+            results.incrementEolCommentCount(aValues[3]);
+            results.incrementTraditionalCommentCount(aValues[4]);
+            results.incrementJavadocCommentCount(aValues[5]);
+            results.incrementEolCommentCountInHead(aValues[6]);
+            results.incrementTraditionalCommentCountInHead(aValues[7]);
+            results.incrementEolCommentOutCount(aValues[8]);
+            results.incrementTraditionalCommentOutCount(aValues[9]);
+            results.incrementCommentCount(aValues[2]);
+            return results;
+        }
+        CountResult results = new CountResult();
+        if ( file.isCFile() ){
+            CountResultForC resultsForC = new CountResultForC();
+            resultsForC.incrementEolCommentCount(aValues[3]);
+            resultsForC.incrementTraditionalCommentCount(aValues[4]);
+            resultsForC.incrementEolCommentCountInHead(aValues[6]);
+            resultsForC.incrementTraditionalCommentCountInHead(aValues[7]);
+            resultsForC.incrementEolCommentOutCount(aValues[8]);
+            resultsForC.incrementTraditionalCommentOutCount(aValues[9]);
+            results = resultsForC;
+        }
+        results.incrementCommentCount(aValues[2]);
+        return results;
+    }
+
+    /**
+     * Returns the values of the LOC columns.
+     *
+     * @param aResults the LOC measurement results of a file
+     * @return the values in the order of {@link #LOC_COLUMNS}
+     */
+    public static int[] toValues(final LOC aResults)
+    {
+        return new int[] { aResults.getLOC(), aResults.getTotalLineCount(), aResults.getBlankCount() };
+    }
+
+    /**
+     * Returns the values of the comment count columns.
+     *
+     * @param aBeginLineNumber the first line of the range
+     * @param anEndLineNumber the last line of the range
+     * @param aResults the comment counts of the range
+     * @return the values in the order of {@link #COUNT_COLUMNS}
+     */
+    public static int[] toValues(final int aBeginLineNumber, final int anEndLineNumber, final CountResult aResults)
+    {
+        int[] values = new int[COUNT_COLUMNS.length];
+        values[0] = aBeginLineNumber;
+        values[1] = anEndLineNumber;
+        values[2] = aResults.getCommentCount();
+        if ( aResults instanceof CountResultForJava ){
+            CountResultForJava results = (CountResultForJava)aResults;
+            values[3] = results.getEolCommentCount();
+            values[4] = results.getTraditionalCommentCount();
+            values[5] = results.getJavadocCommentCount();
+            values[6] = results.getEolCommentCountInHead();
+            values[7] = results.getTraditionalCommentCountInHead();
+            values[8] = results.getEolCommentOutCount();
+            values[9] = results.getTraditionalCommentOutCount();
+        }
+        else if ( aResults instanceof CountResultForC ){
+            CountResultForC results = (CountResultForC)aResults;
+            values[3] = results.getEolCommentCount();
+            values[4] = results.getTraditionalCommentCount();
+            values[6] = results.getEolCommentCountInHead();
+            values[7] = results.getTraditionalCommentCountInHead();
+            values[8] = results.getEolCommentOutCount();
+            values[9] = results.getTraditionalCommentOutCount();
+        }
+        return values;
+    }
+
+    /** The columns of the comment counts of a range */
+    public static final String[] COUNT_COLUMNS = {
+        "begin", "end", "comment_lines", "eol", "traditional", "javadoc",
+        "eol_head", "traditional_head", "eol_out", "traditional_out"
+    };
+
+    /** The columns of the LOC results of a file */
+    public static final String[] LOC_COLUMNS = { "loc", "total_lines", "blank_lines" };
+}
@@ -0,0 +1,350 @@
+package org.computer.aman.metrics.store;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An append-only journal of the work completed by a run, from which an interrupted run is resumed.<br>
+ * A unit of work (a source file, or a range of a file) is recorded as one line when it has been completed:
+ * the path, the number of rows, and the values and the label of each row, separated by tabs
+ * (tabs, line breaks and backslashes in the path and the labels are escaped).  The first line names the columns.
+ * Each line is flushed as soon as it is written, so a killed run loses at most the unit being written;
+ * when the journal is opened for resuming, the complete lines are handed to a {@link UnitListener}
+ * (to reproduce their output and to skip their work) and a broken last line is cut off.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ResultJournal
+{
+    /**
+     * Opens the specified journal.
+     *
+     * @param aFile the journal file
+     * @param aColumnNames the names of the value columns
+     * @param aListener the receiver of the units recorded by the earlier runs, which are kept and appended to;
+     *                  null starts a new journal, discarding the recorded units
+     * @throws IOException if the journal could not be read or written, or was written for other columns
+     */
+    public ResultJournal(final File aFile, final String[] aColumnNames, final UnitListener aListener)
+    throws IOException
+    {
+        columnCount = aColumnNames.length;
+        recordedPaths = new HashSet<String>();
+        String header = HEADER + "\t" + join(aColumnNames);
+
+        long validLength = 0;
+        if ( aListener != null && aFile.exists() ){
+            validLength = recover(aFile, header, aListener);
+        }
+        if ( validLength == 0 ){
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(aFile), UTF8));
+            writer.write(header);
+            writer.write('\n');
+            writer.flush();
+            return;
+        }
+        // cuts off a line broken by the interruption
+        RandomAccessFile file = new RandomAccessFile(aFile, "rw");
+        try{
+            file.setLength(validLength);
+        }
+        finally{
+            file.close();
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(aFile, true), UTF8));
+    }
+
+    /**
+     * Closes the journal.
+     *
+     * @throws IOException if the journal could not be closed
+     */
+    public synchronized void close()
+    throws IOException
+    {
+        writer.close();
+    }
+
+    /**
+     * Returns whether the specified path has been recorded by the earlier runs.
+     *
+     * @param aPath the path of a source file
+     * @return true if a unit of the path was recovered
+     */
+    public boolean isRecorded(final String aPath)
+    {
+        return recordedPaths.contains(aPath);
+    }
+
+    /**
+     * Returns the paths given by the iterator, except those recorded by the earlier runs.
+     *
+     * @param aPathIterator the paths of the source files
+     * @return the paths of the files not recorded
+     */
+    public Iterator<String> skipRecorded(final Iterator<String> aPathIterator)
+    {
+        return new Iterator<String>() {
+            public boolean hasNext()
+            {
+                while ( next == null && aPathIterator.hasNext() ){
+                    String path = aPathIterator.next();
+                    if ( !isRecorded(path) ){
+                        next = path;
+                    }
+                }
+                return next != null;
+            }
+
+            public String next()
+            {
+                if ( !hasNext() ){
+                    throw new NoSuchElementException();
+                }
+                String path = next;
+                next = null;
+                return path;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            /** The next path not recorded, or null if it has not been found yet */
+            private String next;
+        };
+    }
+
+    /**
+     * Records a completed unit of work.  It may be called from several threads.
+     *
+     * @param aPath the path of the source file
+     * @param aRows the values of the rows of the unit (may be empty)
+     * @param aLabels the labels of the rows (null if the rows have no labels)
+     * @throws IOException if the journal could not be written
+     * @throws IllegalArgumentException if the number of values of a row differs from the number of columns
+     */
+    public synchronized void write(final String aPath, final int[][] aRows, final String[] aLabels)
+    throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        escape(aPath, line);
+        line.append('\t').append(aRows.length);
+        for ( int r = 0; r < aRows.length; r++ ){
+            if ( aRows[r].length != columnCount ){
+                throw new IllegalArgumentException(aRows[r].length + " values for " + columnCount + " columns");
+            }
+            for ( int i = 0; i < columnCount; i++ ){
+                line.append('\t').append(aRows[r][i]);
+            }
+            line.append('\t');
+            if ( aLabels != null && aLabels[r] != null ){
+                escape(aLabels[r], line);
+            }
+        }
+        line.append('\n');
+        writer.write(line.toString());
+        writer.flush();
+    }
+
+    /**
+     * Reads the units of the journal and hands them to the listener.
+     *
+     * @param aFile the journal file
+     * @param aHeader the header expected
+     * @param aListener the receiver of the units
+     * @return the length of the complete lines in bytes (0 if the journal is empty)
+     * @throws IOException if the journal could not be read or was written for other columns
+     */
+    private long recover(final File aFile, final String aHeader, final UnitListener aListener)
+    throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(aFile), UTF8));
+        try{
+            // the lines are read by hand, since a line without its line break is incomplete
+            StringBuilder line = new StringBuilder();
+            long length = 0;
+            long lineLength = 0;
+            boolean headerRead = false;
+            int c = 0;
+            while ( (c = reader.read()) >= 0 ){
+                lineLength += c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isSurrogate((char)c) ? 2 : 3;
+                if ( c != '\n' ){
+                    line.append((char)c);
+                    continue;
+                }
+                if ( !headerRead ){
+                    if ( !line.toString().equals(aHeader) ){
+                        throw new IOException("the journal was not written for the columns of this run: " + aFile);
+                    }
+                    headerRead = true;
+                }
+                else if ( !recoverUnit(line.toString(), aListener) ){
+                    break;
+                }
+                length += lineLength;
+                lineLength = 0;
+                line.setLength(0);
+            }
+            return length;
+        }
+        finally{
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses a line of a unit and hands the unit to the listener.
+     *
+     * @param aLine the line (without its line break)
+     * @param aListener the receiver of the unit
+     * @return true if the line was a complete unit, false if it was broken
+     * @throws IOException if the listener failed
+     */
+    private boolean recoverUnit(final String aLine, final UnitListener aListener)
+    throws IOException
+    {
+        String[] fields = aLine.split("\t", -1);
+        int[][] rows = null;
+        String[] labels = null;
+        try{
+            int rowCount = Integer.parseInt(fields[1]);
+            if ( rowCount < 0 || fields.length != 2 + rowCount * (columnCount + 1) ){
+                return false;
+            }
+            rows = new int[rowCount][columnCount];
+            labels = new String[rowCount];
+            int f = 2;
+            for ( int r = 0; r < rowCount; r++ ){
+                for ( int i = 0; i < columnCount; i++ ){
+                    rows[r][i] = Integer.parseInt(fields[f++]);
+                }
+                labels[r] = unescape(fields[f++]);
+            }
+        }
+        catch ( RuntimeException e ){
+            // a malformed number or too few fields
+            return false;
+        }
+        String path = unescape(fields[0]);
+        recordedPaths.add(path);
+        aListener.recovered(path, rows, labels);
+        return true;
+    }
+
+    /**
+     * Appends the string with its tabs, line breaks and backslashes escaped.
+     *
+     * @param aString the string
+     * @param aBuffer the buffer appended to
+     */
+    private static void escape(final String aString, final StringBuilder aBuffer)
+    {
+        for ( int i = 0; i < aString.length(); i++ ){
+            char c = aString.charAt(i);
+            switch ( c ){
+            case '\t':
+                aBuffer.append("\\t");
+                break;
+            case '\n':
+                aBuffer.append("\\n");
+                break;
+            case '\r':
+                aBuffer.append("\\r");
+                break;
+            case '\\':
+                aBuffer.append("\\\\");
+                break;
+            default:
+                aBuffer.append(c);
+            }
+        }
+    }
+
+    /**
+     * Joins the names with tabs.
+     *
+     * @param aNames the names
+     * @return the joined names
+     */
+    private static String join(final String[] aNames)
+    {
+        StringBuilder buffer = new StringBuilder();
+        for ( int i = 0; i < aNames.length; i++ ){
+            if ( i > 0 ){
+                buffer.append('\t');
+            }
+            buffer.append(aNames[i]);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Restores an escaped string.
+     *
+     * @param aString the escaped string
+     * @return the original string
+     */
+    private static String unescape(final String aString)
+    {
+        if ( aString.indexOf('\\') < 0 ){
+            return aString;
+        }
+        StringBuilder buffer = new StringBuilder(aString.length());
+        for ( int i = 0; i < aString.length(); i++ ){
+            char c = aString.charAt(i);
+            if ( c == '\\' && i + 1 < aString.length() ){
+                c = aString.charAt(++i);
+                c = c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c;
+            }
+            buffer.append(c);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * A receiver of the units recorded by the earlier runs.
+     */
+    public interface UnitListener
+    {
+        /**
+         * Receives a unit recorded by an earlier run.
+         *
+         * @param aPath the path of the source file
+         * @param aRows the values of the rows of the unit
+         * @param aLabels the labels of the rows (empty strings if the rows have no labels)
+         * @throws IOException if the unit could not be processed
+         */
+        void recovered(final String aPath, final int[][] aRows, final String[] aLabels)
+        throws IOException;
+    }
+
+    /** The first field of the first line of a journal */
+    private static final String HEADER = "#ResultJournal1";
+
+    /** The character encoding of the journal */
+    private static final Charset UTF8 = ColumnarWriter.UTF8;
+
+    /** The number of value columns */
+    private final int columnCount;
+
+    /** The paths of the units recovered from the earlier runs */
+    private final Set<String> recordedPaths;
+
+    /** The writer appending to the journal */
+    private final Writer writer;
+}
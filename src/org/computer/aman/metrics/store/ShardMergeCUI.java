@@ -0,0 +1,201 @@
+package org.computer.aman.metrics.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * A CUI application merging the columnar results files written by the shards of a run (-S i/N) into one.<br>
+ * The rows of the shard files are read in the order of the path and the key columns by {@link SortedRowReader}
+ * and merged, so the merged file holds the same rows as the file of a single run
+ * and {@link SnapshotDiffCUI} finds no differences between them.  The totals of the value columns
+ * are summed up exactly (in 64 bits) while merging.  A row found in more than one shard file means that
+ * the shards overlap, which is reported as an error.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ShardMergeCUI
+{
+    public static void main(String[] args)
+    throws SecurityException, IOException
+    {
+        System.err.println("ShardMerge version 0.1");
+        System.err.println("Copyright (C) 2008-2019 Hirohisa AMAN <aman@computer.org>");
+        printSeparator();
+
+        String outputPath = null;
+        ArrayList<String> targets = new ArrayList<String>();
+        for ( int i = 0; i < args.length; i++ ){
+            if ( args[i].equals("-o") && i + 1 < args.length ){
+                outputPath = args[++i];
+            }
+            else if ( !args[i].startsWith("-") ){
+                targets.add(args[i]);
+            }
+            else{
+                printUsage();
+                return;
+            }
+        }
+        if ( targets.isEmpty() ){
+            printUsage();
+            return;
+        }
+
+        ColumnarReader[] readers = new ColumnarReader[targets.size()];
+        ColumnarWriter writer = null;
+        try{
+            String[] columnNames = null;
+            for ( int i = 0; i < readers.length; i++ ){
+                readers[i] = new ColumnarReader(new File(targets.get(i)));
+                if ( columnNames == null ){
+                    columnNames = readers[i].getColumnNames();
+                }
+                else if ( !Arrays.equals(columnNames, readers[i].getColumnNames()) ){
+                    System.err.println("the columns differ : " + Arrays.toString(columnNames) + " and " + Arrays.toString(readers[i].getColumnNames()));
+                    return;
+                }
+                if ( !readers[i].isSorted() ){
+                    System.err.println("the shard files must be written by version 2 or later of the columnar format : " + targets.get(i));
+                    return;
+                }
+            }
+            SortedRowReader[] rowReaders = new SortedRowReader[readers.length];
+            for ( int i = 0; i < readers.length; i++ ){
+                rowReaders[i] = new SortedRowReader(readers[i]);
+            }
+            if ( outputPath != null ){
+                writer = new ColumnarWriter(new File(outputPath), columnNames);
+            }
+            merge(rowReaders, columnNames, writer);
+        }
+        finally{
+            for ( int i = 0; i < readers.length; i++ ){
+                if ( readers[i] != null ){
+                    readers[i].close();
+                }
+            }
+            if ( writer != null ){
+                writer.close();
+            }
+        }
+        printSeparator();
+    }
+
+    /**
+     * Merges the rows of the shards, writes them into the merged file and prints the totals.
+     *
+     * @param aReaders the rows of the shards
+     * @param aColumnNames the names of the value columns
+     * @param aWriter the merged file (or null if only the totals are printed)
+     * @throws IOException if the merged file could not be written, or the shards overlap
+     */
+    private static void merge(final SortedRowReader[] aReaders, final String[] aColumnNames, final ColumnarWriter aWriter)
+    throws IOException
+    {
+        PriorityQueue<SortedRowReader> queue = new PriorityQueue<SortedRowReader>(aReaders.length, new Comparator<SortedRowReader>() {
+            public int compare(final SortedRowReader aReader, final SortedRowReader anotherReader)
+            {
+                return aReader.compareKey(anotherReader);
+            }
+        });
+        for ( int i = 0; i < aReaders.length; i++ ){
+            if ( aReaders[i].next() ){
+                queue.add(aReaders[i]);
+            }
+        }
+
+        long rowCount = 0;
+        long pathCount = 0;
+        long[] totals = new long[aColumnNames.length];
+        int[] values = new int[aColumnNames.length];
+        SortedRowReader previous = null;
+        String previousPath = null;
+        int[] previousValues = new int[aColumnNames.length];
+        while ( !queue.isEmpty() ){
+            SortedRowReader reader = queue.poll();
+            String path = reader.getPath();
+            for ( int i = 0; i < values.length; i++ ){
+                values[i] = reader.getValue(i);
+            }
+            // the rows of a shard are distinct, so an equal key in a row of another shard is an overlap
+            if ( previous != null && previous != reader && path.equals(previousPath) && isSameKey(reader, values, previousValues) ){
+                throw new IOException("the shards overlap at " + path + " " + Arrays.toString(values));
+            }
+            if ( !path.equals(previousPath) ){
+                pathCount++;
+            }
+            rowCount++;
+            for ( int i = 0; i < values.length; i++ ){
+                totals[i] += values[i];
+            }
+            if ( aWriter != null ){
+                aWriter.add(path, values);
+            }
+            previous = reader;
+            previousPath = path;
+            System.arraycopy(values, 0, previousValues, 0, values.length);
+            if ( reader.next() ){
+                queue.add(reader);
+            }
+        }
+
+        StringBuilder header = new StringBuilder("TOTAL\tpaths\trows");
+        StringBuilder line = new StringBuilder("TOTAL\t").append(pathCount).append('\t').append(rowCount);
+        for ( int i = 0; i < aColumnNames.length; i++ ){
+            if ( !aReaders[0].isKeyColumn(i) ){
+                header.append('\t').append(aColumnNames[i]);
+                line.append('\t').append(totals[i]);
+            }
+        }
+        System.err.println(header);
+        System.out.println(line);
+    }
+
+    /**
+     * Returns whether two rows of the same path have the same key.
+     *
+     * @param aReader the reader of the key columns
+     * @param aValues the values of a row
+     * @param anotherValues the values of another row
+     * @return true if the key columns are equal
+     */
+    private static boolean isSameKey(final SortedRowReader aReader, final int[] aValues, final int[] anotherValues)
+    {
+        for ( int i = 0; i < aValues.length; i++ ){
+            if ( aReader.isKeyColumn(i) && aValues[i] != anotherValues[i] ){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prints a separator line through the standard error output.
+     */
+    private static void printSeparator()
+    {
+        final int LENGTH = 64;
+        for ( int i = 0; i < LENGTH; i++ ){
+            System.err.print("-");
+        }
+        System.err.println();
+    }
+
+    /**
+     * Prints the usage through the standard error output.
+     */
+    private static void printUsage()
+    {
+        System.err.println("java -cp LOCCounter.jar " + ShardMergeCUI.class.getName() + " [option ...] shard_results_file ...");
+        System.err.println("option : ");
+        System.err.println("  -o FILE : writes the merged rows into the columnar results FILE");
+        System.err.println();
+        System.err.println("The shard files are written by LOCCounterCUI or CommentCounterCUI with -S i/N and -o.");
+        System.err.println("The totals are printed as below (the column names are printed through the standard error output):");
+        System.err.println("  TOTAL<TAB>distinct_paths<TAB>rows<TAB>sums_of_the_value_columns...");
+    }
+}
@@ -0,0 +1,292 @@
+package org.computer.aman.metrics.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A CUI application printing the differences between two columnar results files (snapshots).<br>
+ * The rows of the snapshots are read in the order of the path and the key columns by {@link SortedRowReader}
+ * and merge-joined, so the rows are paired without a sort or a table of all the rows:
+ * the heap holds the path dictionaries, the cursors of the blocks and the totals of the groups having changes.
+ * Only the rows added, removed or changed are printed, followed by the totals of the differences.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class SnapshotDiffCUI
+{
+    public static void main(String[] args)
+    throws SecurityException, IOException
+    {
+        System.err.println("SnapshotDiff version 0.1");
+        System.err.println("Copyright (C) 2008-2019 Hirohisa AMAN <aman@computer.org>");
+        printSeparator();
+
+        String grouping = GROUP_NONE;
+        boolean totalOnly = false;
+        String[] targets = new String[2];
+        int targetCount = 0;
+        for ( int i = 0; i < args.length; i++ ){
+            if ( args[i].equals("-g") && i + 1 < args.length && args[i+1].matches(GROUP_NONE + "|" + GROUP_DIRECTORY) ){
+                grouping = args[++i];
+            }
+            else if ( args[i].equals("-t") ){
+                totalOnly = true;
+            }
+            else if ( !args[i].startsWith("-") && targetCount < targets.length ){
+                targets[targetCount++] = args[i];
+            }
+            else{
+                printUsage();
+                return;
+            }
+        }
+        if ( targetCount < targets.length ){
+            printUsage();
+            return;
+        }
+
+        ColumnarReader oldReader = new ColumnarReader(new File(targets[0]));
+        try{
+            ColumnarReader newReader = new ColumnarReader(new File(targets[1]));
+            try{
+                String[] columnNames = oldReader.getColumnNames();
+                if ( !Arrays.equals(columnNames, newReader.getColumnNames()) ){
+                    System.err.println("the columns differ : " + Arrays.toString(columnNames) + " and " + Arrays.toString(newReader.getColumnNames()));
+                    return;
+                }
+                if ( !oldReader.isSorted() || !newReader.isSorted() ){
+                    System.err.println("the snapshots must be written by version 2 or later of the columnar format");
+                    return;
+                }
+                diff(new SortedRowReader(oldReader), new SortedRowReader(newReader), columnNames, grouping, totalOnly, System.out);
+            }
+            finally{
+                newReader.close();
+            }
+        }
+        finally{
+            oldReader.close();
+        }
+        printSeparator();
+    }
+
+    /**
+     * Merge-joins the rows of the snapshots and prints the differences.
+     *
+     * @param anOldReader the rows of the old snapshot
+     * @param aNewReader the rows of the new snapshot
+     * @param aColumnNames the names of the value columns
+     * @param aGrouping the grouping of the totals (GROUP_NONE or GROUP_DIRECTORY)
+     * @param isTotalOnly true if only the totals are printed
+     * @param anOutput the output
+     */
+    private static void diff(final SortedRowReader anOldReader, final SortedRowReader aNewReader, final String[] aColumnNames,
+                             final String aGrouping, final boolean isTotalOnly, final PrintStream anOutput)
+    {
+        // the key columns are printed as they are, and the others as values or differences
+        int[] keyColumns = new int[aColumnNames.length];
+        int keyCount = 0;
+        int[] valueColumns = new int[aColumnNames.length];
+        int valueCount = 0;
+        for ( int i = 0; i < aColumnNames.length; i++ ){
+            if ( anOldReader.isKeyColumn(i) ){
+                keyColumns[keyCount++] = i;
+            }
+            else{
+                valueColumns[valueCount++] = i;
+            }
+        }
+        keyColumns = Arrays.copyOf(keyColumns, keyCount);
+        valueColumns = Arrays.copyOf(valueColumns, valueCount);
+
+        StringBuilder header = new StringBuilder("kind\tpath");
+        for ( int i = 0; i < keyColumns.length; i++ ){
+            header.append('\t').append(aColumnNames[keyColumns[i]]);
+        }
+        for ( int i = 0; i < valueColumns.length; i++ ){
+            header.append('\t').append(aColumnNames[valueColumns[i]]);
+        }
+        System.err.println(header);
+
+        // the totals of a group: added rows, removed rows, changed rows and the differences of the values
+        TreeMap<String, long[]> totals = new TreeMap<String, long[]>();
+        int[] oldValues = new int[aColumnNames.length];
+        int[] newValues = new int[aColumnNames.length];
+        boolean hasOld = anOldReader.next();
+        boolean hasNew = aNewReader.next();
+        while ( hasOld || hasNew ){
+            int order = !hasOld ? 1 : !hasNew ? -1 : anOldReader.compareKey(aNewReader);
+            if ( order < 0 ){
+                getValues(anOldReader, oldValues);
+                Arrays.fill(newValues, 0);
+                record(anOldReader.getPath(), REMOVED, keyColumns, valueColumns, oldValues, newValues, aGrouping, isTotalOnly, totals, anOutput);
+                hasOld = anOldReader.next();
+            }
+            else if ( order > 0 ){
+                Arrays.fill(oldValues, 0);
+                getValues(aNewReader, newValues);
+                record(aNewReader.getPath(), ADDED, keyColumns, valueColumns, oldValues, newValues, aGrouping, isTotalOnly, totals, anOutput);
+                hasNew = aNewReader.next();
+            }
+            else{
+                getValues(anOldReader, oldValues);
+                getValues(aNewReader, newValues);
+                if ( !Arrays.equals(oldValues, newValues) ){
+                    record(aNewReader.getPath(), CHANGED, keyColumns, valueColumns, oldValues, newValues, aGrouping, isTotalOnly, totals, anOutput);
+                }
+                hasOld = anOldReader.next();
+                hasNew = aNewReader.next();
+            }
+        }
+
+        // prints the totals of the groups having differences
+        StringBuilder totalHeader = new StringBuilder("TOTAL\tgroup\tadded\tremoved\tchanged");
+        for ( int i = 0; i < valueColumns.length; i++ ){
+            totalHeader.append("\tdelta(").append(aColumnNames[valueColumns[i]]).append(')');
+        }
+        System.err.println(totalHeader);
+        if ( totals.isEmpty() ){
+            totals.put(getGroupKey("", GROUP_NONE), new long[3 + valueColumns.length]);
+        }
+        for ( Iterator<Map.Entry<String, long[]>> itr = totals.entrySet().iterator(); itr.hasNext(); ){
+            Map.Entry<String, long[]> entry = itr.next();
+            StringBuilder line = new StringBuilder("TOTAL\t").append(entry.getKey());
+            long[] total = entry.getValue();
+            for ( int i = 0; i < total.length; i++ ){
+                line.append('\t').append(total[i]);
+            }
+            anOutput.println(line);
+        }
+    }
+
+    /**
+     * Returns the key of the group which the path belongs to.
+     *
+     * @param aPath the path of a source file
+     * @param aGrouping the grouping (GROUP_NONE or GROUP_DIRECTORY)
+     * @return the key of the group
+     */
+    private static String getGroupKey(final String aPath, final String aGrouping)
+    {
+        if ( aGrouping.equals(GROUP_DIRECTORY) ){
+            String directory = new File(aPath).getParent();
+            return directory != null ? directory : ".";
+        }
+        return "*";
+    }
+
+    /**
+     * Copies the values of the current row.
+     *
+     * @param aReader the reader
+     * @param aValues the array to copy the values into
+     */
+    private static void getValues(final SortedRowReader aReader, final int[] aValues)
+    {
+        for ( int i = 0; i < aValues.length; i++ ){
+            aValues[i] = aReader.getValue(i);
+        }
+    }
+
+    /**
+     * Prints a difference and adds it to the totals of its group.
+     * The values of an added row are printed as they are, and so are those of a removed row;
+     * the values of a changed row are printed as the differences (new - old).
+     *
+     * @param aPath the path of the row
+     * @param aKind the kind of the difference (ADDED, REMOVED or CHANGED)
+     * @param aKeyColumns the indexes of the key columns
+     * @param aValueColumns the indexes of the other columns
+     * @param anOldValues the values in the old snapshot (zeros if added)
+     * @param aNewValues the values in the new snapshot (zeros if removed)
+     * @param aGrouping the grouping of the totals
+     * @param isTotalOnly true if the difference is not printed
+     * @param aTotals the totals of the groups
+     * @param anOutput the output
+     */
+    private static void record(final String aPath, final String aKind, final int[] aKeyColumns, final int[] aValueColumns,
+                               final int[] anOldValues, final int[] aNewValues, final String aGrouping, final boolean isTotalOnly,
+                               final TreeMap<String, long[]> aTotals, final PrintStream anOutput)
+    {
+        String group = getGroupKey(aPath, aGrouping);
+        long[] total = aTotals.get(group);
+        if ( total == null ){
+            total = new long[3 + aValueColumns.length];
+            aTotals.put(group, total);
+        }
+        total[aKind == ADDED ? 0 : aKind == REMOVED ? 1 : 2]++;
+        for ( int i = 0; i < aValueColumns.length; i++ ){
+            total[3 + i] += (long)aNewValues[aValueColumns[i]] - anOldValues[aValueColumns[i]];
+        }
+        if ( isTotalOnly ){
+            return;
+        }
+
+        int[] keyValues = aKind == REMOVED ? anOldValues : aNewValues;
+        StringBuilder line = new StringBuilder(aKind).append('\t').append(aPath);
+        for ( int i = 0; i < aKeyColumns.length; i++ ){
+            line.append('\t').append(keyValues[aKeyColumns[i]]);
+        }
+        for ( int i = 0; i < aValueColumns.length; i++ ){
+            int column = aValueColumns[i];
+            line.append('\t');
+            if ( aKind == CHANGED ){
+                line.append((long)aNewValues[column] - anOldValues[column]);
+            }
+            else{
+                line.append(keyValues[column]);
+            }
+        }
+        anOutput.println(line);
+    }
+
+    /**
+     * Prints a separator line through the standard error output.
+     */
+    private static void printSeparator()
+    {
+        final int LENGTH = 64;
+        for ( int i = 0; i < LENGTH; i++ ){
+            System.err.print("-");
+        }
+        System.err.println();
+    }
+
+    /**
+     * Prints the usage through the standard error output.
+     */
+    private static void printUsage()
+    {
+        System.err.println("java -cp LOCCounter.jar " + SnapshotDiffCUI.class.getName() + " [option ...] old_results_file new_results_file");
+        System.err.println("option : ");
+        System.err.println("  -g KEY : totals the differences by KEY (none : all rows, dir : directory; default none)");
+        System.err.println("  -t     : prints only the totals");
+        System.err.println();
+        System.err.println("The rows are paired by the path and the key columns (begin and end, if any).");
+        System.err.println("The printing format is as below (the column names are printed through the standard error output):");
+        System.err.println("  ADDED<TAB>path<TAB>keys...<TAB>new_values...");
+        System.err.println("  REMOVED<TAB>path<TAB>keys...<TAB>old_values...");
+        System.err.println("  CHANGED<TAB>path<TAB>keys...<TAB>differences (new - old)...");
+        System.err.println("  TOTAL<TAB>group<TAB>added<TAB>removed<TAB>changed<TAB>total_differences...");
+    }
+
+    /** The kind of a difference: a row only in the new snapshot */
+    private static final String ADDED = "ADDED";
+
+    /** The kind of a difference: a row in both snapshots with different values */
+    private static final String CHANGED = "CHANGED";
+
+    /** The grouping: by directory */
+    private static final String GROUP_DIRECTORY = "dir";
+
+    /** The grouping: none */
+    private static final String GROUP_NONE = "none";
+
+    /** The kind of a difference: a row only in the old snapshot */
+    private static final String REMOVED = "REMOVED";
+}
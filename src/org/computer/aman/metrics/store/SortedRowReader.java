@@ -0,0 +1,196 @@
+package org.computer.aman.metrics.store;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.PriorityQueue;
+
+/**
+ * A reader of the rows of a columnar results file in the order of the path and the key columns.<br>
+ * Each block of the file is a sorted run, so the rows are read by merging the blocks:
+ * the reader keeps a cursor per block in a priority queue and advances the cursor of the least row.
+ * The heap holds only the cursors and the current path of each, however many rows and paths there are;
+ * a path is decoded from the file when a cursor reaches it.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class SortedRowReader
+{
+    /**
+     * Creates a reader of the rows of the specified file.
+     *
+     * @param aReader the reader of the file, whose blocks must be sorted
+     * @throws IOException if a block could not be mapped
+     * @throws IllegalArgumentException if the blocks of the file are not sorted
+     */
+    public SortedRowReader(final ColumnarReader aReader)
+    throws IOException
+    {
+        if ( !aReader.isSorted() ){
+            throw new IllegalArgumentException("the blocks are not sorted (written by an older version)");
+        }
+        reader = aReader;
+        columnCount = aReader.getColumnNames().length;
+        keyColumns = ColumnarWriter.getKeyColumns(aReader.getColumnNames());
+        cursors = new PriorityQueue<Cursor>(Math.max(1, aReader.getBlockCount()));
+        for ( int b = 0; b < aReader.getBlockCount(); b++ ){
+            Cursor cursor = new Cursor(aReader.getBlock(b));
+            if ( cursor.rowCount > 0 ){
+                cursors.add(cursor);
+            }
+        }
+    }
+
+    /**
+     * Compares the key of the current row with that of the current row of another reader.
+     * The two readers must have the same key columns.
+     *
+     * @param aReader another reader
+     * @return a negative number, zero or a positive number as the key of this row is less than,
+     *         equal to or greater than that of the other
+     */
+    public int compareKey(final SortedRowReader aReader)
+    {
+        return current.compareTo(aReader.current);
+    }
+
+    /**
+     * Returns the path of the current row.
+     *
+     * @return the path
+     */
+    public String getPath()
+    {
+        return current.getPath();
+    }
+
+    /**
+     * Returns a value of the current row.
+     *
+     * @param aColumnIndex the index of the value column
+     * @return the value
+     */
+    public int getValue(final int aColumnIndex)
+    {
+        return current.columns[aColumnIndex].get(current.row);
+    }
+
+    /**
+     * Returns whether the specified column is a key column.
+     *
+     * @param aColumnIndex the index of the value column
+     * @return true if the rows are sorted by the column
+     */
+    public boolean isKeyColumn(final int aColumnIndex)
+    {
+        for ( int i = 0; i < keyColumns.length; i++ ){
+            if ( keyColumns[i] == aColumnIndex ){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the next row.
+     *
+     * @return true if there is the next row, false if all the rows have been read
+     */
+    public boolean next()
+    {
+        if ( current != null ){
+            current.row++;
+            if ( current.row < current.rowCount ){
+                cursors.add(current);
+            }
+        }
+        current = cursors.poll();
+        return current != null;
+    }
+
+    /**
+     * A position in a block.
+     */
+    private class Cursor
+    implements Comparable<Cursor>
+    {
+        /**
+         * Creates a cursor at the first row of the block.
+         *
+         * @param aBlock the block
+         */
+        Cursor(final ColumnarReader.Block aBlock)
+        {
+            pathColumn = aBlock.getPathColumn();
+            columns = new IntBuffer[columnCount];
+            for ( int i = 0; i < columnCount; i++ ){
+                columns[i] = aBlock.getColumn(i);
+            }
+            rowCount = aBlock.getRowCount();
+            pathIndex = -1;
+        }
+
+        /**
+         * Compares the rows of the cursors by the path and the key columns.
+         * The cursors may belong to different readers.
+         */
+        public int compareTo(final Cursor aCursor)
+        {
+            int result = getPath().compareTo(aCursor.getPath());
+            for ( int k = 0; result == 0 && k < keyColumns.length; k++ ){
+                int value = columns[keyColumns[k]].get(row);
+                int another = aCursor.columns[keyColumns[k]].get(aCursor.row);
+                result = value < another ? -1 : value > another ? 1 : 0;
+            }
+            return result;
+        }
+
+        /**
+         * Returns the path of the row.
+         *
+         * @return the path
+         */
+        private String getPath()
+        {
+            // the rows of a block are sorted by the path, so a path is decoded once per block
+            int index = pathColumn.get(row);
+            if ( index != pathIndex ){
+                path = reader.getPath(index);
+                pathIndex = index;
+            }
+            return path;
+        }
+
+        /** The value columns of the block */
+        private final IntBuffer[] columns;
+
+        /** The path of the row decoded last */
+        private String path;
+
+        /** The path indexes of the block */
+        private final IntBuffer pathColumn;
+
+        /** The index of the path decoded last */
+        private int pathIndex;
+
+        /** The current row */
+        private int row;
+
+        /** The number of rows in the block */
+        private final int rowCount;
+    }
+
+    /** The number of value columns */
+    private final int columnCount;
+
+    /** The row read last */
+    private Cursor current;
+
+    /** The cursors of the blocks having rows left */
+    private final PriorityQueue<Cursor> cursors;
+
+    /** The indexes of the key columns */
+    private final int[] keyColumns;
+
+    /** The reader of the file, from which the paths are decoded */
+    private final ColumnarReader reader;
+}
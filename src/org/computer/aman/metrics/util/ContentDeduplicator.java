@@ -0,0 +1,443 @@
+package org.computer.aman.metrics.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.computer.aman.io.ContentHash;
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+
+/**
+ * A registry of the results of the files measured so far, by their contents,
+ * so that a byte-identical copy of a file (a vendored library, a copied header, a generated stub, ...)
+ * is not parsed again but takes the results of the file measured first.<br>
+ * The same bytes are measured differently as Java and as C/C++, so only the files of the same language
+ * (as told by {@link SourceFile#isJavaFile()} and {@link SourceFile#isCFile()}) are compared.
+ * Among them, the files are told apart by their sizes first: the contents of a file are hashed by {@link ContentHash}
+ * only when another file of the same language and size has been seen, so a file of a unique size costs no more than before.
+ * The first file of a size is hashed when the second one turns up, provided that it has not been modified
+ * since it was measured.  The hash only finds a candidate: the results are reused only if the bytes of the two files
+ * are equal, so a collision of the 64-bit hash costs a comparison, not wrong results.
+ * The results handed out for a copy are rebound to its own path by {@link Measurer#copy(Object, String)}.
+ * <p>
+ * At most a fixed number of sizes and of contents are remembered, the least recently used being forgotten first,
+ * so the registry does not grow with the number of files; forgetting a content only means that its next copy is parsed.
+ * It may be used by several threads at once; a copy measured while the first file is still being measured
+ * is simply measured too.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class ContentDeduplicator<V>
+{
+    /**
+     * Creates an empty registry remembering the default number of sizes and of contents.
+     */
+    public ContentDeduplicator()
+    {
+        this(DEFAULT_MAX_ENTRY_COUNT);
+    }
+
+    /**
+     * Creates an empty registry remembering the specified number of sizes and of contents.
+     *
+     * @param aMaxEntryCount the number of sizes, and that of contents, remembered at most
+     * @throws IllegalArgumentException if the number is not positive
+     */
+    public ContentDeduplicator(final int aMaxEntryCount)
+    {
+        if ( aMaxEntryCount <= 0 ){
+            throw new IllegalArgumentException("entry count " + aMaxEntryCount + " is not positive");
+        }
+        firstFiles = new BoundedMap<Long, Entry<V>>(aMaxEntryCount);
+        hashedFiles = new BoundedMap<ContentKey, Entry<V>>(aMaxEntryCount);
+    }
+
+    /**
+     * Returns the results of the specified file, taking them from an identical file measured before if any.
+     *
+     * @param aPath the path of the file
+     * @param aContents the contents of the file read ahead (or null if it has not been read)
+     * @param aMeasurer the measurer of the file, used if no identical file has been measured
+     * @return the results of the file
+     * @throws IOException if the file could not be read
+     * @throws NotSupportedSourceFileExeption if the file is not a supported source file
+     */
+    public V measure(final String aPath, final ByteBuffer aContents, final Measurer<V> aMeasurer)
+    throws IOException, NotSupportedSourceFileExeption
+    {
+        SourceFile file = new SourceFile(aPath);
+        long size = aContents != null ? aContents.remaining() : file.length();
+        // the language takes the two lowest bits, so the files of different languages never meet
+        long sizeKey = (size << 2) | (file.isJavaFile() ? LANGUAGE_JAVA : file.isCFile() ? LANGUAGE_C : LANGUAGE_OTHER);
+        long lastModified = file.lastModified();
+        Entry<V> first = null;
+        boolean isFirst = false;
+        synchronized ( this ){
+            first = firstFiles.get(sizeKey);
+            if ( first == null ){
+                // the first file of its size needs no hash
+                first = new Entry<V>(aPath, lastModified);
+                firstFiles.put(sizeKey, first);
+                measuredCount++;
+                isFirst = true;
+            }
+        }
+        if ( isFirst ){
+            V results = aMeasurer.measure(aPath, aContents);
+            synchronized ( this ){
+                first.results = results;
+            }
+            return results;
+        }
+
+        hashFirst(first, sizeKey, size);
+        ContentKey key = new ContentKey(sizeKey, aContents != null ? ContentHash.of(aContents) : ContentHash.of(file));
+        Entry<V> identical = null;
+        synchronized ( this ){
+            hashedCount++;
+            identical = hashedFiles.get(key);
+        }
+        if ( identical != null && isSameContents(identical, size, file, aContents) ){
+            synchronized ( this ){
+                reusedCount++;
+                reusedBytes += size;
+            }
+            return aMeasurer.copy(identical.results, aPath);
+        }
+
+        V results = aMeasurer.measure(aPath, aContents);
+        Entry<V> entry = new Entry<V>(aPath, lastModified);
+        entry.results = results;
+        synchronized ( this ){
+            measuredCount++;
+            // a modified or colliding file is replaced by the one just measured
+            hashedFiles.put(key, entry);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the number of files hashed (the files of the sizes seen more than once).
+     *
+     * @return the number of hashed files
+     */
+    public synchronized int getHashedCount()
+    {
+        return hashedCount;
+    }
+
+    /**
+     * Returns the number of files measured, i.e., not found identical to a file measured before.
+     *
+     * @return the number of measured files
+     */
+    public synchronized int getMeasuredCount()
+    {
+        return measuredCount;
+    }
+
+    /**
+     * Returns the total size of the files whose results were taken from identical files.
+     *
+     * @return the number of bytes not parsed
+     */
+    public synchronized long getReusedBytes()
+    {
+        return reusedBytes;
+    }
+
+    /**
+     * Returns the number of files whose results were taken from identical files.
+     *
+     * @return the number of files not parsed
+     */
+    public synchronized int getReusedCount()
+    {
+        return reusedCount;
+    }
+
+    /**
+     * Returns how much parsing was avoided in the form
+     * "Duplicates reused = files (bytes), Files parsed = files, Files hashed = files".
+     *
+     * @return the statistics
+     */
+    public synchronized String toString()
+    {
+        return "Duplicates reused = " + reusedCount + " (" + reusedBytes + " bytes), "
+               + "Files parsed = " + measuredCount + ", Files hashed = " + hashedCount;
+    }
+
+    /**
+     * Hashes the first file of a size, if its results are ready and have not been hashed yet.
+     *
+     * @param aFirst the first file of the size
+     * @param aSizeKey the language and the size
+     * @param aSize the size
+     * @throws IOException if the first file could not be read
+     */
+    private void hashFirst(final Entry<V> aFirst, final long aSizeKey, final long aSize)
+    throws IOException
+    {
+        synchronized ( this ){
+            if ( aFirst.results == null || aFirst.hashed ){
+                // not measured yet, or hashed by another thread
+                return;
+            }
+            aFirst.hashed = true;
+        }
+        File file = new File(aFirst.path);
+        // the results of a file modified after it was measured are not those of its present contents
+        if ( file.lastModified() != aFirst.lastModified || file.length() != aSize ){
+            return;
+        }
+        ContentKey key = new ContentKey(aSizeKey, ContentHash.of(file));
+        synchronized ( this ){
+            hashedCount++;
+            if ( hashedFiles.get(key) == null ){
+                hashedFiles.put(key, aFirst);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the file measured before has the same bytes as the specified file.
+     *
+     * @param anEntry the file measured before
+     * @param aSize the size of the specified file
+     * @param aFile the specified file
+     * @param aContents the contents of the specified file read ahead (or null if it has not been read)
+     * @return true if the file measured before is unmodified and has the same bytes
+     * @throws IOException if the files could not be read
+     */
+    private static boolean isSameContents(final Entry<?> anEntry, final long aSize, final File aFile, final ByteBuffer aContents)
+    throws IOException
+    {
+        File measuredFile = new File(anEntry.path);
+        if ( measuredFile.lastModified() != anEntry.lastModified || measuredFile.length() != aSize ){
+            return false;
+        }
+        RandomAccessFile measured = new RandomAccessFile(measuredFile, "r");
+        RandomAccessFile file = aContents == null ? new RandomAccessFile(aFile, "r") : null;
+        try{
+            FileChannel measuredChannel = measured.getChannel();
+            FileChannel channel = file != null ? file.getChannel() : null;
+            ByteBuffer contents = aContents != null ? aContents.duplicate() : null;
+            ByteBuffer measuredBuffer = ByteBuffer.allocate(COMPARISON_BUFFER_SIZE);
+            ByteBuffer buffer = contents == null ? ByteBuffer.allocate(COMPARISON_BUFFER_SIZE) : null;
+            while ( true ){
+                int length = fill(measuredChannel, measuredBuffer);
+                ByteBuffer compared = null;
+                if ( contents != null ){
+                    if ( contents.remaining() < length ){
+                        return false;
+                    }
+                    compared = contents.duplicate();
+                    compared.limit(compared.position() + length);
+                    contents.position(contents.position() + length);
+                }
+                else{
+                    if ( fill(channel, buffer) != length ){
+                        return false;
+                    }
+                    compared = buffer;
+                }
+                if ( !measuredBuffer.equals(compared) ){
+                    return false;
+                }
+                if ( length < COMPARISON_BUFFER_SIZE ){
+                    return contents != null ? !contents.hasRemaining() : channel.position() == channel.size();
+                }
+            }
+        }
+        finally{
+            measured.close();
+            if ( file != null ){
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Reads from the channel until the buffer is full or the end of the file, and flips the buffer.
+     *
+     * @param aChannel the channel
+     * @param aBuffer the buffer
+     * @return the number of bytes read
+     * @throws IOException if the file could not be read
+     */
+    private static int fill(final FileChannel aChannel, final ByteBuffer aBuffer)
+    throws IOException
+    {
+        aBuffer.clear();
+        while ( aBuffer.hasRemaining() && aChannel.read(aBuffer) >= 0 ){
+            // reads until the buffer is filled
+        }
+        aBuffer.flip();
+        return aBuffer.remaining();
+    }
+
+    /**
+     * A measurer of a file, and the rebinding of its results to an identical file.
+     */
+    public interface Measurer<V>
+    {
+        /**
+         * Rebinds the results of a file to the path of an identical file.
+         *
+         * @param aResults the results of the file measured before
+         * @param aPath the path of the identical file
+         * @return the results of the identical file
+         * @throws IOException if the identical file could not be opened
+         */
+        V copy(V aResults, String aPath)
+        throws IOException;
+
+        /**
+         * Measures the specified file.
+         *
+         * @param aPath the path of the file
+         * @param aContents the contents of the file read ahead (or null if it has not been read)
+         * @return the results of the file
+         * @throws IOException if the file could not be read
+         * @throws NotSupportedSourceFileExeption if the file is not a supported source file
+         */
+        V measure(String aPath, ByteBuffer aContents)
+        throws IOException, NotSupportedSourceFileExeption;
+    }
+
+    /**
+     * A map forgetting its least recently used entry when it holds too many.
+     */
+    private static class BoundedMap<K, E>
+    extends LinkedHashMap<K, E>
+    {
+        /**
+         * Creates an empty map.
+         *
+         * @param aMaxEntryCount the number of entries held at most
+         */
+        BoundedMap(final int aMaxEntryCount)
+        {
+            super(16, 0.75f, true);
+            maxEntryCount = aMaxEntryCount;
+        }
+
+        protected boolean removeEldestEntry(final Map.Entry<K, E> anEldest)
+        {
+            return size() > maxEntryCount;
+        }
+
+        /** The number of entries held at most */
+        private final int maxEntryCount;
+
+        /** The version of the serialized form */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * The language, the size and the hash of contents.
+     */
+    private static class ContentKey
+    {
+        /**
+         * Creates the key of contents.
+         *
+         * @param aSizeKey the language and the size
+         * @param aHash the hash
+         */
+        ContentKey(final long aSizeKey, final long aHash)
+        {
+            sizeKey = aSizeKey;
+            hash = aHash;
+        }
+
+        public boolean equals(final Object anObject)
+        {
+            if ( !(anObject instanceof ContentKey) ){
+                return false;
+            }
+            ContentKey key = (ContentKey)anObject;
+            return sizeKey == key.sizeKey && hash == key.hash;
+        }
+
+        public int hashCode()
+        {
+            return (int)(hash ^ (hash >>> 32));
+        }
+
+        /** The hash */
+        private final long hash;
+
+        /** The language and the size */
+        private final long sizeKey;
+    }
+
+    /**
+     * A file measured, and its results.
+     */
+    private static class Entry<V>
+    {
+        /**
+         * Creates the entry of a file about to be measured.
+         *
+         * @param aPath the path of the file
+         * @param aLastModified the last-modified time of the file before it is measured
+         */
+        Entry(final String aPath, final long aLastModified)
+        {
+            path = aPath;
+            lastModified = aLastModified;
+        }
+
+        /** True if the file has been hashed (or found modified) as the first file of its size */
+        private boolean hashed;
+
+        /** The last-modified time of the file before it was measured */
+        private final long lastModified;
+
+        /** The path of the file */
+        private final String path;
+
+        /** The results of the file (null until it has been measured) */
+        private V results;
+    }
+
+    /** The size of the buffers comparing the bytes of two files */
+    private static final int COMPARISON_BUFFER_SIZE = 64 * 1024;
+
+    /** The number of sizes, and that of contents, remembered by default */
+    private static final int DEFAULT_MAX_ENTRY_COUNT = 64 * 1024;
+
+    /** The language key of C/C++ */
+    private static final int LANGUAGE_C = 2;
+
+    /** The language key of Java */
+    private static final int LANGUAGE_JAVA = 1;
+
+    /** The language key of the other files */
+    private static final int LANGUAGE_OTHER = 0;
+
+    /** The first files measured, by language and size */
+    private final BoundedMap<Long, Entry<V>> firstFiles;
+
+    /** The files hashed, by language, size and hash */
+    private final BoundedMap<ContentKey, Entry<V>> hashedFiles;
+
+    /** The number of files hashed */
+    private int hashedCount;
+
+    /** The number of files measured */
+    private int measuredCount;
+
+    /** The total size of the files not parsed */
+    private long reusedBytes;
+
+    /** The number of files not parsed */
+    private int reusedCount;
+}
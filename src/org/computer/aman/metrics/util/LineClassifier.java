@@ -0,0 +1,285 @@
+package org.computer.aman.metrics.util;
+
+import org.computer.aman.io.sourcecode.SourceFile;
+
+/**
+ * A line-by-line classifier telling whether each line contains code, comments, or neither.<br>
+ * It follows the same rules as the parsers of {@link CodeMapFactory}
+ * (literals, end-of-line comments, traditional comments and, for Java, Javadoc comments),
+ * but keeps only the parsing status between lines instead of building a map of every character,
+ * so it needs constant memory however long the source file is.
+ * A line can be given either as characters or as the raw bytes of an ASCII-compatible encoding;
+ * the latter needs no decoding and no per-line objects.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class LineClassifier
+{
+    /**
+     * Creates a classifier for the specified source file.
+     * 
+     * @param aSourceFile the source file (Java or C)
+     * @return the classifier, or null if the file is not supported
+     */
+    public static LineClassifier create(final SourceFile aSourceFile)
+    {
+        if ( aSourceFile.isJavaFile() ){
+            return new LineClassifier(true);
+        }
+        if ( aSourceFile.isCFile() ){
+            return new LineClassifier(false);
+        }
+        return null;
+    }
+
+    /**
+     * Creates a classifier.
+     * 
+     * @param isJavadocAware true if "/**" begins a Javadoc comment (Java), false if it is a traditional comment (C)
+     */
+    public LineClassifier(final boolean isJavadocAware)
+    {
+        javadocAware = isJavadocAware;
+        status = CODE_STATUS;
+    }
+
+    /**
+     * Classifies the next line of the source code.
+     * The lines have to be given in order, since comments and literals may continue over lines.
+     * 
+     * @param aLine the line without its line terminator
+     * @return the combination of {@link #CODE} and {@link #COMMENT}, or 0 for a blank line
+     */
+    public int classify(final CharSequence aLine)
+    {
+        final int LENGTH = aLine.length();
+        int kinds = 0;
+        int i = 0;
+        while ( i < LENGTH ){
+            char c = aLine.charAt(i);
+            if ( Character.isWhitespace(c) ){
+                if ( status == TRADITIONAL_STATUS || status == JAVADOC_STATUS ){
+                    kinds |= COMMENT;
+                }
+                else if ( status == STRING_LITERAL_STATUS || status == CHAR_LITERAL_STATUS ){
+                    kinds |= CODE;
+                }
+                i++;
+            }
+            else if ( status == CODE_STATUS ){
+                if ( c == '/' && i + 1 < LENGTH && aLine.charAt(i+1) == '/' ){
+                    kinds |= COMMENT;
+                    i = LENGTH;
+                }
+                else if ( c == '/' && javadocAware && i + 2 < LENGTH && aLine.charAt(i+1) == '*' && aLine.charAt(i+2) == '*' ){
+                    kinds |= COMMENT;
+                    status = JAVADOC_STATUS;
+                    i += 3;
+                }
+                else if ( c == '/' && i + 1 < LENGTH && aLine.charAt(i+1) == '*' ){
+                    kinds |= COMMENT;
+                    status = TRADITIONAL_STATUS;
+                    i += 2;
+                }
+                else{
+                    if ( c == '\'' ){
+                        status = CHAR_LITERAL_STATUS;
+                    }
+                    else if ( c == '"' ){
+                        status = STRING_LITERAL_STATUS;
+                    }
+                    kinds |= CODE;
+                    i++;
+                }
+            }
+            else if ( status == TRADITIONAL_STATUS || status == JAVADOC_STATUS ){
+                kinds |= COMMENT;
+                if ( c == '*' && i + 1 < LENGTH && aLine.charAt(i+1) == '/' ){
+                    status = CODE_STATUS;
+                    i += 2;
+                }
+                else{
+                    i++;
+                }
+            }
+            else{
+                // in a literal, a backslash escapes the next character (even beyond the end of the line)
+                kinds |= CODE;
+                if ( c == '\\' ){
+                    i += 2;
+                }
+                else{
+                    if ( (c == '\'' && status == CHAR_LITERAL_STATUS) || (c == '"' && status == STRING_LITERAL_STATUS) ){
+                        status = CODE_STATUS;
+                    }
+                    i++;
+                }
+            }
+        }
+        return kinds;
+    }
+
+    /**
+     * Classifies the next line of the source code given as raw bytes.
+     * The bytes have to be in US-ASCII, ISO-8859-1 or UTF-8 (see {@link #isByteScannable(String)}),
+     * and the result is the same as that of {@link #classify(CharSequence)} for the decoded line.
+     * 
+     * @param aBytes the array holding the bytes
+     * @param aBegin the index of the first byte of the line
+     * @param anEnd the index just after the last byte of the line, excluding the line terminator
+     * @param isUTF8 true if the bytes are in UTF-8
+     * @return the combination of {@link #CODE} and {@link #COMMENT}, or 0 for a blank line
+     */
+    public int classify(final byte[] aBytes, final int aBegin, final int anEnd, final boolean isUTF8)
+    {
+        // Each status skips the bytes which cannot change the result in a tight loop:
+        // once a line is known to contain code, only the beginnings of comments and literals matter,
+        // in a comment only its end matters, and in a literal only its end and escapes matter.
+        int kinds = 0;
+        int i = aBegin;
+        while ( i < anEnd ){
+            if ( status == CODE_STATUS ){
+                if ( (kinds & CODE) != 0 ){
+                    byte b = 0;
+                    while ( i < anEnd && (b = aBytes[i]) != '/' && b != '"' && b != '\'' ){
+                        i++;
+                    }
+                    if ( i == anEnd ){
+                        break;
+                    }
+                }
+                int c = aBytes[i] & 0xff;
+                int whitespaceLength = 0;
+                if ( c <= ' ' ){
+                    whitespaceLength = (c == ' ' || (c >= 0x09 && c <= 0x0d) || (c >= 0x1c && c <= 0x1f)) ? 1 : 0;
+                }
+                else if ( isUTF8 && c >= 0xe1 && c <= 0xe3 ){
+                    whitespaceLength = getUTF8WhitespaceLength(aBytes, i, anEnd);
+                }
+                if ( whitespaceLength > 0 ){
+                    i += whitespaceLength;
+                }
+                else if ( c == '/' && i + 1 < anEnd && aBytes[i+1] == '/' ){
+                    kinds |= COMMENT;
+                    i = anEnd;
+                }
+                else if ( c == '/' && javadocAware && i + 2 < anEnd && aBytes[i+1] == '*' && aBytes[i+2] == '*' ){
+                    kinds |= COMMENT;
+                    status = JAVADOC_STATUS;
+                    i += 3;
+                }
+                else if ( c == '/' && i + 1 < anEnd && aBytes[i+1] == '*' ){
+                    kinds |= COMMENT;
+                    status = TRADITIONAL_STATUS;
+                    i += 2;
+                }
+                else{
+                    if ( c == '\'' ){
+                        status = CHAR_LITERAL_STATUS;
+                    }
+                    else if ( c == '"' ){
+                        status = STRING_LITERAL_STATUS;
+                    }
+                    kinds |= CODE;
+                    i++;
+                }
+            }
+            else if ( status == TRADITIONAL_STATUS || status == JAVADOC_STATUS ){
+                // every byte in a comment, whitespace or not, is a comment character
+                kinds |= COMMENT;
+                while ( i < anEnd && aBytes[i] != '*' ){
+                    i++;
+                }
+                if ( i + 1 < anEnd && aBytes[i+1] == '/' ){
+                    status = CODE_STATUS;
+                    i += 2;
+                }
+                else{
+                    i++;
+                }
+            }
+            else{
+                // every byte in a literal is code; a backslash skips one byte 
+                // (the rest of a multi-byte character is neither a quote nor a backslash)
+                kinds |= CODE;
+                final byte QUOTE = (byte)(status == CHAR_LITERAL_STATUS ? '\'' : '"');
+                byte b = 0;
+                while ( i < anEnd && (b = aBytes[i]) != '\\' && b != QUOTE ){
+                    i++;
+                }
+                if ( i == anEnd ){
+                    break;
+                }
+                if ( b == '\\' ){
+                    i += 2;
+                }
+                else{
+                    status = CODE_STATUS;
+                    i++;
+                }
+            }
+        }
+        return kinds;
+    }
+
+    /**
+     * Returns true if the lines in the specified encoding can be classified as raw bytes.
+     * 
+     * @param aCharsetName the name of the encoding
+     * @return true for US-ASCII, ISO-8859-1 and UTF-8
+     */
+    public static boolean isByteScannable(final String aCharsetName)
+    {
+        return aCharsetName.equals("UTF-8") || aCharsetName.equals("US-ASCII") || aCharsetName.equals("ISO-8859-1");
+    }
+
+    /**
+     * Returns the length of the UTF-8 sequence at the specified index if it encodes a whitespace character
+     * ({@link Character#isWhitespace(int)}: U+1680, U+2000--U+2006, U+2008--U+200A, U+2028, U+2029, U+205F, U+3000).
+     * 
+     * @param aBytes the array holding the bytes
+     * @param anIndex the index of the lead byte
+     * @param anEnd the index just after the last byte of the line
+     * @return 3 if the sequence is a whitespace character, otherwise 0
+     */
+    private static int getUTF8WhitespaceLength(final byte[] aBytes, final int anIndex, final int anEnd)
+    {
+        if ( anIndex + 2 >= anEnd ){
+            return 0;
+        }
+        int second = aBytes[anIndex+1] & 0xff;
+        int third = aBytes[anIndex+2] & 0xff;
+        if ( (second & 0xc0) != 0x80 || (third & 0xc0) != 0x80 ){
+            return 0;
+        }
+        int codePoint = ((aBytes[anIndex] & 0x0f) << 12) | ((second & 0x3f) << 6) | (third & 0x3f);
+        return Character.isWhitespace(codePoint) ? 3 : 0;
+    }
+
+    /** The flag of a line containing code */
+    public static final int CODE = 1;
+
+    /** The flag of a line containing comments */
+    public static final int COMMENT = 2;
+
+    /** The parsing status: code */
+    private static final int CODE_STATUS = 0;
+
+    /** The parsing status: in a traditional comment */
+    private static final int TRADITIONAL_STATUS = 1;
+
+    /** The parsing status: in a Javadoc comment */
+    private static final int JAVADOC_STATUS = 2;
+
+    /** The parsing status: in a string literal */
+    private static final int STRING_LITERAL_STATUS = 3;
+
+    /** The parsing status: in a character literal */
+    private static final int CHAR_LITERAL_STATUS = 4;
+
+    /** True if "/**" begins a Javadoc comment */
+    private final boolean javadocAware;
+
+    /** The current parsing status */
+    private int status;
+}
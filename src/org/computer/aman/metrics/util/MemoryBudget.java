@@ -0,0 +1,123 @@
+package org.computer.aman.metrics.util;
+
+import java.io.InterruptedIOException;
+
+/**
+ * A limit on the heap held by the files being measured at once.<br>
+ * Before a file is parsed, the size of its parse state (the lines, the code map, and so on) is estimated
+ * from the size of the file by {@link #estimateParseState(long)} and reserved from the budget;
+ * the reservation is released when the results of the file have been handed over.
+ * A pipeline holds back new files while the budget is used up, so the heap used by a run does not depend
+ * on how many large files happen to be in flight.  A file whose estimate exceeds the whole budget is
+ * granted only while nothing else is reserved, i.e., it is measured alone.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MemoryBudget
+{
+    /**
+     * Creates a budget of the specified size.
+     *
+     * @param aLimit the number of bytes which may be reserved at once
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public MemoryBudget(final long aLimit)
+    {
+        if ( aLimit <= 0 ){
+            throw new IllegalArgumentException("memory budget " + aLimit + " is not positive");
+        }
+        limit = aLimit;
+    }
+
+    /**
+     * Estimates the heap held while a file of the specified size is parsed and its lines are kept.
+     *
+     * @param aFileSize the size of the file in bytes
+     * @return the estimated size of the parse state in bytes
+     */
+    public static long estimateParseState(final long aFileSize)
+    {
+        return PARSE_STATE_OVERHEAD + aFileSize * PARSE_STATE_FACTOR;
+    }
+
+    /**
+     * Reserves the specified number of bytes, waiting until they are available.
+     *
+     * @param aSize the number of bytes
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    public synchronized void acquire(final long aSize)
+    throws InterruptedIOException
+    {
+        while ( !tryAcquire(aSize) ){
+            try{
+                wait();
+            }
+            catch ( InterruptedException e ){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the memory budget");
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the budget.
+     *
+     * @return the number of bytes which may be reserved at once
+     */
+    public long getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * Returns whether a file of the specified size is too large to keep its parse state within the budget
+     * alongside other files; such a file should be measured in a streaming way if possible.
+     *
+     * @param aFileSize the size of the file in bytes
+     * @return true if the estimated parse state exceeds half of the budget
+     */
+    public boolean isTooLargeToParse(final long aFileSize)
+    {
+        return estimateParseState(aFileSize) > limit / 2;
+    }
+
+    /**
+     * Releases the specified number of bytes reserved before.
+     *
+     * @param aSize the number of bytes
+     */
+    public synchronized void release(final long aSize)
+    {
+        used = Math.max(used - aSize, 0);
+        notifyAll();
+    }
+
+    /**
+     * Reserves the specified number of bytes if they are available.
+     * A request larger than the budget is granted when nothing is reserved.
+     *
+     * @param aSize the number of bytes
+     * @return true if the bytes have been reserved
+     */
+    public synchronized boolean tryAcquire(final long aSize)
+    {
+        if ( used > 0 && used + aSize > limit ){
+            return false;
+        }
+        used += aSize;
+        return true;
+    }
+
+    /** The estimated bytes of the parse state per byte of a source file */
+    private static final long PARSE_STATE_FACTOR = 12;
+
+    /** The estimated bytes of the parse state of an empty source file */
+    private static final long PARSE_STATE_OVERHEAD = 16 * 1024;
+
+    /** The number of bytes which may be reserved at once */
+    private final long limit;
+
+    /** The number of bytes reserved */
+    private long used;
+}
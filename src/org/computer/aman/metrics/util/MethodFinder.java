@@ -0,0 +1,354 @@
+package org.computer.aman.metrics.util;
+
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A finder of the methods (Java) and the functions (C and C++) in a source file.<br>
+ * Only the code characters of the code map are looked at, so braces in comments are ignored,
+ * and braces in string and character literals are skipped as well.  Each opening brace is classified
+ * by the code written since the previous ';', '{' or '}' (its "header"):
+ * <ul>
+ * <li>a type body if the header declares a class, an interface, an enum, a record, an anonymous class,
+ *     or (in C and C++) a struct, a union, a namespace or an extern block;</li>
+ * <li>a method body if the block is directly inside a type body (or at the top level in C and C++)
+ *     and the header ends with a parameter list, optionally followed by a throws clause
+ *     (or, in C++, by qualifiers such as const and noexcept);</li>
+ * <li>any other block otherwise.</li>
+ * </ul>
+ * A method runs from the first line of its header, so its modifiers and annotations are included,
+ * to the line of its closing brace.  Preprocessor directives in C and C++ are skipped.
+ * This is a heuristic which does not need a parser; code whose braces are unbalanced
+ * (e.g. by conditional compilation) may be reported incompletely, and the C functions defined in the K&amp;R style
+ * ({@code int f(a) int a; {...}}) are not found, since the ';' of a parameter declaration ends the header.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MethodFinder
+{
+    /**
+     * Finds the methods of the specified source file.
+     *
+     * @param aSourceText the lines of the source file
+     * @param aCodeMap the code map of the same lines
+     * @return the methods in the order of their closing braces
+     */
+    public static ArrayList<MethodRange> find(final SourceText aSourceText, final PackedCodeMap aCodeMap)
+    {
+        return new MethodFinder(aSourceText.getSourceFile().isJavaFile()).scan(aSourceText, aCodeMap);
+    }
+
+    /**
+     * Creates a finder for the specified language.
+     *
+     * @param isJava true for Java, false for C and C++
+     */
+    private MethodFinder(final boolean isJava)
+    {
+        java = isJava;
+        header = new StringBuilder();
+        blocks = new ArrayList<Block>();
+        methods = new ArrayList<MethodRange>();
+    }
+
+    /**
+     * Scans all the lines.
+     *
+     * @param aSourceText the lines of the source file
+     * @param aCodeMap the code map of the same lines
+     * @return the methods found
+     */
+    private ArrayList<MethodRange> scan(final SourceText aSourceText, final PackedCodeMap aCodeMap)
+    {
+        final int LINE_COUNT = aCodeMap.getLineCount();
+        boolean continuedDirective = false;
+        for ( int i = 1; i <= LINE_COUNT; i++ ){
+            final String LINE = aSourceText.getLine(i);
+            final int LENGTH = Math.min(LINE.length(), aCodeMap.getLength(i));
+
+            // preprocessor directives (and their continuation lines) take no part in the blocks
+            if ( !java && literal == 0 ){
+                if ( continuedDirective || isDirective(LINE, aCodeMap, i, LENGTH) ){
+                    continuedDirective = LINE.trim().endsWith("\\");
+                    continue;
+                }
+            }
+
+            for ( int j = 0; j < LENGTH; j++ ){
+                if ( aCodeMap.getCharacterClass(i, j) != PackedCodeMap.CODE_CLASS ){
+                    separate();
+                    continue;
+                }
+                accept(LINE.charAt(j), i);
+            }
+            separate();
+        }
+        return methods;
+    }
+
+    /**
+     * Processes a code character.
+     *
+     * @param aChar the character
+     * @param aLineNumber the line of the character
+     */
+    private void accept(final char aChar, final int aLineNumber)
+    {
+        if ( literal != 0 ){
+            if ( escaped ){
+                escaped = false;
+            }
+            else if ( aChar == '\\' ){
+                escaped = true;
+            }
+            else if ( aChar == literal ){
+                header.append(literal).append(literal);
+                literal = 0;
+            }
+            return;
+        }
+
+        if ( aChar == ':' && !java && ACCESS_LABEL.matcher(header).matches() ){
+            // an access label of C++ is not a part of the following member
+            header.setLength(0);
+            return;
+        }
+
+        switch ( aChar ){
+        case '"':
+        case '\'':
+            if ( header.length() == 0 ){
+                headerLineNumber = aLineNumber;
+            }
+            literal = aChar;
+            break;
+        case '{':
+            open();
+            break;
+        case '}':
+            close(aLineNumber);
+            break;
+        case ';':
+            if ( !blocks.isEmpty() ){
+                blocks.get(blocks.size() - 1).terminated = true;
+            }
+            header.setLength(0);
+            break;
+        default:
+            if ( header.length() == 0 ){
+                headerLineNumber = aLineNumber;
+            }
+            header.append(aChar);
+        }
+    }
+
+    /**
+     * Opens a block classified by the current header.
+     */
+    private void open()
+    {
+        String text = header.toString().trim();
+        Block parent = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        boolean inType = java ? parent != null && parent.kind == TYPE : parent == null || parent.kind == TYPE;
+
+        Block block = new Block(OTHER, headerLineNumber, "");
+        if ( java && inType && parent.enumBody && !parent.terminated ){
+            // the body of an enum constant
+            block = new Block(TYPE, headerLineNumber, "");
+        }
+        else if ( inType && (java ? JAVA_SIGNATURE : C_SIGNATURE).matcher(text).find() && !(java && NEW.matcher(text).find()) ){
+            block = new Block(METHOD, headerLineNumber, getName(text));
+        }
+        else if ( (java ? JAVA_TYPE : C_TYPE).matcher(text).find() ){
+            block = new Block(TYPE, headerLineNumber, "");
+            block.enumBody = java && ENUM.matcher(text).find();
+        }
+        else if ( java && NEW.matcher(text).find() && text.endsWith(")") ){
+            // an anonymous class
+            block = new Block(TYPE, headerLineNumber, "");
+        }
+        blocks.add(block);
+        header.setLength(0);
+    }
+
+    /**
+     * Closes the innermost block.
+     *
+     * @param aLineNumber the line of the closing brace
+     */
+    private void close(final int aLineNumber)
+    {
+        header.setLength(0);
+        if ( blocks.isEmpty() ){
+            return;
+        }
+        Block block = blocks.remove(blocks.size() - 1);
+        if ( block.kind == METHOD ){
+            methods.add(new MethodRange(block.beginLineNumber, aLineNumber, block.name));
+        }
+        if ( block.kind == METHOD && !blocks.isEmpty() ){
+            // the enum constants have ended if a method has been declared
+            blocks.get(blocks.size() - 1).terminated = true;
+        }
+    }
+
+    /**
+     * Separates the tokens of the header (at a blank, a comment or the end of a line).
+     */
+    private void separate()
+    {
+        if ( literal == 0 && header.length() > 0 && header.charAt(header.length() - 1) != ' ' ){
+            header.append(' ');
+        }
+    }
+
+    /**
+     * Returns the name of the method declared by the header.
+     *
+     * @param aHeader the header ending with the parameter list (and the clauses following it)
+     * @return the name, or an empty string
+     */
+    private static String getName(final String aHeader)
+    {
+        int end = aHeader.lastIndexOf(')');
+        Matcher initializer = INITIALIZER_LIST.matcher(aHeader);
+        if ( initializer.find() ){
+            // the parameter list of a C++ constructor precedes its member initializer list
+            end = aHeader.lastIndexOf(')', initializer.start());
+        }
+        int depth = 0;
+        int i = end;
+        for ( ; i >= 0; i-- ){
+            char c = aHeader.charAt(i);
+            if ( c == ')' ){
+                depth++;
+            }
+            else if ( c == '(' && --depth == 0 ){
+                break;
+            }
+        }
+        int nameEnd = i;
+        while ( nameEnd > 0 && aHeader.charAt(nameEnd - 1) == ' ' ){
+            nameEnd--;
+        }
+        int nameBegin = nameEnd;
+        while ( nameBegin > 0 && isNameChar(aHeader.charAt(nameBegin - 1)) ){
+            nameBegin--;
+        }
+        return nameBegin < nameEnd ? aHeader.substring(nameBegin, nameEnd) : "";
+    }
+
+    /**
+     * Returns whether the character can be a part of a (qualified) method name.
+     *
+     * @param aChar the character
+     * @return true if the character can be a part of a name
+     */
+    private static boolean isNameChar(final char aChar)
+    {
+        return Character.isJavaIdentifierPart(aChar) || aChar == ':' || aChar == '~';
+    }
+
+    /**
+     * Returns whether the line is a preprocessor directive, i.e. its first code character is '#'.
+     *
+     * @param aLine the line
+     * @param aCodeMap the code map
+     * @param aLineNumber the line number
+     * @param aLength the number of characters to look at
+     * @return true if the line is a preprocessor directive
+     */
+    private static boolean isDirective(final String aLine, final PackedCodeMap aCodeMap, final int aLineNumber, final int aLength)
+    {
+        for ( int j = 0; j < aLength; j++ ){
+            if ( aCodeMap.getCharacterClass(aLineNumber, j) == PackedCodeMap.CODE_CLASS ){
+                return aLine.charAt(j) == '#';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A block opened by a brace.
+     */
+    private static class Block
+    {
+        Block(final int aKind, final int aBeginLineNumber, final String aName)
+        {
+            kind = aKind;
+            beginLineNumber = aBeginLineNumber;
+            name = aName;
+        }
+
+        /** The first line of the header */
+        private final int beginLineNumber;
+
+        /** True if this is the body of an enum */
+        private boolean enumBody;
+
+        /** The kind of the block (TYPE, METHOD or OTHER) */
+        private final int kind;
+
+        /** The name of the method */
+        private final String name;
+
+        /** True if a ';' or a method has ended in this block (the enum constants end with the first ';') */
+        private boolean terminated;
+    }
+
+    /** The kind of blocks: a type body */
+    private static final int TYPE = 0;
+
+    /** The kind of blocks: a method body */
+    private static final int METHOD = 1;
+
+    /** The kind of blocks: any other block */
+    private static final int OTHER = 2;
+
+    /** An access label of C++ (without its colon) */
+    private static final Pattern ACCESS_LABEL = Pattern.compile("\\s*(public|protected|private)\\s*");
+
+    /** A header ending with a C or C++ function signature */
+    private static final Pattern C_SIGNATURE
+        = Pattern.compile("\\)\\s*((const|volatile|noexcept|override|final|&&?|throw\\s*\\([^)]*\\)|->\\s*[\\w:<>*&, ]+)\\s*)*$");
+
+    /** A header of a C or C++ type, namespace or extern block */
+    private static final Pattern C_TYPE = Pattern.compile("(^|[^\\w.])(class|struct|union|namespace)\\b|\\bextern\\s*\"\"");
+
+    /** A header of an enum */
+    private static final Pattern ENUM = Pattern.compile("(^|[^\\w.])enum\\b");
+
+    /** A header ending with a Java method signature */
+    private static final Pattern JAVA_SIGNATURE = Pattern.compile("\\)\\s*(throws\\s+[\\w.$<>\\[\\],? ]+)?$");
+
+    /** The colon starting the member initializer list of a C++ constructor */
+    private static final Pattern INITIALIZER_LIST = Pattern.compile("\\)[\\s\\w]*(?<!:):(?!:)");
+
+    /** A header of a Java type */
+    private static final Pattern JAVA_TYPE = Pattern.compile("(^|[^\\w.$])(class|interface|enum)\\b|(^|[^\\w.$])record\\s+[\\w$]+\\s*[(<]");
+
+    /** A header creating an instance */
+    private static final Pattern NEW = Pattern.compile("(^|[^\\w.$])new\\b");
+
+    /** The blocks being open, from the outermost */
+    private final ArrayList<Block> blocks;
+
+    /** True if the last character was a backslash in a literal */
+    private boolean escaped;
+
+    /** The code since the previous ';', '{' or '}', with the contents of literals removed */
+    private final StringBuilder header;
+
+    /** The first line of the header */
+    private int headerLineNumber;
+
+    /** True for Java, false for C and C++ */
+    private final boolean java;
+
+    /** The quote of the literal being read, or 0 */
+    private char literal;
+
+    /** The methods found */
+    private final ArrayList<MethodRange> methods;
+}
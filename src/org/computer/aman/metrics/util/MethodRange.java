@@ -0,0 +1,72 @@
+package org.computer.aman.metrics.util;
+
+/**
+ * The lines of a method (or a function) found in a source file.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class MethodRange
+{
+    /**
+     * Creates the range of a method.
+     *
+     * @param aBeginLineNumber the first line of the declaration (its modifiers and annotations included)
+     * @param anEndLineNumber the line of the closing brace of the body
+     * @param aName the name of the method (empty if it could not be told)
+     */
+    public MethodRange(final int aBeginLineNumber, final int anEndLineNumber, final String aName)
+    {
+        beginLineNumber = aBeginLineNumber;
+        endLineNumber = anEndLineNumber;
+        name = aName;
+    }
+
+    /**
+     * Returns the first line of the declaration.
+     *
+     * @return the first line of the declaration
+     */
+    public int getBeginLineNumber()
+    {
+        return beginLineNumber;
+    }
+
+    /**
+     * Returns the line of the closing brace of the body.
+     *
+     * @return the line of the closing brace of the body
+     */
+    public int getEndLineNumber()
+    {
+        return endLineNumber;
+    }
+
+    /**
+     * Returns the name of the method.
+     *
+     * @return the name of the method (empty if it could not be told)
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the range in the form "begin TAB end TAB name".
+     *
+     * @return the range
+     */
+    public String toString()
+    {
+        return beginLineNumber + "\t" + endLineNumber + "\t" + name;
+    }
+
+    /** The first line of the declaration */
+    private final int beginLineNumber;
+
+    /** The line of the closing brace of the body */
+    private final int endLineNumber;
+
+    /** The name of the method */
+    private final String name;
+}
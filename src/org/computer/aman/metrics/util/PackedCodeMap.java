@@ -0,0 +1,304 @@
+package org.computer.aman.metrics.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.computer.aman.metrics.util.c.CodeLineMapForC;
+import org.computer.aman.metrics.util.c.CodeMapForC;
+import org.computer.aman.metrics.util.java.CodeLineMapForJava;
+import org.computer.aman.metrics.util.java.CodeMapForJava;
+
+/**
+ * A code map packed into flat storage.<br>
+ * The class of each character ('0' to '6' in the maps of {@link CodeLineMap}) is kept as one byte,
+ * either in a heap array or in a direct (off-heap) buffer, and the number of characters of each class
+ * in each line is kept in a primitive array, so a line costs a few dozen bytes instead of several objects.
+ * {@link #iterator()} gives the same {@link CodeLineMapForJava} or {@link CodeLineMapForC} objects as the
+ * original map, created on the fly; {@link #getCount(int, int)} and {@link #isComment(int, int)} read the
+ * packed storage without creating any object.
+ * <p>
+ * {@link #pack(CodeMap)} keeps the classes off the heap when the system property
+ * <code>org.computer.aman.metrics.util.PackedCodeMap.direct</code> is "true".
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class PackedCodeMap
+extends CodeMap
+{
+    /**
+     * Packs the specified code map, keeping the classes on or off the heap as the system property specifies.
+     * A map which is already packed is returned as it is.
+     *
+     * @param aCodeMap the code map of a Java or C source file
+     * @return the packed code map
+     */
+    public static PackedCodeMap pack(final CodeMap aCodeMap)
+    {
+        if ( aCodeMap instanceof PackedCodeMap ){
+            return (PackedCodeMap)aCodeMap;
+        }
+        return new PackedCodeMap(aCodeMap, Boolean.getBoolean(DIRECT_PROPERTY));
+    }
+
+    /**
+     * Packs the specified code map.
+     *
+     * @param aCodeMap the code map of a Java or C source file
+     * @param isDirect true if the classes are kept in a direct buffer outside the heap
+     */
+    public PackedCodeMap(final CodeMap aCodeMap, final boolean isDirect)
+    {
+        ArrayList<String> maps = new ArrayList<String>();
+        boolean java = aCodeMap instanceof CodeMapForJava;
+        int characterCount = 0;
+        for ( Iterator<CodeLineMap> itr = aCodeMap.iterator(); itr.hasNext(); ){
+            CodeLineMap lineMap = itr.next();
+            java |= lineMap instanceof CodeLineMapForJava;
+            maps.add(lineMap.getMap());
+            characterCount += lineMap.getMap().length();
+        }
+        javaMap = java;
+        lineCount = maps.size();
+        lineOffsets = new int[lineCount + 1];
+        counts = new int[lineCount * CLASS_COUNT];
+        classes = isDirect ? ByteBuffer.allocateDirect(characterCount) : ByteBuffer.allocate(characterCount);
+
+        int offset = 0;
+        for ( int i = 0; i < lineCount; i++ ){
+            String map = maps.get(i);
+            maps.set(i, null);
+            lineOffsets[i] = offset;
+            final int LENGTH = map.length();
+            for ( int j = 0; j < LENGTH; j++ ){
+                int characterClass = map.charAt(j) - '0';
+                classes.put(offset + j, (byte)characterClass);
+                if ( characterClass >= 0 && characterClass < CLASS_COUNT ){
+                    counts[i * CLASS_COUNT + characterClass]++;
+                }
+            }
+            offset += LENGTH;
+        }
+        lineOffsets[lineCount] = offset;
+    }
+
+    /**
+     * Returns the class of a character.
+     *
+     * @param aLineNumber the line number (starting from 1)
+     * @param anIndex the index of the character in the line
+     * @return the class of the character (see {@link #getCount(int, int)})
+     */
+    public int getCharacterClass(final int aLineNumber, final int anIndex)
+    {
+        if ( anIndex < 0 || anIndex >= getLength(aLineNumber) ){
+            throw new StringIndexOutOfBoundsException(anIndex);
+        }
+        return classes.get(lineOffsets[aLineNumber - 1] + anIndex);
+    }
+
+    /**
+     * Returns the number of characters of the specified class in a line.
+     *
+     * @param aLineNumber the line number (starting from 1)
+     * @param aClass the class of characters (0 : blank, 1 : code, 2 : EOL comment, 3 : traditional comment,
+     *               4 : javadoc comment, 5 : EOL comment-out, 6 : traditional comment-out)
+     * @return the number of characters
+     */
+    public int getCount(final int aLineNumber, final int aClass)
+    {
+        checkLineNumber(aLineNumber);
+        return counts[(aLineNumber - 1) * CLASS_COUNT + aClass];
+    }
+
+    /**
+     * Returns the number of comment characters in a line.
+     *
+     * @param aLineNumber the line number (starting from 1)
+     * @return the number of comment characters
+     */
+    public int getCommentCount(final int aLineNumber)
+    {
+        return getLength(aLineNumber) - getCount(aLineNumber, BLANK_CLASS) - getCount(aLineNumber, CODE_CLASS);
+    }
+
+    /**
+     * Returns the number of characters in a line.
+     *
+     * @param aLineNumber the line number (starting from 1)
+     * @return the number of characters
+     */
+    public int getLength(final int aLineNumber)
+    {
+        checkLineNumber(aLineNumber);
+        return lineOffsets[aLineNumber] - lineOffsets[aLineNumber - 1];
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return the number of lines
+     */
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    /**
+     * Returns the map of a line, as the original code map gave it.
+     *
+     * @param aLineNumber the line number (starting from 1)
+     * @return the map of the line ({@link CodeLineMapForJava} or {@link CodeLineMapForC})
+     */
+    public CodeLineMap getLineMap(final int aLineNumber)
+    {
+        final int LENGTH = getLength(aLineNumber);
+        final int OFFSET = lineOffsets[aLineNumber - 1];
+        char[] map = new char[LENGTH];
+        for ( int j = 0; j < LENGTH; j++ ){
+            map[j] = (char)('0' + classes.get(OFFSET + j));
+        }
+        return javaMap ? new CodeLineMapForJava(new String(map)) : new CodeLineMapForC(new String(map));
+    }
+
+    /**
+     * Returns the number of bytes taken by the packed storage.
+     *
+     * @return the number of bytes (the direct buffer included)
+     */
+    public long getStorageSize()
+    {
+        return classes.capacity() + 4L * (lineOffsets.length + counts.length);
+    }
+
+    /**
+     * Returns whether a character is a part of a comment, as {@link CodeLineMap#isComment(int)} does.
+     *
+     * @param aLineNumber the line number (starting from 1)
+     * @param anIndex the index of the character in the line
+     * @return true if the character is a part of a comment
+     */
+    public boolean isComment(final int aLineNumber, final int anIndex)
+    {
+        int characterClass = getCharacterClass(aLineNumber, anIndex);
+        return characterClass != BLANK_CLASS && characterClass != CODE_CLASS;
+    }
+
+    /**
+     * Returns whether the specified comment is a commented-out code, as the original code map judges it.
+     *
+     * @param aComment the contents of the comment
+     * @return true if the comment is a commented-out code
+     */
+    public boolean isCommentOut(final String aComment)
+    {
+        return (javaMap ? JAVA_JUDGE : C_JUDGE).isCommentOut(aComment);
+    }
+
+    /**
+     * Returns the maps of the lines, created from the packed storage one by one.
+     *
+     * @return the iterator over the maps of the lines
+     */
+    public Iterator<CodeLineMap> iterator()
+    {
+        return new Iterator<CodeLineMap>() {
+            public boolean hasNext()
+            {
+                return next <= lineCount;
+            }
+
+            public CodeLineMap next()
+            {
+                if ( next > lineCount ){
+                    throw new NoSuchElementException();
+                }
+                return getLineMap(next++);
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            /** The number of the line returned next */
+            private int next = 1;
+        };
+    }
+
+    /**
+     * Returns the map of the whole file in the format of {@link CodeMap#toString()}.
+     *
+     * @return the map of the whole file
+     */
+    public String toString()
+    {
+        StringBuilder buffer = new StringBuilder();
+        for ( int i = 1; i <= lineCount; i++ ){
+            buffer.append(i).append(getLineMap(i)).append('\n');
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Checks that the line exists.
+     *
+     * @param aLineNumber the line number (starting from 1)
+     * @throws NoSuchElementException if the line does not exist
+     */
+    private void checkLineNumber(final int aLineNumber)
+    {
+        if ( aLineNumber < 1 || aLineNumber > lineCount ){
+            throw new NoSuchElementException("line " + aLineNumber + " is out of 1.." + lineCount);
+        }
+    }
+
+    /** The class of blank characters */
+    public static final int BLANK_CLASS = 0;
+
+    /** The class of code characters */
+    public static final int CODE_CLASS = 1;
+
+    /** The class of EOL comment characters */
+    public static final int EOL_COMMENT_CLASS = 2;
+
+    /** The class of traditional comment characters */
+    public static final int TRADITIONAL_COMMENT_CLASS = 3;
+
+    /** The class of javadoc comment characters (only in Java) */
+    public static final int JAVADOC_COMMENT_CLASS = 4;
+
+    /** The class of EOL comment-out characters */
+    public static final int EOL_COMMENT_OUT_CLASS = 5;
+
+    /** The class of traditional comment-out characters */
+    public static final int TRADITIONAL_COMMENT_OUT_CLASS = 6;
+
+    /** The number of the classes of characters */
+    private static final int CLASS_COUNT = 7;
+
+    /** The system property which makes {@link #pack(CodeMap)} keep the classes off the heap */
+    public static final String DIRECT_PROPERTY = "org.computer.aman.metrics.util.PackedCodeMap.direct";
+
+    /** The code map judging commented-out code in C */
+    private static final CodeMap C_JUDGE = new CodeMapForC(new String[0]);
+
+    /** The code map judging commented-out code in Java */
+    private static final CodeMap JAVA_JUDGE = new CodeMapForJava(new String[0]);
+
+    /** The class of each character, line after line */
+    private final ByteBuffer classes;
+
+    /** The number of characters of each class in each line */
+    private final int[] counts;
+
+    /** True if this is the map of a Java source file */
+    private final boolean javaMap;
+
+    /** The number of lines */
+    private final int lineCount;
+
+    /** The offset of each line in the classes, followed by the total number of characters */
+    private final int[] lineOffsets;
+}
@@ -0,0 +1,336 @@
+package org.computer.aman.metrics.util;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.computer.aman.io.sourcecode.NotSupportedSourceFileExeption;
+import org.computer.aman.io.sourcecode.SourceFile;
+import org.computer.aman.metrics.util.c.CodeMapForC;
+import org.computer.aman.metrics.util.java.CodeMapForJava;
+
+/**
+ * The lines of a source file, read once and shared by the tools measuring the file.<br>
+ * The code map is built from the same lines, so a file is read only once however many metrics are taken from it.
+ * The bytes of the file are kept (memory-mapped if the file is large) together with the offset of each line,
+ * and a line is decoded only when it is asked for, so any line is reached without reading the lines before it.
+ * When the default charset does not encode line terminators as single ASCII bytes (e.g. UTF-16),
+ * the decoded lines are kept instead.
+ * <p></p>
+ * @author Hirohisa AMAN &lt;aman@computer.org&gt;
+ */
+public class SourceText
+{
+    /**
+     * Reads the specified source file and indexes its lines.
+     *
+     * @param aSourceFile the source file
+     * @return the lines of the file
+     * @throws IOException if the file could not be read
+     */
+    public static SourceText read(final SourceFile aSourceFile)
+    throws IOException
+    {
+        Charset charset = Charset.defaultCharset();
+        if ( !isLineBreakCompatible(charset) || aSourceFile.length() > Integer.MAX_VALUE ){
+            return new SourceText(aSourceFile, readLines(aSourceFile));
+        }
+
+        ByteBuffer bytes = null;
+        RandomAccessFile file = new RandomAccessFile(aSourceFile, "r");
+        try{
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if ( size >= MAP_THRESHOLD ){
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            else{
+                bytes = ByteBuffer.allocate((int)size);
+                while ( bytes.hasRemaining() && channel.read(bytes) >= 0 ){
+                    // reads until the buffer is filled
+                }
+                bytes.flip();
+            }
+        }
+        finally{
+            file.close();
+        }
+        return new SourceText(aSourceFile, bytes, charset);
+    }
+
+    /**
+     * Indexes the lines of the specified source file whose bytes have been read beforehand
+     * (e.g. by {@link org.computer.aman.io.FilePrefetcher}).
+     * The bytes are kept by the text, so they must not be reused while the text is in use;
+     * when the default charset does not allow the lines to be found in the bytes, the file is read again.
+     *
+     * @param aSourceFile the source file
+     * @param aBytes the bytes of the file (from the position to the limit), or null if they were not read
+     * @return the lines of the file
+     * @throws IOException if the file could not be read
+     */
+    public static SourceText read(final SourceFile aSourceFile, final ByteBuffer aBytes)
+    throws IOException
+    {
+        Charset charset = Charset.defaultCharset();
+        if ( aBytes == null || !isLineBreakCompatible(charset) ){
+            return read(aSourceFile);
+        }
+        return new SourceText(aSourceFile, aBytes, charset);
+    }
+
+    /**
+     * Creates the text of the specified source file from its lines.
+     *
+     * @param aSourceFile the source file
+     * @param aLines the lines of the file
+     */
+    public SourceText(final SourceFile aSourceFile, final String[] aLines)
+    {
+        sourceFile = aSourceFile;
+        lines = aLines;
+        bytes = null;
+        charset = null;
+        lineOffsets = null;
+        lineCount = aLines.length;
+    }
+
+    /**
+     * Creates the text of the specified source file from its bytes.
+     * Lines end at LF, CR or CR LF, as {@link BufferedReader#readLine()} splits them.
+     *
+     * @param aSourceFile the source file
+     * @param aBytes the bytes of the file (from the position to the limit)
+     * @param aCharset the charset of the file, encoding CR and LF as single ASCII bytes
+     */
+    public SourceText(final SourceFile aSourceFile, final ByteBuffer aBytes, final Charset aCharset)
+    {
+        sourceFile = aSourceFile;
+        lines = null;
+        bytes = aBytes.slice();
+        charset = aCharset;
+
+        // lineOffsets[i] is the offset of line i+1; the last entry is the end of the text
+        int[] offsets = new int[INITIAL_LINE_CAPACITY + 1];
+        int count = 0;
+        final int SIZE = bytes.limit();
+        int i = 0;
+        while ( i < SIZE ){
+            if ( count + 1 >= offsets.length ){
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[count++] = i;
+            byte b = 0;
+            while ( i < SIZE && (b = bytes.get(i)) != '\n' && b != '\r' ){
+                i++;
+            }
+            if ( i < SIZE ){
+                i++;
+                if ( b == '\r' && i < SIZE && bytes.get(i) == '\n' ){
+                    i++;
+                }
+            }
+        }
+        offsets[count] = SIZE;
+        lineOffsets = offsets;
+        lineCount = count;
+    }
+
+    /**
+     * Builds the code map of the lines, in the same way as {@link CodeMapFactory#create(SourceFile)}.
+     *
+     * @return the code map
+     * @throws NotSupportedSourceFileExeption if the file is neither a Java nor a C source file
+     */
+    public CodeMap createCodeMap()
+    throws NotSupportedSourceFileExeption
+    {
+        if ( !sourceFile.isJavaFile() && !sourceFile.isCFile() ){
+            throw new NotSupportedSourceFileExeption("not supported file type: " + sourceFile.getPath());
+        }
+
+        String[] allLines = lines;
+        if ( allLines == null ){
+            // the decoded lines are needed only while the map is built
+            allLines = new String[lineCount];
+            for ( int i = 0; i < lineCount; i++ ){
+                allLines[i] = getLine(i + 1);
+            }
+        }
+        if ( sourceFile.isJavaFile() ){
+            return new CodeMapForJava(allLines);
+        }
+        return new CodeMapForC(allLines);
+    }
+
+    /**
+     * Returns the specified line.
+     *
+     * @param aLineNumber the line number (starting from 1)
+     * @return the line without its line terminator
+     */
+    public String getLine(final int aLineNumber)
+    {
+        if ( lines != null ){
+            return lines[aLineNumber-1];
+        }
+        if ( aLineNumber < 1 || aLineNumber > lineCount ){
+            throw new IndexOutOfBoundsException("line " + aLineNumber + " is out of 1.." + lineCount);
+        }
+
+        final int BEGIN = lineOffsets[aLineNumber-1];
+        int end = lineOffsets[aLineNumber];
+        if ( end > BEGIN && bytes.get(end - 1) == '\n' ){
+            end--;
+        }
+        if ( end > BEGIN && bytes.get(end - 1) == '\r' ){
+            end--;
+        }
+        if ( bytes.hasArray() ){
+            return new String(bytes.array(), bytes.arrayOffset() + BEGIN, end - BEGIN, charset);
+        }
+        ByteBuffer line = bytes.duplicate();
+        line.limit(end).position(BEGIN);
+        return charset.decode(line).toString();
+    }
+
+    /**
+     * Copies the bytes of the specified characters of a line into the array.
+     * The line has to be byte-addressable (see {@link #isByteAddressable(int)}).
+     *
+     * @param aLineNumber the line number (starting from 1)
+     * @param aBeginIndex the index of the first character in the line
+     * @param anEndIndex the index after the last character in the line
+     * @param aDestination the array receiving the bytes
+     * @param anOffset the offset in the array
+     */
+    public void getBytes(final int aLineNumber, final int aBeginIndex, final int anEndIndex,
+                         final byte[] aDestination, final int anOffset)
+    {
+        final int BEGIN = lineOffsets[aLineNumber-1] + aBeginIndex;
+        if ( bytes.hasArray() ){
+            System.arraycopy(bytes.array(), bytes.arrayOffset() + BEGIN, aDestination, anOffset, anEndIndex - aBeginIndex);
+        }
+        else{
+            ByteBuffer range = bytes.duplicate();
+            range.position(BEGIN);
+            range.get(aDestination, anOffset, anEndIndex - aBeginIndex);
+        }
+    }
+
+    /**
+     * Returns the charset of the bytes of the file, or null if only the decoded lines are kept.
+     *
+     * @return the charset, or null
+     */
+    public Charset getCharset()
+    {
+        return charset;
+    }
+
+    /**
+     * Returns whether the characters of the specified line can be copied as bytes,
+     * i.e. the bytes of the file are kept and each character of the line is a single ASCII byte.
+     *
+     * @param aLineNumber the line number (starting from 1)
+     * @return true if the character at index i of the line is the byte at index i of the line
+     */
+    public boolean isByteAddressable(final int aLineNumber)
+    {
+        if ( bytes == null ){
+            return false;
+        }
+        final int END = lineOffsets[aLineNumber];
+        for ( int i = lineOffsets[aLineNumber-1]; i < END; i++ ){
+            if ( bytes.get(i) < 0 ){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return the number of lines
+     */
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    /**
+     * Returns the source file.
+     *
+     * @return the source file
+     */
+    public SourceFile getSourceFile()
+    {
+        return sourceFile;
+    }
+
+    /**
+     * Returns whether the charset encodes CR and LF as single ASCII bytes which never occur inside other characters,
+     * so that the lines can be found in the raw bytes.
+     *
+     * @param aCharset the charset
+     * @return true if the lines can be found in the raw bytes
+     */
+    private static boolean isLineBreakCompatible(final Charset aCharset)
+    {
+        return aCharset.canEncode() && Arrays.equals("\r\n".getBytes(aCharset), new byte[]{ '\r', '\n' });
+    }
+
+    /**
+     * Reads and decodes all the lines of the specified source file.
+     *
+     * @param aSourceFile the source file
+     * @return the lines of the file
+     */
+    private static String[] readLines(final SourceFile aSourceFile)
+    throws IOException
+    {
+        ArrayList<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(aSourceFile));
+        try{
+            String line = null;
+            while ( (line = reader.readLine()) != null ){
+                lines.add(line);
+            }
+        }
+        finally{
+            reader.close();
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /** The initial capacity of the line offsets */
+    private static final int INITIAL_LINE_CAPACITY = 256;
+
+    /** The size from which a file is memory-mapped instead of being read onto the heap */
+    private static final long MAP_THRESHOLD = 64 * 1024;
+
+    /** The bytes of the file, or null if the decoded lines are kept */
+    private final ByteBuffer bytes;
+
+    /** The charset of the bytes */
+    private final Charset charset;
+
+    /** The number of lines */
+    private final int lineCount;
+
+    /** The offset of each line in the bytes, followed by the end of the bytes */
+    private final int[] lineOffsets;
+
+    /** The decoded lines, or null if the bytes are kept */
+    private final String[] lines;
+
+    /** The source file */
+    private final SourceFile sourceFile;
+}